@@ -30,6 +30,7 @@ public class ExamplePerfQueryMain {
 
     public static int N_QUERY_AGE = 100_000;
     public static int N_QUERY_AGE_RANGE = 10_000;
+    public static int N_QUERY_ORDERED = 1_000;
     
 	private static final String DB_FILE = "examplePerfQuery.zdb";
 
@@ -87,6 +88,12 @@ public class ExamplePerfQueryMain {
 			System.out.println();
 		}
 
+		for (int i = 0; i < 3; i++) {
+			queryOrderedTop(true, N_QUERY_ORDERED);
+			queryOrderedTop(false, N_QUERY_ORDERED);
+			System.out.println();
+		}
+
 		pm.currentTransaction().commit();
 		pm.close();
 		pm = null;
@@ -160,4 +167,37 @@ public class ExamplePerfQueryMain {
 		        + ";  dt=" + (t2-t1) +  "ms;  preCompile=" + preCompile);
 	}
 
+	/**
+	 * Ordered queries that return only the first 20 results. With a range, only the 
+	 * best results are kept while the candidates are scanned.
+	 */
+	@SuppressWarnings({ "unchecked", "unused" })
+	private void queryOrderedTop(boolean useRange, int nQuery) {
+		long t1 = System.currentTimeMillis(); 
+		Query q = pm.newQuery(Person.class);
+		q.declareParameters("int anAge");
+		q.setFilter("age >= anAge");
+		q.setOrdering("name descending");
+		if (useRange) {
+			q.setRange(0, 20);
+		}
+		int nFound = 0;
+		for (int i = 0; i < nQuery; i++) {
+			List<Person> persons = (List<Person>) q.execute(i % 50);
+			if (useRange) {
+				for (Person person : persons) {
+					nFound++;
+				}
+			} else {
+				for (int j = 0; j < 20; j++) {
+					persons.get(j);
+					nFound++;
+				}
+			}
+		}
+		long t2 = System.currentTimeMillis(); 
+		System.out.println(">> Ordered query for top 20 People returned results: " + nFound 
+		        + ";  dt=" + (t2-t1) +  "ms;  range=" + useRange);
+	}
+
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.api;
+
+import java.util.List;
+
+import org.zoodb.api.impl.ZooPC;
+
+/**
+ * A clustering policy defines the order in which new and modified objects are written during
+ * commit. Objects of the same class that are written one after another end up on the same or
+ * on adjacent data pages, so objects that are usually navigated together should be written
+ * together.
+ * <p>
+ * Predefined policies can be selected with the property 
+ * {@link ZooConstants#PROPERTY_CLUSTERING}. 
+ *
+ * @author Tilmann Zaeschke
+ * @see org.zoodb.jdo.ZooJdoHelper#setClusteringPolicy(javax.jdo.PersistenceManager, 
+ * ZooClusteringPolicy)
+ */
+public interface ZooClusteringPolicy {
+
+	/**
+	 * Sort the objects into the order in which they should be written. 
+	 * The list may contain deleted objects, they must not be removed from the list.
+	 * @param objects The new and modified objects, in the order in which they became dirty
+	 */
+	void sort(List<ZooPC> objects);
+	
+}
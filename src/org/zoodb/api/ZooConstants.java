@@ -69,5 +69,33 @@ public class ZooConstants {
 	 * Default is {@code false}.
 	 */
 	public static final String PROPERTY_FAIL_ON_CLOSED_QUERIES = "zoodb.failOnClosedQueries";
+
+	/**
+	 * Property that defines whether commits have to wait until their data has been written to 
+	 * disk. With relaxed durability, {@code commit()} returns once the data has been handed to 
+	 * the file, it is forced to disk later by a background thread. A crash may lose the most 
+	 * recent commits, but the database always reopens at a consistent commit.
+	 * Default is {@code false}.
+	 * @see org.zoodb.tools.ZooConfig#setCommitFlushDelay(int)
+	 */
+	public static final String PROPERTY_RELAXED_DURABILITY = "zoodb.relaxedDurability";
+
+	/**
+	 * Property that defines the order in which new and modified objects are written during
+	 * commit. Objects of a class that are written together end up on the same or on adjacent
+	 * data pages. Supported values are:
+	 * <ul>
+	 * <li>{@code none}: Objects are written in the order in which they became dirty.</li>
+	 * <li>{@code oid}: Objects are written in the order of their OIDs.</li>
+	 * <li>{@code reachability}: Objects are written in depth-first order of the references 
+	 * between them, starting with objects that are not referenced by other written 
+	 * objects.</li>
+	 * <li>{@code field:<name>}: Objects are written in the order of the value of the field 
+	 * with the given name. Objects without such a field are written last.</li>
+	 * </ul>
+	 * Default is {@code none}.
+	 * @see ZooClusteringPolicy
+	 */
+	public static final String PROPERTY_CLUSTERING = "zoodb.clustering";
 	
 }
@@ -193,7 +193,9 @@ public abstract class ZooPC implements Serializable {
 //		}
 //	}
 	public final void jdoZooMarkDirty() {
-		jdoZooGetContext().getSession().internalGetCache().flagOGTraversalRequired();
+		Session session = jdoZooGetContext().getSession();
+		session.internalGetCache().flagOGTraversalRequired();
+		session.notifyPreModification();
 		switch (getStatus()) {
 		case DETACHED_DIRTY:
 			//is already dirty
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.SerializerTools.PRIMITIVE;
+import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * Definition of an index over several fields of a class. The index applies to the class and
+ * all sub-classes.
+ * <p>
+ * Key layout
+ * ==========
+ * The key of an object is a single 64 bit value that is the concatenation of the values of the
+ * fields, in the order in which the fields are defined in the index. Each field gets a share of
+ * the 64 bits, but never more than the width of its type (1 for boolean, 8 for byte, 16 for
+ * short and char, 32 for int and float, 64 otherwise). The bits are assigned round robin to
+ * the fields in index order. Values that do not fit into their share are truncated to their
+ * most significant bits.
+ * <p>
+ * Every field value is first converted into an unsigned value with the same ordering, so the
+ * concatenated keys are ordered by the first field, then by the second field, and so on.
+ * Truncation preserves this ordering, but different values may result in the same key.
+ * Queries therefore can scan a range of the index when they constrain a prefix of the fields
+ * with '==' followed by an optional range on the next field, but they always need to
+ * re-evaluate the query on the returned objects.
+ * <p>
+ * Composite indexes are never unique.
+ *
+ * @author Tilmann Zaeschke
+ */
+public final class CompositeIndexDef {
+
+	private final ZooClassDef declaringType;
+	private final ZooFieldDef[] fields;
+	//width of the field values in bits
+	private final int[] widths;
+	//number of bits of each field in the key
+	private final int[] bits;
+
+	public CompositeIndexDef(ZooClassDef declaringType, ZooFieldDef[] fields) {
+		this.declaringType = declaringType;
+		this.fields = fields;
+		this.widths = new int[fields.length];
+		this.bits = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			widths[i] = getWidth(fields[i]);
+		}
+		int remaining = 64;
+		boolean assigned = true;
+		while (remaining > 0 && assigned) {
+			assigned = false;
+			for (int i = 0; i < fields.length && remaining > 0; i++) {
+				if (bits[i] < widths[i]) {
+					bits[i]++;
+					remaining--;
+					assigned = true;
+				}
+			}
+		}
+	}
+
+	private static int getWidth(ZooFieldDef f) {
+		if (!f.isPrimitiveType()) {
+			return 64;
+		}
+		switch (f.getPrimitiveType()) {
+		case BOOLEAN: return 1;
+		case BYTE: return 8;
+		case CHAR:
+		case SHORT: return 16;
+		case FLOAT:
+		case INT: return 32;
+		default: return 64;
+		}
+	}
+
+	/**
+	 * Create a definition for a new version of the declaring class.
+	 * @param newDef The new version of the class
+	 * @return The new definition or {@code null} if one of the fields does not exist anymore
+	 */
+	CompositeIndexDef forVersion(ZooClassDef newDef) {
+		ZooFieldDef[] newFields = new ZooFieldDef[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			newFields[i] = findField(newDef, fields[i].getFieldSchemaId());
+			if (newFields[i] == null) {
+				return null;
+			}
+		}
+		return new CompositeIndexDef(newDef, newFields);
+	}
+
+	/**
+	 * @param def The class
+	 * @param fieldId The field schema ID
+	 * @return The field of the class with the given ID or {@code null} if there is none.
+	 */
+	public static ZooFieldDef findField(ZooClassDef def, long fieldId) {
+		for (ZooFieldDef f: def.getAllFields()) {
+			if (f.getFieldSchemaId() == fieldId) {
+				return f;
+			}
+		}
+		return null;
+	}
+
+	public ZooClassDef getDeclaringType() {
+		return declaringType;
+	}
+
+	public ZooFieldDef[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return The schema IDs of the fields, these remain the same for all versions of a field.
+	 */
+	public long[] getFieldIds() {
+		long[] ids = new long[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			ids[i] = fields[i].getFieldSchemaId();
+		}
+		return ids;
+	}
+
+	/**
+	 * @param fieldIds Field schema IDs
+	 * @return Whether the index covers exactly the given fields in the given order
+	 */
+	public boolean matches(long[] fieldIds) {
+		return Arrays.equals(getFieldIds(), fieldIds);
+	}
+
+	/**
+	 * @param values The values of the fields as returned by
+	 * {@link SerializerTools#primitiveToLong(Object, PRIMITIVE)} or
+	 * {@link BitTools#toSortableLong(String)}. Values outside the range of the field type
+	 * are treated as the minimum or maximum value of the type.
+	 * @return The index key
+	 */
+	public long toKey(long[] values) {
+		long key = 0;
+		int n = 0;
+		for (int i = 0; i < fields.length; i++) {
+			if (bits[i] == 0) {
+				continue;
+			}
+			long u = toUnsigned(i, values[i]) >>> (widths[i] - bits[i]);
+			key = (key << bits[i]) | u;
+			n += bits[i];
+		}
+		if (n < 64) {
+			key <<= 64 - n;
+		}
+		//The index sorts signed values
+		return key ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * @return The value converted to an unsigned value with the same ordering.
+	 */
+	private long toUnsigned(int i, long v) {
+		int w = widths[i];
+		PRIMITIVE p = fields[i].getPrimitiveType();
+		if (p == PRIMITIVE.CHAR || p == PRIMITIVE.BOOLEAN) {
+			//unsigned types
+			return Math.max(0, Math.min(v, (1L << w) - 1));
+		}
+		if (w == 64) {
+			return v ^ Long.MIN_VALUE;
+		}
+		long min = -(1L << (w - 1));
+		long max = (1L << (w - 1)) - 1;
+		return Math.max(min, Math.min(v, max)) - min;
+	}
+
+	/**
+	 * @param pc A persistent object of the declaring class or of a sub-class
+	 * @return The index key for the object
+	 */
+	public long getKey(ZooPC pc) {
+		long[] values = new long[fields.length];
+		if (pc instanceof GenericObject) {
+			Object[] raw = ((GenericObject) pc).getRawFields();
+			for (int i = 0; i < fields.length; i++) {
+				ZooFieldDef fd = fields[i];
+				Object v = raw[fd.getFieldPos()];
+				if (fd.isPrimitiveType()) {
+					values[i] = SerializerTools.primitiveToLong(v, fd.getPrimitiveType());
+				} else if (fd.isPersistentType()) {
+					values[i] = v == null ? BitTools.NULL : (long) v;
+				} else {
+					//must be String (already hashed)
+					values[i] = (Long) v;
+				}
+			}
+			return toKey(values);
+		}
+		ZooFieldDef fd = null;
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				fd = fields[i];
+				Field f = fd.getJavaField();
+				if (fd.isPrimitiveType()) {
+					values[i] = SerializerTools.primitiveFieldToLong(pc, f, fd.getPrimitiveType());
+				} else if (fd.isPersistentType()) {
+					values[i] = BitTools.toSortableLong((ZooPC) f.get(pc));
+				} else {
+					//must be String
+					values[i] = BitTools.toSortableLong((String) f.get(pc));
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw DBLogger.newFatal("Error accessing field: " + fd.getName(), e);
+		}
+		return toKey(values);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(declaringType.getClassName()).append('(');
+		for (int i = 0; i < fields.length; i++) {
+			sb.append(i == 0 ? "" : ", ").append(fields[i].getName());
+		}
+		return sb.append(')').toString();
+	}
+}
@@ -21,12 +21,15 @@ import java.util.ArrayList;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.Pair;
 
 
 /**
  * This class provides a method to backup indexed fields for later removal from the according
  * field index. 
+ * The backup contains first the indexed fields, followed by fields that are only part of
+ * composite indexes.
  *
  * @author Tilmann Zaeschke
  */
@@ -51,6 +54,11 @@ public final class DataIndexUpdater {
 				pfl.add(f);
 			}
 		}
+		for (ZooFieldDef f: def.getAllFields()) {
+			if (f.isInCompositeIndex() && !f.isIndexed()) {
+				pfl.add(f);
+			}
+		}
 		indFields = pfl.toArray(new ZooFieldDef[pfl.size()]);
 	}
 	
@@ -120,5 +128,33 @@ public final class DataIndexUpdater {
 	public boolean isIndexed() {
 		return indFields.length != 0;
 	}
+
+	/**
+	 * @param index A composite index
+	 * @param backup The backup as returned by {@link #getBackup(ZooPC)}
+	 * @return The key of the backup in the composite index
+	 */
+	public long getCompositeKey(CompositeIndexDef index, long[] backup) {
+		ZooFieldDef[] fields = index.getFields();
+		long[] values = new long[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			values[i] = getBackupValue(fields[i], backup, index);
+		}
+		return index.toKey(values);
+	}
+
+	private long getBackupValue(ZooFieldDef field, long[] backup, CompositeIndexDef index) {
+		for (int i = 0; i < indFields.length; i++) {
+			if (indFields[i].getFieldSchemaId() == field.getFieldSchemaId()) {
+				if (backup == null || i >= backup.length) {
+					break;
+				}
+				return backup[i];
+			}
+		}
+		//This happens if the object was modified before the index was created
+		throw DBLogger.newUser("Objects that were modified before the index was created "
+				+ "in the same transaction cannot be updated: " + index);
+	}
     
 }
@@ -61,6 +61,9 @@ import org.zoodb.tools.internal.ObjectCache.GOProxy;
  * Compared to ObjectStream, this class does not require implementation of the
  * Serializable interface. But it requires a default constructor, which can have
  * any modifier of private, protected, public or default.
+ * <p>
+ * Instances are not thread-safe, but different instances can be used concurrently, 
+ * see {@link org.zoodb.internal.model1p.DataSink1P}.
  * 
  * @author Tilmann Zaeschke
  */
@@ -612,7 +615,7 @@ public final class DataSerializer {
             	long soid = ((ZooPC)val).jdoZooGetClassDef().getOid();
             	out.writeLong(soid);
             } else {
-            	long soid = cache.getSchema(cls, node).getOid();
+            	long soid = getSchemaOid(cls);
             	out.writeLong(soid);
             }
             return;
@@ -624,7 +627,7 @@ public final class DataSerializer {
             	out.writeLong(soid);
             } else {
             	//TODO why are we storing the target schema if the value is null???
-            	long soid = cache.getSchema(cls, node).getOid();
+            	long soid = getSchemaOid(cls);
             	out.writeLong(soid);
             }
             return;
@@ -657,6 +660,11 @@ public final class DataSerializer {
         usedClasses.put(cls, (byte)idInt); 
     }
 
+    private long getSchemaOid(Class<?> cls) {
+    	//This may be called in parallel (DataSink1P), the cache is thread-safe for this
+    	return cache.getSchema(cls, node).getOid();
+    }
+
 	public void checkScoClassValidity(Class<?> cls) {
 		if (cls.isEnum()) {
 			return;
@@ -21,6 +21,9 @@ import java.util.Iterator;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.server.OptimisticTransactionResult;
 import org.zoodb.internal.server.TxObjInfo;
+import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.tools.DBStatistics.STATS;
 
@@ -47,12 +50,28 @@ public abstract class Node {
 
 	public abstract ZooPC loadInstanceById(long oid);
 
+	/**
+	 * @param oids The OIDs of the objects to load
+	 * @param n The number of OIDs
+	 * @return The objects, in the same order as the OIDs
+	 */
+	public abstract ZooPC[] loadInstancesById(long[] oids, int n);
+
 	public abstract void closeConnection();
 
 	public abstract void defineIndex(ZooClassDef def, ZooFieldDef f, boolean isUnique);
 
 	public abstract boolean removeIndex(ZooClassDef def, ZooFieldDef f);
 
+	/**
+	 * Define a composite index and add all existing objects of the declaring class.
+	 * @param index The index definition
+	 * @see CompositeIndexDef
+	 */
+	public abstract void defineCompositeIndex(CompositeIndexDef index);
+
+	public abstract boolean removeCompositeIndex(CompositeIndexDef index);
+
 	public void connect() {
 		// TODO Auto-generated method stub
 		throw new UnsupportedOperationException();
@@ -62,10 +81,77 @@ public abstract class Node {
 	public abstract Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
 			long minValue, long maxValue, boolean loadFromCache);
 
+	/**
+	 * @param field The indexed field
+	 * @param minValue The minimum key
+	 * @param maxValue The maximum key
+	 * @param ascending Whether objects are returned in ascending or descending key order
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @return An iterator over all objects in the range, ordered by key
+	 */
+	public abstract Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache);
+
+	/**
+	 * @param field The indexed field
+	 * @param ascending Whether to return the smallest or the largest key
+	 * @return The smallest or largest key of the field index or {@code null} if the index is
+	 * empty or if it is not a {@link LongLongIndex}
+	 */
+	public abstract Long readFirstIndexKey(ZooFieldDef field, boolean ascending);
+
+	/**
+	 * @param field The indexed field
+	 * @param minValue The minimum key
+	 * @param maxValue The maximum key
+	 * @param ascending Whether keys are returned in ascending or descending order
+	 * @return An iterator over all keys in the range, without reading the indexed objects, 
+	 * or {@code null} if the field has no {@link LongLongIndex}
+	 */
+	public abstract Iterator<Long> readIndexKeys(ZooFieldDef field, long minValue, 
+			long maxValue, boolean ascending);
+
+	/**
+	 * @param field The indexed field
+	 * @param minValue The minimum key, used if the field has no {@link PagedStringIndex}
+	 * @param maxValue The maximum key, used if the field has no {@link PagedStringIndex}
+	 * @param strRange The key range for fields with a {@link PagedStringIndex}, may be 
+	 * {@code null}
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @return An iterator over all objects in the range
+	 */
+	public abstract Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, StringKeyRange strRange, boolean loadFromCache);
+
+	/**
+	 * @param index The composite index
+	 * @param minValue The minimum key, see {@link CompositeIndexDef#toKey(long[])}
+	 * @param maxValue The maximum key
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @return An iterator over all objects with keys in the range. The objects may not match
+	 * the query, because composite keys are not exact. 
+	 */
+	public abstract Iterator<ZooPC> readObjectFromCompositeIndex(CompositeIndexDef index, 
+			long minValue, long maxValue, boolean loadFromCache);
+
 	public abstract long getStats(STATS stats);
 
     public abstract String checkDb();
 
+	/**
+	 * Compact the database file with the next commit.
+	 * @see org.zoodb.tools.ZooCompactDb
+	 */
+	public abstract void requestCompaction();
+
+	/**
+	 * @param def The class
+	 * @return OIDs of the instances of the class that are located in the part of the file that
+	 * would be free in a compact file.
+	 * @see org.zoodb.tools.ZooCompactDb
+	 */
+	public abstract long[] getOidsForCompaction(ZooClassProxy def);
+
 	public abstract void dropInstances(ZooClassProxy def);
 
 	public abstract void defineSchema(ZooClassDef def);
@@ -103,7 +189,14 @@ public abstract class Node {
 
 	public abstract OptimisticTransactionResult rollbackTransaction();
 
-	public abstract OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates);
+	/**
+	 * Start committing the current transaction.
+	 * @param updates The objects to be updated or deleted
+	 * @param isReadOnly Whether the transaction has no updates at all, including schema changes
+	 * @return The result of the optimistic verification
+	 */
+	public abstract OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates, 
+			boolean isReadOnly);
 
 	public abstract OptimisticTransactionResult checkTxConsistency(ArrayList<TxObjInfo> updates);
 
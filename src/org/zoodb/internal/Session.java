@@ -31,6 +31,7 @@ import javax.jdo.listener.StoreCallback;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zoodb.api.ZooClusteringPolicy;
 import org.zoodb.api.ZooInstanceEvent;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.client.SchemaManager;
@@ -42,6 +43,7 @@ import org.zoodb.internal.util.ClientLock;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.IteratorRegistry;
 import org.zoodb.internal.util.MergingIterator;
+import org.zoodb.internal.util.SynchronizedROCollection;
 import org.zoodb.internal.util.TransientField;
 import org.zoodb.internal.util.Util;
 import org.zoodb.internal.util.WeakIdentityHashMapZ;
@@ -82,6 +84,9 @@ public class Session implements IteratorRegistry {
 	private long transactionId = -1;
 	
 	private final WeakIdentityHashMapZ<Closeable, Object> resources = new WeakIdentityHashMapZ<>();
+	//Query results that are evaluated lazily
+	private final WeakIdentityHashMapZ<SynchronizedROCollection<?>, Object> streamedResults = 
+			new WeakIdentityHashMapZ<>();
 
 	static {
 		PluginLoader.activatePlugins();
@@ -237,13 +242,14 @@ public class Session implements IteratorRegistry {
 		ArrayList<TxObjInfo> updates = new ArrayList<>();
 		getObjectToCommit(updates);
 		OptimisticTransactionResult ovrSummary = new OptimisticTransactionResult();
+		boolean isReadOnly = updates.isEmpty() && !schemaManager.hasChanges();
 		for (Node n: nodes) {
 			if (isTrialRun) {
 				//check consistency
 				ovrSummary.add( n.checkTxConsistency(updates) );
 			} else {
 				//proper commit()
-				ovrSummary.add( n.beginCommit(updates) );
+				ovrSummary.add( n.beginCommit(updates, isReadOnly) );
 			}
 		}
 		
@@ -332,6 +338,11 @@ public class Session implements IteratorRegistry {
         }		
 
         //Then update. This matters for unique indices where deletion must occur before updates.
+		//The order of the objects defines which objects end up on the same data pages.
+		ZooClusteringPolicy clustering = config.getClusteringPolicy();
+		if (clustering != null) {
+			clustering.sort(cache.getDirtyObjects());
+		}
 		for (ZooPC co: cache.getDirtyObjects()) {
 		    if (!co.jdoZooIsDirty()) {
 		    	//can happen when object are refreshed after being marked dirty? //TODO
@@ -402,6 +413,7 @@ public class Session implements IteratorRegistry {
 		try {
 			lock();
 			checkActive();
+			notifyPreModification();
 			if (pc.jdoZooIsPersistent()) {
 				if (pc.jdoZooGetContext().getSession() != this) {
 					throw DBLogger.newUser("The object belongs to a different persistence manager.");
@@ -691,15 +703,45 @@ public class Session implements IteratorRegistry {
 		}
 	}
 	
+	/**
+	 * Objects that are not in the cache are loaded together, in the order of their position
+	 * in the database file.
+	 * @param arg0 The OIDs
+	 * @return The objects, in the same order as the OIDs
+	 */
 	public Object[] getObjectsById(Collection<?> arg0) {
-		checkActiveRead();
-		Object[] res = new Object[arg0.size()];
-		int i = 0;
-		for ( Object obj: arg0 ) {
-			res[i] = getObjectById(obj);
-			i++;
+		try {
+			lock();
+			checkActiveRead();
+			Object[] res = new Object[arg0.size()];
+			long[] oids = new long[res.length];
+			int[] slots = new int[res.length];
+			int nToLoad = 0;
+			int i = 0;
+			for ( Object obj: arg0 ) {
+				long oid = (Long) obj;
+				ZooPC co = cache.findCoByOID(oid);
+				if (co != null) {
+					if (co.jdoZooIsStateHollow() && !co.jdoZooIsDeleted()) {
+						co.jdoZooGetNode().refreshObject(co);
+					}
+					res[i] = co;
+				} else {
+					oids[nToLoad] = oid;
+					slots[nToLoad++] = i;
+				}
+				i++;
+			}
+			if (nToLoad > 0) {
+				ZooPC[] loaded = primary.loadInstancesById(oids, nToLoad);
+				for (int j = 0; j < nToLoad; j++) {
+					res[slots[j]] = loaded[j];
+				}
+			}
+			return res;
+		} finally {
+			unlock();
 		}
-		return res;
 	}
 
 	/**
@@ -737,6 +779,7 @@ public class Session implements IteratorRegistry {
 			lock();
 			checkActive();
 			ZooPC co = checkObject(pc);
+			notifyPreModification();
 			co.jdoZooMarkDeleted();
 		} finally {
 			unlock();
@@ -847,6 +890,39 @@ public class Session implements IteratorRegistry {
     	resources.remove(iter);
     }
 
+    /**
+     * INTERNAL !!!!
+     * Query results to be loaded before any object is modified.
+     * @param result The query result
+     */
+    public void registerStreamedResult(SynchronizedROCollection<?> result) {
+    	streamedResults.put(result, null);
+    }
+
+    public void deregisterStreamedResult(SynchronizedROCollection<?> result) {
+    	streamedResults.remove(result);
+    }
+
+    /**
+     * Called before a persistent object is modified, created or deleted. Streamed query 
+     * results that are not fully evaluated are loaded, so that they reflect the state at 
+     * query execution.
+     */
+    public void notifyPreModification() {
+    	if (streamedResults.isEmpty()) {
+    		return;
+    	}
+    	SynchronizedROCollection<?>[] results = 
+    			streamedResults.keySet().toArray(new SynchronizedROCollection<?>[0]);
+    	//clear first, loading may modify objects, for example when activating them
+    	streamedResults.clear();
+    	for (SynchronizedROCollection<?> r: results) {
+    		if (r != null) {
+    			r.loadStreamedResults();
+    		}
+    	}
+    }
+
 	private void closeResources() {
 		try {
 			for (Closeable c: resources.keySet().toArray(new Closeable[0])) {
@@ -15,6 +15,7 @@
  */
 package org.zoodb.internal;
 
+import org.zoodb.api.ZooClusteringPolicy;
 import org.zoodb.internal.server.SessionFactory;
 import org.zoodb.internal.util.DBLogger;
 
@@ -27,7 +28,9 @@ public class SessionConfig {
 	private boolean failOnClosedQueries = false;
 	private boolean isDetachAllOnCommit = false;
 	private boolean isNonTransactionalRead = false;
+	private boolean isRelaxedDurability = false;
 	private CACHE_MODE cacheMode = CACHE_MODE.SOFT;
+	private ZooClusteringPolicy clusteringPolicy = null;
 
 
 	/**
@@ -86,6 +89,17 @@ public class SessionConfig {
 		this.failOnClosedQueries = failOnClosedQueries;
 	}
 
+	public boolean getRelaxedDurability() {
+		return isRelaxedDurability;
+	}
+
+	/**
+	 * @param flag Whether commits may return before their data has been written to disk.
+	 */
+	public void setRelaxedDurability(boolean flag) {
+		this.isRelaxedDurability = flag;
+	}
+
 	public CACHE_MODE getCacheMode() {
 		return cacheMode;
 	}
@@ -95,6 +109,22 @@ public class SessionConfig {
 		this.cacheMode = cacheMode;
 	}
 
+	/**
+	 * @return The clustering policy or {@code null} if objects are written in the order in 
+	 * which they became dirty.
+	 */
+	public ZooClusteringPolicy getClusteringPolicy() {
+		return clusteringPolicy;
+	}
+
+	/**
+	 * @param policy The clustering policy or {@code null} to write objects in the order in 
+	 * which they became dirty.
+	 */
+	public void setClusteringPolicy(ZooClusteringPolicy policy) {
+		this.clusteringPolicy = policy;
+	}
+
 	public boolean getNonTransactionalRead() {
 		return isNonTransactionalRead;
 	}
@@ -18,7 +18,9 @@ package org.zoodb.internal;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +73,9 @@ public class ZooClassDef extends ZooPC {
 	//List of operations that transform a previous version into the current version. 
 	private ArrayList<PersistentSchemaOperation> evolutionOperations = null;
 	
+	//Composite indexes that are defined on this class. They are stored in the SchemaIndex.
+	private transient ArrayList<CompositeIndexDef> compositeIndexes = null;
+	
 	private ZooClassDef() {
 		//DO not use, for de-serializer only!
 		oidSuper = 0;
@@ -218,6 +223,16 @@ public class ZooClassDef extends ZooPC {
 		}
 		newDef.associateFields();
 		
+		//composite indexes
+		if (compositeIndexes != null) {
+			for (CompositeIndexDef ci: compositeIndexes) {
+				CompositeIndexDef ciNew = ci.forVersion(newDef);
+				if (ciNew != null) {
+					newDef.addCompositeIndex(ciNew);
+				}
+			}
+		}
+		
 		return newDef;
 	}
 
@@ -638,6 +653,17 @@ public class ZooClassDef extends ZooPC {
 			}
 			i++;
 		}
+		//remove composite indexes on the field
+		if (compositeIndexes != null) {
+			for (CompositeIndexDef ci: new ArrayList<>(compositeIndexes)) {
+				for (ZooFieldDef f: ci.getFields()) {
+					if (f.getName().equals(fieldDef.getName())) {
+						removeCompositeIndex(ci);
+						break;
+					}
+				}
+			}
+		}
 		// for op, use position in allFields
 		i = 0;
 		for (ZooFieldDef fd: allFields) {
@@ -651,6 +677,66 @@ public class ZooClassDef extends ZooPC {
 		throw new IllegalStateException("Field not found: " + fieldDef);
 	}
 
+	/**
+	 * @param index A composite index that is defined on this class
+	 */
+	public void addCompositeIndex(CompositeIndexDef index) {
+		if (compositeIndexes == null) {
+			compositeIndexes = new ArrayList<>();
+		}
+		compositeIndexes.add(index);
+		for (ZooFieldDef f: index.getFields()) {
+			f.addCompositeIndex();
+		}
+	}
+
+	public void removeCompositeIndex(CompositeIndexDef index) {
+		if (compositeIndexes != null && compositeIndexes.remove(index)) {
+			for (ZooFieldDef f: index.getFields()) {
+				f.removeCompositeIndex();
+			}
+		}
+	}
+
+	public void removeCompositeIndexes() {
+		while (compositeIndexes != null && !compositeIndexes.isEmpty()) {
+			removeCompositeIndex(compositeIndexes.get(compositeIndexes.size() - 1));
+		}
+	}
+
+	/**
+	 * @param fields The fields of the index
+	 * @return The composite index on exactly the given fields that is defined on this class, 
+	 * or {@code null} if there is no such index.
+	 */
+	public CompositeIndexDef getCompositeIndex(ZooFieldDef[] fields) {
+		if (compositeIndexes != null) {
+			for (CompositeIndexDef ci: compositeIndexes) {
+				if (Arrays.equals(ci.getFields(), fields)) {
+					return ci;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The composite indexes that apply to instances of this class, this includes
+	 * indexes defined on super-classes.
+	 */
+	public List<CompositeIndexDef> getCompositeIndexes() {
+		List<CompositeIndexDef> ret = Collections.emptyList();
+		for (ZooClassDef def = this; def != null; def = def.superDef) {
+			if (def.compositeIndexes != null && !def.compositeIndexes.isEmpty()) {
+				if (ret.isEmpty()) {
+					ret = new ArrayList<>();
+				}
+				ret.addAll(def.compositeIndexes);
+			}
+		}
+		return ret;
+	}
+
 	public ZooClassDef getNextVersion() {
 		return nextVersion;
 	}
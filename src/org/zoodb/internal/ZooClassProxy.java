@@ -163,6 +163,36 @@ public class ZooClassProxy implements ZooClass {
 		return locateFieldOrFail(fieldName).isIndexUnique();
 	}
 	
+	@Override
+	public void createCompositeIndex(String... fieldNames) {
+		DBTracer.logCall(this, (Object[]) fieldNames);
+		checkInvalidWrite();
+		schemaManager.defineCompositeIndex(def, locateFieldDefsOrFail(fieldNames));
+	}
+	
+	@Override
+	public boolean removeCompositeIndex(String... fieldNames) {
+		DBTracer.logCall(this, (Object[]) fieldNames);
+		checkInvalidWrite();
+		return schemaManager.removeCompositeIndex(def, locateFieldDefsOrFail(fieldNames));
+	}
+	
+	@Override
+	public boolean hasCompositeIndex(String... fieldNames) {
+		DBTracer.logCall(this, (Object[]) fieldNames);
+		checkInvalidRead();
+		return def.getCompositeIndex(locateFieldDefsOrFail(fieldNames)) != null;
+	}
+	
+	private ZooFieldDef[] locateFieldDefsOrFail(String... fieldNames) {
+		ZooFieldDef[] fields = new ZooFieldDef[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			//fails if the field does not exist
+			fields[i] = def.getField(fieldNames[i]);
+		}
+		return fields;
+	}
+	
 	private ZooField locateFieldOrFail(String fieldName) {
 		ZooField f = getField(fieldName);
 		if (f == null) {
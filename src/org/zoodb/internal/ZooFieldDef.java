@@ -70,6 +70,8 @@ public class ZooFieldDef {
 	
 	private boolean isIndexed = false;
     private boolean isIndexUnique;
+	//Number of composite indexes that contain this field
+	private transient int compositeIndexCount = 0;
 	
 	private int offset = Integer.MIN_VALUE;
     private int fieldPos = -1;
@@ -307,6 +309,22 @@ public class ZooFieldDef {
 		return isIndexUnique;
 	}
 	
+	/**
+	 * @return Whether the field is part of a composite index.
+	 * @see CompositeIndexDef
+	 */
+	public boolean isInCompositeIndex() {
+		return compositeIndexCount > 0;
+	}
+
+	void addCompositeIndex() {
+		compositeIndexCount++;
+	}
+
+	void removeCompositeIndex() {
+		compositeIndexCount--;
+	}
+
 	public void setIndexed(boolean b) {
 		isIndexed = b;
 	}
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.Node;
 import org.zoodb.internal.ZooClassDef;
@@ -236,6 +237,37 @@ public class SchemaManager {
 		return true;
 	}
 
+	public void defineCompositeIndex(ZooClassDef def, ZooFieldDef[] fields) {
+		if (fields.length < 2) {
+			throw DBLogger.newUser("Composite indexes require at least two fields: " + 
+					def.getClassName());
+		}
+		for (int i = 0; i < fields.length; i++) {
+			//Is type indexable?
+			SchemaIndex.FTYPE.fromType(fields[i]);
+			for (int j = 0; j < i; j++) {
+				if (fields[j] == fields[i]) {
+					throw DBLogger.newUser("Field occurs twice in composite index: " + 
+							fields[i].getName());
+				}
+			}
+		}
+		if (def.getCompositeIndex(fields) != null) {
+			throw DBLogger.newUser("Composite index is already defined: " + 
+					def.getCompositeIndex(fields));
+		}
+		ops.add(new SchemaOperation.CompositeIndexCreate(def, fields));
+	}
+
+	public boolean removeCompositeIndex(ZooClassDef def, ZooFieldDef[] fields) {
+		CompositeIndexDef index = def.getCompositeIndex(fields);
+		if (index == null) {
+			return false;
+		}
+		ops.add(new SchemaOperation.CompositeIndexRemove(index));
+		return true;
+	}
+
 	public boolean isIndexDefined(ZooFieldDef f) {
 		return f.isIndexed();
 	}
@@ -15,6 +15,7 @@
  */
 package org.zoodb.internal.client;
 
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.Node;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
@@ -127,6 +128,79 @@ public abstract class SchemaOperation {
 		}
 	}
 
+	/**
+	 * Operation to create a composite index.
+	 */
+	public static class CompositeIndexCreate extends SchemaOperation {
+		private final CompositeIndexDef index;
+
+		public CompositeIndexCreate(ZooClassDef def, ZooFieldDef[] fields) {
+			super(def.jdoZooGetNode());
+			this.index = new CompositeIndexDef(def, fields);
+			initial();
+		}
+		
+		@Override
+		void initial() {
+			index.getDeclaringType().addCompositeIndex(index);
+			refreshIndexers(index.getDeclaringType());
+		}
+		
+		@Override
+		void commit() {
+			node.defineCompositeIndex(index);
+		}
+		
+		@Override
+		void rollback() {
+			index.getDeclaringType().removeCompositeIndex(index);
+			refreshIndexers(index.getDeclaringType());
+		}
+	}
+	
+	/**
+	 * Operation to remove a composite index.
+	 */
+	public static class CompositeIndexRemove extends SchemaOperation {
+		private final CompositeIndexDef index;
+
+		public CompositeIndexRemove(CompositeIndexDef index) {
+			super(index.getDeclaringType().jdoZooGetNode());
+			this.index = index;
+			initial();
+		}
+		
+		@Override
+		void initial() {
+			index.getDeclaringType().removeCompositeIndex(index);
+			refreshIndexers(index.getDeclaringType());
+		}
+		
+		@Override
+		void commit() {
+			node.removeCompositeIndex(index);
+		}
+		
+		@Override
+		void rollback() {
+			index.getDeclaringType().addCompositeIndex(index);
+			refreshIndexers(index.getDeclaringType());
+		}
+	}
+	
+	/**
+	 * Composite indexes apply also to sub-classes, so their indexers need to back up the
+	 * indexed fields as well.
+	 */
+	private static void refreshIndexers(ZooClassDef def) {
+		if (def.getProvidedContext() != null) {
+			def.getProvidedContext().getIndexer().refreshWithSchema(def);
+		}
+		for (ZooClassProxy sub: def.getVersionProxy().getSubProxies()) {
+			refreshIndexers(sub.getSchemaDef());
+		}
+	}
+
 	public static class DropInstances extends SchemaOperation {
 		private final ZooClassProxy def;
 
@@ -55,6 +55,8 @@ public class ClientSessionCache implements AbstractCache {
 	private final PrimLongMapZ<ZooClassDef> schemata = 
 		new PrimLongMapZ<ZooClassDef>();
 	//TODO move into node-cache
+	//The maps of each node are guarded by themselves, because objects of a session may be 
+	//serialized in parallel, see getSchema(Class, Node).
 	private final IdentityHashMap<Node, HashMap<Class<?>, ZooClassDef>> nodeSchemata = 
 		new IdentityHashMap<Node, HashMap<Class<?>, ZooClassDef>>();
 	
@@ -124,7 +126,7 @@ public class ClientSessionCache implements AbstractCache {
         }
         for (ZooClassDef cs: schemaToRemove) {
             schemata.remove(cs.jdoZooGetOid());
-            nodeSchemata.get(cs.jdoZooGetNode()).remove(cs.getJavaClass());
+            removeNodeSchema(cs.jdoZooGetNode(), cs.getJavaClass());
         }
         
 	    //TODO Maybe we should simply refresh the whole cache instead of setting them to hollow.
@@ -263,20 +265,24 @@ public class ClientSessionCache implements AbstractCache {
 	 */
 	@Override
 	public ZooClassDef getSchema(Class<?> cls, Node node) {
-		ZooClassDef ret = nodeSchemata.get(node).get(cls);
-		if (ret == null) {
-			if (cls == null) {
-				return null;
-			}
-			//Try virtual/generic schemata
-			ret = getSchema(cls.getName());
-			if (ret != null) {
-				//check (associate also checks compatibility)
-				ret.associateJavaTypes(true);
-				nodeSchemata.get(node).put(cls, ret);
+		//This is thread-safe, it is used by parallel serialization during commit 
+		HashMap<Class<?>, ZooClassDef> map = nodeSchemata.get(node);
+		synchronized (map) {
+			ZooClassDef ret = map.get(cls);
+			if (ret == null) {
+				if (cls == null) {
+					return null;
+				}
+				//Try virtual/generic schemata
+				ret = getSchema(cls.getName());
+				if (ret != null) {
+					//check (associate also checks compatibility)
+					ret.associateJavaTypes(true);
+					map.put(cls, ret);
+				}
 			}
+			return ret;
 		}
-		return ret;
 	}
 
 	@Override
@@ -366,7 +372,7 @@ public class ClientSessionCache implements AbstractCache {
 			ZooClassDef cs = iterS.next();
 			if (cs.jdoZooIsDeleted()) {
 				iterS.remove();
-        		nodeSchemata.get(cs.jdoZooGetNode()).remove(cs.getJavaClass());
+				removeNodeSchema(cs.jdoZooGetNode(), cs.getJavaClass());
 				continue;
 			}
 			//keep in cache???
@@ -430,7 +436,10 @@ public class ClientSessionCache implements AbstractCache {
 		clsDef.initProvidedContext(session, node);
 		schemata.put(clsDef.getOid(), clsDef);
 		if (clsDef.getNextVersion() == null && clsDef.getJavaClass() != null) {
-			nodeSchemata.get(node).put(clsDef.getJavaClass(), clsDef);
+			HashMap<Class<?>, ZooClassDef> map = nodeSchemata.get(node);
+			synchronized (map) {
+				map.put(clsDef.getJavaClass(), clsDef);
+			}
 		}
 		objs.put(clsDef.getOid(), clsDef);
 	}
@@ -438,9 +447,19 @@ public class ClientSessionCache implements AbstractCache {
 	public void updateSchema(ZooClassDef clsDef, Class<?> oldCls, Class<?> newCls) {
 		Node node = clsDef.jdoZooGetNode();
 		//Removal may return null if class was previously stored a 'null', which is non-unique.
-		nodeSchemata.get(node).remove(oldCls);
-		if (newCls != null) {
-			nodeSchemata.get(node).put(newCls, clsDef);
+		HashMap<Class<?>, ZooClassDef> map = nodeSchemata.get(node);
+		synchronized (map) {
+			map.remove(oldCls);
+			if (newCls != null) {
+				map.put(newCls, clsDef);
+			}
+		}
+	}
+
+	private void removeNodeSchema(Node node, Class<?> cls) {
+		HashMap<Class<?>, ZooClassDef> map = nodeSchemata.get(node);
+		synchronized (map) {
+			map.remove(cls);
 		}
 	}
 
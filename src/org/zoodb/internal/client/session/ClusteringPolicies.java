@@ -0,0 +1,315 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.client.session;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.zoodb.api.ZooClusteringPolicy;
+import org.zoodb.api.ZooConstants;
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongSetZ;
+
+/**
+ * The predefined clustering policies.
+ *
+ * @author Tilmann Zaeschke
+ * @see ZooConstants#PROPERTY_CLUSTERING
+ */
+public final class ClusteringPolicies {
+
+	private static final String NONE = "none";
+	private static final String OID = "oid";
+	private static final String REACHABILITY = "reachability";
+	private static final String FIELD = "field:";
+
+	private ClusteringPolicies() {
+		//static
+	}
+
+	/**
+	 * @param policy The policy as defined in {@link ZooConstants#PROPERTY_CLUSTERING}
+	 * @return The clustering policy or {@code null} for {@code none}.
+	 */
+	public static ZooClusteringPolicy parse(String policy) {
+		if (policy == null || NONE.equals(policy)) {
+			return null;
+		}
+		if (OID.equals(policy)) {
+			return byOid();
+		}
+		if (REACHABILITY.equals(policy)) {
+			return byReachability();
+		}
+		if (policy.startsWith(FIELD) && policy.length() > FIELD.length()) {
+			return byField(policy.substring(FIELD.length()));
+		}
+		throw DBLogger.newUser("Unknown clustering policy: " + policy);
+	}
+
+	/**
+	 * @return A policy that writes objects in the order of their OIDs.
+	 */
+	public static ZooClusteringPolicy byOid() {
+		return objects -> objects.sort(
+				(o1, o2) -> Long.compare(o1.jdoZooGetOid(), o2.jdoZooGetOid()));
+	}
+
+	/**
+	 * @param fieldName The field name
+	 * @return A policy that writes objects in the order of the value of the given field.
+	 */
+	public static ZooClusteringPolicy byField(String fieldName) {
+		return new FieldPolicy(fieldName);
+	}
+
+	/**
+	 * @return A policy that writes objects in depth-first order of the references between them.
+	 */
+	public static ZooClusteringPolicy byReachability() {
+		return new ReachabilityPolicy();
+	}
+
+	/**
+	 * Objects are sorted by the value of a field. Objects without the field, with a
+	 * {@code null} value or with a value that is not {@link Comparable} keep their order
+	 * and are written after the other objects.
+	 */
+	private static class FieldPolicy implements ZooClusteringPolicy {
+
+		private final String fieldName;
+		//Classes without the field are mapped to 'null'
+		private final IdentityHashMap<ZooClassDef, Field> fields = new IdentityHashMap<>();
+
+		private FieldPolicy(String fieldName) {
+			this.fieldName = fieldName;
+		}
+
+		@Override
+		public void sort(List<ZooPC> objects) {
+			ArrayList<ZooPC> withValue = new ArrayList<>(objects.size());
+			ArrayList<Comparable<Object>> values = new ArrayList<>(objects.size());
+			ArrayList<ZooPC> withoutValue = new ArrayList<>();
+			for (ZooPC pc: objects) {
+				Comparable<Object> v = getValue(pc);
+				if (v == null) {
+					withoutValue.add(pc);
+				} else {
+					withValue.add(pc);
+					values.add(v);
+				}
+			}
+			if (withValue.isEmpty()) {
+				return;
+			}
+
+			Integer[] order = new Integer[withValue.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			//Values of different types are not comparable, we group them by type
+			Arrays.sort(order, (i1, i2) -> {
+				Comparable<Object> v1 = values.get(i1);
+				Comparable<Object> v2 = values.get(i2);
+				if (v1.getClass() != v2.getClass()) {
+					return v1.getClass().getName().compareTo(v2.getClass().getName());
+				}
+				return v1.compareTo(v2);
+			});
+			objects.clear();
+			for (Integer i: order) {
+				objects.add(withValue.get(i));
+			}
+			objects.addAll(withoutValue);
+		}
+
+		@SuppressWarnings("unchecked")
+		private Comparable<Object> getValue(ZooPC pc) {
+			if (pc.jdoZooIsDeleted()) {
+				return null;
+			}
+			ZooClassDef def = pc.jdoZooGetClassDef();
+			Field f = fields.get(def);
+			if (f == null) {
+				if (fields.containsKey(def)) {
+					return null;
+				}
+				ZooFieldDef fd = def.getAllFieldsAsMap().get(fieldName);
+				f = fd == null ? null : fd.getJavaField();
+				fields.put(def, f);
+				if (f == null) {
+					return null;
+				}
+			}
+			try {
+				Object v = f.get(pc);
+				return v instanceof Comparable ? (Comparable<Object>) v : null;
+			} catch (IllegalAccessException e) {
+				throw DBLogger.newFatal("Error accessing field: " + fieldName, e);
+			}
+		}
+	}
+
+	/**
+	 * Objects are written in depth-first order of their references. Traversal starts with
+	 * the objects that are not referenced by any other written object, in their original
+	 * order. Only written objects are traversed, references to other objects are ignored.
+	 */
+	private static class ReachabilityPolicy implements ZooClusteringPolicy {
+
+		@Override
+		public void sort(List<ZooPC> objects) {
+			//Only non-deleted dirty objects are traversed, they are all loaded.
+			PrimLongSetZ written = new PrimLongSetZ(objects.size());
+			for (ZooPC pc: objects) {
+				if (!pc.jdoZooIsDeleted()) {
+					written.add(pc.jdoZooGetOid());
+				}
+			}
+
+			//find roots
+			PrimLongSetZ referenced = new PrimLongSetZ();
+			ArrayList<ZooPC> children = new ArrayList<>();
+			for (ZooPC pc: objects) {
+				if (!pc.jdoZooIsDeleted()) {
+					getChildren(pc, written, children);
+					for (ZooPC c: children) {
+						if (c != pc) {
+							referenced.add(c.jdoZooGetOid());
+						}
+					}
+					children.clear();
+				}
+			}
+
+			ArrayList<ZooPC> result = new ArrayList<>(objects.size());
+			PrimLongSetZ visited = new PrimLongSetZ(objects.size());
+			ArrayList<ZooPC> stack = new ArrayList<>();
+			for (ZooPC pc: objects) {
+				if (!pc.jdoZooIsDeleted() && !referenced.contains(pc.jdoZooGetOid())) {
+					traverse(pc, written, visited, stack, result);
+				}
+			}
+			//objects in reference cycles without root
+			for (ZooPC pc: objects) {
+				if (!pc.jdoZooIsDeleted()) {
+					traverse(pc, written, visited, stack, result);
+				}
+			}
+			//deleted objects
+			for (ZooPC pc: objects) {
+				if (pc.jdoZooIsDeleted()) {
+					result.add(pc);
+				}
+			}
+			objects.clear();
+			objects.addAll(result);
+		}
+
+		private static void traverse(ZooPC root, PrimLongSetZ written, PrimLongSetZ visited,
+				ArrayList<ZooPC> stack, ArrayList<ZooPC> result) {
+			//We use a stack instead of recursion, object graphs can be very deep.
+			ArrayList<ZooPC> children = new ArrayList<>();
+			stack.add(root);
+			while (!stack.isEmpty()) {
+				ZooPC pc = stack.remove(stack.size() - 1);
+				if (!visited.add(pc.jdoZooGetOid())) {
+					continue;
+				}
+				result.add(pc);
+				getChildren(pc, written, children);
+				//reverse order, so the first child is written first
+				for (int i = children.size() - 1; i >= 0; i--) {
+					if (!visited.contains(children.get(i).jdoZooGetOid())) {
+						stack.add(children.get(i));
+					}
+				}
+				children.clear();
+			}
+		}
+
+		private static void getChildren(ZooPC pc, PrimLongSetZ written, List<ZooPC> children) {
+			//persistent collections
+			if (pc instanceof Collection || pc instanceof Map) {
+				addElements(pc, written, children);
+			}
+			for (ZooFieldDef fd: pc.jdoZooGetClassDef().getAllFields()) {
+				if (fd.isPrimitiveType() || fd.isString()) {
+					continue;
+				}
+				Field f = fd.getJavaField();
+				if (f == null) {
+					continue;
+				}
+				try {
+					Object v = f.get(pc);
+					if (v != pc) {
+						addChild(v, written, children);
+					}
+				} catch (IllegalAccessException e) {
+					throw DBLogger.newFatal("Error accessing field: " + fd.getName(), e);
+				}
+			}
+		}
+
+		private static void addChild(Object o, PrimLongSetZ written, List<ZooPC> children) {
+			if (o instanceof ZooPC) {
+				ZooPC pc = (ZooPC) o;
+				if (written.contains(pc.jdoZooGetOid())) {
+					children.add(pc);
+				}
+				//Elements of persistent collections are only traversed when the collection
+				//itself is traversed, we don't want to load them.
+				return;
+			}
+			addElements(o, written, children);
+		}
+
+		private static void addElements(Object o, PrimLongSetZ written, List<ZooPC> children) {
+			if (o instanceof Collection) {
+				for (Object e: (Collection<?>) o) {
+					addElement(e, written, children);
+				}
+			} else if (o instanceof Map) {
+				for (Map.Entry<?, ?> e: ((Map<?, ?>) o).entrySet()) {
+					addElement(e.getKey(), written, children);
+					addElement(e.getValue(), written, children);
+				}
+			} else if (o instanceof Object[]) {
+				for (Object e: (Object[]) o) {
+					addElement(e, written, children);
+				}
+			}
+		}
+
+		private static void addElement(Object o, PrimLongSetZ written, List<ZooPC> children) {
+			if (o instanceof ZooPC) {
+				ZooPC pc = (ZooPC) o;
+				if (written.contains(pc.jdoZooGetOid())) {
+					children.add(pc);
+				}
+			}
+		}
+	}
+}
@@ -19,6 +19,7 @@ import java.lang.reflect.Field;
 import java.util.Arrays;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.DataDeleteSink;
 import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.SerializerTools;
@@ -28,6 +29,7 @@ import org.zoodb.internal.server.index.BitTools;
 import org.zoodb.internal.server.index.LongLongIndex;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.PagedPosIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.Util;
@@ -144,6 +146,7 @@ public class DataDeleteSink1P implements DataDeleteSink {
     private void updateFieldIndices() {
         final ZooPC[] buffer = this.buffer;
         final int bufferCnt = this.bufferCnt;
+        removeFromCompositeIndices(buffer, bufferCnt);
  
         //remove field index entries
         int iInd = -1;
@@ -156,6 +159,11 @@ public class DataDeleteSink1P implements DataDeleteSink {
             //For now we define that an index is shared by all classes and sub-classes that have
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
+            PagedStringIndex strInd = schemaTop.getStringIndex(field);
+            if (strInd != null) {
+            	removeFromStringIndex(strInd, field, iInd, buffer, bufferCnt);
+            	continue;
+            }
             LongLongIndex fieldInd = schemaTop.getIndex(field);
             try {
                 Field jField = field.getJavaField();
@@ -200,9 +208,54 @@ public class DataDeleteSink1P implements DataDeleteSink {
         }
     }
     
+    private void removeFromStringIndex(PagedStringIndex strInd, ZooFieldDef field, int iInd, 
+    		ZooPC[] buffer, int bufferCnt) {
+        for (int i = 0; i < bufferCnt; i++) {
+            ZooPC co = buffer[i];
+            String str;
+            //This can be null for objects that have not been modified.
+            //These are still dirty, because of the deletion
+            if (co.jdoZooGetBackup() != null) {
+            	str = (String) co.jdoZooGetBackup().getB()[iInd];
+            } else if (co instanceof GenericObject) {
+                if (co.jdoZooIsStateHollow()) {
+                	//We need to activate it to get the values!
+                	throw new UnsupportedOperationException();
+                }
+            	str = (String) ((GenericObject) co).getField(field);
+            } else {
+            	//No need to check for hollow objects here, see updateFieldIndices()
+                try {
+                	str = (String) field.getJavaField().get(co);
+                } catch (IllegalAccessException e) {
+                    throw DBLogger.newFatal("Error accessing field: " + field.getName(), e);
+                }
+            }
+            strInd.remove(str, co.jdoZooGetOid());
+        }
+    }
+
+    private void removeFromCompositeIndices(ZooPC[] buffer, int bufferCnt) {
+        for (CompositeIndexDef ci: cls.getCompositeIndexes()) {
+            LongLongIndex ind = node.getSchemaIE(ci.getDeclaringType()).getCompositeIndex(ci);
+            for (int i = 0; i < bufferCnt; i++) {
+                ZooPC co = buffer[i];
+                long key;
+                if (co.jdoZooGetBackup() != null) {
+                    key = cls.getProvidedContext().getIndexer().getCompositeKey(
+                            ci, co.jdoZooGetBackup().getA());
+                } else {
+                    key = ci.getKey(co);
+                }
+                ind.removeLong(key, co.jdoZooGetOid());
+            }
+        }
+    }
+
     private void updateFieldIndicesGO() {
         final GenericObject[] buffer = this.bufferGO;
         final int bufferCnt = this.bufferGOCnt;
+        removeFromCompositeIndices(buffer, bufferCnt);
  
         //remove field index entries
         int iInd = -1;
@@ -215,6 +268,11 @@ public class DataDeleteSink1P implements DataDeleteSink {
             //For now we define that an index is shared by all classes and sub-classes that have
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
+            PagedStringIndex strInd = schemaTop.getStringIndex(field);
+            if (strInd != null) {
+            	removeFromStringIndex(strInd, field, iInd, buffer, bufferCnt);
+            	continue;
+            }
             LongLongIndex fieldInd = schemaTop.getIndex(field);
             try {
                 for (int i = 0; i < bufferCnt; i++) {
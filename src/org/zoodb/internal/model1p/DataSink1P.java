@@ -20,8 +20,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
+import org.zoodb.internal.DataIndexUpdater;
 import org.zoodb.internal.DataSerializer;
 import org.zoodb.internal.DataSink;
 import org.zoodb.internal.GenericObject;
@@ -32,7 +40,10 @@ import org.zoodb.internal.client.AbstractCache;
 import org.zoodb.internal.server.ObjectWriter;
 import org.zoodb.internal.server.index.BitTools;
 import org.zoodb.internal.server.index.LongLongIndex;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.Util;
 
@@ -44,6 +55,11 @@ import org.zoodb.internal.util.Util;
  * Each sink handles objects of one class only. Therefore sinks can be associated with 
  * ZooClassDefs and PCContext instances.
  * 
+ * Objects are serialized when the buffer is flushed. Large buffers are split into chunks
+ * that are serialized in parallel into {@link RecordingObjectWriter}s, which are then replayed
+ * sequentially on the ObjectWriter. This ensures that page allocation and object placement
+ * remain single-threaded.
+ * 
  * TODO
  * get the schema indices only once, then update them in case schema/indices evolve.
  * 
@@ -52,11 +68,24 @@ import org.zoodb.internal.util.Util;
 public class DataSink1P implements DataSink {
 
     private static final int BUFFER_SIZE = 1000;
+    /** Number of objects that are serialized by one parallel task. */
+    private static final int CHUNK_SIZE = 100;
+    private static final int N_CHUNKS = BUFFER_SIZE / CHUNK_SIZE;
+    /** Number of threads for parallel serialization, including the committing thread. */
+    private static final int PARALLELISM = 
+    		Math.min(Runtime.getRuntime().availableProcessors(), N_CHUNKS);
+    //Serializes chunks for all sessions. This does not use the common ForkJoinPool, where 
+    //tasks of the application could delay commits. Idle threads are stopped.
+    private static final ExecutorService SERIALIZER = createSerializer();
 
     private final Node1P node;
     private final ZooClassDef cls;
     private final DataSerializer ds;
     private final ObjectWriter ow;
+    private final AbstractCache cache;
+    //Serializers for parallel serialization, these are created lazily.
+    private DataSerializer[] chunkSerializers;
+    private RecordingObjectWriter[] chunkWriters;
     private final ZooPC[] buffer = new ZooPC[BUFFER_SIZE];
     private int bufferCnt = 0;
     private final GenericObject[] bufferGO = new GenericObject[BUFFER_SIZE];
@@ -73,6 +102,18 @@ public class DataSink1P implements DataSink {
 		}
     }
     
+    private static ExecutorService createSerializer() {
+    	int nThreads = Math.max(1, PARALLELISM - 1);
+    	ThreadPoolExecutor ex = new ThreadPoolExecutor(nThreads, nThreads, 
+    			1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+    				Thread t = new Thread(r, "ZooDB serializer");
+    				t.setDaemon(true);
+    				return t;
+    			});
+    	ex.allowCoreThreadTimeOut(true);
+    	return ex;
+    }
+
     @SuppressWarnings("unchecked")
 	public DataSink1P(Node1P node, AbstractCache cache, ZooClassDef cls, ObjectWriter out) {
         this.node = node;
@@ -80,6 +121,7 @@ public class DataSink1P implements DataSink {
         this.fieldUpdateBuffer = new ArrayList[cls.getAllFields().length];
         this.ds = new DataSerializer(out, cache, node);
         this.ow = out;
+        this.cache = cache;
     }
 
     private void preWrite() {
@@ -100,11 +142,8 @@ public class DataSink1P implements DataSink {
         }
         preWrite();
 
-        //write object
-        ds.writeObject(obj, cls);
-
-        //updated index
-        //This is buffered to reduce look-ups to find field indices.
+        //Serialization and index updates are buffered. Serialization can then happen in
+        //parallel and the buffer reduces look-ups to find field indices.
         buffer[bufferCnt++] = obj;
         if (bufferCnt == BUFFER_SIZE) {
             flushBuffer();
@@ -157,6 +196,7 @@ public class DataSink1P implements DataSink {
     }
 
     private void flushBuffer() {
+        writeBuffer();
         updateFieldIndices();
         bufferCnt = 0;
         if (bufferGOCnt > 0) {
@@ -173,6 +213,12 @@ public class DataSink1P implements DataSink {
                     continue;
                 }
                 SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
+                PagedStringIndex strInd = schemaTop.getStringIndex(field);
+                if (strInd != null) {
+                	flushStringIndexUpdates(strInd, field, a);
+                	fieldUpdateBuffer[i] = null;
+                	continue;
+                }
                 LongLongIndex fieldInd = schemaTop.getIndex(field);
         		for (Pair p: a) {
         			//This should now work, all objects have been removed
@@ -211,6 +257,124 @@ public class DataSink1P implements DataSink {
         }
     }
 
+    private void flushStringIndexUpdates(PagedStringIndex strInd, ZooFieldDef field, 
+    		ArrayList<Pair> updates) {
+    	for (Pair p: updates) {
+    		String str = getString(p.pc, field);
+    		long oid = p.pc.jdoZooGetOid();
+    		if (strInd.insertIfNotSet(str, oid)) {
+    			continue;
+    		}
+    		long oid2 = 0;
+    		if (strInd.isTruncated(str)) {
+    			//Truncated keys may belong to different Strings, we have to compare the objects 
+    			Iterator<ZooPC> it = node.readObjectFromIndex(field, 0, 0, 
+    					StringKeyRange.equal(str), true);
+    			while (it.hasNext()) {
+    				ZooPC o2 = it.next();
+    				if (o2.jdoZooGetOid() != oid && str.equals(getString(o2, field))) {
+    					oid2 = o2.jdoZooGetOid();
+    				}
+    			}
+    			if (oid2 == 0) {
+    				strInd.insert(str, oid);
+    				continue;
+    			}
+    		} else {
+    			LLEntryIterator it = strInd.iterator(StringKeyRange.equal(str));
+    			while (it.hasNextULL() && oid2 == 0) {
+    				long v = it.nextULL().getValue();
+    				oid2 = v != oid ? v : 0;
+    			}
+    		}
+    		throw DBLogger.newUser("Unique index clash by value of field " 
+    				+ field.getName() + "=" + str +  " of new object "
+    				+ Util.oidToString(oid) + " with " + Util.oidToString(oid2));
+    	}
+    }
+
+    /**
+     * Serialize the buffered objects. Large buffers are serialized in parallel, the first chunk
+     * by the committing thread and the others by the SERIALIZER threads. 
+     * This is thread-safe because:
+     * - Each chunk has its own DataSerializer and RecordingObjectWriter. Their mutable state
+     *   (used SCO classes, pending SCOs, recorded calls) is only used by the task of the chunk.
+     * - The shared state is only read: the schema definitions, their Field instances and the 
+     *   objects, which cannot be modified during the commit because the session is locked.
+     * - Schema look-ups may update the cache, the cache synchronizes them, see 
+     *   ClientSessionCache.getSchema(Class, Node).
+     * - The recordings are replayed after all tasks have finished. Future.get() also ensures 
+     *   that the recordings are visible to this thread.
+     */
+    private void writeBuffer() {
+        final ZooPC[] buffer = this.buffer;
+        final int bufferCnt = this.bufferCnt;
+        if (bufferCnt < 2 * CHUNK_SIZE || PARALLELISM <= 1) {
+            for (int i = 0; i < bufferCnt; i++) {
+                ds.writeObject(buffer[i], cls);
+            }
+            return;
+        }
+
+        if (chunkWriters == null) {
+            chunkSerializers = new DataSerializer[N_CHUNKS];
+            chunkWriters = new RecordingObjectWriter[N_CHUNKS];
+            for (int i = 0; i < N_CHUNKS; i++) {
+                chunkWriters[i] = new RecordingObjectWriter();
+                chunkSerializers[i] = new DataSerializer(chunkWriters[i], cache, node);
+            }
+        }
+        int nChunks = (bufferCnt + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        //We keep the original exceptions, the executor would wrap them.
+        RuntimeException[] errors = new RuntimeException[nChunks];
+        Future<?>[] tasks = new Future<?>[nChunks];
+        for (int c = 1; c < nChunks; c++) {
+        	final int chunk = c;
+        	tasks[c] = SERIALIZER.submit(() -> writeChunk(chunk, bufferCnt, errors));
+        }
+        writeChunk(0, bufferCnt, errors);
+        //We always wait for all tasks, they must not write into the recordings anymore
+        boolean isInterrupted = false;
+        for (int c = 1; c < nChunks; c++) {
+        	while (true) {
+        		try {
+        			tasks[c].get();
+        			break;
+        		} catch (InterruptedException e) {
+        			isInterrupted = true;
+        		} catch (ExecutionException e) {
+        			errors[c] = DBLogger.newFatalInternal("Serialization failed", e.getCause());
+        			break;
+        		}
+        	}
+        }
+        if (isInterrupted) {
+        	Thread.currentThread().interrupt();
+        }
+        for (int c = 0; c < nChunks; c++) {
+            if (errors[c] != null) {
+                for (RecordingObjectWriter w: chunkWriters) {
+                    w.reset();
+                }
+                throw errors[c];
+            }
+        }
+        for (int c = 0; c < nChunks; c++) {
+            chunkWriters[c].replay(ow);
+        }
+    }
+
+    private void writeChunk(int c, int bufferCnt, RuntimeException[] errors) {
+    	int max = Math.min(bufferCnt, (c + 1) * CHUNK_SIZE);
+    	try {
+    		for (int i = c * CHUNK_SIZE; i < max; i++) {
+    			chunkSerializers[c].writeObject(buffer[i], cls);
+    		}
+    	} catch (RuntimeException e) {
+    		errors[c] = e;
+    	}
+    }
+
     private String getString(ZooPC pc, ZooFieldDef field) {
 		if (pc instanceof GenericObject) {
 			GenericObject go = (GenericObject) pc;
@@ -227,6 +391,7 @@ public class DataSink1P implements DataSink {
     private void updateFieldIndices() {
         final ZooPC[] buffer = this.buffer;
         final int bufferCnt = this.bufferCnt;
+        updateCompositeIndices(buffer, bufferCnt);
 
         //update field indices
         //We hook into the makeDirty call to store the previous value of the field such that we 
@@ -244,6 +409,11 @@ public class DataSink1P implements DataSink {
             //For now we define that an index is shared by all classes and sub-classes that have
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
+            PagedStringIndex strInd = schemaTop.getStringIndex(field);
+            if (strInd != null) {
+            	updateStringIndex(strInd, field, iField, iInd, buffer, bufferCnt);
+            	continue;
+            }
             LongLongIndex fieldInd = schemaTop.getIndex(field);
             try {
                 Field jField = field.getJavaField();
@@ -300,6 +470,33 @@ public class DataSink1P implements DataSink {
         }
     }
 
+    /**
+     * Update an index with full String keys. Unlike hashed keys, these allow checking unique 
+     * indexes without loading objects.
+     */
+    private void updateStringIndex(PagedStringIndex strInd, ZooFieldDef field, int iField, 
+    		int iInd, ZooPC[] buffer, int bufferCnt) {
+        for (int i = 0; i < bufferCnt; i++) {
+            ZooPC co = buffer[i];
+            String str = getString(co, field);
+            if (!co.jdoZooIsNew()) {
+            	String strOld = (String) co.jdoZooGetBackup().getB()[iInd];
+                //Only update if value did not change
+            	if (Objects.equals(str, strOld)) {
+            		continue;
+            	}
+            	strInd.remove(strOld, co.jdoZooGetOid());
+            }
+            //'null' is not checked for uniqueness, see flushBuffer()
+            if (!field.isIndexUnique() || str == null) {
+            	strInd.insert(str, co.jdoZooGetOid());
+            } else if (!strInd.insertIfNotSet(str, co.jdoZooGetOid())) {
+            	//the other object may still be updated in this transaction
+            	bufferIndexUpdate(iField, co, 0);
+            }
+        }
+    }
+
     private void bufferIndexUpdate(int iField, ZooPC pc, long l) {
    		if (fieldUpdateBuffer[iField] == null) {
 			fieldUpdateBuffer[iField] = new ArrayList<Pair>();
@@ -307,9 +504,31 @@ public class DataSink1P implements DataSink {
 		fieldUpdateBuffer[iField].add(new Pair(pc, l));
 	}
     
+    private void updateCompositeIndices(ZooPC[] buffer, int bufferCnt) {
+        for (CompositeIndexDef ci: cls.getCompositeIndexes()) {
+            //Like field indices, the index is defined in the declaring class
+            LongLongIndex ind = node.getSchemaIE(ci.getDeclaringType()).getCompositeIndex(ci);
+            DataIndexUpdater indexer = cls.getProvidedContext().getIndexer();
+            for (int i = 0; i < bufferCnt; i++) {
+                ZooPC co = buffer[i];
+                long key = ci.getKey(co);
+                if (!co.jdoZooIsNew()) {
+                    long[] backup = co.jdoZooGetBackup() == null ? null : co.jdoZooGetBackup().getA();
+                    long keyOld = indexer.getCompositeKey(ci, backup);
+                    if (keyOld == key) {
+                        continue;
+                    }
+                    ind.removeLong(keyOld, co.jdoZooGetOid());
+                }
+                ind.insertLong(key, co.jdoZooGetOid());
+            }
+        }
+    }
+
 	private void updateFieldIndicesGO() {
         final GenericObject[] buffer = this.bufferGO;
         final int bufferCnt = this.bufferGOCnt;
+        updateCompositeIndices(buffer, bufferCnt);
 
         //update field indices
         //We hook into the makeDirty call to store the previous value of the field such that we 
@@ -327,6 +546,11 @@ public class DataSink1P implements DataSink {
             //For now we define that an index is shared by all classes and sub-classes that have
             //a matching field. So there is only one index which is defined in the top-most class
             SchemaIndexEntry schemaTop = node.getSchemaIE(field.getDeclaringType()); 
+            PagedStringIndex strInd = schemaTop.getStringIndex(field);
+            if (strInd != null) {
+            	updateStringIndex(strInd, field, iField, iInd, buffer, bufferCnt);
+            	continue;
+            }
             LongLongIndex fieldInd = schemaTop.getIndex(field);
             try {
                 for (int i = 0; i < bufferCnt; i++) {
@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.DataDeleteSink;
 import org.zoodb.internal.DataSink;
 import org.zoodb.internal.GenericObject;
@@ -39,6 +40,7 @@ import org.zoodb.internal.server.SessionFactory;
 import org.zoodb.internal.server.TxObjInfo;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.Util;
@@ -117,7 +119,7 @@ public class Node1P extends Node {
 	
 	@Override
 	public void commit() {
-		disk.commit();
+		disk.commit(session.getConfig().getRelaxedDurability());
 	}
 
 	@Override
@@ -148,6 +150,11 @@ public class Node1P extends Node {
 		return pc;
 	}
 	
+	@Override
+	public ZooPC[] loadInstancesById(long[] oids, int n) {
+		return disk.readObjects(oids, n);
+	}
+	
 	@Override
 	public void refreshObject(ZooPC pc) {
 		if (pc.jdoZooIsNew() || (!pc.jdoZooIsStateHollow() && !pc.jdoZooIsTransactional())) {
@@ -214,12 +221,51 @@ public class Node1P extends Node {
 		return disk.removeIndex(def, field);
 	}
 
+	@Override
+	public void defineCompositeIndex(CompositeIndexDef index) {
+		disk.defineCompositeIndex(index);
+	}
+
+	@Override
+	public boolean removeCompositeIndex(CompositeIndexDef index) {
+		return disk.removeCompositeIndex(index);
+	}
+
+	@Override
+	public Iterator<ZooPC> readObjectFromCompositeIndex(CompositeIndexDef index, 
+			long minValue, long maxValue, boolean loadFromCache) {
+		return disk.readObjectFromCompositeIndex(index, minValue, maxValue, loadFromCache);
+	}
+
 	@Override
 	public Iterator<ZooPC> readObjectFromIndex( ZooFieldDef field, 
 			long minValue, long maxValue, boolean loadFromCache) {
 		return disk.readObjectFromIndex(field, minValue, maxValue, loadFromCache);
 	}
 
+	@Override
+	public Long readFirstIndexKey(ZooFieldDef field, boolean ascending) {
+		return disk.readFirstIndexKey(field, ascending);
+	}
+
+	@Override
+	public Iterator<Long> readIndexKeys(ZooFieldDef field, long minValue, long maxValue, 
+			boolean ascending) {
+		return disk.readIndexKeys(field, minValue, maxValue, ascending);
+	}
+
+	@Override
+	public Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache) {
+		return disk.readObjectFromIndex(field, minValue, maxValue, ascending, loadFromCache);
+	}
+
+	@Override
+	public Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, StringKeyRange strRange, boolean loadFromCache) {
+		return disk.readObjectFromIndex(field, minValue, maxValue, strRange, loadFromCache);
+	}
+
 	@Override
 	public long getStats(STATS stats) {
 		return disk.getStats(stats);
@@ -230,6 +276,16 @@ public class Node1P extends Node {
         return disk.checkDb();
     }
 
+	@Override
+	public void requestCompaction() {
+		disk.requestCompaction();
+	}
+
+	@Override
+	public long[] getOidsForCompaction(ZooClassProxy def) {
+		return disk.getOidsForCompaction(def);
+	}
+
 	@Override
 	public void dropInstances(ZooClassProxy def) {
 		disk.dropInstances(def);
@@ -296,7 +352,8 @@ public class Node1P extends Node {
 	}
 
 	@Override
-	public OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates) {
-		return disk.beginCommit(updates);
+	public OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates, 
+			boolean isReadOnly) {
+		return disk.beginCommit(updates, isReadOnly);
 	}
 }
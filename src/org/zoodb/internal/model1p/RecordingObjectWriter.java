@@ -0,0 +1,194 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.model1p;
+
+import java.util.Arrays;
+
+import org.zoodb.internal.server.ObjectWriter;
+
+/**
+ * An ObjectWriter that records all write calls in memory, so that they can later be replayed
+ * on another ObjectWriter.
+ * <p>
+ * This allows serializing objects in parallel threads, while the placement of the objects
+ * on pages remains sequential. We record calls instead of bytes, because the serialized
+ * format depends on the position in the page, for example for the alignment of Strings.
+ * <p>
+ * Calls to {@link #flush()} and {@link #newPage()} are recorded as well. They take effect
+ * when they are replayed.
+ * <p>
+ * Instances are not thread-safe. Each parallel task uses its own instance, see
+ * {@link DataSink1P}.
+ *
+ * @author Tilmann Zaeschke
+ */
+class RecordingObjectWriter implements ObjectWriter {
+
+	private static final byte START = 0;
+	private static final byte FINISH = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte BYTE = 3;
+	private static final byte CHAR = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte FLOAT = 6;
+	private static final byte INT = 7;
+	private static final byte LONG = 8;
+	private static final byte SHORT = 9;
+	private static final byte BYTES = 10;
+	private static final byte STRING = 11;
+	private static final byte SKIP = 12;
+	private static final byte FLUSH = 13;
+	private static final byte NEW_PAGE = 14;
+
+	private byte[] ops = new byte[1024];
+	private long[] values = new long[1024];
+	private Object[] objects = new Object[16];
+	private int nOps = 0;
+	private int nObjects = 0;
+
+	private void add(byte op, long value) {
+		if (nOps == ops.length) {
+			ops = Arrays.copyOf(ops, nOps * 2);
+			values = Arrays.copyOf(values, nOps * 2);
+		}
+		ops[nOps] = op;
+		values[nOps] = value;
+		nOps++;
+	}
+
+	private void add(byte op, Object o) {
+		if (nObjects == objects.length) {
+			objects = Arrays.copyOf(objects, nObjects * 2);
+		}
+		objects[nObjects] = o;
+		add(op, nObjects++);
+	}
+
+	/**
+	 * Replay all recorded calls and reset this writer.
+	 * @param out The target writer
+	 */
+	void replay(ObjectWriter out) {
+		for (int i = 0; i < nOps; i++) {
+			long v = values[i];
+			switch (ops[i]) {
+			case START: out.startObject(v, (int) values[++i]); break;
+			case FINISH: out.finishObject(); break;
+			case BOOLEAN: out.writeBoolean(v != 0); break;
+			case BYTE: out.writeByte((byte) v); break;
+			case CHAR: out.writeChar((char) v); break;
+			case DOUBLE: out.writeDouble(Double.longBitsToDouble(v)); break;
+			case FLOAT: out.writeFloat(Float.intBitsToFloat((int) v)); break;
+			case INT: out.writeInt((int) v); break;
+			case LONG: out.writeLong(v); break;
+			case SHORT: out.writeShort((short) v); break;
+			case BYTES: out.write((byte[]) objects[(int) v]); break;
+			case STRING: out.writeString((String) objects[(int) v]); break;
+			case SKIP: out.skipWrite((int) v); break;
+			case FLUSH: out.flush(); break;
+			case NEW_PAGE: out.newPage(); break;
+			default: throw new IllegalStateException("op=" + ops[i]);
+			}
+		}
+		reset();
+	}
+
+	/**
+	 * Discard all recorded calls.
+	 */
+	void reset() {
+		nOps = 0;
+		//To avoid memory leaks...
+		Arrays.fill(objects, 0, nObjects, null);
+		nObjects = 0;
+	}
+
+	@Override
+	public void startObject(long oid, int prevSchemaVersion) {
+		add(START, oid);
+		add(START, prevSchemaVersion);
+	}
+
+	@Override
+	public void finishObject() {
+		add(FINISH, 0);
+	}
+
+	@Override
+	public void writeBoolean(boolean boolean1) {
+		add(BOOLEAN, boolean1 ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(byte byte1) {
+		add(BYTE, byte1);
+	}
+
+	@Override
+	public void writeChar(char char1) {
+		add(CHAR, char1);
+	}
+
+	@Override
+	public void writeDouble(double double1) {
+		add(DOUBLE, Double.doubleToRawLongBits(double1));
+	}
+
+	@Override
+	public void writeFloat(float float1) {
+		add(FLOAT, Float.floatToRawIntBits(float1));
+	}
+
+	@Override
+	public void writeInt(int int1) {
+		add(INT, int1);
+	}
+
+	@Override
+	public void writeLong(long long1) {
+		add(LONG, long1);
+	}
+
+	@Override
+	public void writeShort(short short1) {
+		add(SHORT, short1);
+	}
+
+	@Override
+	public void write(byte[] array) {
+		add(BYTES, array);
+	}
+
+	@Override
+	public void writeString(String string) {
+		add(STRING, string);
+	}
+
+	@Override
+	public void skipWrite(int nBytes) {
+		add(SKIP, nBytes);
+	}
+
+	@Override
+	public void flush() {
+		add(FLUSH, 0);
+	}
+
+	@Override
+	public void newPage() {
+		add(NEW_PAGE, 0);
+	}
+}
@@ -15,8 +15,11 @@
  */
 package org.zoodb.internal.query;
 
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.query.QueryOptimizerV4.MinMax;
+import org.zoodb.internal.server.index.PagedStringIndex;
+import org.zoodb.internal.server.index.StringKeyRange;
 
 /**
  * This class holds results from the query analyzer for the query executor.
@@ -50,9 +53,13 @@ public final class QueryAdvice {
 	
 	private final QueryTree query;
 	private ZooFieldDef index;
+	private CompositeIndexDef compositeIndex;
 	private long min;
 	private long max;
-	private boolean ascending;
+	//Key range for String fields with full keys, see PagedStringIndex
+	private StringKeyRange stringRange;
+	//Order of the index scan, only relevant if the query result is ordered by the index
+	private boolean ascending = true;
 	//Indicates that we can use a collection to constrain the query candidates
 	private QueryFunction collectionConstraint;
 	//Indicates that we use '==' to set the variable value
@@ -71,10 +78,48 @@ public final class QueryAdvice {
 		a.setIndex(index);
 		a.setMin(minMax.min, minMax.isDependentOnParameter());
 		a.setMax(minMax.max, minMax.isDependentOnParameter());
+		a.setStringRange(index.isString() ? minMax.getStringRange() : null);
 		a.isDependentOnParameter |= minMax.isDependentOnParameter();
 		return a;
 	}
 	
+	/**
+	 * Create an advice for reading candidates in the order of a field index. This avoids
+	 * sorting query results that are ordered by the indexed field.
+	 * @param queryTree The query
+	 * @param index The indexed field that defines the ordering
+	 * @param filterAdvice The advice for the query filter, if it uses the same index its range
+	 * is used. Otherwise the whole index is scanned. May be {@code null}.
+	 * @param ascending Whether the candidates should be returned in ascending order
+	 * @return The new advice
+	 */
+	static QueryAdvice createForOrdering(QueryTree queryTree, ZooFieldDef index, 
+			QueryAdvice filterAdvice, boolean ascending) {
+		QueryAdvice a;
+		if (filterAdvice != null && filterAdvice.getIndex() == index) {
+			a = new QueryAdvice(queryTree, filterAdvice.getType());
+			a.setMin(filterAdvice.getMin(), filterAdvice.isDependentOnParameter());
+			a.setMax(filterAdvice.getMax(), filterAdvice.isDependentOnParameter());
+		} else {
+			a = new QueryAdvice(queryTree, Type.INDEX_RANGE);
+			a.setMin(Long.MIN_VALUE, false);
+			a.setMax(Long.MAX_VALUE, false);
+		}
+		a.setIndex(index);
+		a.setAscending(ascending);
+		return a;
+	}
+	
+	public static QueryAdvice createForCompositeIndex(QueryTree queryTree, 
+			CompositeIndexDef index, long min, long max, boolean isEquals, 
+			boolean isDependentOnParameter) {
+		QueryAdvice a = new QueryAdvice(queryTree, isEquals ? Type.INDEX_EQUALS : Type.INDEX_RANGE);
+		a.compositeIndex = index;
+		a.setMin(min, isDependentOnParameter);
+		a.setMax(max, isDependentOnParameter);
+		return a;
+	}
+	
 	public static QueryAdvice createForCollection(QueryTree queryTree, QueryFunction collection) {
 		QueryAdvice a = new QueryAdvice(queryTree, Type.COLLECTION);
 		a.setCollectionConstraint(collection);
@@ -101,6 +146,13 @@ public final class QueryAdvice {
 		this.index = index;
 	}
 
+	/**
+	 * @return The composite index to use or {@code null} if no composite index is used
+	 */
+	public CompositeIndexDef getCompositeIndex() {
+		return compositeIndex;
+	}
+
 	public long getMin() {
 		return min;
 	}
@@ -119,6 +171,18 @@ public final class QueryAdvice {
 		this.isDependentOnParameter |= isDependentOnParameter;
 	}
 
+	/**
+	 * @return The key range for String fields that are indexed with full keys, see
+	 * {@link PagedStringIndex}. This is {@code null} for other fields.
+	 */
+	public StringKeyRange getStringRange() {
+		return stringRange;
+	}
+
+	void setStringRange(StringKeyRange stringRange) {
+		this.stringRange = stringRange;
+	}
+
 	public boolean isAscending() {
 		return ascending;
 	}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.query;
+
+import org.zoodb.internal.Session;
+import org.zoodb.internal.SerializerTools.PRIMITIVE;
+import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.client.session.ClientSessionCache;
+
+/**
+ * Computes aggregates of unfiltered queries from indexes instead of reading all candidate
+ * objects:
+ * - {@code count()} uses the number of entries in the object position indexes.
+ * - {@code min()} and {@code max()} use the first or last key of a field index.
+ * <p>
+ * Other aggregates, or if the indexes may not reflect the state of the session, are computed
+ * from the objects, see {@link QueryResultProcessor#processResultAggregation(java.util.Iterator)}.
+ *
+ * @author Tilmann Zaeschke
+ */
+class QueryAggregatePlanner {
+
+	private final Session session;
+	private final ZooClassDef candClsDef;
+	private final boolean subClasses;
+
+	QueryAggregatePlanner(Session session, ZooClassDef candClsDef, boolean subClasses) {
+		this.session = session;
+		this.candClsDef = candClsDef;
+		this.subClasses = subClasses;
+	}
+
+	/**
+	 * @param rp The result processor with the aggregates
+	 * @param ignoreCache Whether to ignore cached objects
+	 * @return The aggregates of all candidates or {@code null} if they cannot be computed
+	 * from indexes.
+	 */
+	Object aggregate(QueryResultProcessor rp, boolean ignoreCache) {
+		if (rp.isProjection() || !isIndexUpToDate(session, candClsDef, subClasses, ignoreCache)) {
+			return null;
+		}
+		return rp.processResultAggregationFromIndex(this);
+	}
+
+	/**
+	 * @param session The session
+	 * @param candClsDef The candidate class
+	 * @param subClasses Whether sub-classes are candidates
+	 * @param ignoreCache Whether to ignore cached objects
+	 * @return Whether the indexes of the candidate class reflect the state of the session
+	 */
+	static boolean isIndexUpToDate(Session session, ZooClassDef candClsDef, 
+			boolean subClasses, boolean ignoreCache) {
+		if (!isSchemaStored(candClsDef, subClasses)) {
+			return false;
+		}
+		if (!ignoreCache) {
+			//Indexes do not reflect new, modified or deleted objects
+			ClientSessionCache cache = session.internalGetCache();
+			cache.persistReachableObjects();
+			if (!cache.getDirtyObjects().isEmpty()
+					|| cache.getDeletedObjects().iterator().hasNext()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSchemaStored(ZooClassDef def, boolean subClasses) {
+		if (def.jdoZooIsDirty()) {
+			return false;
+		}
+		if (subClasses) {
+			for (ZooClassProxy sub: def.getVersionProxy().getSubProxies()) {
+				if (!isSchemaStored(sub.getSchemaDef(), subClasses)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param field The field
+	 * @param candClsDef The candidate class
+	 * @param subClasses Whether sub-classes are candidates
+	 * @return Whether the field has an index that contains exactly the candidates and whose
+	 * keys are ordered like the field values.
+	 */
+	static boolean hasCandidateIndex(ZooFieldDef field, ZooClassDef candClsDef, 
+			boolean subClasses) {
+		if (!field.isIndexed() || !field.isPrimitiveType()
+				|| field.getPrimitiveType() == PRIMITIVE.BOOLEAN) {
+			return false;
+		}
+		//The index contains all instances of the declaring class, including sub-classes
+		if (field.getDeclaringType().getSchemaId() != candClsDef.getSchemaId()) {
+			return false;
+		}
+		return subClasses || candClsDef.getVersionProxy().getSubProxies().isEmpty();
+	}
+
+	/**
+	 * @return The number of candidates
+	 */
+	long countInstances() {
+		return session.getPrimaryNode().countInstances(candClsDef.getVersionProxy(), subClasses);
+	}
+
+	/**
+	 * @param field The field
+	 * @param ascending Whether to return the smallest or the largest key
+	 * @return The smallest or largest index key of the field or {@code null} if the key
+	 * cannot be determined from an index.
+	 */
+	Long readFirstIndexKey(ZooFieldDef field, boolean ascending) {
+		if (!hasCandidateIndex(field, candClsDef, subClasses)) {
+			return null;
+		}
+		return session.getPrimaryNode().readFirstIndexKey(field, ascending);
+	}
+}
@@ -21,12 +21,15 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 
 import javax.jdo.ObjectState;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.internal.Session;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooFieldDef;
@@ -86,7 +89,44 @@ public class QueryExecutor {
 	
 	public Object runWithExtent(Collection<Object> ext, long rangeMin, long rangeMax, 
 			String resultSettings, Class<?> resultClass) {
-		return postProcessV4(ext.iterator(), rangeMin, rangeMax, resultSettings, resultClass);
+		return postProcessV4(ext.iterator(), () -> ext.iterator(), false, rangeMin, rangeMax, 
+				resultSettings, resultClass);
+	}
+	
+	/**
+	 * Computes the aggregates or projections of an unfiltered query from indexes, without 
+	 * reading the candidate objects, see {@link QueryAggregatePlanner} and 
+	 * {@link QueryProjectionPlanner}.
+	 * @param rangeMin Range minimum
+	 * @param rangeMax Range maximum
+	 * @param resultSettings Result settings string
+	 * @param resultClass Result class
+	 * @param ignoreCache Whether to ignore cached objects
+	 * @return The result or {@code null} if the result has to be computed from the 
+	 * candidate objects.
+	 */
+	public Object runOnIndexes(long rangeMin, long rangeMax, String resultSettings, 
+			Class<?> resultClass, boolean ignoreCache) {
+		QueryResultProcessor rp = 
+				new QueryResultProcessor(resultSettings, candCls, candClsDef, resultClass);
+		Object ret;
+		if (rp.isProjection()) {
+			//Unique projections are handled by postProcessV4(), as in runQuery(). If there is 
+			//no result, this returns 'null' and the query is evaluated on the candidates. 
+			//This is cheap, because the index is only used if it contains all candidates.
+			Supplier<Iterator<Object>> scan = new QueryProjectionPlanner(pm, 
+					candClsDef, subClasses).createIndexScan(rp, null, null, ordering, 
+							ignoreCache, null);
+			ret = scan == null ? null 
+					: postProcessV4(scan.get(), scan, true, rangeMin, rangeMax, null, null);
+		} else {
+			ret = new QueryAggregatePlanner(pm, candClsDef, subClasses).aggregate(rp, 
+					ignoreCache);
+		}
+		if (ret != null && DBStatistics.isEnabled()) {
+			pm.statsInc(STATS.QU_EXECUTED_TOTAL);
+		}
+		return ret;
 	}
 	
 	/**
@@ -141,6 +181,27 @@ public class QueryExecutor {
 		//This is only for indices, not for given extents
 		List<QueryAdvice> indexToUse = queryTree.executeOptimizer(candClsDef, params);
 
+		if (indexToUse.size() == 1 && resultSettings == null && !unique) {
+			QueryAdvice qa = indexToUse.get(0);
+			if (ordering == null || ordering.isEmpty()) {
+				//Stream the results, further iterations re-evaluate the query
+				return new SynchronizedROCollection<>(iteratorV3(ext, qa, ignoreCache, params), 
+						() -> iteratorV3(ext, qa, ignoreCache, params), pm, rangeMin, rangeMax);
+			}
+			QueryAdvice qaOrdered = getIndexOrderedAdvice(ext, qa, ignoreCache);
+			if (qaOrdered != null) {
+				//The index returns the results in the requested order, no sorting required.
+				//Streaming ensures that the index scan stops at the end of the range.
+				return new SynchronizedROCollection<>(iteratorV3(ext, qaOrdered, ignoreCache, params), 
+						() -> iteratorV3(ext, qaOrdered, ignoreCache, params), pm, rangeMin, rangeMax);
+			}
+			if (isTopK(rangeMax)) {
+				List<Object> topK = QueryTopKSorter.sort(iteratorV3(ext, qa, ignoreCache, params),
+						(int) rangeMax, new QueryComparator<Object>(ordering));
+				return new SynchronizedROCollection<>(topK, pm, rangeMin, rangeMax);
+			}
+		}
+		
 		//TODO can also return a list with (yet) unknown size. In that case size() should return
 		//Integer.MAX_VALUE (JDO 2.2 14.6.1)
 		ArrayList<Object> ret = new ArrayList<Object>();
@@ -150,7 +211,8 @@ public class QueryExecutor {
 
 		//Now check if we need to check for duplicates, i.e. if multiple indices were used.
 		for (QueryAdvice qa: indexToUse) {
-			if (qa.getIndex() != indexToUse.get(0).getIndex()) {
+			if (qa.getIndex() != indexToUse.get(0).getIndex() 
+					|| qa.getCompositeIndex() != indexToUse.get(0).getCompositeIndex()) {
 				LOGGER.warn("Merging query results(A)!");
 				ObjectIdentitySet<Object> ret2 = new ObjectIdentitySet<Object>();
 				ret2.addAll(ret);
@@ -227,6 +289,11 @@ public class QueryExecutor {
 		public boolean hasCollectionConstraint() {
 			return hasCollectionConstraint;
 		}
+		VariableInstance cloneWithAdvice(QueryAdvice qa) {
+			VariableInstance vi = new VariableInstance(var, Collections.singletonList(qa));
+			vi.prepareForUsage();
+			return vi;
+		}
 		public static VariableInstance[] cloneForConcurrentExecution(VariableInstance[] orig) {
 			VariableInstance[] ret = new VariableInstance[orig.length];
 			for (int i = 0; i < ret.length; i++) {
@@ -287,6 +354,32 @@ public class QueryExecutor {
 			//TODO is cloning always necessary? Even if there are no parameters?
 		}
 
+		//Projections of an indexed field may be read from the index keys
+		if (resultSettings != null && ext == null && vars.length == 1 
+				&& vars[0].advices.size() <= 1) {
+			QueryResultProcessor rp = 
+					new QueryResultProcessor(resultSettings, candCls, candClsDef, resultClass);
+			Supplier<Iterator<Object>> scan = !rp.isProjection() ? null 
+					: new QueryProjectionPlanner(pm, candClsDef, subClasses).createIndexScan(rp, 
+							queryTree.getRootFn(), 
+							vars[0].hasAdvices() ? vars[0].advices.get(0) : null, 
+							ordering, ignoreCache, params);
+			if (scan != null) {
+				//The values are already projected and in the requested order
+				return postProcessV4(scan.get(), scan, true, rangeMin, rangeMax, null, null);
+			}
+		}
+
+		//Read the candidates in the requested order from an index, if possible
+		QueryAdvice qaOrdered = null;
+		if (vars.length == 1 && vars[0].advices.size() <= 1 && resultSettings == null && !unique) {
+			qaOrdered = getIndexOrderedAdvice(ext, 
+					vars[0].hasAdvices() ? vars[0].advices.get(0) : null, ignoreCache);
+			if (qaOrdered != null) {
+				vars = new VariableInstance[] {vars[0].cloneWithAdvice(qaOrdered)};
+			}
+		}
+
 		//TODO can also return a list with (yet) unknown size. In that case size() should return
 		//Integer.MAX_VALUE (JDO 2.2 14.6.1)
 		Iterator<Object> ret = applyQueryOnExtentV4(queryTree, vars, ext, ignoreCache, params);
@@ -303,10 +396,16 @@ public class QueryExecutor {
 			if (ret2.size() > 1000) {
 				LOGGER.warn("Merged > 1000 query results");
 			}
-			return postProcessV4(ret2.iterator(), rangeMin, rangeMax, resultSettings, resultClass);
+			return postProcessV4(ret2.iterator(), () -> ret2.iterator(), false, rangeMin, rangeMax, 
+					resultSettings, resultClass);
 		}
 		
-		return postProcessV4(ret, rangeMin, rangeMax, resultSettings, resultClass);
+		//Further iterations over streamed results re-evaluate the query
+		VariableInstance[] varsOrig = vars;
+		return postProcessV4(ret, 
+				() -> applyQueryOnExtentV4(queryTree, 
+						VariableInstance.cloneForConcurrentExecution(varsOrig), ext, ignoreCache, params),
+				qaOrdered != null, rangeMin, rangeMax, resultSettings, resultClass);
 	}
 
 	private void assignParametersToQueryTree() {
@@ -363,45 +462,69 @@ public class QueryExecutor {
 			QueryResultProcessor rp = 
 					new QueryResultProcessor(resultSettings, candCls, candClsDef, resultClass);
 			if (rp.isProjection()) {
-				c = rp.processResultProjection(c.iterator(), unique);
+				c = rp.processResultProjection(c.iterator());
 			} else {
 				//must be an aggregate
 				return rp.processResultAggregation(c.iterator());
 			}
 		}
 		if (unique) {
-			//unique
-			Iterator<Object> iter = c.iterator();
-			if (iter.hasNext()) {
-				Object ret = iter.next();
-				if (iter.hasNext()) {
-					throw DBLogger.newUser("Too many results found in unique query.");
-				}
-				return ret;
-			} else {
-				//no result found
-				return null;
-			}
+			return uniqueResult(c.iterator());
 		}
 		if (ordering != null && !ordering.isEmpty()) {
-			if (!(c instanceof List)) {
-				c = new ArrayList<>(c);
+			if (isTopK(rangeMax)) {
+				c = QueryTopKSorter.sort(c.iterator(), (int) rangeMax, 
+						new QueryComparator<Object>(ordering));
+			} else {
+				if (!(c instanceof List)) {
+					c = new ArrayList<>(c);
+				}
+				Collections.sort((List<Object>) c, new QueryComparator<Object>(ordering));
 			}
-			Collections.sort((List<Object>) c, new QueryComparator<Object>(ordering));
 		}
 		
 		//To void remove() calls
 		return new SynchronizedROCollection<>(c, pm, rangeMin, rangeMax);
 	}
 	
-	private Object postProcessV4(Iterator<Object> iter, long rangeMin, long rangeMax, 
-			String resultSettings, Class<?> resultClass) {
+	/**
+	 * Result of a unique query. This is used for all query paths, including projections 
+	 * from indexes.
+	 * @param iter The query result
+	 * @return The only result or {@code null} if there is no result
+	 * @throws RuntimeException if there is more than one result
+	 */
+	private static Object uniqueResult(Iterator<Object> iter) {
+		if (!iter.hasNext()) {
+			//no result found
+			return null;
+		}
+		Object ret = iter.next();
+		if (iter.hasNext()) {
+			throw DBLogger.newUser("Too many results found in unique query.");
+		}
+		return ret;
+	}
+
+	/**
+	 * @param iter The query result
+	 * @param reRun Re-evaluates the query for streamed results
+	 * @param isOrdered Whether the result is already in the requested order
+	 * @param rangeMin Lower bound of the range
+	 * @param rangeMax Upper bound of the range (exclusive)
+	 * @param resultSettings Result settings string
+	 * @param resultClass Result class
+	 * @return The query result
+	 */
+	private Object postProcessV4(Iterator<Object> iter, Supplier<Iterator<Object>> reRun,
+			boolean isOrdered, long rangeMin, long rangeMax, String resultSettings, 
+			Class<?> resultClass) {
 		ArrayList<Object> list = null;
 		if (resultSettings != null) {
 			QueryResultProcessor rp = 
 					new QueryResultProcessor(resultSettings, candCls, candClsDef, resultClass);
 			if (rp.isProjection()) {
-				list = rp.processResultProjection(iter, unique);
+				list = rp.processResultProjection(iter);
 				//TODO project to iterator!!!
 				iter = list.iterator();
 			} else {
@@ -410,58 +533,113 @@ public class QueryExecutor {
 			}
 		}
 		if (unique) {
-			//unique
-			if (iter.hasNext()) {
-				Object ret = iter.next();
-				if (iter.hasNext()) {
-					throw DBLogger.newUser("Too many results found in unique query.");
-				}
-				return ret;
-			} else {
-				//no result found
-				return null;
-			}
+			return uniqueResult(iter);
 		}
-		if (ordering != null && !ordering.isEmpty()) {
-			if (list == null) {
-				list = new ArrayList<>();
-				while (iter.hasNext()) {
-					list.add(iter.next());
+		if (ordering != null && !ordering.isEmpty() && !isOrdered) {
+			if (isTopK(rangeMax)) {
+				//Only the first results are required, no need to keep the others
+				list = QueryTopKSorter.sort(iter, (int) rangeMax, 
+						new QueryComparator<Object>(ordering));
+			} else {
+				if (list == null) {
+					list = new ArrayList<>();
+					while (iter.hasNext()) {
+						list.add(iter.next());
+					}
 				}
+				//TODO log message for sorting in memory!!
+				Collections.sort(list, new QueryComparator<Object>(ordering));
 			}
-			//TODO log message for sorting in memory!!
-			Collections.sort(list, new QueryComparator<Object>(ordering));
 		}
 
-		//TODO Fix this! SynchedCollection should use Iterator!!!
-		//TODO Fix this! SynchedCollection should use Iterator!!!
-		//TODO Fix this! SynchedCollection should use Iterator!!!
-		//TODO Fix this! SynchedCollection should use Iterator!!!
-		//TODO Fix this! SynchedCollection should use Iterator!!!
+		//To void remove() calls
 		if (list == null) {
-			list = new ArrayList<>();
-			while (iter.hasNext()) {
-				list.add(iter.next());
+			//Stream the results, the range is applied while iterating
+			return new SynchronizedROCollection<>(iter, reRun, pm, rangeMin, rangeMax);
+		}
+		return new SynchronizedROCollection<>(list, pm, rangeMin, rangeMax);
+	}
+	
+	/**
+	 * @param rangeMax Upper bound of the range (exclusive)
+	 * @return Whether an ordered result should be computed with a bounded heap
+	 * instead of sorting all results.
+	 */
+	private static boolean isTopK(long rangeMax) {
+		return rangeMax < Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Checks whether the candidates can be read from a field index in the requested order.
+	 * In that case no sorting is required and a range can stop the index scan early.
+	 * <p>
+	 * This is only possible if the first ordering field has an index with keys that are
+	 * ordered like the field values, i.e. not for String or reference fields. The filter
+	 * must either use no index or the same index. Dirty objects in the cache disable
+	 * this, because they are merged into the result and may not match their index entries.
+	 * 
+	 * @param ext The custom extent or {@code null}
+	 * @param qa The advice of the query optimizer, may be {@code null}
+	 * @param ignoreCache Whether to ignore cached objects
+	 * @return An advice for an ordered index scan or {@code null} if the result needs sorting
+	 */
+	private QueryAdvice getIndexOrderedAdvice(Iterable<?> ext, QueryAdvice qa, 
+			boolean ignoreCache) {
+		if (ext != null || ordering == null || ordering.isEmpty() || candClsDef.jdoZooIsDirty()) {
+			return null;
+		}
+		ZooFieldDef field = ordering.get(0).getA();
+		if (!field.isIndexed() || !field.isPrimitiveType() 
+				|| field.getPrimitiveType() == PRIMITIVE.BOOLEAN) {
+			return null;
+		}
+		if (ordering.size() > 1 && !field.isIndexUnique()) {
+			//The index does not order entries with equal keys by the other fields 
+			return null;
+		}
+		if (qa != null && (qa.getCompositeIndex() != null || qa.hasCollectionConstraint() 
+				|| qa.hasIdentityConstraint() 
+				|| (qa.getIndex() != null && qa.getIndex() != field))) {
+			return null;
+		}
+		if (!ignoreCache) {
+			ClientSessionCache cache = pm.internalGetCache();
+			cache.persistReachableObjects();
+			if (!cache.getDirtyObjects().isEmpty()) {
+				return null;
 			}
 		}
+		return QueryAdvice.createForOrdering(qa != null ? qa.getQuery() : queryTree, field, qa, 
+				ordering.get(0).getB());
+	}
 
-		
-		//To void remove() calls
-		return new SynchronizedROCollection<>(list, pm, rangeMin, rangeMax);
+	private void applyQueryOnExtentV3(Iterable<?> ext, List<Object> ret, QueryAdvice qa, 
+			boolean ignoreCache, Object[] params) {
+		Iterator<Object> iter = iteratorV3(ext, qa, ignoreCache, params);
+		while (iter.hasNext()) {
+			ret.add(iter.next());
+		}
 	}
 	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void applyQueryOnExtentV3(Iterable<?> ext, List<Object> ret, QueryAdvice qa, 
+	private Iterator<Object> iteratorV3(Iterable<?> ext, QueryAdvice qa, 
 			boolean ignoreCache, Object[] params) {
-		QueryTree queryTree = qa.getQuery();
 		Iterator<?> ext2;
 		if (!ignoreCache) {
 			ClientSessionCache cache = pm.internalGetCache();
 			cache.persistReachableObjects();
 		}
-		if (qa.getIndex() != null) {
-			ext2 = pm.getPrimaryNode().readObjectFromIndex(qa.getIndex(),
-					qa.getMin(), qa.getMax(), !ignoreCache);
+		if (qa.getIndex() != null || qa.getCompositeIndex() != null) {
+			if (qa.getCompositeIndex() != null) {
+				ext2 = pm.getPrimaryNode().readObjectFromCompositeIndex(qa.getCompositeIndex(),
+						qa.getMin(), qa.getMax(), !ignoreCache);
+			} else if (!qa.isAscending()) {
+				ext2 = pm.getPrimaryNode().readObjectFromIndex(qa.getIndex(),
+						qa.getMin(), qa.getMax(), false, !ignoreCache);
+			} else {
+				ext2 = pm.getPrimaryNode().readObjectFromIndex(qa.getIndex(),
+						qa.getMin(), qa.getMax(), qa.getStringRange(), !ignoreCache);
+			}
 			if (!ignoreCache) {
 				ClientSessionCache cache = pm.internalGetCache();
 				ArrayList<ZooPC> dirtyObjs = cache.getDirtyObjects();
@@ -491,40 +669,62 @@ public class QueryExecutor {
 			}
 		}
 		
-		if (ext != null && !subClasses) {
-			// normal iteration
-			while (ext2.hasNext()) {
-				Object o = ext2.next();
-				//TODO this can never be true
-				//TODO this can never be true
-				//TODO this can never be true
-				if (subClasses) {
-					if (!candCls.isAssignableFrom(o.getClass())) {
-						continue;
-					}
-				} else {
-					if (candCls != o.getClass()) {
-						continue;
-					}
+		//User defined extents may contain instances of sub-classes.
+		//Otherwise: normal iteration (ignoring the possibly existing compatible extent to 
+		//allow indices)
+		Class<?> exactCls = ext != null && !subClasses ? candCls : null;
+		return new QueryFilterIterator(ext2, qa.getQuery(), params, exactCls);
+	}
+	
+	/**
+	 * Evaluates a query lazily on candidate objects.
+	 */
+	private static class QueryFilterIterator implements Iterator<Object> {
+		
+		private final Iterator<?> candidates;
+		private final QueryTree queryTree;
+		private final Object[] params;
+		//If not null, only candidates of exactly this class are accepted
+		private final Class<?> exactCls;
+		private Object next = null;
+		
+		QueryFilterIterator(Iterator<?> candidates, QueryTree queryTree, Object[] params, 
+				Class<?> exactCls) {
+			this.candidates = candidates;
+			this.queryTree = queryTree;
+			this.params = params;
+			this.exactCls = exactCls;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			while (candidates.hasNext()) {
+				Object o = candidates.next();
+				if (exactCls != null && exactCls != o.getClass()) {
+					continue;
 				}
-				boolean isMatch = queryTree.evaluate(o, params);
-				if (isMatch) {
-					ret.add(o);
+				if (queryTree.evaluate(o, params)) {
+					next = o;
+					return true;
 				}
 			}
-		} else {
-			// normal iteration (ignoring the possibly existing compatible extent to allow indices)
-			while (ext2.hasNext()) {
-				Object o = ext2.next();
-				boolean isMatch = queryTree.evaluate(o, params);
-				if (isMatch) {
-					ret.add(o);
-				}
+			if (candidates instanceof CloseableIterator) {
+				((CloseableIterator<?>)candidates).close();
 			}
+			return false;
 		}
 
-		if (ext2 instanceof CloseableIterator) {
-			((CloseableIterator)ext2).close();
+		@Override
+		public Object next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Object ret = next;
+			next = null;
+			return ret;
 		}
 	}
 
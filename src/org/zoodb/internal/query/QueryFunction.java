@@ -41,6 +41,7 @@ import org.zoodb.internal.query.QueryOptimizerV4.IndexProposalSet;
 import org.zoodb.internal.query.QueryParser.FNCT_OP;
 import org.zoodb.internal.query.TypeConverterTools.COMPARISON_TYPE;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.jdo.impl.QueryImpl;
 
@@ -262,6 +263,10 @@ public class QueryFunction {
 					Object ret = field.get(localInstance);
 					return ret == null ? QueryTerm.NULL : ret;
 				}
+				if (localInstance instanceof QueryProjectionPlanner.FieldValue) {
+					//Value from an index key, see QueryProjectionPlanner
+					return ((QueryProjectionPlanner.FieldValue)localInstance).value;
+				}
 				//TODO why don't we need this in QueryTerm.evaluate()????
 				ZooClassDef def = ((ZooPC)localInstance).jdoZooGetClassDef();
 				Object ret = def.getAllFields()[fieldId].getJavaField().get(localInstance);
@@ -797,6 +802,10 @@ public class QueryFunction {
 		return param1;
 	}
 
+	public QueryFunction getParam2() {
+		return param2;
+	}
+
 	/**
 	 * @param alternativeProposals List of index proposals
 	 * @param params Query execution parameters
@@ -880,7 +889,7 @@ public class QueryFunction {
 		}
 		
 		ZooFieldDef zField = arg1.zField; 
-		if (zField == null || !zField.isIndexed()) {
+		if (zField == null || (!zField.isIndexed() && !zField.isInCompositeIndex())) {
 			//ignore fields that are not index
 			return false;
 		}
@@ -920,7 +929,7 @@ public class QueryFunction {
 				//TODO
 				throw new UnsupportedOperationException();
 			}
-			String str = (String) arg2.getConstant(params);
+			String str = toString(arg2.getConstant(params));
 			boolean isParam = arg2.isDependentOnParameter();
 			for (int i = 0; i < str.length(); i++) {
 				char c = str.charAt(i);
@@ -933,12 +942,14 @@ public class QueryFunction {
 					}
 					str = str.substring(0, i);
 					setKeysForStringStartsWith(str, zField, indexProposal, isParam);
-					return true;
+					return zField.isIndexed();
 				}
 			}
 			long key = BitTools.toSortableLong(str);
 			indexProposal.addMin(zField, key, isParam);
 			indexProposal.addMax(zField, key, isParam);
+			indexProposal.getStringRange(zField).adjustMin(str);
+			indexProposal.getStringRange(zField).adjustMax(str);
 			break;
 		}
 		case STR_startsWith:
@@ -948,7 +959,7 @@ public class QueryFunction {
 				//TODO
 				throw new UnsupportedOperationException();
 			}
-			String str = (String) arg2.getConstant(params);
+			String str = toString(arg2.getConstant(params));
 			boolean isParam = arg2.isDependentOnParameter();
 			setKeysForStringStartsWith(str, zField, indexProposal, isParam);
 			break;
@@ -1038,13 +1049,48 @@ public class QueryFunction {
 			throw new IllegalArgumentException("Name: " + op());
 		}
 		
-		return true;
+		if (f.isString()) {
+			//String indexes with full keys, see PagedStringIndex
+			String str = termVal == QueryTerm.NULL ? null : (String)termVal;
+			StringKeyRange range = indexProposal.getStringRange(f);
+			switch (op()) {
+			case EQ_BOOL:
+			case EQ:
+				range.adjustMin(str);
+				range.adjustMax(str);
+				break;
+			case L:
+			case LE:
+				if (str != null) {
+					range.adjustMax(str);
+				}
+				break;
+			case G:
+			case GE:
+				if (str != null) {
+					range.adjustMin(str);
+				}
+				break;
+			default:
+				//startsWith() and matches() are handled above, other operators are ignored
+			}
+		}
+		
+		//Fields that are only part of a composite index cannot support OR terms
+		return zField.isIndexed();
 	}
 	
 	boolean isDependentOnParameter() {
 		return isDependentOnParameter;
 	}
 
+	/**
+	 * Single character String literals are parsed as Character.
+	 */
+	private static String toString(Object o) {
+		return o instanceof Character ? String.valueOf((Character) o) : (String) o;
+	}
+
 	private static void analyzeEQ(QueryFunction f, IndexProposalSet[] alternativeProposals) {
 		if (f.param1.op() == FNCT_OP.VARIABLE) {
 			if (alternativeProposals[f.param1.fieldId] == null) {
@@ -1068,6 +1114,10 @@ public class QueryFunction {
 		long keyMax = BitTools.toSortableLongPrefixMaxHash(prefix);
 		indexProposal.addMin(f, keyMin, isParam);
 		indexProposal.addMax(f, keyMax, isParam);
+		if (prefix != null) {
+			indexProposal.getStringRange(f).adjustMin(prefix);
+			indexProposal.getStringRange(f).adjustPrefix(prefix);
+		}
 	}
 
 
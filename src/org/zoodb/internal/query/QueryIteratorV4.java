@@ -223,8 +223,18 @@ public class QueryIteratorV4 implements Iterator<Object> {
 				QueryAdvice qa = var.getAdvices().get(ia);
 				if (!qa.hasCollectionConstraint() && !qa.hasIdentityConstraint()) {
 					qmi = qmi != null ? qmi : new QueryMergingIterator<>(); 
+					if (qa.getCompositeIndex() != null) {
+						qmi.add( session.getPrimaryNode().readObjectFromCompositeIndex(
+								qa.getCompositeIndex(), qa.getMin(), qa.getMax(), !ignoreCache) );
+						continue;
+					}
+					if (!qa.isAscending()) {
+						qmi.add( session.getPrimaryNode().readObjectFromIndex(qa.getIndex(),
+								qa.getMin(), qa.getMax(), false, !ignoreCache) );
+						continue;
+					}
 					qmi.add( session.getPrimaryNode().readObjectFromIndex(qa.getIndex(),
-							qa.getMin(), qa.getMax(), !ignoreCache) );
+							qa.getMin(), qa.getMax(), qa.getStringRange(), !ignoreCache) );
 				}
 			}
 			if (qmi == null) {
@@ -30,6 +30,7 @@ import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.query.QueryOptimizerV4.IndexProposalSet;
 import org.zoodb.internal.query.QueryOptimizerV4.MinMax;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.StringKeyRange;
 
 public class QueryOptimizerV3 {
 	
@@ -81,7 +82,7 @@ public class QueryOptimizerV3 {
 		for (ZooFieldDef f: clsDef.getAllFields()) {
 			// We exclude dirty schemata here. They may be new or at least the index may be new, see issue #131.
 			// TODO This is not ideal, we could allow using indexes if the relevant field+index hasn't changed.
-			if (f.isIndexed() && !clsDef.jdoZooIsDirty()) {
+			if ((f.isIndexed() || f.isInCompositeIndex()) && !clsDef.jdoZooIsDirty()) {
 				availableIndices.add(f);
 			}
 		}
@@ -178,13 +179,13 @@ public class QueryOptimizerV3 {
 			//shortcut
 			return;
 		}
-		IdentityHashMap<ZooFieldDef, TreeSet<QueryAdvice>> map = new IdentityHashMap<>();
+		IdentityHashMap<Object, TreeSet<QueryAdvice>> map = new IdentityHashMap<>();
 		//sort QAs by index and by minValue
 		for (QueryAdvice qa: advices) {
-			TreeSet<QueryAdvice> subList = map.get(qa.getIndex());
+			TreeSet<QueryAdvice> subList = map.get(getIndexKey(qa));
 			if (subList == null) {
 				subList = new TreeSet<>(new AdviceComparator());
-				map.put(qa.getIndex(), subList);
+				map.put(getIndexKey(qa), subList);
 			}
 			subList.add(qa);
 		}
@@ -192,13 +193,16 @@ public class QueryOptimizerV3 {
 		//merge
 		boolean merged = false;
 		for (QueryAdvice qa: advices) {
-			TreeSet<QueryAdvice> subList = map.get(qa.getIndex());
+			TreeSet<QueryAdvice> subList = map.get(getIndexKey(qa));
 			Iterator<QueryAdvice> iter = subList.iterator();
 			QueryAdvice prev = iter.next();
 			while (iter.hasNext()) {
 				QueryAdvice current = iter.next();
 				if (prev.getMax() >= current.getMin()) {
 					prev.setMax(current.getMax(), current.isDependentOnParameter());
+					if (prev.getStringRange() != null) {
+						prev.setStringRange(prev.getStringRange().union(current.getStringRange()));
+					}
 					iter.remove();
 					merged = true;
 				} else {			
@@ -215,6 +219,10 @@ public class QueryOptimizerV3 {
 		}
 	}
 
+	private static Object getIndexKey(QueryAdvice qa) {
+		return qa.getCompositeIndex() != null ? qa.getCompositeIndex() : qa.getIndex();
+	}
+
 	/**
 	 * 
 	 * @param queryTree This is a sub-query that does not contain OR operands.
@@ -237,7 +245,7 @@ public class QueryOptimizerV3 {
 				continue;
 			}
 			ZooFieldDef f = term.getLhsFieldDef();
-			if (f == null || !f.isIndexed()) {
+			if (f == null || (!f.isIndexed() && !f.isInCompositeIndex())) {
 				//ignore fields that are not index
 				continue;
 			}
@@ -321,13 +329,44 @@ public class QueryOptimizerV3 {
 				//ignore
 				break;
 			case STR_startsWith:
-				setKeysForStringStartsWith((String) term.getValue(null, params), f, minMaxMap,
+				Object prefix = term.getValue(null, params);
+				if (prefix instanceof Character) {
+					prefix = String.valueOf((Character) prefix);
+				}
+				setKeysForStringStartsWith((String) prefix, f, minMaxMap,
 					isDependentOnParam);
 				break;
 			default: 
 				throw new IllegalArgumentException("Name: " + term.getOp());
 			}
 			
+			if (f.isString()) {
+				//String indexes with full keys, see PagedStringIndex
+				String str = termVal == QueryTerm.NULL ? null : termVal instanceof Character ?
+						String.valueOf((Character) termVal) : (String) termVal;
+				StringKeyRange range = minMaxVal.getStringRange();
+				switch (term.getOp()) {
+				case EQ:
+					range.adjustMin(str);
+					range.adjustMax(str);
+					break;
+				case L:
+				case LE:
+					if (str != null) {
+						range.adjustMax(str);
+					}
+					break;
+				case A:
+				case AE:
+					if (str != null) {
+						range.adjustMin(str);
+					}
+					break;
+				default:
+					//startsWith() is handled above, other operators are ignored
+				}
+			}
+			
 			//TODO take into account not-operators (x>1 && x<10) && !(x>5 && X <6) ??
 			// -> Hopefully this optimization is marginal and negligible.
 			//But it may break everything!
@@ -422,11 +461,28 @@ public class QueryOptimizerV3 {
 		MinMax minMax = minMaxMap.get(f);
 		minMax.adjustMin(keyMin, isParam);
 		minMax.adjustMax(keyMax, isParam);
+		if (prefix != null) {
+			minMax.getStringRange().adjustMin(prefix);
+			minMax.getStringRange().adjustPrefix(prefix);
+		}
 	}
 	
 	private QueryAdvice createQueryAdvice(
 			IdentityHashMap<ZooFieldDef, MinMax> minMaxMap, 
 			QueryTree queryTree) {
+		//The map contains also fields that are only part of composite indexes
+		boolean hasFieldIndex = false;
+		for (ZooFieldDef f: minMaxMap.keySet()) {
+			hasFieldIndex |= f.isIndexed();
+		}
+		if (!minMaxMap.isEmpty()) {
+			QueryAdvice qa = QueryOptimizerV4.createAdviceFromCompositeIndexes(queryTree, 
+					clsDef, minMaxMap, hasFieldIndex);
+			if (qa != null) {
+				return qa;
+			}
+		}
+		minMaxMap.keySet().removeIf(f -> !f.isIndexed());
 		if (minMaxMap.isEmpty()) {
 			//return default query
 			return QueryAdvice.createEmpty(queryTree);
@@ -452,6 +508,7 @@ public class QueryOptimizerV3 {
 				qa.setIndex( me2.getKey() );
 				qa.setMin( min2, me2.getValue().isMinDependentOnParameter );
 				qa.setMax( max2, me2.getValue().isMaxDependentOnParameter );
+				qa.setStringRange(me2.getKey().isString() ? me2.getValue().getStringRange() : null);
 			}
 		}
 		
@@ -21,12 +21,14 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.query.QueryExecutor.VariableInstance;
 import org.zoodb.internal.query.QueryFunction.Constraint;
 import org.zoodb.internal.query.QueryVariable.VarDeclaration;
 import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.jdo.impl.QueryImpl;
 
@@ -52,6 +54,8 @@ public class QueryOptimizerV4 {
 		long max = Long.MAX_VALUE;
 		boolean isMinDependentOnParameter = false;
 		boolean isMaxDependentOnParameter = false;
+		//Only for String fields, see PagedStringIndex
+		private StringKeyRange strRange;
 		public MinMax(long minValue, long maxValue,
 				boolean isMinDependentOnParameter, boolean isMaxDependentOnParameter) {
 			this.min = minValue;
@@ -75,6 +79,15 @@ public class QueryOptimizerV4 {
 			return isMinDependentOnParameter 
 					|| isMaxDependentOnParameter;
 		}
+		/**
+		 * @return The range of full String keys. Unlike min/max, this range is exact.
+		 */
+		public StringKeyRange getStringRange() {
+			if (strRange == null) {
+				strRange = new StringKeyRange();
+			}
+			return strRange;
+		}
 	}
 	
 	/**
@@ -88,6 +101,8 @@ public class QueryOptimizerV4 {
 	static class IndexProposalSet {
 		//proposals for concrete indexes (min/max for specific fields)
 		IdentityHashMap<ZooFieldDef, MinMax> minMaxMap = new IdentityHashMap<>();
+		//min/max for fields that are only part of composite indexes
+		IdentityHashMap<ZooFieldDef, MinMax> compositeMinMaxMap = new IdentityHashMap<>();
 		
 		//List of 'collectionConstraints' through Map.contains()/Collections.contains().
 		final List<QueryFunction> collectionConstraints = new ArrayList<>();
@@ -124,20 +139,28 @@ public class QueryOptimizerV4 {
 		}
 
 		public void initMinMax(ZooFieldDef zField) {
-			minMaxMap.computeIfAbsent(zField, 
+			getMap(zField).computeIfAbsent(zField, 
 					f -> new MinMax(f.getMinValue(), f.getMaxValue(), false, false));
 		}
 		
 		public void addMin(ZooFieldDef zField, long newMin, boolean isParameter) {
 			//This is not quite correct, see above
 			this.isDependentOnParameter |= isParameter;
-			minMaxMap.get(zField).adjustMin(newMin, isParameter);
+			getMap(zField).get(zField).adjustMin(newMin, isParameter);
 		}
 		
 		public void addMax(ZooFieldDef zField, long newMax, boolean isParameter) {
 			//This is not quite correct, see above
 			this.isDependentOnParameter |= isParameter;
-			minMaxMap.get(zField).adjustMax(newMax, isParameter);
+			getMap(zField).get(zField).adjustMax(newMax, isParameter);
+		}
+		
+		public StringKeyRange getStringRange(ZooFieldDef zField) {
+			return getMap(zField).get(zField).getStringRange();
+		}
+		
+		private IdentityHashMap<ZooFieldDef, MinMax> getMap(ZooFieldDef zField) {
+			return zField.isIndexed() ? minMaxMap : compositeMinMaxMap;
 		}
 	}
 	
@@ -258,7 +281,8 @@ public class QueryOptimizerV4 {
 				List<QueryAdvice> qas = variableIns[iVI].advices;
 				for (int iQA = 0; iQA < qas.size(); iQA++) {
 					QueryAdvice qa = qas.get(iQA);
-					if (qa.getIndex() != null && qa.isDependentOnParameter()) {
+					if ((qa.getIndex() != null || qa.getCompositeIndex() != null) 
+							&& qa.isDependentOnParameter()) {
 						tree.setRequiresReoptimizationWhenParamsChange(true);
 						iVI = variableIns.length;
 						break;
@@ -314,6 +338,15 @@ public class QueryOptimizerV4 {
 					+ var.var.getType().getName() + "'");
 		}
 		
+		IdentityHashMap<ZooFieldDef, MinMax> allMinMax = 
+				new IdentityHashMap<>(proposalsForVar.compositeMinMaxMap);
+		allMinMax.putAll(proposalsForVar.minMaxMap);
+		QueryAdvice qaComposite = createAdviceFromCompositeIndexes(queryTree, 
+				var.var.getTypeDef(), allMinMax, !proposalsForVar.minMaxMap.isEmpty());
+		if (qaComposite != null) {
+			return qaComposite;
+		}
+		
 		//TODO use [] with field IDs instead of maps
 		IdentityHashMap<ZooFieldDef, MinMax> minMaxMap = proposalsForVar.minMaxMap;
 		if (minMaxMap.isEmpty()) {
@@ -341,6 +374,7 @@ public class QueryOptimizerV4 {
 				qa.setIndex( me2.getKey() );
 				qa.setMin( min2, me2.getValue().isMinDependentOnParameter );
 				qa.setMax( max2, me2.getValue().isMaxDependentOnParameter );
+				qa.setStringRange(me2.getKey().isString() ? me2.getValue().getStringRange() : null);
 			}
 		}
 		
@@ -353,6 +387,95 @@ public class QueryOptimizerV4 {
 		return qa;
 	}
 
+	/**
+	 * A composite index is used if it covers at least two constrained fields, or one field
+	 * if there is no other index. The constrained fields must be a prefix of the fields of the
+	 * composite index, where all but the last constrained field must be constrained with '=='. 
+	 * @param queryTree The query
+	 * @param def The candidate class
+	 * @param minMaxMap The min/max values of all constrained fields
+	 * @param hasFieldIndex Whether a field index could be used instead 
+	 * @return The advice or {@code null} if no composite index should be used
+	 */
+	static QueryAdvice createAdviceFromCompositeIndexes(QueryTree queryTree, ZooClassDef def,
+			Map<ZooFieldDef, MinMax> minMaxMap, boolean hasFieldIndex) {
+		CompositeIndexDef best = null;
+		int bestPrefix = 0;
+		for (CompositeIndexDef ci: def.getCompositeIndexes()) {
+			int prefix = getConstrainedPrefix(ci, minMaxMap);
+			if (prefix > bestPrefix) {
+				best = ci;
+				bestPrefix = prefix;
+			}
+		}
+		if (best == null || (bestPrefix < 2 && hasFieldIndex)) {
+			return null;
+		}
+		
+		ZooFieldDef[] fields = best.getFields();
+		long[] min = new long[fields.length];
+		long[] max = new long[fields.length];
+		boolean isEquals = true;
+		boolean isDependentOnParameter = false;
+		for (int i = 0; i < fields.length; i++) {
+			if (i >= bestPrefix) {
+				min[i] = Long.MIN_VALUE;
+				max[i] = Long.MAX_VALUE;
+				isEquals = false;
+				continue;
+			}
+			MinMax mm = getMinMax(minMaxMap, fields[i]);
+			min[i] = mm.min;
+			max[i] = mm.max;
+			isDependentOnParameter |= mm.isDependentOnParameter();
+			if (mm.min != mm.max) {
+				isEquals = false;
+				if (fields[i].isString()) {
+					//For String we have to extend the range because of the trailing hashcode
+					min[i] = BitTools.getMinPosInPage(min[i]);
+					max[i] = BitTools.getMaxPosInPage(max[i]);
+				}
+			}
+		}
+		return QueryAdvice.createForCompositeIndex(queryTree, best, best.toKey(min), 
+				best.toKey(max), isEquals, isDependentOnParameter);
+	}
+	
+	/**
+	 * @return The number of leading fields of the index that are constrained by the query. 
+	 */
+	private static int getConstrainedPrefix(CompositeIndexDef ci, 
+			Map<ZooFieldDef, MinMax> minMaxMap) {
+		int n = 0;
+		for (ZooFieldDef f: ci.getFields()) {
+			MinMax mm = getMinMax(minMaxMap, f);
+			if (mm == null || (mm.min <= f.getMinValue() && mm.max >= f.getMaxValue())) {
+				return n;
+			}
+			n++;
+			if (mm.min != mm.max) {
+				//range query, the following fields cannot narrow the range
+				return n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Fields of sub-classes and of the composite index may be different versions of the
+	 * same field, so we compare the schema IDs.
+	 * @return The min/max values for a field or {@code null} if the field is not 
+	 * constrained. 
+	 */
+	private static MinMax getMinMax(Map<ZooFieldDef, MinMax> minMaxMap, ZooFieldDef zField) {
+		for (Map.Entry<ZooFieldDef, MinMax> e: minMaxMap.entrySet()) {
+			if (e.getKey().getFieldSchemaId() == zField.getFieldSchemaId()) {
+				return e.getValue();
+			}
+		}
+		return null;
+	}
+
 	private static void createAdviceFromCumulative(QueryTree queryTree,
 			IndexProposalSet proposalsForVar, VariableInstance var,
 			List<QueryAdvice> result) {
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.query;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import org.zoodb.internal.Session;
+import org.zoodb.internal.ZooClassDef;
+import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.query.QueryParser.FNCT_OP;
+import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.Pair;
+
+/**
+ * Computes projections of a single field from the keys of the field index, without reading
+ * the candidate objects (index-only execution). This is possible if:
+ * - the index keys are ordered like the field values, i.e. not for String or reference fields;
+ * - the filter and the ordering refer to no other fields;
+ * - the index reflects the state of the session, i.e. there are no new, modified or deleted
+ *   objects in the cache.
+ * <p>
+ * The filter is evaluated on the values that are decoded from the index keys,
+ * see {@link FieldValue}.
+ *
+ * @author Tilmann Zaeschke
+ */
+class QueryProjectionPlanner {
+
+	/**
+	 * Replaces the candidate object during filter evaluation. Fields of this object evaluate
+	 * to the value that was decoded from the index key.
+	 */
+	static final class FieldValue {
+		Object value;
+	}
+
+	private final Session session;
+	private final ZooClassDef candClsDef;
+	private final boolean subClasses;
+
+	QueryProjectionPlanner(Session session, ZooClassDef candClsDef, boolean subClasses) {
+		this.session = session;
+		this.candClsDef = candClsDef;
+		this.subClasses = subClasses;
+	}
+
+	/**
+	 * @param rp The result processor with the projection
+	 * @param filter The filter or {@code null} if there is no filter
+	 * @param qa The advice of the query optimizer, may be {@code null}
+	 * @param ordering The ordering, may be {@code null}
+	 * @param ignoreCache Whether to ignore cached objects
+	 * @param params Query execution parameters
+	 * @return A function that creates iterators over the projected values, in the requested
+	 * order, or {@code null} if the projection cannot be computed from the index.
+	 */
+	Supplier<Iterator<Object>> createIndexScan(QueryResultProcessor rp, QueryFunction filter, 
+			QueryAdvice qa, List<Pair<ZooFieldDef, Boolean>> ordering, boolean ignoreCache, 
+			Object[] params) {
+		ZooFieldDef field = rp.getProjectedField();
+		if (field == null || !QueryAggregatePlanner.hasCandidateIndex(field, candClsDef,
+				subClasses)) {
+			return null;
+		}
+		if (filter != null && !isCovered(filter, field)) {
+			return null;
+		}
+		boolean ascending = true;
+		if (ordering != null && !ordering.isEmpty()) {
+			for (Pair<ZooFieldDef, Boolean> p: ordering) {
+				if (p.getA() != field) {
+					return null;
+				}
+			}
+			ascending = ordering.get(0).getB();
+		}
+		long min = Long.MIN_VALUE;
+		long max = Long.MAX_VALUE;
+		if (qa != null) {
+			if (qa.getCompositeIndex() != null || qa.hasCollectionConstraint()
+					|| qa.hasIdentityConstraint()
+					|| (qa.getIndex() != null && qa.getIndex() != field)) {
+				return null;
+			}
+			if (qa.getIndex() != null) {
+				min = qa.getMin();
+				max = qa.getMax();
+			}
+		}
+		if (!QueryAggregatePlanner.isIndexUpToDate(session, candClsDef, subClasses,
+				ignoreCache)) {
+			return null;
+		}
+
+		long minKey = min;
+		long maxKey = max;
+		boolean asc = ascending;
+		return () -> {
+			Iterator<Long> keys = session.getPrimaryNode().readIndexKeys(field, minKey, maxKey,
+					asc);
+			if (keys == null) {
+				throw DBLogger.newFatal("Index not found: " + field.getName());
+			}
+			return new ValueIterator(keys, field, filter, params);
+		};
+	}
+
+	/**
+	 * @param fn A function of the filter
+	 * @param field The projected field
+	 * @return Whether the function can be evaluated with only the value of the field
+	 */
+	private static boolean isCovered(QueryFunction fn, ZooFieldDef field) {
+		switch (fn.op()) {
+		case CONSTANT:
+		case PARAM:
+			return true;
+		case FIELD:
+			return fn.getFieldDef() == field && fn.getParam0().op() == FNCT_OP.THIS;
+		case REF:
+		case VARIABLE:
+		case THIS:
+			return false;
+		default:
+			//'this' is allowed as context of the function, but not as argument
+			QueryFunction p0 = fn.getParam0();
+			return (p0 == null || p0.op() == FNCT_OP.THIS || isCovered(p0, field))
+					&& (fn.getParam1() == null || isCovered(fn.getParam1(), field))
+					&& (fn.getParam2() == null || isCovered(fn.getParam2(), field));
+		}
+	}
+
+	private static Object toValue(ZooFieldDef field, long key) {
+		switch (field.getPrimitiveType()) {
+		case BYTE: return (byte) key;
+		case CHAR: return (char) key;
+		case DOUBLE: return BitTools.toDouble(key);
+		case FLOAT: return BitTools.toFloat(key);
+		case INT: return (int) key;
+		case LONG: return key;
+		case SHORT: return (short) key;
+		default:
+			throw new UnsupportedOperationException(field.getPrimitiveType().name());
+		}
+	}
+
+	/**
+	 * Decodes index keys and returns the values that match the filter.
+	 */
+	private static class ValueIterator implements Iterator<Object> {
+
+		private final Iterator<Long> keys;
+		private final ZooFieldDef field;
+		private final QueryFunction filter;
+		private final Object[] params;
+		private final FieldValue candidate = new FieldValue();
+		private Object next = null;
+
+		ValueIterator(Iterator<Long> keys, ZooFieldDef field, QueryFunction filter,
+				Object[] params) {
+			this.keys = keys;
+			this.field = field;
+			this.filter = filter;
+			this.params = params;
+			findNext();
+		}
+
+		private void findNext() {
+			while (keys.hasNext()) {
+				candidate.value = toValue(field, keys.next());
+				if (filter == null || filter.evaluateBool(candidate, candidate, null, params)) {
+					next = candidate.value;
+					return;
+				}
+			}
+			next = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Object next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Object ret = next;
+			findNext();
+			return ret;
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.util.Iterator;
 import org.zoodb.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooFieldDef;
+import org.zoodb.internal.server.index.BitTools;
 import org.zoodb.internal.util.DBLogger;
 
 /**
@@ -114,8 +115,31 @@ class QueryResultProcessor {
 	    		throw new UnsupportedOperationException(field.getPrimitiveType().name());
 			}
 		}
+		/**
+		 * @param key An index key of the field
+		 * @return The field value or {@code null} if it is not a valid aggregation result
+		 */
+		Object fromIndexKey(long key) {
+			switch (field.getPrimitiveType()) {
+			case DOUBLE: 
+				double d = BitTools.toDouble(key);
+				return Double.isNaN(d) ? null : d;
+			case FLOAT:
+				float f = BitTools.toFloat(key);
+				return Float.isNaN(f) ? null : f;
+			default:
+				return toInt(key);
+			}
+		}
 		abstract void add(Object o);
 		abstract Object result();
+		/**
+		 * @param planner The planner
+		 * @return The result computed from indexes or {@code null} if this is not possible
+		 */
+		Object resultFromIndex(QueryAggregatePlanner planner) {
+			return null;
+		}
 	}
 	
 	private static class AVG extends Item {
@@ -168,6 +192,11 @@ class QueryResultProcessor {
 				return toInt(l);
 			}
 		}
+		@Override
+		Object resultFromIndex(QueryAggregatePlanner planner) {
+			Long key = planner.readFirstIndexKey(field, false);
+			return key == null ? null : fromIndexKey(key);
+		}
 	}
 	
 	private static class MIN extends Item {
@@ -195,6 +224,11 @@ class QueryResultProcessor {
 				return toInt(l);
 			}
 		}
+		@Override
+		Object resultFromIndex(QueryAggregatePlanner planner) {
+			Long key = planner.readFirstIndexKey(field, true);
+			return key == null ? null : fromIndexKey(key);
+		}
 	}
 	
 	private static class SUM extends Item {
@@ -229,6 +263,11 @@ class QueryResultProcessor {
 		Object result() {
 			return n;
 		}
+		@Override
+		Object resultFromIndex(QueryAggregatePlanner planner) {
+			//Fields are counted even if they are 'null'
+			return planner.countInstances();
+		}
 	}
 	
 	private static class FIELD extends Item {
@@ -306,14 +345,17 @@ class QueryResultProcessor {
 			}
 			
 			items.add(item);
-			//TODO This HashMap should only be used once, during compile()!!!
-			//TODO This HashMap should only be used once, during compile()!!!
-			//TODO This HashMap should only be used once, during compile()!!!
-			ZooFieldDef def = candClsDef.getAllFieldsAsMap().get(fieldName);
-			if (def == null) {
-				throw DBLogger.newUser("Invalid fieldname in result definition: " + fieldName);
+			//count(this) counts candidates, it requires no field
+			if (!(item instanceof COUNT && "this".equals(fieldName))) {
+				//TODO This HashMap should only be used once, during compile()!!!
+				//TODO This HashMap should only be used once, during compile()!!!
+				//TODO This HashMap should only be used once, during compile()!!!
+				ZooFieldDef def = candClsDef.getAllFieldsAsMap().get(fieldName);
+				if (def == null) {
+					throw DBLogger.newUser("Invalid fieldname in result definition: " + fieldName);
+				}
+				item.setField(def, resultClass);//getField(candCls, candClsDef, fieldName));
 			}
-			item.setField(def, resultClass);//getField(candCls, candClsDef, fieldName));
 
 			if (!data.isEmpty() && data.charAt(0) == ',') {
 				data = data.substring(1).trim();
@@ -331,7 +373,7 @@ class QueryResultProcessor {
 		}
 	}
 	
-	ArrayList<Object> processResultProjection(Iterator<Object> in, boolean unique) {
+	ArrayList<Object> processResultProjection(Iterator<Object> in) {
 		//projections
 		ArrayList<Object> r = new ArrayList<Object>();
 		if (items.size() == 1) {
@@ -352,10 +394,6 @@ class QueryResultProcessor {
 				}
 			}
 		}
-		
-		if (unique && r.size() > 1) {
-			throw DBLogger.newUser("Non-unique result encountered.");
-		}
 		return r;
 	} 
 
@@ -380,7 +418,32 @@ class QueryResultProcessor {
 		}
 	}
 
+	/**
+	 * Computes the aggregates without reading the candidate objects.
+	 * @param planner The planner that provides access to the indexes
+	 * @return The result or {@code null} if at least one of the aggregates cannot be
+	 * computed from indexes.
+	 */
+	Object processResultAggregationFromIndex(QueryAggregatePlanner planner) {
+		Object[] oa = new Object[items.size()]; 
+		for (int i = 0; i < items.size(); i++) {
+			oa[i] = items.get(i).resultFromIndex(planner);
+			if (oa[i] == null) {
+				return null;
+			}
+		}
+		return oa.length == 1 ? oa[0] : oa;
+	}
+
 	boolean isProjection() {
 		return isProjection;
 	}
+
+	/**
+	 * @return The field if the result is a projection of a single field, otherwise 
+	 * {@code null}.
+	 */
+	ZooFieldDef getProjectedField() {
+		return isProjection && items.size() == 1 ? items.get(0).field : null;
+	}
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Sorting for ordered queries that only require the first K results, for example because
+ * of a range. Only the best K candidates are kept in a bounded heap, this requires
+ * O(K) memory and O(n*log(K)) time instead of O(n) and O(n*log(n)).
+ * <p>
+ * The result is the same as for a stable sort of all candidates that is truncated after
+ * K results.
+ *
+ * @author Tilmann Zaeschke
+ */
+class QueryTopKSorter {
+
+	/**
+	 * Limit for the initial heap size. Large ranges rarely get filled.
+	 */
+	private static final int INITIAL_CAPACITY_MAX = 1024;
+
+	private static class Entry<T> {
+		private final T value;
+		//Position in the input, for stable ordering
+		private final long pos;
+		Entry(T value, long pos) {
+			this.value = value;
+			this.pos = pos;
+		}
+	}
+
+	private QueryTopKSorter() {
+		//static
+	}
+
+	/**
+	 * @param <T> The value type
+	 * @param iter The candidates
+	 * @param k The number of results
+	 * @param comparator The ordering
+	 * @return The first {@code k} candidates in the order of the comparator
+	 */
+	static <T> ArrayList<T> sort(Iterator<? extends T> iter, int k,
+			Comparator<? super T> comparator) {
+		if (k <= 0) {
+			return new ArrayList<>();
+		}
+		Comparator<Entry<T>> order = (e1, e2) -> {
+			int res = comparator.compare(e1.value, e2.value);
+			return res != 0 ? res : Long.compare(e1.pos, e2.pos);
+		};
+		//The head of the heap is the worst candidate
+		PriorityQueue<Entry<T>> heap =
+				new PriorityQueue<>(Math.min(k, INITIAL_CAPACITY_MAX), order.reversed());
+		long pos = 0;
+		while (iter.hasNext()) {
+			Entry<T> e = new Entry<>(iter.next(), pos++);
+			if (heap.size() < k) {
+				heap.add(e);
+			} else if (order.compare(e, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(e);
+			}
+		}
+		ArrayList<Entry<T>> entries = new ArrayList<>(heap);
+		entries.sort(order);
+		ArrayList<T> ret = new ArrayList<>(entries.size());
+		for (Entry<T> e: entries) {
+			ret.add(e.value);
+		}
+		return ret;
+	}
+
+}
@@ -20,14 +20,18 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.GenericObject;
 import org.zoodb.internal.ZooClassDef;
 import org.zoodb.internal.ZooClassProxy;
 import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.ZooHandleImpl;
+import org.zoodb.internal.server.index.LongLongIndex;
 import org.zoodb.internal.server.index.PagedOidIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.tools.DBStatistics.STATS;
 
@@ -45,9 +49,21 @@ public interface DiskAccess {
 	ZooPC readObject(long oid);
 	ZooPC readObject(DataDeSerializer dds, long oid);
 	
+	/**
+	 * Read several objects. The objects are read in the order of their position in the file.
+	 * @param oids The OIDs of the objects to read
+	 * @param n The number of OIDs
+	 * @return The objects, in the same order as the OIDs
+	 */
+	ZooPC[] readObjects(long[] oids, int n);
+	
 	void close();
 
-	void commit();
+	/**
+	 * Finish committing the current transaction.
+	 * @param isRelaxedDurability Whether to return before the commit has been forced to disk
+	 */
+	void commit(boolean isRelaxedDurability);
 
 	/**
 	 * Defines an index and populates it. All objects are put into the cache. This is not 
@@ -61,6 +77,14 @@ public interface DiskAccess {
 
 	boolean removeIndex(ZooClassDef def, ZooFieldDef field);
 
+	/**
+	 * Defines a composite index and adds all instances of the declaring class to it.
+	 * @param index The index definition
+	 */
+	void defineCompositeIndex(CompositeIndexDef index);
+
+	boolean removeCompositeIndex(CompositeIndexDef index);
+
 	Collection<ZooClassDef> readSchemaAll();
 
 	/**
@@ -74,10 +98,81 @@ public interface DiskAccess {
 	Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
 			long minValue, long maxValue, boolean loadFromCache);
 
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before used on indices.
+	 * @param field Field The indexed field
+	 * @param minValue range minimum
+	 * @param maxValue range maximum
+	 * @param ascending Whether objects are returned in ascending or descending key order
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @return An iterator over all matching objects, ordered by key
+	 */
+	Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache);
+
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before they can be
+	 * compared to the key.
+	 * @param field Field The indexed field
+	 * @param ascending Whether to return the smallest or the largest key
+	 * @return The smallest or largest key of the field index or {@code null} if the index is
+	 * empty or is not a {@link LongLongIndex}
+	 */
+	Long readFirstIndexKey(ZooFieldDef field, boolean ascending);
+
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before used on indices.
+	 * @param field Field The indexed field
+	 * @param minValue range minimum
+	 * @param maxValue range maximum
+	 * @param ascending Whether keys are returned in ascending or descending order
+	 * @return An iterator over all keys in the range, without reading the indexed objects, 
+	 * or {@code null} if the field has no {@link LongLongIndex}
+	 */
+	Iterator<Long> readIndexKeys(ZooFieldDef field, long minValue, long maxValue, 
+			boolean ascending);
+
+	/**
+	 * @param field Field The indexed field
+	 * @param minValue range minimum, used if the field has no {@link PagedStringIndex}
+	 * @param maxValue range maximum, used if the field has no {@link PagedStringIndex}
+	 * @param strRange The key range for fields with a {@link PagedStringIndex}, may be 
+	 * {@code null}
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @return An iterator over all matching objects
+	 */
+	Iterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, StringKeyRange strRange, boolean loadFromCache);
+
+	/**
+	 * @param index The composite index
+	 * @param minValue range minimum
+	 * @param maxValue range maximum
+	 * @param loadFromCache Whether to load object from cache, if possible
+	 * @return An iterator over all objects with keys in the range
+	 */
+	Iterator<ZooPC> readObjectFromCompositeIndex(CompositeIndexDef index, 
+			long minValue, long maxValue, boolean loadFromCache);
+
 	long getStats(STATS stats);
 
     String checkDb();
 
+	/**
+	 * Compact the database file with the next commit, even if the transaction is read-only.
+	 * The commit moves index pages from the end of the file towards the front and removes
+	 * free pages from the end of the file.
+	 */
+	void requestCompaction();
+
+	/**
+	 * Find objects that prevent the file from being shrunk. These are objects that are
+	 * located on pages that would be free in a compact file.
+	 * @param def The class, subclasses are not included
+	 * @return The OIDs of the objects
+	 */
+	long[] getOidsForCompaction(ZooClassProxy def);
+
 	void dropInstances(ZooClassProxy def);
 
 	void defineSchema(ZooClassDef def);
@@ -114,7 +209,7 @@ public interface DiskAccess {
 
 	OptimisticTransactionResult rollbackTransaction();
 
-	OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates);
+	OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates, boolean isReadOnly);
 
 	OptimisticTransactionResult checkTxConsistency(ArrayList<TxObjInfo> updates);
 	
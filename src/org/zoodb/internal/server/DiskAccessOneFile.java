@@ -16,7 +16,9 @@
 package org.zoodb.internal.server;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -25,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.DataDeSerializerNoClass;
 import org.zoodb.internal.GenericObject;
@@ -46,13 +49,16 @@ import org.zoodb.internal.server.index.ObjectPosIterator;
 import org.zoodb.internal.server.index.PagedOidIndex;
 import org.zoodb.internal.server.index.PagedOidIndex.FilePos;
 import org.zoodb.internal.server.index.PagedPosIndex;
+import org.zoodb.internal.server.index.PagedStringIndex;
 import org.zoodb.internal.server.index.SchemaIndex;
 import org.zoodb.internal.server.index.SchemaIndex.SchemaIndexEntry;
+import org.zoodb.internal.server.index.StringKeyRange;
 import org.zoodb.internal.server.index.ZooHandleIteratorAdapter;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.FormattedStringBuilder;
 import org.zoodb.internal.util.PoolDDS;
+import org.zoodb.internal.util.PrimLongArrayList;
 import org.zoodb.internal.util.PrimLongSetZ;
 import org.zoodb.internal.util.Util;
 import org.zoodb.tools.DBStatistics.STATS;
@@ -124,6 +130,17 @@ public class DiskAccessOneFile implements DiskAccess {
     
     private long txId;
 	private final TxContext txContext = new TxContext(); 
+	//Whether this session holds a lock on the SessionManager
+	private boolean isLocked = false;
+	//Whether the current commit is a read-only commit without lock
+	private boolean isReadOnlyCommit = false;
+	
+	private boolean isCompactionRequested = false;
+	//The commit group of the last commit with relaxed durability, if it has not been checked 
+	//yet, otherwise 0. Writing the group may still fail.
+	private long deferredCommitGroup = 0;
+	//Indexes for reading while other sessions commit
+	private ReadSnapshot snapshot;
 	
 	DiskAccessOneFile(Node node, AbstractCache cache, SessionManager sm) {
 		this.sm = sm;
@@ -135,11 +152,8 @@ public class DiskAccessOneFile implements DiskAccess {
 		//such as the StorageRootFile.
 		//We keep the lock until initialization is finished, the lock is 
 		//released by an initial rollback() call
-//		if (ALLOW_READ_CONCURRENCY) {
-			sm.readLock(this);
-//		} else {
-//			sm.writeLock(this);
-//		}
+		sm.readLock(this);
+		isLocked = true;
 		
 		this.freeIndex = sm.getFsm();
 		this.file = sm.getFile().createChannel();
@@ -160,7 +174,38 @@ public class DiskAccessOneFile implements DiskAccess {
 	
 	@Override
 	public void refreshSchema(ZooClassDef def) {
-		schemaIndex.refreshSchema(def, this);
+		getSchemaIndexForRead().refreshSchema(def, this);
+	}
+
+	/**
+	 * Sessions that hold a lock can use the shared indexes, because they cannot be modified
+	 * concurrently. Otherwise we use the snapshot of the latest commit.
+	 * <p>
+	 * Optimistic transactions see commits of other sessions (read committed), so the 
+	 * snapshot moves to newer commits. This goes through the pin of the transaction, which
+	 * keeps the pages of older snapshots alive until the transaction ends. Iterators that 
+	 * were opened on an older snapshot can therefore continue.
+	 * @return The snapshot of the latest commit
+	 */
+	private ReadSnapshot getSnapshot() {
+		if (snapshot != null && snapshot.getRootPage() == sm.getCurrentRootPage()) {
+			return snapshot;
+		}
+		RootPage rootPage = sm.advanceSnapshot(this);
+		if (snapshot == null || snapshot.getRootPage() != rootPage) {
+			//Buffered pages may have been rewritten by other sessions
+			file.resetReaders();
+			snapshot = new ReadSnapshot(file, rootPage);
+		}
+		return snapshot;
+	}
+	
+	private PagedOidIndex getOidIndexForRead() {
+		return isLocked ? oidIndex : getSnapshot().getOidIndex();
+	}
+	
+	private SchemaIndex getSchemaIndexForRead() {
+		return isLocked ? schemaIndex : getSnapshot().getSchemaIndex();
 	}
 
 	
@@ -259,7 +304,7 @@ public class DiskAccessOneFile implements DiskAccess {
 	
 	@Override
 	public long countInstances(ZooClassProxy clsDef, boolean subClasses) {
-		return schemaIndex.countInstances(clsDef, subClasses);
+		return getSchemaIndexForRead().countInstances(clsDef, subClasses);
 	}
 
 	@Override
@@ -276,13 +321,13 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public CloseableIterator<ZooPC> readAllObjects(long schemaId, boolean loadFromCache) {
-		SchemaIndexEntry se = schemaIndex.getSchema(schemaId);
+		SchemaIndexEntry se = getSchemaIndexForRead().getSchema(schemaId);
 		if (se == null) {
 			throw DBLogger.newUser("Schema not found for class: " + schemaId);
 		}
 		
 		return new ObjectPosIterator(se.getObjectIndexIterator(), cache, objectReader, 
-		        loadFromCache);
+		        loadFromCache, file);
 	}
 	
 	/**
@@ -291,10 +336,87 @@ public class DiskAccessOneFile implements DiskAccess {
 	@Override
 	public CloseableIterator<ZooPC> readObjectFromIndex(
 			ZooFieldDef field, long minValue, long maxValue, boolean loadFromCache) {
+		return readObjectFromIndex(field, minValue, maxValue, true, loadFromCache);
+	}	
+	
+	/**
+	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
+	 */
+	@Override
+	public CloseableIterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache) {
+		SchemaIndex schemaIndex = getSchemaIndexForRead();
 		SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
 		LongLongIndex fieldInd = se.getIndex(field);
-		LLEntryIterator iter = fieldInd.iterator(minValue, maxValue);
-		return new ObjectIterator(iter, cache, this, objectReader, loadFromCache);
+		LLEntryIterator iter = ascending ? fieldInd.iterator(minValue, maxValue) 
+				: fieldInd.descendingIterator(maxValue, minValue);
+		return new ObjectIterator(iter, cache, getOidIndexForRead(), objectReader, loadFromCache);
+	}	
+	
+	@Override
+	public Long readFirstIndexKey(ZooFieldDef field, boolean ascending) {
+		SchemaIndexEntry se = getSchemaIndexForRead().getSchema(field.getDeclaringType());
+		LongLongIndex fieldInd = se.getIndex(field);
+		if (fieldInd == null) {
+			return null;
+		}
+		LLEntryIterator iter = ascending ? fieldInd.iterator() : fieldInd.descendingIterator();
+		try {
+			return iter.hasNextULL() ? iter.nextKey() : null;
+		} finally {
+			iter.close();
+		}
+	}
+	
+	@Override
+	public CloseableIterator<Long> readIndexKeys(ZooFieldDef field, long minValue, 
+			long maxValue, boolean ascending) {
+		SchemaIndexEntry se = getSchemaIndexForRead().getSchema(field.getDeclaringType());
+		LongLongIndex fieldInd = se.getIndex(field);
+		if (fieldInd == null) {
+			return null;
+		}
+		LLEntryIterator iter = ascending ? fieldInd.iterator(minValue, maxValue) 
+				: fieldInd.descendingIterator(maxValue, minValue);
+		return new CloseableIterator<Long>() {
+			@Override
+			public boolean hasNext() {
+				if (iter.hasNextULL()) {
+					return true;
+				}
+				iter.close();
+				return false;
+			}
+			@Override
+			public Long next() {
+				return iter.nextKey();
+			}
+			@Override
+			public void close() {
+				iter.close();
+			}
+		};
+	}
+	
+	@Override
+	public CloseableIterator<ZooPC> readObjectFromIndex(ZooFieldDef field, 
+			long minValue, long maxValue, StringKeyRange strRange, boolean loadFromCache) {
+		SchemaIndexEntry se = getSchemaIndexForRead().getSchema(field.getDeclaringType());
+		PagedStringIndex strInd = se.getStringIndex(field);
+		if (strInd == null) {
+			return readObjectFromIndex(field, minValue, maxValue, loadFromCache);
+		}
+		LLEntryIterator iter = strInd.iterator(strRange != null ? strRange : new StringKeyRange());
+		return new ObjectIterator(iter, cache, getOidIndexForRead(), objectReader, loadFromCache);
+	}	
+	
+	@Override
+	public CloseableIterator<ZooPC> readObjectFromCompositeIndex(CompositeIndexDef index, 
+			long minValue, long maxValue, boolean loadFromCache) {
+		SchemaIndexEntry se = getSchemaIndexForRead().getSchema(index.getDeclaringType());
+		LongLongIndex compInd = se.getCompositeIndex(index);
+		LLEntryIterator iter = compInd.iterator(minValue, maxValue);
+		return new ObjectIterator(iter, cache, getOidIndexForRead(), objectReader, loadFromCache);
 	}	
 	
     /**
@@ -306,7 +428,7 @@ public class DiskAccessOneFile implements DiskAccess {
      */
     @Override
     public CloseableIterator<ZooHandleImpl> oidIterator(ZooClassProxy clsPx, boolean subClasses) {
-        SchemaIndexEntry se = schemaIndex.getSchema(clsPx.getSchemaId());
+        SchemaIndexEntry se = getSchemaIndexForRead().getSchema(clsPx.getSchemaId());
         if (se == null) {
             throw new IllegalStateException("Schema not found for class: " + clsPx);
         }
@@ -327,6 +449,14 @@ public class DiskAccessOneFile implements DiskAccess {
 		return pci;
 	}
 
+	@Override
+	public ZooPC[] readObjects(long[] oids, int n) {
+	    final DataDeSerializer dds = ddsPool.get();
+		final ZooPC[] pcs = ObjectIterator.readObjects(getOidIndexForRead(), dds, oids, n);
+		ddsPool.offer(dds);
+		return pcs;
+	}
+
 	/**
 	 * Locate an object.
 	 * @param pc Hollow Object to read
@@ -334,7 +464,7 @@ public class DiskAccessOneFile implements DiskAccess {
 	@Override
 	public ServerResponse readObject(ZooPC pc) {
 		long oid = pc.jdoZooGetOid();
-		FilePos oie = oidIndex.findOid(oid);
+		FilePos oie = getOidIndexForRead().findOid(oid);
 		if (oie == null) {
 			return new ServerResponse(RESULT.OBJECT_NOT_FOUND,
 					"ERROR OID not found: " + Util.oidToString(oid));
@@ -357,7 +487,7 @@ public class DiskAccessOneFile implements DiskAccess {
 
 	@Override
 	public GenericObject readGenericObject(ZooClassDef def, long oid) {
-		FilePos oie = oidIndex.findOid(oid);
+		FilePos oie = getOidIndexForRead().findOid(oid);
 		if (oie == null) {
 			throw DBLogger.newObjectNotFoundException(
 					"ERROR OID not found: " + Util.oidToString(oid));
@@ -385,7 +515,7 @@ public class DiskAccessOneFile implements DiskAccess {
 	 */
 	@Override
 	public ZooPC readObject(DataDeSerializer dds, long oid) {
-		FilePos oie = oidIndex.findOid(oid);
+		FilePos oie = getOidIndexForRead().findOid(oid);
 		if (oie == null) {
 			throw DBLogger.newObjectNotFoundException("OID not found: " + Util.oidToString(oid));
 		}
@@ -395,7 +525,7 @@ public class DiskAccessOneFile implements DiskAccess {
 
 	@Override
 	public boolean checkIfObjectExists(long oid) {
-		FilePos oie = oidIndex.findOid(oid);
+		FilePos oie = getOidIndexForRead().findOid(oid);
 		return oie != null;
 	}
 
@@ -403,66 +533,54 @@ public class DiskAccessOneFile implements DiskAccess {
 	public void close() {
 		LOGGER.info("Closing DB session: {}", node.getDbPath());
 		try {
-		//	if (!sm.isLocked()) {
 			// Normally we would need a WLOCK because we modify the internal structure here (the list of Views).
 			// However, the view list is synchronized, so we get away with using an RLOCK (or probably even w/o lock...?)
+			// We may still hold a lock, for example if the session is closed after a failed commit.
+			if (!isLocked) {
 				sm.readLock(this);
-		//	}
+				isLocked = true;
+			}
+			sm.endTransaction(this);
 			sm.close(file);
 		} finally {
 			LOGGER.info(LOCKING_MARKER, "DAOF.close() release lock");
+			isLocked = false;
 			sm.releaseLock(this);
 		}
+		//write pending commits with relaxed durability before the file may be closed
+		try {
+			sm.flushCommits(this);
+			checkDeferredCommit();
+		} finally {
+			sm.closeFileIfUnused();
+		}
+	}
+
+	/**
+	 * Report a failure to write the last commit with relaxed durability of this session.
+	 */
+	private void checkDeferredCommit() {
+		long group = deferredCommitGroup;
+		if (group == 0) {
+			return;
+		}
+		//the failure is reported only once
+		deferredCommitGroup = 0;
+		if (!sm.checkCommitGroup(group)) {
+			//not written yet
+			deferredCommitGroup = group;
+		}
 	}
 
 	@Override
 	public long beginTransaction() {
 		txContext.reset();
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO Use R-Lock
-		//TODO
-		//TODO Move locking code into SessionManager
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-		//TODO
-//		if (ALLOW_READ_CONCURRENCY) {
-			sm.readLock(this);
-//		} else {
-//			sm.writeLock(this);
-//		}
-		//lock.lock();
-//		try {
-//			DBLogger.debugPrintln(1, "DAOF.beginTransaction() WLOCK");
-//			if (!lock.tryLock(10, TimeUnit.SECONDS)) {
-//				throw DBLogger.newUser("Deadlock?");
-//			}
-//		} catch (InterruptedException e) {
-//			Thread.currentThread().interrupt();
-//		}
-		txId = sm.getNextTxId();
+		//Read transactions do not lock the SessionManager. They read from the latest 
+		//snapshot and prevent that its pages are overwritten by pinning it.
+		txId = sm.beginTransaction(this);
 		return txId;
 	}
 	
-	private static boolean ALLOW_READ_CONCURRENCY = false;
-	@Deprecated
-	public static void allowReadConcurrency(boolean allowReadConcurrency) {
-		//System.err.println("Remove this and always allow read-concurrency!");
-		//currently we don't allow it, because it is unsafe.
-		//TODO Remove this. We allow this experimentally.
-		//It should be safe, because we have only limited concurrency at the moment:
-		//One WRITER or multiple READERS. Readlocks are only dropped by commit/rollback
-		//so a session should never be able to 'see' any updates that occur during a transaction.
-		ALLOW_READ_CONCURRENCY = allowReadConcurrency;
-	}
-	
 	@Override
 	public OptimisticTransactionResult rollbackTransaction() {
 		try {
@@ -479,10 +597,16 @@ public class DiskAccessOneFile implements DiskAccess {
 			}
 			txContext.setSchemaTxId(schemaIndex.getTxIdOfLastWrite());
 			txContext.setSchemaIndexTxId(schemaIndex.getTxIdOfLastWriteThatRequiresRefresh());
+			sm.endTransaction(this);
+			isReadOnlyCommit = false;
+			isCompactionRequested = false;
 			return txr;
 		} finally {
-			LOGGER.info(LOCKING_MARKER, "DAOF.rollback() release lock");
-			sm.releaseLock(this);
+			if (isLocked) {
+				LOGGER.info(LOCKING_MARKER, "DAOF.rollback() release lock");
+				isLocked = false;
+				sm.releaseLock(this);
+			}
 		}
 	}
 	
@@ -494,60 +618,37 @@ public class DiskAccessOneFile implements DiskAccess {
 		if (txContext.getSchemaIndexTxId() != schemaIndex.getTxIdOfLastWriteThatRequiresRefresh()) {
 			return new OptimisticTransactionResult(null, false, true);
 		}
-		txContext.addOidUpdates(updates);
-		List<Long> conflicts = sm.checkForConflicts(txId, txContext, trialRun);
-		txContext.reset();
+		List<Long> conflicts = sm.checkForConflicts(txId, txContext, updates, trialRun);
 		return new OptimisticTransactionResult(conflicts, false, false);
 	}
 	
 	@Override
 	public OptimisticTransactionResult checkTxConsistency(ArrayList<TxObjInfo> updates) {
-		//change read-lock to write-lock
-//		LOGGER.info(LOCKING_MARKER, "DAOF.checkTxConsistency() WLOCK 1");
-//		sm.release(this);
-//		//sm.getLock().writeLock(this);
-//		if (ALLOW_READ_CONCURRENCY) {
-//			//TODO should be read-lock! We allow this only for the tests to pass...
-//			sm.readLock(this);
-//		} else {
-//			sm.writeLock(this);
-//		}
-		
-		//TODO At the moment we don't need a writelock here, because we are only 'reading',
-		//and while we have a read-lock, no other thread can update anything.
-		//Also, the txManager/context is 'synchroinized', so there cannot be concurrency issues.
-
-		OptimisticTransactionResult ovr = checkConsistencyInternal(updates, true);
-		if (ovr.hasFailed()) {
-			return ovr;
-		}
-
-
-		//change write-lock to read-lock
-//		LOGGER.info(LOCKING_MARKER, "DAOF.checkTxConsistency() WLOCK 2");
-//		sm.release(this);
-//		//lock = sm.getReadLock();
-//		if (ALLOW_READ_CONCURRENCY) {
-//			sm.readLock(this);
-//		} else {
-//			sm.writeLock(this);
-//		}
-		
-		return ovr;
+		//We don't need a lock here, because we are only 'reading'. The txManager/context 
+		//is 'synchronized', so there cannot be concurrency issues.
+		return checkConsistencyInternal(updates, true);
 	}
 
 	@Override
-	public OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates) {
-		//change read-lock to write-lock
+	public OptimisticTransactionResult beginCommit(ArrayList<TxObjInfo> updates, 
+			boolean isReadOnly) {
+		//Committing sessions are serialized with a write-lock. Read transactions of other 
+		//sessions continue on their snapshot.
+		if (isReadOnly && !isLocked && !isCompactionRequested) {
+			//Read-only transactions don't write anything, they only need to be checked for 
+			//schema changes.
+			isReadOnlyCommit = true;
+			return checkConsistencyInternal(updates, false);
+		}
 		LOGGER.info(LOCKING_MARKER, "DAOF.beginCommit() WLOCK");
-		sm.releaseLock(this);
-		//sm.getLock().writeLock(this);
-		if (ALLOW_READ_CONCURRENCY) {
-			//TODO should be read-lock! We allow this only for the tests to pass...
-			sm.readLock(this);
-		} else {
-			sm.writeLock(this);
+		if (isLocked) {
+			sm.releaseLock(this);
 		}
+		sm.writeLock(this);
+		isLocked = true;
+		//Groups are written with the write lock, so a failed flush is always reported here
+		checkDeferredCommit();
+		file.resetReaders();
 
 		OptimisticTransactionResult ovr = checkConsistencyInternal(updates, false);
 		if (ovr.hasFailed()) {
@@ -557,25 +658,60 @@ public class DiskAccessOneFile implements DiskAccess {
 		//set data channel ID
 		file.startWriting(txId);
 		//set index channel ID
-		sm.startWriting(txId);
+		sm.startWriting(this, txId);
 
 		return ovr;
 	}
 
 	@Override
-	public void commit() {
+	public void commit(boolean isRelaxedDurability) {
+		if (isReadOnlyCommit) {
+			isReadOnlyCommit = false;
+			txContext.setSchemaTxId(schemaIndex.getTxIdOfLastWrite());
+			txContext.setSchemaIndexTxId(schemaIndex.getTxIdOfLastWriteThatRequiresRefresh());
+			sm.commitReadOnly(txId);
+			sm.endTransaction(this);
+			txContext.reset();
+			return;
+		}
+		boolean isCompaction = isCompactionRequested;
+		isCompactionRequested = false;
+		if (isCompaction) {
+			//Move index pages that are in the area that would be free in a compact file
+			int minPageId = freeIndex.getPageCount() - freeIndex.getFreePageCount();
+			oidIndex.relocatePages(minPageId);
+			schemaIndex.relocatePages(minPageId);
+		}
 		int oidPage = file.writeIndex(oidIndex::write);
 		int schemaPage1 = schemaIndex.write(file, txId);
 		txContext.setSchemaTxId(schemaIndex.getTxIdOfLastWrite());
 		txContext.setSchemaIndexTxId(schemaIndex.getTxIdOfLastWriteThatRequiresRefresh());
+		if (isCompaction) {
+			freeIndex.trim();
+		}
 
-		sm.commitInfrastructure(file, oidPage, schemaPage1, oidIndex.getLastUsedOid(), txId);
+		long commitGroup = sm.commitInfrastructure(file, oidPage, schemaPage1, 
+				oidIndex.getLastUsedOid(), txId, isRelaxedDurability);
 		txContext.reset();
 
 		//we release the lock only if the commit succeeds. Otherwise we keep the lock until
 		//everything was rolled back.
 		LOGGER.info(LOCKING_MARKER, "DAOF.commit() lock release");
-		sm.releaseLock(this);
+		isLocked = false;
+		//Other sessions may add their commits to our group before it is written.
+		//We keep our snapshot pinned until then, because the freed pages are still in use.
+		//With relaxed durability, the SessionManager protects the freed pages instead.
+		try {
+			//This writes the group if we are its last member
+			sm.releaseLock(this);
+			if (!isRelaxedDurability) {
+				sm.waitForCommitGroup(commitGroup);
+			} else if (commitGroup != 0) {
+				deferredCommitGroup = commitGroup;
+			}
+		} finally {
+			sm.endTransaction(this);
+		}
 	}
 
 	/**
@@ -590,7 +726,8 @@ public class DiskAccessOneFile implements DiskAccess {
 		//Empty file buffers. For now we just flush them.
 		file.flush(); //TODO revert for file???
 		
-		RootPage rootPage = sm.getCurrentRootPage();
+		//This includes commits of other sessions that have not been written yet
+		RootPage rootPage = sm.getLatestRootPage();
 		//revert --> back to previous (expected) schema-tx-ID
 		schemaIndex.revert(rootPage.getSchemaIndexPage(), txContext.getSchemaTxId());
 		//We use the historic page count to avoid page-leaking
@@ -608,45 +745,118 @@ public class DiskAccessOneFile implements DiskAccess {
 	 * Defines an index and populates it. All objects are put into the cache. This is not 
 	 * necessarily useful, but it is a one-off operation. Otherwise we would need a special
 	 * purpose implementation of the deserializer, which would have the need for a cache removed.
+	 * <p>
+	 * The entries are collected and sorted first, so that the index can be built bottom-up.
 	 */
 	@Override
 	public void defineIndex(ZooClassDef def, ZooFieldDef field, boolean isUnique) {
 		SchemaIndexEntry se = schemaIndex.getSchema(def);
 		LongLongIndex fieldInd = se.defineIndex(field, isUnique);
+		if (fieldInd == null) {
+			defineStringIndex(se, field, isUnique);
+			return;
+		}
 		
 		//fill index with existing objects
 		PagedPosIndex ind = se.getObjectIndexLatestSchemaVersion();
 		PagedPosIndex.ObjectPosIterator iter = ind.iteratorObjects();
         DataDeSerializerNoClass dds = new DataDeSerializerNoClass(fileInAP);
-        if (field.isPrimitiveType()) {
-			while (iter.hasNext()) {
-				long pos = iter.nextPos();
-				dds.seekPos(pos);
-				//first read the key, then afterwards the field!
-				long key = dds.getAttrAsLong(def, field);
-				if (isUnique) {
-					if (!fieldInd.insertLongIfNotSet(key, dds.getLastOid())) {
-						throw DBLogger.newUser("Duplicate entry in unique index: " +
-								Util.oidToString(dds.getLastOid()) + "  v=" + key);
-					}
-				} else {
-					fieldInd.insertLong(key, dds.getLastOid());
-				}
-			}
-        } else {
-			while (iter.hasNext()) {
-				long pos = iter.nextPos();
-				dds.seekPos(pos);
-				//first read the key, then afterwards the field!
-				long key = dds.getAttrAsLongObjectNotNull(def, field);
-				fieldInd.insertLong(key, dds.getLastOid());
+        long[] keys = new long[1024];
+        long[] oids = new long[1024];
+        int n = 0;
+		while (iter.hasNext()) {
+			long pos = iter.nextPos();
+			dds.seekPos(pos);
+			//first read the key, then afterwards the field!
+			long key;
+			if (field.isPrimitiveType()) {
+				key = dds.getAttrAsLong(def, field);
+			} else {
+				key = dds.getAttrAsLongObjectNotNull(def, field);
 				//TODO handle null values:
 				//-ignore them?
 				//-use special value?
 			}
-			//DatabaseLogger.debugPrintln(0, "FIXME defineIndex()");
-        }
+			if (n == keys.length) {
+				keys = Arrays.copyOf(keys, n * 2);
+				oids = Arrays.copyOf(oids, n * 2);
+			}
+			keys[n] = key;
+			oids[n] = dds.getLastOid();
+			n++;
+		}
         iter.close();
+
+        LongLongIndex.sort(keys, oids, n);
+        //unique String indexes use a non-unique index
+        if (isUnique && !field.isString() && n > 0) {
+        	int n2 = 1;
+        	for (int i = 1; i < n; i++) {
+        		if (keys[i] == keys[n2-1]) {
+        			if (field.isPrimitiveType()) {
+						throw DBLogger.newUser("Duplicate entry in unique index: " +
+								Util.oidToString(oids[i]) + "  v=" + keys[i]);
+        			}
+        			//references: the last entry replaces previous entries
+        			oids[n2-1] = oids[i];
+        		} else {
+        			keys[n2] = keys[i];
+        			oids[n2] = oids[i];
+        			n2++;
+        		}
+        	}
+        	n = n2;
+        }
+        fieldInd.bulkLoad(keys, oids, n);
+	}
+
+	/**
+	 * Populate a new {@link PagedStringIndex}. The serialized objects do not store the String 
+	 * directly, so the objects are read completely.
+	 */
+	private void defineStringIndex(SchemaIndexEntry se, ZooFieldDef field, boolean isUnique) {
+		PagedStringIndex strInd = se.getStringIndex(field);
+		ObjectPosIterator iter = new ObjectPosIterator(
+				se.getObjectIndexIteratorLatestSchemaVersion(), cache, objectReader, true, file);
+		String[] keys = new String[1024];
+		long[] oids = new long[1024];
+		int n = 0;
+		try {
+			while (iter.hasNext()) {
+				ZooPC pc = iter.next();
+				if (n == keys.length) {
+					keys = Arrays.copyOf(keys, n * 2);
+					oids = Arrays.copyOf(oids, n * 2);
+				}
+				if (pc instanceof GenericObject) {
+					keys[n] = (String) ((GenericObject) pc).getField(field);
+				} else {
+					keys[n] = (String) field.getJavaField().get(pc);
+				}
+				oids[n] = pc.jdoZooGetOid();
+				n++;
+			}
+		} catch (IllegalAccessException e) {
+			throw DBLogger.newFatal("Error accessing field: " + field.getName(), e);
+		} finally {
+			iter.close();
+		}
+
+		if (isUnique) {
+			HashMap<String, Long> values = new HashMap<>();
+			for (int i = 0; i < n; i++) {
+				if (keys[i] == null) {
+					//'null' is not checked for uniqueness, see DataSink1P.updateStringIndex()
+					continue;
+				}
+				Long oid2 = values.put(keys[i], oids[i]);
+				if (oid2 != null) {
+					throw DBLogger.newUser("Duplicate entry in unique index: " +
+							Util.oidToString(oids[i]) + "  v=" + keys[i]);
+				}
+			}
+		}
+		strInd.bulkLoad(keys, oids, n);
 	}
 
 	@Override
@@ -655,12 +865,71 @@ public class DiskAccessOneFile implements DiskAccess {
 		return e.removeIndex(field);
 	}
 
+	@Override
+	public void defineCompositeIndex(CompositeIndexDef index) {
+		SchemaIndexEntry se = schemaIndex.getSchema(index.getDeclaringType());
+		LongLongIndex compInd = se.defineCompositeIndex(index);
+
+		//fill index with existing objects of the class and its sub-classes
+		ArrayList<ZooClassDef> defs = new ArrayList<>();
+		defs.add(index.getDeclaringType());
+		for (int i = 0; i < defs.size(); i++) {
+			for (ZooClassProxy sub: defs.get(i).getVersionProxy().getSubProxies()) {
+				defs.add(sub.getSchemaDef());
+			}
+		}
+		ZooFieldDef[] fields = index.getFields();
+		long[] values = new long[fields.length];
+		DataDeSerializerNoClass dds = new DataDeSerializerNoClass(fileInAP);
+		long[] keys = new long[1024];
+		long[] oids = new long[1024];
+		int n = 0;
+		for (ZooClassDef def: defs) {
+			SchemaIndexEntry seDef = schemaIndex.getSchema(def);
+			if (seDef == null) {
+				//sub-class is not committed yet
+				continue;
+			}
+			PagedPosIndex ind = seDef.getObjectIndexLatestSchemaVersion();
+			PagedPosIndex.ObjectPosIterator iter = ind.iteratorObjects();
+			while (iter.hasNext()) {
+				long pos = iter.nextPos();
+				for (int i = 0; i < fields.length; i++) {
+					//every read starts with the object header
+					dds.seekPos(pos);
+					if (fields[i].isPrimitiveType()) {
+						values[i] = dds.getAttrAsLong(def, fields[i]);
+					} else {
+						values[i] = dds.getAttrAsLongObjectNotNull(def, fields[i]);
+					}
+				}
+				if (n == keys.length) {
+					keys = Arrays.copyOf(keys, n * 2);
+					oids = Arrays.copyOf(oids, n * 2);
+				}
+				keys[n] = index.toKey(values);
+				oids[n] = dds.getLastOid();
+				n++;
+			}
+			iter.close();
+		}
+
+		LongLongIndex.sort(keys, oids, n);
+		compInd.bulkLoad(keys, oids, n);
+	}
+
+	@Override
+	public boolean removeCompositeIndex(CompositeIndexDef index) {
+		SchemaIndexEntry e = schemaIndex.getSchema(index.getDeclaringType());
+		return e.removeCompositeIndex(index);
+	}
+
     /**
      * Get the class of a given object.
      */
 	@Override
 	public long getObjectClass(long oid) {
-		FilePos oie = oidIndex.findOid(oid);
+		FilePos oie = getOidIndexForRead().findOid(oid);
 		if (oie == null) {
 			throw DBLogger.newObjectNotFoundException("OID not found: " + Util.oidToString(oid));
 		}
@@ -687,6 +956,10 @@ public class DiskAccessOneFile implements DiskAccess {
 			return file.statsGetReadCountUnique();
 		case IO_PAGE_WRITE_CNT:
 			return file.statsGetWriteCount();
+		case IO_PAGE_CACHE_HIT_CNT:
+			return sm.getFile().statsGetCacheHitCount();
+		case IO_PAGE_CACHE_MISS_CNT:
+			return sm.getFile().statsGetCacheMissCount();
 		case DB_PAGE_CNT:
 			return file.statsGetPageCount();
 		case DB_PAGE_CNT_IDX_FSM:
@@ -715,6 +988,10 @@ public class DiskAccessOneFile implements DiskAccess {
 	        }
 	        return nPosIndexPages;
 		}
+		case TX_COMMIT_CNT:
+			return sm.statsGetCommitCount();
+		case TX_COMMIT_GROUP_CNT:
+			return sm.statsGetCommitGroupCount();
 		case TX_MGR_BUFFERED_TX_CNT:
 			return sm.getTxManager().statsGetBufferedTxCount();
 		case TX_MGR_BUFFERED_OID_CNT:
@@ -724,6 +1001,44 @@ public class DiskAccessOneFile implements DiskAccess {
 		}
 	}
 
+	@Override
+	public void requestCompaction() {
+		isCompactionRequested = true;
+	}
+
+	@Override
+	public long[] getOidsForCompaction(ZooClassProxy def) {
+		int minPageId;
+		//The free space manager is modified by committing sessions
+		if (!isLocked) {
+			sm.readLock(this);
+			try {
+				minPageId = freeIndex.getPageCount() - freeIndex.getFreePageCount();
+			} finally {
+				sm.releaseLock(this);
+			}
+		} else {
+			minPageId = freeIndex.getPageCount() - freeIndex.getFreePageCount();
+		}
+
+		PrimLongArrayList oids = new PrimLongArrayList();
+		SchemaIndexEntry se = getSchemaIndexForRead().getSchema(def.getSchemaId());
+		if (se == null) {
+			return oids.toArray();
+		}
+		DataDeSerializerNoClass dds = new DataDeSerializerNoClass(fileInAP);
+		PagedPosIndex.ObjectPosIteratorMerger it = se.getObjectIndexIterator();
+		while (it.hasNextOPI()) {
+			long pos = it.nextPos();
+			if (BitTools.getPage(pos) >= minPageId) {
+				dds.seekPos(pos);
+				oids.add(dds.getOid());
+			}
+		}
+		it.close();
+		return oids.toArray();
+	}
+
     @Override
     public String checkDb() {
         final byte ROOT = 1;
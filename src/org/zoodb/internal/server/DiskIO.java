@@ -19,9 +19,26 @@ public interface DiskIO {
 
 	int DB_FILE_TYPE_ID = 13031975;
 	int DB_FILE_VERSION_MAJ = 1;
-	int DB_FILE_VERSION_MIN = 5;
+	int DB_FILE_VERSION_MIN = 10;
+	//Oldest minor version that can still be read
+	int DB_FILE_VERSION_MIN_READABLE = 5;
+	//First minor version with compact Strings, older files are written with legacy Strings
+	int DB_FILE_VERSION_MIN_COMPACT_STRINGS = 6;
+	//First minor version with compressed data pages, older files are written uncompressed
+	int DB_FILE_VERSION_MIN_COMPRESSED_PAGES = 7;
+	//First minor version with a free space list, older files use a free space index
+	int DB_FILE_VERSION_MIN_FREE_SPACE_LIST = 8;
+	//First minor version with composite indexes
+	int DB_FILE_VERSION_MIN_COMPOSITE_INDEX = 9;
+	//First minor version with String indexes that store the full keys
+	int DB_FILE_VERSION_MIN_STRING_INDEX = 10;
 
 	short PAGE_FORMAT_VERSION = 1;
+	//Compressed data pages, see StorageWriter. Only used in files with a minor version of
+	//DB_FILE_VERSION_MIN_COMPRESSED_PAGES or later
+	short PAGE_FORMAT_VERSION_COMPRESSED = 2;
+	//A compressed data page holds at most this many pages of uncompressed data
+	int PAGE_COMPRESSION_MAX_RATIO = 4;
 	
 	enum PAGE_TYPE {
 		DB_HEADER(1, false), //not used
@@ -38,6 +55,8 @@ public interface DiskIO {
 		GENERIC_INDEX(12),
 		POS_INDEX(13),
 		FIELD_INDEX(14),
+		FREE_LIST(15),
+		STRING_INDEX(16),
 		;
 		
 		private final byte id;
@@ -67,7 +86,13 @@ public interface DiskIO {
 	int S_LONG = 8;
 	int S_SHORT = 2;
 	
+	//Compact String encodings. Legacy Strings start with a non-negative int length, 
+	//i.e. their first byte is never negative.
+	byte STRING_LATIN1 = (byte) 0x80;
+	byte STRING_UTF8 = (byte) 0x81;
+	
 	int PAGE_HEADER_SIZE = 12; //type, dummy, tx-id
 	int PAGE_HEADER_SIZE_DATA = PAGE_HEADER_SIZE + 8; //class-oid
+	int PAGE_HEADER_SIZE_COMPRESSED = PAGE_HEADER_SIZE_DATA + 8; //max-pos, data-end
 
 }
@@ -45,7 +45,7 @@ public class FileHeader {
 		            "; Software version: " + 
 		            DiskIO.DB_FILE_VERSION_MAJ + "." + DiskIO.DB_FILE_VERSION_MIN);
 		}
-		if (min != DiskIO.DB_FILE_VERSION_MIN) { 
+		if (min < DiskIO.DB_FILE_VERSION_MIN_READABLE || min > DiskIO.DB_FILE_VERSION_MIN) { 
 			header.error.add("Illegal minor file version: " + maj + "." + min +
 					"; Software version: " + 
 					DiskIO.DB_FILE_VERSION_MAJ + "." + DiskIO.DB_FILE_VERSION_MIN);
@@ -81,6 +81,45 @@ public class FileHeader {
 		return versionMajor;
 	}
 
+	/**
+	 * @return Whether the file uses the compact String encoding. Older files remain readable,
+	 * but new Strings are written in the legacy encoding.
+	 */
+	public boolean hasCompactStrings() {
+		return versionMinor >= DiskIO.DB_FILE_VERSION_MIN_COMPACT_STRINGS;
+	}
+
+	/**
+	 * @return Whether the file can store compressed data pages. Older files remain 
+	 * uncompressed.
+	 */
+	public boolean hasCompressedPages() {
+		return versionMinor >= DiskIO.DB_FILE_VERSION_MIN_COMPRESSED_PAGES;
+	}
+
+	/**
+	 * @return Whether the file stores free pages in a free space list. Older files keep 
+	 * their free space index.
+	 */
+	public boolean hasFreeSpaceList() {
+		return versionMinor >= DiskIO.DB_FILE_VERSION_MIN_FREE_SPACE_LIST;
+	}
+
+	/**
+	 * @return Whether the file can store composite indexes.
+	 */
+	public boolean hasCompositeIndexes() {
+		return versionMinor >= DiskIO.DB_FILE_VERSION_MIN_COMPOSITE_INDEX;
+	}
+
+	/**
+	 * @return Whether String fields are indexed with their full value. Older files keep 
+	 * indexing String fields with 64 bit keys.
+	 */
+	public boolean hasStringKeyIndexes() {
+		return versionMinor >= DiskIO.DB_FILE_VERSION_MIN_STRING_INDEX;
+	}
+
 	public int getPageSize() {
 		return pageSize;
 	}
@@ -33,8 +33,25 @@ public interface IOResourceProvider {
 
 	void returnInputChannel(StorageChannelInput in);
 
+	/**
+	 * Hint that a page will be read soon. This method is thread safe.
+	 * @param pageId The page ID
+	 */
+	void readAhead(int pageId);
+
 	void flush();
 
+	/**
+	 * Write all buffered pages without forcing them to disk.
+	 */
+	void flushNoForce();
+
+	/**
+	 * Discard buffered pages of all input channels. This is required when pages may have been
+	 * rewritten by other sessions.
+	 */
+	void resetReaders();
+
 	int writeIndex(ToIntFunction<StorageChannelOutput> writer);
 	
 	void startWriting(long txId);
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.zoodb.internal.util.PrimLongMapZ;
+
+/**
+ * A size bounded cache for raw pages that is shared by all channels of a {@link StorageRoot}.
+ * Pages are evicted with the CLOCK (second chance) algorithm.
+ * <p>
+ * Writing a page invalidates the cached copy before and after the write. To avoid that a 
+ * page is cached that was read from disk while it was being overwritten, every invalidation
+ * increments a generation counter and records it as the write generation of the page. 
+ * A page is only added to the cache if it was not written since the read started. Only the 
+ * most recent writes are remembered, reads that started before them are not cached.
+ * <p>
+ * The cache is per database file, because page IDs are only unique within a file.
+ *
+ * @author Tilmann Zaeschke
+ *
+ */
+final class PageCache {
+
+	private final int pageSize;
+	private final long[] pageIds;
+	private final byte[][] pages;
+	private final int[] lengths;
+	private final boolean[] referenced;
+	private final PrimLongMapZ<Integer> slots;
+	private int size = 0;
+	private int clockHand = 0;
+	//Slots of invalidated pages, they are reused before any page is evicted
+	private final int[] freeSlots;
+	private int freeCount = 0;
+
+	private long generation = 0;
+	//The generation of the most recent writes, as ring buffer of page ID and generation.
+	private final PrimLongMapZ<Long> writeGenerations;
+	private final long[] writePageIds;
+	private final long[] writeGens;
+	private int writePos = 0;
+	//Writes up to this generation have been forgotten
+	private long minGeneration = 0;
+
+	private long statHit = 0;
+	private long statMiss = 0;
+
+	/**
+	 * @param maxPages Maximum number of cached pages
+	 * @param pageSize page size in bytes
+	 */
+	PageCache(int maxPages, int pageSize) {
+		this.pageSize = pageSize;
+		pageIds = new long[maxPages];
+		pages = new byte[maxPages][];
+		lengths = new int[maxPages];
+		referenced = new boolean[maxPages];
+		slots = new PrimLongMapZ<>(maxPages);
+		freeSlots = new int[maxPages];
+		writeGenerations = new PrimLongMapZ<>(maxPages);
+		writePageIds = new long[maxPages];
+		writeGens = new long[maxPages];
+	}
+
+	/**
+	 * Copy a cached page into the buffer.
+	 * @param buf The target buffer
+	 * @param pageId The page ID
+	 * @return {@code true} if the page was found in the cache, otherwise {@code false}
+	 */
+	synchronized boolean read(ByteBuffer buf, long pageId) {
+		Integer slot = slots.get(pageId);
+		if (slot == null) {
+			statMiss++;
+			return false;
+		}
+		statHit++;
+		referenced[slot] = true;
+		buf.put(pages[slot], 0, Math.min(lengths[slot], buf.remaining()));
+		return true;
+	}
+
+	/**
+	 * @param pageId The page ID
+	 * @return {@code true} if the page is in the cache. This does not count as cache hit.
+	 */
+	synchronized boolean contains(long pageId) {
+		return slots.containsKey(pageId);
+	}
+
+	/**
+	 * @return The maximum number of cached pages.
+	 */
+	int getCapacity() {
+		return pageIds.length;
+	}
+
+	/**
+	 *
+	 * @return The current write generation. This has to be passed to
+	 * {@link #add(ByteBuffer, long, int, long)} after a page has been read from disk.
+	 */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Add a page after it was read from disk.
+	 * @param buf The buffer, the page data is expected between {@code pos} and the
+	 * buffer's position
+	 * @param pageId The page ID
+	 * @param pos The position in the buffer where the page starts
+	 * @param generation The generation before the page was read
+	 */
+	synchronized void add(ByteBuffer buf, long pageId, int pos, long generation) {
+		if (generation < minGeneration || slots.containsKey(pageId)) {
+			return;
+		}
+		Long written = writeGenerations.get(pageId);
+		if (written != null && written > generation) {
+			//The page was written while it was read
+			return;
+		}
+		int len = buf.position() - pos;
+		int slot = nextFreeSlot();
+		byte[] page = pages[slot];
+		if (page == null) {
+			page = new byte[pageSize];
+			pages[slot] = page;
+		}
+		ByteBuffer src = buf.duplicate();
+		src.position(pos);
+		src.get(page, 0, len);
+		lengths[slot] = len;
+		pageIds[slot] = pageId;
+		referenced[slot] = false;
+		slots.put(pageId, slot);
+	}
+
+	private int nextFreeSlot() {
+		if (freeCount > 0) {
+			return freeSlots[--freeCount];
+		}
+		if (size < pageIds.length) {
+			return size++;
+		}
+		//CLOCK: evict the first page that was not referenced since the last round
+		while (referenced[clockHand]) {
+			referenced[clockHand] = false;
+			clockHand = (clockHand + 1) % pageIds.length;
+		}
+		int slot = clockHand;
+		clockHand = (clockHand + 1) % pageIds.length;
+		slots.remove(pageIds[slot]);
+		return slot;
+	}
+
+	/**
+	 * Remove a page from the cache. This has to be called before and after the page is
+	 * written.
+	 * @param pageId The page ID
+	 */
+	synchronized void invalidate(long pageId) {
+		generation++;
+		//forget the oldest write
+		if (writeGens[writePos] != 0) {
+			long oldPageId = writePageIds[writePos];
+			long oldGen = writeGens[writePos];
+			Long latest = writeGenerations.get(oldPageId);
+			if (latest != null && latest == oldGen) {
+				writeGenerations.remove(oldPageId);
+			}
+			minGeneration = oldGen;
+		}
+		writePageIds[writePos] = pageId;
+		writeGens[writePos] = generation;
+		writePos = (writePos + 1) % writeGens.length;
+		writeGenerations.put(pageId, generation);
+
+		Integer slot = slots.remove(pageId);
+		if (slot != null) {
+			pageIds[slot] = -1;
+			referenced[slot] = false;
+			freeSlots[freeCount++] = slot;
+		}
+	}
+
+	synchronized void clear() {
+		generation++;
+		//reads that started before this are not cached
+		minGeneration = generation;
+		writeGenerations.clear();
+		Arrays.fill(writeGens, 0);
+		writePos = 0;
+		slots.clear();
+		size = 0;
+		freeCount = 0;
+		clockHand = 0;
+	}
+
+	synchronized long statsGetHitCount() {
+		return statHit;
+	}
+
+	synchronized long statsGetMissCount() {
+		return statMiss;
+	}
+}
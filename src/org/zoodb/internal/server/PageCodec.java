@@ -0,0 +1,185 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server;
+
+import java.util.Arrays;
+
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * A simple LZ77 codec for compressed data pages.
+ * <p>
+ * The compressed data is a sequence of literal runs and matches:
+ * {@code varint nLiterals, literals, varint matchLength [, varint matchOffset]}.
+ * The offset is omitted if the match length is {@code 0}.
+ * <p>
+ * Data can be compressed in several segments, matches may refer to data of earlier segments.
+ * Matches are only used if their encoding is not longer than the match itself. Therefore
+ * compressing a segment of {@code n} bytes never results in more than
+ * {@code n + MAX_OVERHEAD} bytes, regardless of the data.
+ *
+ * @author Tilmann Zaeschke
+ *
+ */
+final class PageCodec {
+
+	/** Maximum number of bytes that compressing a segment can add to the segment size. */
+	static final int MAX_OVERHEAD = 6;
+
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_BITS = 12;
+
+	private final int[] table = new int[1 << HASH_BITS];
+
+	PageCodec() {
+		reset();
+	}
+
+	/**
+	 * Forget all previously compressed segments.
+	 */
+	void reset() {
+		Arrays.fill(table, -1);
+	}
+
+	/**
+	 * Compress a segment. Matches may refer to the segments that have been compressed
+	 * since the last call to {@link #reset()}.
+	 * @param src Source data
+	 * @param start Start of the segment in {@code src}
+	 * @param end End of the segment in {@code src}
+	 * @param dst Destination, it must have space for {@code end - start + MAX_OVERHEAD} bytes
+	 * @param dstPos Start position in {@code dst}
+	 * @return The end position in {@code dst}
+	 */
+	int compress(byte[] src, int start, int end, byte[] dst, int dstPos) {
+		int lit = start;
+		int i = start;
+		while (i + MIN_MATCH <= end) {
+			int v = getInt(src, i);
+			int h = (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+			int ref = table[h];
+			table[h] = i;
+			//the table may contain positions of aborted segments, which are ahead of 'i'
+			if (ref < 0 || ref >= i || getInt(src, ref) != v) {
+				i++;
+				continue;
+			}
+			int len = MIN_MATCH;
+			while (i + len < end && src[ref + len] == src[i + len]) {
+				len++;
+			}
+			int nLit = i - lit;
+			if (varIntSize(nLit) + varIntSize(len) + varIntSize(i - ref) > len) {
+				i++;
+				continue;
+			}
+			dstPos = putLiterals(src, lit, nLit, dst, dstPos);
+			dstPos = putVarInt(dst, dstPos, len);
+			dstPos = putVarInt(dst, dstPos, i - ref);
+			i += len;
+			lit = i;
+		}
+		//The segment always ends with a literal run
+		dstPos = putLiterals(src, lit, end - lit, dst, dstPos);
+		dst[dstPos++] = 0;
+		return dstPos;
+	}
+
+	/**
+	 * Decompress data.
+	 * @param src The compressed data
+	 * @param srcPos Start position in {@code src}
+	 * @param dst Destination
+	 * @param dstPos Start position in {@code dst}
+	 * @param dstEnd End position in {@code dst}, i.e. {@code dstPos} + uncompressed size
+	 */
+	static void decompress(byte[] src, int srcPos, byte[] dst, int dstPos, int dstEnd) {
+		try {
+			while (dstPos < dstEnd) {
+				int nLit = 0;
+				for (int shift = 0; ; shift += 7) {
+					byte b = src[srcPos++];
+					nLit |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				System.arraycopy(src, srcPos, dst, dstPos, nLit);
+				srcPos += nLit;
+				dstPos += nLit;
+				int len = 0;
+				for (int shift = 0; ; shift += 7) {
+					byte b = src[srcPos++];
+					len |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				if (len == 0) {
+					continue;
+				}
+				int offs = 0;
+				for (int shift = 0; ; shift += 7) {
+					byte b = src[srcPos++];
+					offs |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				//byte-wise copy, matches may overlap with their own output
+				int ref = dstPos - offs;
+				for (int j = 0; j < len; j++) {
+					dst[dstPos++] = dst[ref + j];
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw DBLogger.newFatal("Corrupted compressed page.", e);
+		}
+		if (dstPos != dstEnd) {
+			throw DBLogger.newFatal("Corrupted compressed page, size mismatch: " +
+					dstPos + " vs " + dstEnd);
+		}
+	}
+
+	private static int putLiterals(byte[] src, int pos, int n, byte[] dst, int dstPos) {
+		dstPos = putVarInt(dst, dstPos, n);
+		System.arraycopy(src, pos, dst, dstPos, n);
+		return dstPos + n;
+	}
+
+	private static int putVarInt(byte[] dst, int dstPos, int v) {
+		while ((v & ~0x7F) != 0) {
+			dst[dstPos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		dst[dstPos++] = (byte) v;
+		return dstPos;
+	}
+
+	private static int varIntSize(int v) {
+		int n = 1;
+		while ((v & ~0x7F) != 0) {
+			v >>>= 7;
+			n++;
+		}
+		return n;
+	}
+
+	private static int getInt(byte[] a, int i) {
+		return (a[i] & 0xFF) | (a[i+1] & 0xFF) << 8 | (a[i+2] & 0xFF) << 16 | a[i+3] << 24;
+	}
+}
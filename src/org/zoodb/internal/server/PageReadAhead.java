@@ -0,0 +1,155 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongPredicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A background thread that reads pages into the {@link PageCache} before they are required.
+ * <p>
+ * Requests are only hints. They are dropped if the queue is full, and failed reads are
+ * ignored, because the page is read again when it is actually required.
+ * The thread is started with the first request.
+ *
+ * @author Tilmann Zaeschke
+ *
+ */
+final class PageReadAhead {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PageReadAhead.class);
+
+	private static final int QUEUE_SIZE = 64;
+
+	private final FileChannel fc;
+	private final PageCache cache;
+	private final LongPredicate isLogged;
+	// use LONG to enforce long-arithmetic in calculations
+	private final long pageSize;
+	private final long[] queue = new long[QUEUE_SIZE];
+	private int queueStart = 0;
+	private int queueSize = 0;
+	private Thread thread = null;
+	private boolean isClosed = false;
+
+	/**
+	 * @param fc The database file
+	 * @param cache The cache that receives the pages
+	 * @param pageSize The page size
+	 * @param isLogged Pages for which this returns {@code true} have a newer version in the
+	 * write-ahead log, they are not read from the file.
+	 */
+	PageReadAhead(FileChannel fc, PageCache cache, int pageSize, LongPredicate isLogged) {
+		this.fc = fc;
+		this.cache = cache;
+		this.isLogged = isLogged;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Request a page to be read in the background.
+	 * @param pageId The page ID
+	 */
+	synchronized void request(long pageId) {
+		if (isClosed || queueSize == QUEUE_SIZE) {
+			return;
+		}
+		queue[(queueStart + queueSize) % QUEUE_SIZE] = pageId;
+		queueSize++;
+		if (thread == null) {
+			thread = new Thread(this::run, "ZooDB read-ahead");
+			thread.setDaemon(true);
+			thread.start();
+		} else {
+			notify();
+		}
+	}
+
+	private synchronized long take() {
+		while (queueSize == 0 && !isClosed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+		}
+		if (isClosed) {
+			return -1;
+		}
+		long pageId = queue[queueStart];
+		queueStart = (queueStart + 1) % QUEUE_SIZE;
+		queueSize--;
+		return pageId;
+	}
+
+	private void run() {
+		ByteBuffer buf = ByteBuffer.allocate((int) pageSize);
+		long pageId;
+		while ((pageId = take()) >= 0) {
+			if (cache.contains(pageId)) {
+				continue;
+			}
+			long generation = cache.getGeneration();
+			if (isLogged.test(pageId)) {
+				continue;
+			}
+			buf.clear();
+			try {
+				fc.read(buf, pageId * pageSize);
+			} catch (IOException e) {
+				LOGGER.debug("Read-ahead failed for page {}: {}", pageId, e.getMessage());
+				continue;
+			}
+			if (buf.position() > 0) {
+				cache.add(buf, pageId, 0, generation);
+			}
+		}
+	}
+
+	/**
+	 * Discard pending requests and wait for the thread to finish its current read. This has
+	 * to be called before the file channel is closed.
+	 */
+	void close() {
+		Thread t;
+		synchronized (this) {
+			isClosed = true;
+			queueSize = 0;
+			notify();
+			t = thread;
+		}
+		if (t == null) {
+			return;
+		}
+		boolean isInterrupted = false;
+		while (t.isAlive()) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server;
+
+import org.zoodb.internal.server.index.PagedOidIndex;
+import org.zoodb.internal.server.index.SchemaIndex;
+
+/**
+ * Read-only indexes of a committed database state.
+ * <p>
+ * The indexes in the {@link SessionManager} are modified in place by committing sessions.
+ * Sessions that read while another session commits use a snapshot instead. The snapshot
+ * is loaded from the root page of a commit. Its pages cannot be overwritten by other
+ * commits as long as the reading session has pinned its snapshot in the SessionManager.
+ * <p>
+ * Snapshots are not thread-safe, every session uses its own instances. Index pages are
+ * loaded lazily.
+ *
+ * @author Tilmann Zaeschke
+ */
+final class ReadSnapshot {
+
+	private final RootPage rootPage;
+	private final PagedOidIndex oidIndex;
+	private final SchemaIndex schemaIndex;
+
+	ReadSnapshot(IOResourceProvider file, RootPage rootPage) {
+		this.rootPage = rootPage;
+		this.oidIndex = new PagedOidIndex(file, rootPage.getOidIndexPage(),
+				rootPage.getLastUsedOID());
+		this.schemaIndex = SchemaIndex.loadReadOnly(file, rootPage.getSchemaIndexPage());
+	}
+
+	RootPage getRootPage() {
+		return rootPage;
+	}
+
+	PagedOidIndex getOidIndex() {
+		return oidIndex;
+	}
+
+	SchemaIndex getSchemaIndex() {
+		return schemaIndex;
+	}
+}
@@ -15,6 +15,8 @@
  */
 package org.zoodb.internal.server;
 
+import java.nio.ByteBuffer;
+
 import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
 
 final class RootPage {
@@ -114,6 +116,60 @@ final class RootPage {
         out.writeLong(commitId);
     }
 
+	/**
+	 * @return A copy of this root page. This is used to create a new root page during commit,
+	 * because the current root page may still be used by concurrent readers.
+	 */
+	RootPage copy() {
+		RootPage page = new RootPage();
+		page.txId = txId;
+		page.userPage = userPage;
+		page.oidPage = oidPage;
+		page.schemaPage = schemaPage;
+		page.indexPage = indexPage;
+		page.freeSpaceIndexPage = freeSpaceIndexPage;
+		page.pageCount = pageCount;
+		page.commitId = commitId;
+		page.lastUsedOID = lastUsedOID;
+		page.lastUsedPageId = lastUsedPageId;
+		return page;
+	}
+
+	/**
+	 * Write the content of this root page to a log record.
+	 * @param txId Transaction ID
+	 * @param buf The log buffer
+	 * @see #readLogRecord(ByteBuffer)
+	 * @see WriteAheadLog
+	 */
+	void writeLogRecord(long txId, ByteBuffer buf) {
+		buf.putLong(txId);
+		buf.putInt(userPage);
+		buf.putInt(oidPage);
+		buf.putInt(schemaPage);
+		buf.putInt(indexPage);
+		buf.putInt(freeSpaceIndexPage);
+		buf.putInt(pageCount);
+		buf.putLong(lastUsedOID);
+	}
+
+	/**
+	 * Read the content of this root page from a log record. The transaction ID becomes the
+	 * larger of the current and the logged ID, because commits may not be logged in the 
+	 * order of their transaction IDs.
+	 * @param buf The log buffer
+	 */
+	void readLogRecord(ByteBuffer buf) {
+		txId = Math.max(txId, buf.getLong());
+		userPage = buf.getInt();
+		oidPage = buf.getInt();
+		schemaPage = buf.getInt();
+		indexPage = buf.getInt();
+		freeSpaceIndexPage = buf.getInt();
+		pageCount = buf.getInt();
+		lastUsedOID = buf.getLong();
+	}
+
 	boolean hasChanged(int userPage, int oidPage, int schemaPage, int indexPage,
 			int freeSpaceIndexPage) {
 		if (this.userPage != userPage || 
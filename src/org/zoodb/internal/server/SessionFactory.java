@@ -137,6 +137,7 @@ public class SessionFactory {
 				FAIL_BECAUSE_OF_ACTIVE_NON_TX_READ = false;
 				MULTIPLE_SESSIONS_ARE_OPEN = false;
 			}
+			WriteAheadLog.delete(path);
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Failed while accessing path: " + dbFile, e);
 		}
@@ -18,7 +18,15 @@ package org.zoodb.internal.server;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,13 +47,19 @@ class SessionManager {
 
 	public static final Logger LOGGER = LoggerFactory.getLogger(SessionManager.class);
 
+	//Writes the commits with relaxed durability of all databases. The thread is created on 
+	//demand and stops when no flushes are scheduled.
+	private static final ScheduledThreadPoolExecutor FLUSHER = createFlusher();
+
 	static final int ID_FAULTY_PAGE = Integer.MIN_VALUE;
 
 	private final FreeSpaceManager fsm;
 	private final StorageRoot file;
 	private final Path path;
 
-	private final RootPage rootPage;
+	//The root page of the latest commit. Root pages are not modified once they are published,
+	//so they can serve as snapshots for concurrent readers.
+	private volatile RootPage rootPage;
 	private final int[] rootPages;
 	private int rootPageID;
 	// This differs from tx-ID in that it is strictly increasing during commit.
@@ -56,8 +70,67 @@ class SessionManager {
 	private final SchemaIndex schemaIndex;
 	private final PagedOidIndex oidIndex;
 	private final StorageChannelOutput fileOut;
-	private final RWSemaphore<DiskAccess> lock = new RWSemaphore<>();
+	// May be null if no log is used
+	private final WriteAheadLog wal;
+	private final int walCheckpointSize;
+	private final RWSemaphore<Object> lock = new RWSemaphore<>();
 	private final TxManager txManager;
+	//Snapshots of sessions with active transactions
+	private final IdentityHashMap<DiskAccess, PinnedSnapshot> pinnedSnapshots = 
+			new IdentityHashMap<>();
+
+	//Group commit: Commits are written to disk when the committing session releases the write 
+	//lock. If other sessions are waiting to commit, the root page is written only after the
+	//last session in the group has committed. The pending fields are only accessed by the 
+	//session that holds the write lock.
+	private final int maxGroupSize;
+	//The root page of committed but not yet durable transactions, may be null
+	private RootPage pendingRootPage;
+	private long pendingTxId;
+	private int pendingGroupSize;
+	//Whether any commit in the pending group waits for it to be written
+	private boolean pendingIsDurable;
+	//Number of pages that had been written when the previous group was written
+	private long pendingWriteCount0;
+	//Whether pages have been removed from the end of the file by the pending group
+	private boolean pendingIsTruncated;
+	//Commits with relaxed durability return before their group is written. Their group is 
+	//written by a background thread after a delay, or once they have written enough data.
+	private final int flushDelay;
+	private final int flushSize;
+	//The scheduled flushes of this database, they are cancelled when the database is closed.
+	//Guarded by groupMonitor.
+	private final ArrayList<ScheduledFuture<?>> flushTasks = new ArrayList<>();
+	//The smallest tx-ID in the pending group. Pages freed by the group are not reused until
+	//the group has been written, otherwise the previous root page could become corrupted.
+	//Guarded by pinnedSnapshots.
+	private long pendingMinTxId = Long.MAX_VALUE;
+	//Groups are numbered, commits wait until their group has been written
+	private final Object groupMonitor = new Object();
+	private long currentGroup = 1;
+	private long writtenGroup = 0;
+	//Groups that could not be written, each waiting member of the group fails with the cause
+	private final HashMap<Long, Throwable> failedGroups = new HashMap<>();
+	//The pending group if it contains commits that do not wait for it, otherwise 0
+	private long deferredGroup = 0;
+	//The pending group if a flusher thread has been started for it, otherwise 0
+	private long flusherGroup = 0;
+	private volatile long statsCommitCount = 0;
+	private volatile long statsGroupCount = 0;
+	
+	private static class PinnedSnapshot {
+		final long txId;
+		//The ID of the latest transaction whose freed pages can be reused without affecting
+		//the snapshot.
+		final long maxFreeTxId;
+		//The root page that the session currently reads from. Guarded by pinnedSnapshots.
+		RootPage rootPage;
+		PinnedSnapshot(long txId, long maxFreeTxId, RootPage rootPage) {
+			this.txId = txId;
+			this.maxFreeTxId = maxFreeTxId;
+			this.rootPage = rootPage;
+		}
+	}
 	
 	public SessionManager(Path path) {
 		this.path = path;
@@ -74,6 +147,8 @@ class SessionManager {
 		    throw DBLogger.newFatal(header.errorMsg().get(0));
 		}
 		this.rootPages = header.getRootPages();
+		file.setCompactStrings(header.hasCompactStrings());
+		file.setCompressedPages(header.hasCompressedPages());
 		RootPage rootPage0 = RootPage.read(in, rootPages[0]);
 		RootPage rootPage1 = RootPage.read(in, rootPages[1]);
 
@@ -94,6 +169,19 @@ class SessionManager {
 			throw DBLogger.newFatal(m);
 		}
 		rootChannel.dropReader(in);
+		fileOut = rootChannel.createWriter(false);
+
+		//replay commits that have not been checkpointed
+		RootPage logRootPage = WriteAheadLog.replay(path, file, rootPage);
+		if (logRootPage != null) {
+			file.force();
+			rootPageID = (rootPageID + 1) % 2;
+			logRootPage.write(rootPage.getCommitId() + 1, logRootPage.getTxID(), fileOut, 
+					rootPages[rootPageID]);
+			fileOut.flush();
+			file.force();
+			rootPage = logRootPage;
+		}
 
 		RootPage root = rootPage;
 		txManager = new TxManager(root.getTxID());
@@ -104,11 +192,28 @@ class SessionManager {
 
 		//dir for schemata
 		schemaIndex = new SchemaIndex(rootChannel, root.getSchemaIndexPage(), false);
+		schemaIndex.setCompositeIndexSupported(header.hasCompositeIndexes());
+		schemaIndex.setStringKeyIndexSupported(header.hasStringKeyIndexes());
 
 		//free space index
-		fsm.initBackingIndexLoad(rootChannel, root.getFMSPage(), root.getFSMPageCount());
-
-		fileOut = rootChannel.createWriter(false);
+		fsm.initBackingIndexLoad(rootChannel, root.getFMSPage(), root.getFSMPageCount(),
+				header.hasFreeSpaceList());
+
+		maxGroupSize = ZooConfig.getGroupCommitSize();
+		flushDelay = ZooConfig.getCommitFlushDelay();
+		flushSize = ZooConfig.getCommitFlushSize();
+		pendingWriteCount0 = file.getWrittenPageCount();
+
+		//In-memory databases are not durable, they don't need a log
+		if (ZooConfig.getWriteAheadLog() 
+				&& !ZooConfig.FILE_PAF_IN_MEMORY.equals(ZooConfig.getFileProcessor())) {
+			wal = WriteAheadLog.create(path, file.getPageSize(), commitCount);
+			file.setWriteAheadLog(wal);
+		} else {
+			wal = null;
+			WriteAheadLog.delete(path);
+		}
+		walCheckpointSize = ZooConfig.getWalCheckpointSize();
 	}
 
 	static FileHeader readHeader(Path path) {
@@ -150,6 +255,14 @@ class SessionManager {
 	
 	void close(IOResourceProvider channel) {
 		channel.close();
+	}
+
+	/**
+	 * Close the database file if no other session uses it.
+	 * This must not be called while holding a lock, because the SessionFactory acquires 
+	 * locks while opening sessions.
+	 */
+	void closeFileIfUnused() {
 		// SessionManager removal is done indirectly via the SessionManagerFactory because it needs to happen
 		// inside the SMF's synchronized block.
 		if (SessionFactory.removeSessionIfUnused(this)) {
@@ -161,7 +274,25 @@ class SessionManager {
 	 * @return 'true' if the SM was closed.
 	 */
 	boolean closeIfUnused() {
-		return file.closeIfNoChannelsRemain();
+		boolean isClosed = false;
+		try {
+			isClosed = file.closeIfNoChannelsRemain();
+		} catch (RuntimeException | Error e) {
+			//the file is unusable, release the other resources anyway
+			isClosed = true;
+			throw e;
+		} finally {
+			if (isClosed) {
+				try {
+					stopFlusher();
+				} finally {
+					if (wal != null) {
+						wal.close();
+					}
+				}
+			}
+		}
+		return isClosed;
 	}
 
 	Path getPath() {
@@ -176,9 +307,24 @@ class SessionManager {
 		return file;
 	}
 
-	void commitInfrastructure(IOResourceProvider channel, int oidPage, int schemaPage,
-	        long lastUsedOID, long txId) {
-	    RootPage rootPage = getCurrentRootPage();
+	/**
+	 * Write the infrastructure (FSM) of a commit and prepare the new root page. The root page 
+	 * is written when the commit group is complete, see {@link #releaseLock(DiskAccess)}.
+	 * <p>
+	 * Commits with relaxed durability are visible to other sessions immediately. Their root 
+	 * page is written with the next commit group or by a background thread.
+	 * <p>
+	 * If a write-ahead log is used, commits are durable once they have been appended to the 
+	 * log. They are also visible immediately, their root page is written during the next
+	 * checkpoint.
+	 * @param isRelaxedDurability Whether the caller will not wait for the commit group.
+	 * @return The commit group that needs to be written before the commit is durable, or 
+	 * {@code 0} if the commit did not modify the database or has been logged.
+	 * @see #waitForCommitGroup(long)
+	 */
+	long commitInfrastructure(IOResourceProvider channel, int oidPage, int schemaPage,
+	        long lastUsedOID, long txId, boolean isRelaxedDurability) {
+	    RootPage rootPage = getLatestRootPage();
 		int userPage = rootPage.getUserPage(); //not updated currently
 		int indexPage = rootPage.getIndexPage(); //TODO remove this?
 
@@ -186,19 +332,49 @@ class SessionManager {
 		//new pages to the FSM.
 		int freePage = channel.writeIndex(fsm::write);
 		int pageCount = fsm.getPageCount();
+		if (pageCount < rootPage.getFSMPageCount()) {
+			//see FreeSpaceManager.trim()
+			pendingIsTruncated = true;
+		}
 		
+		long group = 0;
 		if (rootPage.hasChanged(userPage, oidPage, schemaPage, indexPage, freePage)) {
-			// flush the file including all splits 
-			channel.flush(); 
-			// Switch to use other root page
-	        rootPageID = (rootPageID + 1) % 2;
-	        // This uniquely identifies the commit and imposes total ordering,
-	        // which is, for example, used when opening a database and find the most recent commit.
-	        commitCount++;
-	        rootPage.set(userPage, oidPage, schemaPage, indexPage, lastUsedOID, freePage, pageCount);
-			rootPage.write(commitCount, txId, fileOut, rootPages[rootPageID]);
-			//Second flush to update root pages.
-			channel.flush(); 
+			// write the file including all splits, it is forced to disk with the commit group
+			channel.flushNoForce(); 
+	        RootPage newRootPage = rootPage.copy();
+	        newRootPage.set(userPage, oidPage, schemaPage, indexPage, lastUsedOID, freePage, 
+	        		pageCount);
+	        pendingTxId = pendingRootPage == null ? txId : Math.max(pendingTxId, txId);
+	        pendingRootPage = newRootPage;
+	        pendingGroupSize++;
+	        statsCommitCount++;
+	        synchronized (pinnedSnapshots) {
+	        	pendingMinTxId = Math.min(pendingMinTxId, txId);
+	        }
+	        if (wal != null) {
+	        	wal.commit(newRootPage, txId, !isRelaxedDurability);
+	        }
+	        boolean isDeferred = isRelaxedDurability || wal != null;
+	        boolean startFlusher = false;
+	        synchronized (groupMonitor) {
+	        	group = currentGroup;
+	        	if (isDeferred) {
+	        		deferredGroup = group;
+	        	}
+	        	if (isRelaxedDurability && flusherGroup != group) {
+	        		flusherGroup = group;
+	        		startFlusher = true;
+	        	}
+	        }
+	        if (isDeferred) {
+	        	//publish new snapshot, its root page is written later
+	        	this.rootPage = newRootPage;
+	        } else {
+	        	pendingIsDurable = true;
+	        }
+	        if (startFlusher) {
+	        	startFlusher(group);
+	        }
 		}
 		
 		//tell FSM that new free pages can now be reused.
@@ -212,14 +388,209 @@ class SessionManager {
 		// TODO why do we deregister here?
 		// Should we only deregister when we do commit(retain=false)?
 		txManager.deRegisterTx(txId);
+		return wal == null ? group : 0;
+	}
+
+	/**
+	 * Finish a transaction that did not write anything.
+	 * @param txId The transaction ID
+	 */
+	void commitReadOnly(long txId) {
+		txManager.deRegisterTx(txId);
+	}
+
+	/**
+	 * Write the root page of the current commit group. This is called by the session that 
+	 * holds the write lock.
+	 */
+	private void writeCommitGroup() {
+		try {
+			if (wal != null) {
+				//checkpoint: copy the logged pages to the file, then write the root page
+				//directly to the file
+				file.checkpoint();
+				file.setWriteAheadLog(null);
+			}
+			// force the file including all splits of all commits in the group
+			file.force();
+			// Switch to use other root page
+			rootPageID = (rootPageID + 1) % 2;
+			// This uniquely identifies the commit and imposes total ordering,
+			// which is, for example, used when opening a database and find the most recent commit.
+			commitCount++;
+			pendingRootPage.write(commitCount, pendingTxId, fileOut, rootPages[rootPageID]);
+			//Second flush to update root pages.
+			file.force();
+			if (wal != null) {
+				//the log is not required anymore
+				wal.reset(commitCount);
+			}
+			if (pendingIsTruncated) {
+				//The pages at the end of the file are only referenced by previous root pages
+				file.truncate(pendingRootPage.getFSMPageCount());
+			}
+			//publish new snapshot
+			this.rootPage = pendingRootPage;
+			statsGroupCount++;
+		} catch (RuntimeException | Error e) {
+			synchronized (groupMonitor) {
+				failedGroups.put(currentGroup, e);
+			}
+			throw e;
+		} finally {
+			if (wal != null) {
+				file.setWriteAheadLog(wal);
+			}
+			pendingRootPage = null;
+			pendingGroupSize = 0;
+			pendingIsDurable = false;
+			pendingIsTruncated = false;
+			pendingWriteCount0 = file.getWrittenPageCount();
+			synchronized (pinnedSnapshots) {
+				pendingMinTxId = Long.MAX_VALUE;
+			}
+			synchronized (groupMonitor) {
+				writtenGroup = currentGroup;
+				currentGroup++;
+				deferredGroup = 0;
+				flusherGroup = 0;
+				groupMonitor.notifyAll();
+			}
+		}
+	}
+
+	private static ScheduledThreadPoolExecutor createFlusher() {
+		ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "ZooDB commit flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		flusher.setKeepAliveTime(1, TimeUnit.SECONDS);
+		flusher.allowCoreThreadTimeOut(true);
+		flusher.setRemoveOnCancelPolicy(true);
+		return flusher;
+	}
+
+	private void startFlusher(long group) {
+		synchronized (groupMonitor) {
+			flushTasks.removeIf(Future::isDone);
+			flushTasks.add(FLUSHER.schedule(() -> {
+				try {
+					flushCommitGroup(Thread.currentThread(), group);
+				} catch (RuntimeException | Error e) {
+					//The members of the group fail with their next commit or when they are
+					//closed, see checkCommitGroup().
+					DBLogger.LOGGER.error("Failed to write commits with relaxed durability: " 
+							+ path, e);
+				}
+			}, flushDelay, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Cancel the scheduled flushes. Sessions flush their deferred commits when they are closed,
+	 * so there is nothing left to write.
+	 */
+	private void stopFlusher() {
+		synchronized (groupMonitor) {
+			for (ScheduledFuture<?> f: flushTasks) {
+				f.cancel(false);
+			}
+			flushTasks.clear();
+		}
+	}
+
+	/**
+	 * Write the pending commits with relaxed durability or in the log, if any.
+	 * The caller must not hold a lock.
+	 * @param key The session
+	 */
+	void flushCommits(DiskAccess key) {
+		long group;
+		synchronized (groupMonitor) {
+			group = deferredGroup;
+		}
+		if (group != 0) {
+			flushCommitGroup(key, group);
+		}
+	}
+
+	private void flushCommitGroup(Object key, long group) {
+		synchronized (groupMonitor) {
+			if (writtenGroup >= group) {
+				return;
+			}
+		}
+		lock.writeLock(key);
+		try {
+			//The group may have been written while we were waiting for the lock
+			if (pendingRootPage != null && writtenGroup < group) {
+				writeCommitGroup();
+			}
+		} finally {
+			lock.release(key);
+		}
+	}
+
+	/**
+	 * Wait until the root page of a commit group has been written. 
+	 * @param group The commit group as returned by 
+	 * {@link #commitInfrastructure(IOResourceProvider, int, int, long, long)}.
+	 */
+	void waitForCommitGroup(long group) {
+		if (group == 0) {
+			return;
+		}
+		synchronized (groupMonitor) {
+			try {
+				while (writtenGroup < group) {
+					groupMonitor.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw DBLogger.newFatal("Interrupted while waiting for commit", e);
+			}
+			checkCommitGroup(group);
+		}
+	}
+
+	/**
+	 * Check whether a commit group has been written. This does not wait for the group.
+	 * @param group The commit group
+	 * @return {@code true} if the group has been written.
+	 * @throws RuntimeException if writing the group failed.
+	 */
+	boolean checkCommitGroup(long group) {
+		synchronized (groupMonitor) {
+			if (writtenGroup < group) {
+				return false;
+			}
+			Throwable failure = failedGroups.get(group);
+			if (failure != null) {
+				throw DBLogger.newFatalDataStore("Commit failed while writing to disk", failure);
+			}
+			return true;
+		}
 	}
 
 	RootPage getCurrentRootPage() {
 		return rootPage;
 	}
 
-	long getNextTxId() {
-		return txManager.getNextTxId();
+	/**
+	 * This should only be called by sessions that hold the write lock.
+	 * @return The root page of the latest commit, which may not have been written yet.
+	 */
+	RootPage getLatestRootPage() {
+		return pendingRootPage != null ? pendingRootPage : rootPage;
+	}
+
+	long statsGetCommitCount() {
+		return statsCommitCount;
+	}
+
+	long statsGetCommitGroupCount() {
+		return statsGroupCount;
 	}
 
 	SchemaIndex getSchemaIndex() {
@@ -230,7 +601,7 @@ class SessionManager {
 		return oidIndex;
 	}
 	
-	RWSemaphore<DiskAccess> getLock() {
+	RWSemaphore<Object> getLock() {
 		return lock;
 	}
 
@@ -243,28 +614,127 @@ class SessionManager {
 	}
 
 	void releaseLock(DiskAccess key) {
-		lock.release(key);
+		try {
+			if (pendingRootPage != null && lock.isWriter(key) && isGroupComplete()) {
+				writeCommitGroup();
+			}
+		} finally {
+			lock.release(key);
+		}
+	}
+
+	private boolean isGroupComplete() {
+		if (pendingIsDurable) {
+			//Nobody else can join the group, so we write it.
+			return pendingGroupSize >= maxGroupSize || !lock.hasWaitingWriters();
+		}
+		//Deferred commits only, their group can remain open unless they have written a lot
+		if (wal != null) {
+			return wal.size() >= walCheckpointSize;
+		}
+		long bytes = (file.getWrittenPageCount() - pendingWriteCount0) * file.getPageSize();
+		return bytes >= flushSize;
 	}
 
 	/**
+	 * @param updates The updates of the transaction, they are added to the context only for 
+	 * the duration of the check.
 	 * @param isTrialRun Indicate whether the tx history should be updated or not. In trial runs, 
 	 * the history is never updated.
 	 * @return A list of conflicting objects or {@code null} if there are no conflicts
 	 */
-	List<Long> checkForConflicts(long txId, TxContext txContext, boolean isTrialRun) {
-		return txManager.addUpdates(txId, txContext, isTrialRun);
+	List<Long> checkForConflicts(long txId, TxContext txContext, ArrayList<TxObjInfo> updates, 
+			boolean isTrialRun) {
+		//The history of the TxManager refers to the list of the context. Read-only sessions 
+		//check and deregister concurrently, so the list must only be modified while holding
+		//the lock of the TxManager.
+		synchronized (txManager) {
+			txContext.addOidUpdates(updates);
+			List<Long> conflicts = txManager.addUpdates(txId, txContext, isTrialRun);
+			txContext.reset();
+			return conflicts;
+		}
 	}
 
 	TxManager getTxManager() {
 		return txManager;
 	}
 
+	/**
+	 * @return Whether a session holds a lock or has an active (unlocked) read transaction.
+	 */
 	public boolean isLocked() {
+		synchronized (pinnedSnapshots) {
+			if (!pinnedSnapshots.isEmpty()) {
+				return true;
+			}
+		}
 		return lock.isLocked();
 	}
 	
-	void startWriting(long txId) {
+	/**
+	 * Start a new transaction and pin the snapshot of the latest commit. Pages that are used 
+	 * by the snapshot are not reused by concurrent commits until the snapshot is released with 
+	 * {@link #endTransaction(DiskAccess)}.
+	 * @param key The session
+	 * @return The ID of the new transaction
+	 */
+	long beginTransaction(DiskAccess key) {
+		synchronized (pinnedSnapshots) {
+			long txId = txManager.getNextTxId();
+			//Any transaction that frees pages of the snapshot is either pinned or starts
+			//after this call. Commits publish their root page before they are unpinned.
+			long minTxId = txId;
+			for (PinnedSnapshot ps: pinnedSnapshots.values()) {
+				minTxId = Math.min(minTxId, ps.txId);
+			}
+			pinnedSnapshots.put(key, new PinnedSnapshot(txId, minTxId - 1, rootPage));
+			return txId;
+		}
+	}
+	
+	/**
+	 * Move the snapshot of the session to the latest commit. The pin keeps the 'maxFreeTxId'
+	 * of {@link #beginTransaction(DiskAccess)}, so the pages of all root pages that the 
+	 * session has read from remain valid until the transaction ends.
+	 * @param key The session
+	 * @return The root page of the latest commit
+	 */
+	RootPage advanceSnapshot(DiskAccess key) {
+		synchronized (pinnedSnapshots) {
+			PinnedSnapshot ps = pinnedSnapshots.get(key);
+			if (ps != null) {
+				ps.rootPage = rootPage;
+			}
+			return rootPage;
+		}
+	}
+	
+	/**
+	 * Release the snapshot of the session's current transaction, if any.
+	 * @param key The session
+	 */
+	void endTransaction(DiskAccess key) {
+		synchronized (pinnedSnapshots) {
+			pinnedSnapshots.remove(key);
+		}
+	}
+	
+	void startWriting(DiskAccess key, long txId) {
+		//do not reuse pages that may be used by snapshots of other sessions
+		long maxFreeTxId = txId - 1;
+		synchronized (pinnedSnapshots) {
+			//or by the last durable root page
+			if (pendingMinTxId != Long.MAX_VALUE) {
+				maxFreeTxId = Math.min(maxFreeTxId, pendingMinTxId - 1);
+			}
+			for (Map.Entry<DiskAccess, PinnedSnapshot> e: pinnedSnapshots.entrySet()) {
+				if (e.getKey() != key) {
+					maxFreeTxId = Math.min(maxFreeTxId, e.getValue().maxFreeTxId);
+				}
+			}
+		}
 		// set index channel txid
-		fsm.notifyBegin(txId);
+		fsm.notifyBegin(txId, maxFreeTxId);
 	}
 }
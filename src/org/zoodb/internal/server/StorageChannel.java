@@ -39,4 +39,31 @@ public interface StorageChannel {
 
 	int getNextPage(int prevPage);
 
+	/**
+	 * @param nPages Number of pages
+	 * @return The first page of a run of new contiguous pages.
+	 */
+	int getNextPageRun(int nPages);
+
+	void reportFreePage(int pageId);
+
+	/**
+	 * Hint that a run of contiguous pages will be read soon.
+	 * @param pageId The ID of the first page
+	 * @param nPages The number of pages
+	 * @return The number of pages that have been read ahead.
+	 */
+	int readPageRun(int pageId, int nPages);
+
+	/**
+	 * @return Whether Strings are written in the compact encoding.
+	 */
+	boolean isCompactStrings();
+
+	/**
+	 * @return Whether data pages are written compressed. This requires that compression is
+	 * enabled and that the file format supports compressed pages.
+	 */
+	boolean isPageCompression();
+
 }
@@ -21,6 +21,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.function.ToIntFunction;
 
 import org.zoodb.internal.util.DBLogger;
+import org.zoodb.tools.ZooConfig;
 
 /**
  * This class manages all IO channels for a one session.
@@ -45,9 +46,11 @@ public final class StorageChannelImpl implements StorageChannel, IOResourceProvi
 	private final StorageRoot root;
 	private long txId;
 	private boolean isClosed = false;
+	private final boolean isPageCompression;
 
 	public StorageChannelImpl(StorageRoot root) {
 		this.root = root;
+		this.isPageCompression = ZooConfig.getPageCompression();
 		for (int i = 0; i < POOL_SIZE_READER; i++) {
 			readerPoolAPFalse.add(new StorageReader(this, false));
 		}
@@ -116,15 +119,24 @@ public final class StorageChannelImpl implements StorageChannel, IOResourceProvi
 		root.force();
 	}
 
+	@Override
 	public void flushNoForce() {
 		//flush associated splits.
 		for (StorageChannelOutput paf: viewsOut) {
 			//flush() only writers
 			paf.flush();
 		}
+		resetReaders();
+	}
+
+	@Override
+	public void resetReaders() {
 		for (StorageChannelInput paf: viewsIn) {
 			paf.reset();
 		}
+		for (StorageChannelInput paf: readerPoolAPFalse) {
+			paf.reset();
+		}
 	}
 
 	@Override
@@ -132,6 +144,11 @@ public final class StorageChannelImpl implements StorageChannel, IOResourceProvi
 		return root.getNextPage(prevPage);
 	}
 
+	@Override
+	public int getNextPageRun(int nPages) {
+		return root.getNextPageRun(nPages);
+	}
+
 	@Override
 	public final void readPage(ByteBuffer buf, long pageId) {
 		root.readPage(buf, pageId);
@@ -142,6 +159,26 @@ public final class StorageChannelImpl implements StorageChannel, IOResourceProvi
 		root.write(buf, pageId);
 	}
 
+	@Override
+	public boolean isCompactStrings() {
+		return root.isCompactStrings();
+	}
+
+	@Override
+	public boolean isPageCompression() {
+		return isPageCompression && root.isCompressedPages();
+	}
+
+	@Override
+	public void readAhead(int pageId) {
+		root.readAhead(pageId);
+	}
+
+	@Override
+	public int readPageRun(int pageId, int nPages) {
+		return root.readPageRun(pageId, nPages);
+	}
+
 	@Override
 	@Deprecated //use root.xyz() 
 	public final int statsGetReadCount() {
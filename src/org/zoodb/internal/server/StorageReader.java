@@ -20,6 +20,7 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.zoodb.internal.server.index.BitTools;
 import org.zoodb.internal.util.DBLogger;
@@ -35,7 +36,9 @@ public class StorageReader implements StorageChannelInput {
 	private long headerClassOID = -1;
 	private long txTimeStamp = -1;
 	
-	private final int MAX_POS;
+	private final int pageSize;
+	//End of the usable space in the current page, see StorageWriter
+	private int maxPos;
 	
 	private final StorageChannel root;
 	private final IntBuffer intBuffer;
@@ -43,6 +46,13 @@ public class StorageReader implements StorageChannelInput {
 	
 	private CallbackPageRead overflowCallback = null;
 	private PAGE_TYPE currentType;
+	//Buffers for decompression, these are allocated when required
+	private byte[] compressed;
+	private byte[] decompressed;
+	//Bytes of the current value that follow on other pages, see startRun()
+	private int runBytes = 0;
+	//End of the pages that have been read ahead for the current value
+	private int runReadEnd = -1;
 
 	/**
 	 * Use for creating an additional view on a given file.
@@ -51,10 +61,13 @@ public class StorageReader implements StorageChannelInput {
 	 */
 	StorageReader(StorageChannel root, boolean autoPaging) {
 		this.root = root; 
-		this.MAX_POS = root.getPageSize() - 4;
+		this.pageSize = root.getPageSize();
+		this.maxPos = pageSize - 4;
 		this.isAutoPaging = autoPaging;
 		
-		buf = ByteBuffer.allocateDirect(root.getPageSize());
+		//Only auto-paging readers read data pages, which may be compressed
+		int bufSize = autoPaging ? pageSize * PAGE_COMPRESSION_MAX_RATIO : pageSize;
+		buf = ByteBuffer.allocateDirect(bufSize);
 		currentPage = -1;
 		intBuffer = buf.asIntBuffer();
 		intArray = new int[intBuffer.capacity()];
@@ -88,9 +101,9 @@ public class StorageReader implements StorageChannelInput {
 
 		if (pageId != currentPage) {
 			currentPage = pageId;
-			buf.clear();
-			root.readPage(buf, pageId);
+			readPage(pageId);
 		}
+		runBytes = 0;
 
 		currentType = type;
 		if (type != PAGE_TYPE.DB_HEADER) {
@@ -112,8 +125,72 @@ public class StorageReader implements StorageChannelInput {
 
 	@Override
 	public String readString() {
+		checkPosRead(4);
+		byte encoding = buf.get(buf.position());
+		if (encoding >= 0) {
+			return readStringLegacy();
+		}
+		buf.get();
+		final int len = readVarInt();
+		startRun(len);
+		
+		if (encoding == STRING_LATIN1) {
+			byte[] array = new byte[len];
+			int i = 0;
+			while (i < len) {
+				checkPosRead(1);
+				int getLen = Math.min(len - i, maxPos - buf.position());
+				buf.get(array, i, getLen);
+				i += getLen;
+			}
+			return new String(array, StandardCharsets.ISO_8859_1);
+		}
+		if (encoding != STRING_UTF8) {
+			throw DBLogger.newFatalInternal("Unknown String encoding: " + encoding);
+		}
+		
+		char[] array = new char[len];
+		int i = 0;
+		while (i < len) {
+			//see StorageWriter.writeString()
+			checkPosRead(3);
+			int end = Math.min(len, i + (maxPos - buf.position()) / 3);
+			for (; i < end; i++) {
+				int b = buf.get() & 0xFF;
+				if (b < 0x80) {
+					array[i] = (char) b;
+				} else if (b < 0xE0) {
+					array[i] = (char) (((b & 0x1F) << 6) | (buf.get() & 0x3F));
+				} else {
+					int b2 = buf.get() & 0x3F;
+					array[i] = (char) (((b & 0x0F) << 12) | (b2 << 6) | (buf.get() & 0x3F));
+				}
+			}
+		}
+		return String.valueOf(array);
+	}
+	
+	private int readVarInt() {
+		int v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			checkPosRead(1);
+			b = buf.get();
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return v;
+	}
+	
+	/**
+	 * Read a String in the format of files before version 1.6.
+	 * @return The String
+	 */
+	private String readStringLegacy() {
 		checkPosRead(4);
 		int len = buf.getInt();
+		startRun(len * 2);
 
 		//Align for 2-byte writing
 		int p = buf.position();
@@ -126,7 +203,7 @@ public class StorageReader implements StorageChannelInput {
         int posA = 0; //position in array
         while (l > 0) {
             checkPosRead(2);
-            int getLen = MAX_POS - buf.position();
+            int getLen = maxPos - buf.position();
             getLen = getLen >> 1;
             if (getLen > l) {
                 getLen = l;
@@ -182,9 +259,10 @@ public class StorageReader implements StorageChannelInput {
 	public void readFully(byte[] array) {
         int l = array.length;
         int posA = 0; //position in array
+        startRun(l);
         while (l > 0) {
             checkPosRead(1);
-            int getLen = MAX_POS - buf.position();
+            int getLen = maxPos - buf.position();
             if (getLen > l) {
                 getLen = l;
             }
@@ -297,19 +375,20 @@ public class StorageReader implements StorageChannelInput {
 		//TODO remove autopaging, the indices use anyway the noCheckMethods!!
 		//TODO -> otherwise, make it final, as it should be known when a view is constructed.
 		if (isAutoPaging) {
-			return (buf.position() + delta - MAX_POS) <= 0;
+			return (buf.position() + delta - maxPos) <= 0;
 		}
 		return true;
 	}
 
 	private void checkPosRead(int delta) {
 		final ByteBuffer buf = this.buf;
-		if (isAutoPaging && buf.position() + delta > MAX_POS) {
+		if (isAutoPaging && buf.position() + delta > maxPos) {
 			final int pageId = buf.getInt();
+			if (runBytes > 0) {
+				readRun(pageId);
+			}
 			currentPage = pageId;
-			buf.clear();
-			root.readPage(buf, pageId);
-			buf.rewind();
+			readPage(pageId);
 			//read header
 			readHeader();
 			if (overflowCallback != null) {
@@ -318,6 +397,71 @@ public class StorageReader implements StorageChannelInput {
 		}
  	}
 
+	/**
+	 * Announce a value that may span several pages, see StorageWriter.reserveRun().
+	 * @param nBytes The size of the value
+	 */
+	private void startRun(int nBytes) {
+		if (isAutoPaging) {
+			runBytes = nBytes - (maxPos - buf.position());
+			runReadEnd = -1;
+		}
+	}
+
+	/**
+	 * Read the pages of a large value with few large reads, if the pages are contiguous.
+	 * @param pageId The next page, the current page is still the previous page.
+	 */
+	private void readRun(int pageId) {
+		if (runReadEnd >= 0 && pageId != currentPage + 1) {
+			//not contiguous
+			runBytes = 0;
+			return;
+		}
+		int usable = pageSize - 4 - PAGE_HEADER_SIZE_DATA;
+		if (pageId >= runReadEnd) {
+			int nPages = (runBytes + usable - 1) / usable;
+			runReadEnd = pageId + Math.max(1, root.readPageRun(pageId, nPages));
+		}
+		runBytes -= usable;
+	}
+
+	private void readPage(int pageId) {
+		buf.clear();
+		buf.limit(pageSize);
+		root.readPage(buf, pageId);
+		maxPos = pageSize - 4;
+		if (isAutoPaging && buf.get(0) == PAGE_TYPE.DATA.getId() 
+				&& buf.getShort(2) == PAGE_FORMAT_VERSION_COMPRESSED) {
+			decompress();
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Decompress the page in the buffer, see StorageWriter.writeCompressed().
+	 */
+	private void decompress() {
+		if (compressed == null) {
+			compressed = new byte[pageSize];
+			decompressed = new byte[buf.capacity()];
+		}
+		int newMaxPos = buf.getInt(PAGE_HEADER_SIZE_DATA);
+		int dataEnd = buf.getInt(PAGE_HEADER_SIZE_DATA + 4);
+		if (newMaxPos < PAGE_HEADER_SIZE_DATA || newMaxPos > buf.capacity() - 4
+				|| dataEnd < PAGE_HEADER_SIZE_DATA || dataEnd > buf.capacity()) {
+			throw DBLogger.newFatal("Corrupted compressed page: " + currentPage);
+		}
+		maxPos = newMaxPos;
+		buf.rewind();
+		buf.get(compressed);
+		PageCodec.decompress(compressed, PAGE_HEADER_SIZE_COMPRESSED, 
+				decompressed, PAGE_HEADER_SIZE_DATA, dataEnd);
+		buf.clear();
+		buf.put(compressed, 0, PAGE_HEADER_SIZE_DATA);
+		buf.put(decompressed, PAGE_HEADER_SIZE_DATA, dataEnd - PAGE_HEADER_SIZE_DATA);
+	}
+
 	private void readHeader() {
 		byte pageType = buf.get();
 		buf.get(); //dummy
@@ -350,7 +494,7 @@ public class StorageReader implements StorageChannelInput {
         while (l > 0) {
             checkPosRead(1);
             int bPos = buf.position();
-            int putLen = MAX_POS - bPos;
+            int putLen = maxPos - bPos;
             if (putLen > l) {
                 putLen = l;
             }
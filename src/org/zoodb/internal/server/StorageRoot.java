@@ -23,6 +23,13 @@ public interface StorageRoot {
 
 	void force();
 
+	/**
+	 * Remove pages from the end of the file. This must only be called after the root page
+	 * that refers to the new page count has been written and forced to disk.
+	 * @param pageCount The new number of pages
+	 */
+	void truncate(int pageCount);
+
 	int statsGetPageCount();
 
 	int statsGetReadCount();
@@ -31,8 +38,67 @@ public interface StorageRoot {
 
 	int statsGetWriteCount();
 
+	/**
+	 * @return The number of pages written since the file was opened. Contrary to the 
+	 * statistics, this is counted even if statistics are disabled.
+	 */
+	long getWrittenPageCount();
+
+	/**
+	 * @param wal The log that receives all written pages instead of the file, may be
+	 * {@code null}. Logged pages are read from the log until the next {@link #checkpoint()}.
+	 */
+	void setWriteAheadLog(WriteAheadLog wal);
+
+	/**
+	 * Copy all pages in the write-ahead log to the file. The file is not forced.
+	 */
+	void checkpoint();
+
+	long statsGetCacheHitCount();
+
+	long statsGetCacheMissCount();
+
 	void readPage(ByteBuffer buf, long pageId);
 
+	/**
+	 * Hint that a page will be read soon. Implementations may read the page in the background.
+	 * @param pageId The page ID
+	 */
+	void readAhead(long pageId);
+
+	/**
+	 * Hint that a run of contiguous pages will be read soon. Implementations may read 
+	 * the pages with a single read into the page cache.
+	 * @param pageId The ID of the first page
+	 * @param nPages The number of pages
+	 * @return The number of pages that have been read, this may be less than requested.
+	 */
+	int readPageRun(long pageId, int nPages);
+
+	/**
+	 * @return Whether Strings are written in the compact encoding. The default is 
+	 * {@code true}.
+	 */
+	boolean isCompactStrings();
+
+	/**
+	 * @param isCompact Whether Strings should be written in the compact encoding. This must
+	 * be disabled for files with an older format version.
+	 */
+	void setCompactStrings(boolean isCompact);
+
+	/**
+	 * @return Whether data pages may be written compressed. The default is {@code true}.
+	 */
+	boolean isCompressedPages();
+
+	/**
+	 * @param isCompressed Whether data pages may be written compressed. This must be disabled
+	 * for files with an older format version.
+	 */
+	void setCompressedPages(boolean isCompressed);
+
 	void write(ByteBuffer buf, long pageId);
 
 	int getPageSize();
@@ -41,6 +107,12 @@ public interface StorageRoot {
 
 	int getNextPage(int prevPage);
 
+	/**
+	 * @param nPages Number of pages
+	 * @return The first page of a run of new contiguous pages.
+	 */
+	int getNextPageRun(int nPages);
+
 	IOResourceProvider createChannel();
 
 	int getDataChannelCount();
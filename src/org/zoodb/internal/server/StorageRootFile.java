@@ -28,6 +28,7 @@ import org.zoodb.internal.server.index.FreeSpaceManager;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.PrimLongSetZ;
 import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooConfig;
 import org.zoodb.tools.ZooDebug;
 
 /**
@@ -39,6 +40,9 @@ import org.zoodb.tools.ZooDebug;
  */
 public final class StorageRootFile implements StorageRoot {
 
+	//Maximum number of pages that are read with a single read by readPageRun()
+	private static final int MAX_RUN_PAGES = 64;
+
 	private final HashSet<IOResourceProvider> views = new HashSet<>();
 	private final StorageChannelImpl indexChannel;
 
@@ -48,14 +52,25 @@ public final class StorageRootFile implements StorageRoot {
 	private final FileChannel fc;
 	// use LONG to enforce long-arithmetic in calculations
 	private final long PAGE_SIZE;
+	// May be null if the page cache is disabled
+	private final PageCache cache;
+	// May be null if the page cache is disabled
+	private final PageReadAhead readAhead;
 
 	private int statNRead; 
 	private int statNWrite; 
+	private long nWrittenPages = 0;
+	// May be null if no log is used
+	private volatile WriteAheadLog wal;
+	private volatile boolean isCompactStrings = true;
+	private volatile boolean isCompressedPages = true;
 	private final PrimLongSetZ statNReadUnique = new PrimLongSetZ();
 
 	public StorageRootFile(String dbPath, String options, int pageSize, FreeSpaceManager fsm) {
 		this.fsm = fsm;
 		PAGE_SIZE = pageSize;
+		int cacheSize = ZooConfig.getPageCacheSize();
+		cache = cacheSize > 0 ? new PageCache(cacheSize, pageSize) : null;
 		File file = new File(dbPath);
 		if (!file.exists()) {
 			throw DBLogger.newUser("DB file does not exist: " + dbPath);
@@ -83,6 +98,8 @@ public final class StorageRootFile implements StorageRoot {
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error opening database: " + dbPath, e);
 		}
+		readAhead = cache != null && ZooConfig.getReadAheadPages() > 0 
+				? new PageReadAhead(fc, cache, pageSize, this::isLogged) : null;
 		this.indexChannel = new StorageChannelImpl(this);
 	}
 
@@ -91,6 +108,11 @@ public final class StorageRootFile implements StorageRoot {
 		return fsm.getNextPage(prevPage);
 	}
 
+	@Override
+	public int getNextPageRun(int nPages) {
+		return fsm.getNextPageRun(nPages);
+	}
+
 	@Override
 	public void reportFreePage(int pageId) {
 		fsm.reportFreePage(pageId);
@@ -98,15 +120,22 @@ public final class StorageRootFile implements StorageRoot {
 
 	@Override
 	public final void close() {
-		indexChannel.close();
-		//TODO flush();
 		try {
-			fc.force(true);
-			fileLock.release();
-			fc.close();
-			raf.close();
-		} catch (IOException e) {
-			throw DBLogger.newFatal("Error closing database file.", e);
+			indexChannel.close();
+		} finally {
+			//the read-ahead thread has to be stopped before the channel is closed
+			if (readAhead != null) {
+				readAhead.close();
+			}
+			//TODO flush();
+			try {
+				fc.force(true);
+				fileLock.release();
+				fc.close();
+				raf.close();
+			} catch (IOException e) {
+				throw DBLogger.newFatal("Error closing database file.", e);
+			}
 		}
 	}
 
@@ -140,6 +169,17 @@ public final class StorageRootFile implements StorageRoot {
 		}
 	}
 
+	@Override
+	public void truncate(int pageCount) {
+		try {
+			if (fc.size() > pageCount * PAGE_SIZE) {
+				fc.truncate(pageCount * PAGE_SIZE);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error truncating database file.", e);
+		}
+	}
+
 	@Override
 	public final IOResourceProvider createChannel() {
 		IOResourceProvider c = new StorageChannelImpl(this);
@@ -162,14 +202,99 @@ public final class StorageRootFile implements StorageRoot {
 	@Override
 	public final void readPage(ByteBuffer buf, long pageId) {
 		try {
-			fc.read(buf, pageId * PAGE_SIZE);
-			if (DBStatistics.isEnabled()) {
-				statNRead++;
-				statNReadUnique.add(pageId);
+			//Cache hits are counted by the cache, see statsGetCacheHitCount()
+			WriteAheadLog log = wal;
+			if (cache == null) {
+				statsCountRead(pageId);
+				if (log == null || !log.readPage(buf, pageId)) {
+					fc.read(buf, pageId * PAGE_SIZE);
+				}
+				return;
 			}
+			if (cache.read(buf, pageId)) {
+				return;
+			}
+			long generation = cache.getGeneration();
+			int pos = buf.position();
+			statsCountRead(pageId);
+			if (log != null && log.readPage(buf, pageId)) {
+				//Logged pages are not cached, they are read from the log until the checkpoint
+				return;
+			}
+			fc.read(buf, pageId * PAGE_SIZE);
+			cache.add(buf, pageId, pos, generation);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error loading Page: " + pageId, e);
+		}
+	}
+
+	private boolean isLogged(long pageId) {
+		WriteAheadLog log = wal;
+		return log != null && log.contains(pageId);
+	}
+
+	private void statsCountRead(long pageId) {
+		if (DBStatistics.isEnabled()) {
+			statNRead++;
+			statNReadUnique.add(pageId);
+		}
+	}
+
+	@Override
+	public boolean isCompactStrings() {
+		return isCompactStrings;
+	}
+
+	@Override
+	public void setCompactStrings(boolean isCompact) {
+		this.isCompactStrings = isCompact;
+	}
+
+	@Override
+	public boolean isCompressedPages() {
+		return isCompressedPages;
+	}
+
+	@Override
+	public void setCompressedPages(boolean isCompressed) {
+		this.isCompressedPages = isCompressed;
+	}
+
+	@Override
+	public void readAhead(long pageId) {
+		if (readAhead != null) {
+			readAhead.request(pageId);
+		}
+	}
+
+	@Override
+	public int readPageRun(long pageId, int nPages) {
+		if (cache == null) {
+			return 0;
+		}
+		//Large runs would replace most of the cache before they are used
+		nPages = Math.min(nPages, Math.min(MAX_RUN_PAGES, cache.getCapacity() / 4));
+		if (nPages < 2) {
+			return 0;
+		}
+		long generation = cache.getGeneration();
+		ByteBuffer buf = ByteBuffer.allocate((int) (nPages * PAGE_SIZE));
+		try {
+			fc.read(buf, pageId * PAGE_SIZE);
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error loading Page: " + pageId, e);
 		}
+		int nRead = (int) (buf.position() / PAGE_SIZE);
+		for (int i = 0; i < nRead; i++) {
+			if (isLogged(pageId + i)) {
+				//the file contains an outdated version of the page
+				continue;
+			}
+			statsCountRead(pageId + i);
+			buf.position((int) ((i + 1) * PAGE_SIZE));
+			cache.add(buf, pageId + i, (int) (i * PAGE_SIZE), generation);
+		}
+		return nRead;
 	}
 
 	@Override
@@ -178,15 +303,51 @@ public final class StorageRootFile implements StorageRoot {
 			if (pageId<0) {
 				return;
 			}
+			nWrittenPages++;
 			if (DBStatistics.isEnabled()) {
 				statNWrite++;
 			}
-			fc.write(buf, pageId * PAGE_SIZE);
+			//With a log, the page is written to the file during the next checkpoint
+			writePage(buf, pageId, wal);
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error writing page: " + pageId, e);
 		}
 	}
 
+	@Override
+	public void checkpoint() {
+		WriteAheadLog log = wal;
+		if (log == null) {
+			return;
+		}
+		log.copyPages((buf, pageId) -> {
+			try {
+				writePage(buf, pageId, null);
+			} catch (IOException e) {
+				throw DBLogger.newFatal("Error writing page: " + pageId, e);
+			}
+		});
+	}
+
+	private void writePage(ByteBuffer buf, long pageId, WriteAheadLog log) throws IOException {
+		if (cache != null) {
+			//Remove the old page, so that concurrent readers do not get it from the cache
+			//while it is being overwritten
+			cache.invalidate(pageId);
+		}
+		if (log != null) {
+			log.addPage(buf, pageId);
+			buf.position(buf.limit());
+		} else {
+			fc.write(buf, pageId * PAGE_SIZE);
+		}
+		if (cache != null) {
+			//Invalidate again: Readers that started before the write completed may have
+			//cached the old page. Pending reads are rejected by the new generation.
+			cache.invalidate(pageId);
+		}
+	}
+
 	@Override
 	public final int statsGetReadCount() {
 		return statNRead;
@@ -204,6 +365,26 @@ public final class StorageRootFile implements StorageRoot {
 		return statNWrite;
 	}
 
+	@Override
+	public long getWrittenPageCount() {
+		return nWrittenPages;
+	}
+
+	@Override
+	public void setWriteAheadLog(WriteAheadLog wal) {
+		this.wal = wal;
+	}
+
+	@Override
+	public long statsGetCacheHitCount() {
+		return cache == null ? 0 : cache.statsGetHitCount();
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return cache == null ? 0 : cache.statsGetMissCount();
+	}
+
 	@Override
 	public final int getPageSize() {
 		return (int) PAGE_SIZE;
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongSetZ;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.ZooDebug;
+
+/**
+ * A common root for multiple file views, backed by memory mapped segments of the database file.
+ * Contrary to {@link StorageRootFile}, reading and writing pages does not require any
+ * system calls, pages are simply copied from or to the mapped segments.
+ * <p>
+ * The file is mapped in segments of {@link #SEGMENT_SIZE} bytes. The last segment may be
+ * mapped only partially, it is remapped with a larger size when the file grows.
+ * Since mapped regions can only grow the file, the logical file length is tracked separately
+ * and the file is truncated to this length when the root is closed.
+ *
+ * @author Tilmann Zaeschke
+ *
+ */
+public final class StorageRootFileMapped implements StorageRoot {
+
+	/** Maximum size of a mapped segment in bytes. */
+	static final int SEGMENT_SIZE = 1 << 26;  //64MB
+	/** Minimum growth of the last segment in bytes. */
+	private static final int MIN_GROWTH = 1 << 20; //1MB
+
+	private final HashSet<IOResourceProvider> views = new HashSet<>();
+	private final StorageChannelImpl indexChannel;
+
+	private final FreeSpaceManager fsm;
+	private final RandomAccessFile raf;
+	private final FileLock fileLock;
+	private final FileChannel fc;
+	private final MapMode mapMode;
+	// use LONG to enforce long-arithmetic in calculations
+	private final long PAGE_SIZE;
+	private final int PAGES_PER_SEGMENT;
+
+	// Replaced (not modified) when the mapping grows, so readers need no synchronization
+	private volatile MappedByteBuffer[] segments;
+	// The logical file length. This may be smaller than the mapped size.
+	private volatile long fileLength;
+
+	private int statNRead;
+	private int statNWrite;
+	private long nWrittenPages = 0;
+	// May be null if no log is used
+	private volatile WriteAheadLog wal;
+	private volatile boolean isCompactStrings = true;
+	private volatile boolean isCompressedPages = true;
+	private final PrimLongSetZ statNReadUnique = new PrimLongSetZ();
+
+	public StorageRootFileMapped(String dbPath, String options, int pageSize,
+			FreeSpaceManager fsm) {
+		this.fsm = fsm;
+		PAGE_SIZE = pageSize;
+		PAGES_PER_SEGMENT = Math.max(1, SEGMENT_SIZE / pageSize);
+		mapMode = "r".equals(options) ? MapMode.READ_ONLY : MapMode.READ_WRITE;
+		File file = new File(dbPath);
+		if (!file.exists()) {
+			throw DBLogger.newUser("DB file does not exist: " + dbPath);
+		}
+		try {
+			raf = new RandomAccessFile(file, options);
+			fc = raf.getChannel();
+			try {
+				//tryLock is supposed to return null, but it throws an Exception
+				fileLock = fc.tryLock();
+				if (fileLock == null) {
+					fc.close();
+					raf.close();
+					throw DBLogger.newUser("This file is in use by another process: " + dbPath);
+				}
+			} catch (OverlappingFileLockException e) {
+				fc.close();
+				raf.close();
+				throw DBLogger.newUser(
+						"This file is in use by another PersistenceManager: " + dbPath);
+			}
+			if (ZooDebug.isTesting()) {
+				ZooDebug.registerFile(fc);
+			}
+			fileLength = fc.size();
+			segments = mapInitial(fileLength);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error opening database: " + dbPath, e);
+		}
+		this.indexChannel = new StorageChannelImpl(this);
+	}
+
+	private long segmentBytes() {
+		return PAGES_PER_SEGMENT * PAGE_SIZE;
+	}
+
+	private MappedByteBuffer[] mapInitial(long len) throws IOException {
+		//round up to full pages
+		long pages = (len + PAGE_SIZE - 1) / PAGE_SIZE;
+		int nSeg = (int) ((pages + PAGES_PER_SEGMENT - 1) / PAGES_PER_SEGMENT);
+		MappedByteBuffer[] segs = new MappedByteBuffer[nSeg];
+		for (int i = 0; i < nSeg; i++) {
+			long start = i * segmentBytes();
+			long size = Math.min(segmentBytes(), pages * PAGE_SIZE - start);
+			segs[i] = fc.map(mapMode, start, size);
+		}
+		return segs;
+	}
+
+	/**
+	 * Ensure that the given page is mapped. If the page is beyond the currently mapped
+	 * region, the last segment is remapped with a larger size and/or new segments are added.
+	 * @param pageId The page to map
+	 * @return The segments array that maps the page
+	 */
+	private synchronized MappedByteBuffer[] ensureMapped(long pageId) {
+		MappedByteBuffer[] segs = segments;
+		int segId = (int) (pageId / PAGES_PER_SEGMENT);
+		long required = (pageId % PAGES_PER_SEGMENT + 1) * PAGE_SIZE;
+		if (segId < segs.length && segs[segId].capacity() >= required) {
+			//another thread may have grown the mapping already
+			return segs;
+		}
+		try {
+			int n = segs.length;
+			segs = Arrays.copyOf(segs, Math.max(n, segId + 1));
+			//fill up the previous last segment, if required
+			if (n > 0 && n - 1 < segId && segs[n - 1].capacity() < segmentBytes()) {
+				segs[n - 1] = fc.map(mapMode, (n - 1) * segmentBytes(), segmentBytes());
+			}
+			//add full segments in between
+			for (int i = n; i < segId; i++) {
+				segs[i] = fc.map(mapMode, i * segmentBytes(), segmentBytes());
+			}
+			//grow the last segment
+			long size = segs[segId] == null ? 0 : segs[segId].capacity();
+			size = Math.max(required, Math.max(size * 2, MIN_GROWTH));
+			size = Math.min(segmentBytes(), (size + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE);
+			segs[segId] = fc.map(mapMode, segId * segmentBytes(), size);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error mapping page: " + pageId, e);
+		}
+		segments = segs;
+		return segs;
+	}
+
+	@Override
+	public int getNextPage(int prevPage) {
+		return fsm.getNextPage(prevPage);
+	}
+
+	@Override
+	public int getNextPageRun(int nPages) {
+		return fsm.getNextPageRun(nPages);
+	}
+
+	@Override
+	public void reportFreePage(int pageId) {
+		fsm.reportFreePage(pageId);
+	}
+
+	@Override
+	public final void close() {
+		indexChannel.close();
+		try {
+			forceSegments();
+			fc.force(true);
+			try {
+				//remove mapped but unused space at the end of the file
+				if (mapMode == MapMode.READ_WRITE && fc.size() > fileLength) {
+					fc.truncate(fileLength);
+				}
+			} catch (IOException e) {
+				//Some OS (Windows) do not allow truncating mapped files.
+				DBLogger.LOGGER.warn("Could not truncate database file: {}", e.getMessage());
+			}
+			segments = new MappedByteBuffer[0];
+			fileLock.release();
+			fc.close();
+			raf.close();
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error closing database file.", e);
+		}
+	}
+
+	@Override
+	public boolean closeIfNoChannelsRemain() {
+		synchronized (views) {
+			if (views.isEmpty()) {
+				close();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void close(IOResourceProvider channel) {
+		synchronized (views) {
+			if (!views.remove(channel) && channel != indexChannel) {
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	@Override
+	public void force() {
+		indexChannel.flushNoForce();
+		try {
+			forceSegments();
+			fc.force(false);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing database file.", e);
+		}
+	}
+
+	private void forceSegments() {
+		if (mapMode != MapMode.READ_WRITE) {
+			return;
+		}
+		for (MappedByteBuffer seg: segments) {
+			seg.force();
+		}
+	}
+
+	@Override
+	public final IOResourceProvider createChannel() {
+		IOResourceProvider c = new StorageChannelImpl(this);
+		synchronized (views) {
+			views.add(c);
+		}
+		return c;
+	}
+
+	@Override
+	public final IOResourceProvider getIndexChannel() {
+		return indexChannel;
+	}
+
+	@Override
+	public int getDataChannelCount() {
+		return views.size();
+	}
+
+	@Override
+	public final void readPage(ByteBuffer buf, long pageId) {
+		WriteAheadLog log = wal;
+		if (log != null && log.readPage(buf, pageId)) {
+			countRead(pageId);
+			return;
+		}
+		long pos = pageId * PAGE_SIZE;
+		//Like FileChannel.read(), we read nothing beyond the end of the file
+		int len = (int) Math.min(buf.remaining(), fileLength - pos);
+		if (len <= 0) {
+			return;
+		}
+		MappedByteBuffer[] segs = segments;
+		int segId = (int) (pageId / PAGES_PER_SEGMENT);
+		if (segId >= segs.length) {
+			throw DBLogger.newFatal("Error loading Page: " + pageId);
+		}
+		//Use a duplicate to avoid concurrent modification of the segments' position
+		ByteBuffer src = segs[segId].duplicate();
+		int offs = (int) ((pageId % PAGES_PER_SEGMENT) * PAGE_SIZE);
+		src.limit(offs + len);
+		src.position(offs);
+		buf.put(src);
+		countRead(pageId);
+	}
+
+	private void countRead(long pageId) {
+		if (DBStatistics.isEnabled()) {
+			statNRead++;
+			statNReadUnique.add(pageId);
+		}
+	}
+
+	@Override
+	public final void write(ByteBuffer buf, long pageId) {
+		if (pageId<0) {
+			return;
+		}
+		nWrittenPages++;
+		if (DBStatistics.isEnabled()) {
+			statNWrite++;
+		}
+		WriteAheadLog log = wal;
+		if (log != null) {
+			//The page is written to the file during the next checkpoint
+			log.addPage(buf, pageId);
+			buf.position(buf.limit());
+		} else {
+			writePage(buf, pageId);
+		}
+	}
+
+	@Override
+	public void checkpoint() {
+		WriteAheadLog log = wal;
+		if (log != null) {
+			log.copyPages(this::writePage);
+		}
+	}
+
+	private void writePage(ByteBuffer buf, long pageId) {
+		int segId = (int) (pageId / PAGES_PER_SEGMENT);
+		int offs = (int) ((pageId % PAGES_PER_SEGMENT) * PAGE_SIZE);
+		int len = buf.remaining();
+		MappedByteBuffer[] segs = segments;
+		if (segId >= segs.length || segs[segId].capacity() < offs + len) {
+			segs = ensureMapped(pageId);
+		}
+		ByteBuffer dst = segs[segId].duplicate();
+		dst.position(offs);
+		dst.put(buf);
+		long end = pageId * PAGE_SIZE + len;
+		if (end > fileLength) {
+			updateFileLength(end);
+		}
+	}
+
+	@Override
+	public synchronized void truncate(int pageCount) {
+		//The mapped segments remain, the file is truncated when it is closed
+		if (fileLength > pageCount * PAGE_SIZE) {
+			fileLength = pageCount * PAGE_SIZE;
+		}
+	}
+
+	private synchronized void updateFileLength(long end) {
+		if (end > fileLength) {
+			fileLength = end;
+		}
+	}
+
+	@Override
+	public final int statsGetReadCount() {
+		return statNRead;
+	}
+
+	@Override
+	public int statsGetReadCountUnique() {
+		int ret = statNReadUnique.size();
+		statNReadUnique.clear();
+		return ret;
+	}
+
+	@Override
+	public final int statsGetWriteCount() {
+		return statNWrite;
+	}
+
+	@Override
+	public long getWrittenPageCount() {
+		return nWrittenPages;
+	}
+
+	@Override
+	public void setWriteAheadLog(WriteAheadLog wal) {
+		this.wal = wal;
+	}
+
+	@Override
+	public long statsGetCacheHitCount() {
+		//no page cache
+		return 0;
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return 0;
+	}
+
+	@Override
+	public boolean isCompactStrings() {
+		return isCompactStrings;
+	}
+
+	@Override
+	public void setCompactStrings(boolean isCompact) {
+		this.isCompactStrings = isCompact;
+	}
+
+	@Override
+	public boolean isCompressedPages() {
+		return isCompressedPages;
+	}
+
+	@Override
+	public void setCompressedPages(boolean isCompressed) {
+		this.isCompressedPages = isCompressed;
+	}
+
+	@Override
+	public void readAhead(long pageId) {
+		//Nothing to do, read-ahead of mapped files is managed by the operating system
+	}
+
+	@Override
+	public int readPageRun(long pageId, int nPages) {
+		return 0;
+	}
+
+	@Override
+	public final int getPageSize() {
+		return (int) PAGE_SIZE;
+	}
+
+	@Override
+	public int statsGetPageCount() {
+		return (int) (fileLength / PAGE_SIZE);
+	}
+
+	@Override
+	public boolean debugIsPageIdInFreeList(int pageId) {
+		return fsm.debugIsPageIdInFreeList(pageId);
+	}
+
+}
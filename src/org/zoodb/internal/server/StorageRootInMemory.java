@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 
 import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.util.DBLogger;
 import org.zoodb.internal.util.PrimLongSetZ;
 import org.zoodb.tools.DBStatistics;
 import org.zoodb.tools.impl.DataStoreManagerInMemory;
@@ -37,6 +38,9 @@ public class StorageRootInMemory implements StorageRoot {
 	
 	private int statNRead = 0;
 	private int statNWrite = 0;
+	private long nWrittenPages = 0;
+	private volatile boolean isCompactStrings = true;
+	private volatile boolean isCompressedPages = true;
 	private final PrimLongSetZ statNReadUnique = new PrimLongSetZ();
 	
 	/**
@@ -84,6 +88,11 @@ public class StorageRootInMemory implements StorageRoot {
 		return fsm.getNextPage(prevPage);
 	}
 
+	@Override
+	public int getNextPageRun(int nPages) {
+		return fsm.getNextPageRun(nPages);
+	}
+
 	@Override
 	public void reportFreePage(int pageId) {
 		fsm.reportFreePage(pageId);
@@ -120,6 +129,15 @@ public class StorageRootInMemory implements StorageRoot {
 		//Nothing else, we can't flush to memory... 
 	}
 
+	@Override
+	public void truncate(int pageCount) {
+		synchronized (buffers) {
+			if (buffers.size() > pageCount) {
+				buffers.subList(pageCount, buffers.size()).clear();
+			}
+		}
+	}
+
 	@Override
 	public final IOResourceProvider createChannel() {
 		IOResourceProvider c = new StorageChannelImpl(this);
@@ -141,7 +159,11 @@ public class StorageRootInMemory implements StorageRoot {
 
 	@Override
 	public void readPage(ByteBuffer buf, long pageId) {
-		ByteBuffer b2 = buffers.get((int) pageId);
+		ByteBuffer b2;
+		//The list may grow concurrently during commits of other sessions
+		synchronized (buffers) {
+			b2 = buffers.get((int) pageId);
+		}
 		synchronized (b2) {
 		    b2.rewind();
 		    buf.put(b2);
@@ -157,15 +179,21 @@ public class StorageRootInMemory implements StorageRoot {
 		if (pageId<0) {
 			return;
 		}
+		nWrittenPages++;
 		if (DBStatistics.isEnabled()) {
 			statNWrite++;
 		}
-		while (pageId >= buffers.size()) {
-			buffers.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+		ByteBuffer b2;
+		synchronized (buffers) {
+			while (pageId >= buffers.size()) {
+				buffers.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+			}
+			b2 = buffers.get((int) pageId);
+		}
+		synchronized (b2) {
+			b2.clear();
+			b2.put(buf);
 		}
-		ByteBuffer b2 = buffers.get((int) pageId);
-		b2.clear();
-		b2.put(buf);
 	}
 	
 	@Override
@@ -185,6 +213,63 @@ public class StorageRootInMemory implements StorageRoot {
 		return statNWrite;
 	}
 
+	@Override
+	public long getWrittenPageCount() {
+		return nWrittenPages;
+	}
+
+	@Override
+	public void checkpoint() {
+		//no log
+	}
+
+	@Override
+	public void setWriteAheadLog(WriteAheadLog wal) {
+		//In-memory databases are not durable, they don't need a log
+		throw DBLogger.newFatalInternal("In-memory databases do not support logging.");
+	}
+
+	@Override
+	public long statsGetCacheHitCount() {
+		//no page cache
+		return 0;
+	}
+
+	@Override
+	public long statsGetCacheMissCount() {
+		return 0;
+	}
+
+	@Override
+	public boolean isCompactStrings() {
+		return isCompactStrings;
+	}
+
+	@Override
+	public void setCompactStrings(boolean isCompact) {
+		this.isCompactStrings = isCompact;
+	}
+
+	@Override
+	public boolean isCompressedPages() {
+		return isCompressedPages;
+	}
+
+	@Override
+	public void setCompressedPages(boolean isCompressed) {
+		this.isCompressedPages = isCompressed;
+	}
+
+	@Override
+	public void readAhead(long pageId) {
+		//Nothing to do
+	}
+
+	@Override
+	public int readPageRun(long pageId, int nPages) {
+		return 0;
+	}
+
 	@Override
 	public int getPageSize() {
 		return PAGE_SIZE;
@@ -192,7 +277,9 @@ public class StorageRootInMemory implements StorageRoot {
 
 	@Override
 	public int statsGetPageCount() {
-		return buffers.size();
+		synchronized (buffers) {
+			return buffers.size();
+		}
 	}
 
 	@Override
@@ -20,6 +20,7 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.util.Arrays;
 
 import org.zoodb.internal.util.DBLogger;
 
@@ -34,7 +35,10 @@ public class StorageWriter implements StorageChannelOutput {
 	//The header is only written in auto-paging mode
 	private long classOid = -1;
 	
-	private final int MAX_POS;
+	private final int pageSize;
+	//End of the usable space in the current page. This is only larger than a page if the 
+	//page is compressed.
+	private int maxPos;
 	
 	private final StorageChannel root;
 	private CallbackPageWrite overflowCallback = null;
@@ -43,6 +47,17 @@ public class StorageWriter implements StorageChannelOutput {
 	
 	private PAGE_TYPE currentDataType;
 
+	//Page compression, these are 'null' if compression is disabled
+	private final PageCodec codec;
+	private final byte[] compressed;
+	//End of the compressed data in 'compressed'
+	private int compressedEnd;
+	//Position in 'buf' up to which the data has been compressed
+	private int compressedPos;
+
+	//Unused pages of a contiguous run, see reserveRun()
+	private int runNextPage = 0;
+	private int runEndPage = 0;
 
 	/**
 	 * Use for creating an additional view on a given file.
@@ -51,11 +66,21 @@ public class StorageWriter implements StorageChannelOutput {
 	 */
 	StorageWriter(StorageChannel root, boolean autoPaging) {
 		this.root = root; 
-		this.MAX_POS = root.getPageSize() - 4;
+		this.pageSize = root.getPageSize();
+		this.maxPos = pageSize - 4;
 		this.isAutoPaging = autoPaging;
 		
 		isWriting = false;
-		buf = ByteBuffer.allocateDirect(root.getPageSize());
+		if (autoPaging && root.isPageCompression()) {
+			//the codec requires an array, the buffer can hold the data of several pages
+			codec = new PageCodec();
+			compressed = new byte[pageSize + PAGE_HEADER_SIZE_COMPRESSED + PageCodec.MAX_OVERHEAD];
+			buf = ByteBuffer.allocate(pageSize * PAGE_COMPRESSION_MAX_RATIO);
+		} else {
+			codec = null;
+			compressed = null;
+			buf = ByteBuffer.allocateDirect(pageSize);
+		}
 		currentPage = -1;
 		intBuffer = buf.asIntBuffer();
 		intArray = new int[intBuffer.capacity()];
@@ -126,21 +151,157 @@ public class StorageWriter implements StorageChannelOutput {
 	@Override
 	public void flush() {
 		writeData();
+		//Unused pages of a run (e.g. due to compression) can be reused by the next transaction 
+		while (runNextPage < runEndPage) {
+			root.reportFreePage(runNextPage++);
+		}
 		//To avoid unnecessary writing during the next flush()
 		isWriting = false;
 	}
 	
 	private void writeData() {
 		if (isWriting) {
-			buf.flip();
-			root.write(buf, currentPage);
+			if (maxPos > pageSize - 4) {
+				writeCompressed();
+			} else {
+				buf.flip();
+				root.write(buf, currentPage);
+			}
+		}
+		maxPos = pageSize - 4;
+		if (codec != null) {
+			codec.reset();
+			compressedPos = PAGE_HEADER_SIZE_DATA;
+			compressedEnd = PAGE_HEADER_SIZE_COMPRESSED;
+		}
+	}
+
+	/**
+	 * Compressed data pages start with the normal header, followed by the end of the usable 
+	 * space ('maxPos'), the end of the data and the compressed data. The header and the 
+	 * positions are not compressed. Readers have to use the stored 'maxPos' to find the 
+	 * reference to the next page.
+	 */
+	private void writeCompressed() {
+		byte[] data = buf.array();
+		int dataEnd = buf.position();
+		int end = codec.compress(data, compressedPos, dataEnd, compressed, compressedEnd);
+		if (end > pageSize) {
+			throw DBLogger.newFatalInternal("Compressed page overflow: " + end);
+		}
+		Arrays.fill(compressed, end, pageSize, (byte) 0);
+		System.arraycopy(data, 0, compressed, 0, PAGE_HEADER_SIZE_DATA);
+		ByteBuffer page = ByteBuffer.wrap(compressed, 0, pageSize);
+		page.putShort(2, PAGE_FORMAT_VERSION_COMPRESSED);
+		page.putInt(PAGE_HEADER_SIZE_DATA, maxPos);
+		page.putInt(PAGE_HEADER_SIZE_DATA + 4, dataEnd);
+		root.write(page, currentPage);
+	}
+
+	/**
+	 * Try to make space in a full data page by compressing it. The data written so far is
+	 * compressed, and the usable space is extended such that the final compressed page fits
+	 * into a page even if the remaining data is not compressible.
+	 * @param delta The required space
+	 * @return {@code true} if the page has now enough space.
+	 */
+	private boolean extendPage(int delta) {
+		if (codec == null || currentDataType != PAGE_TYPE.DATA) {
+			return false;
+		}
+		int pos = buf.position();
+		int end = codec.compress(buf.array(), compressedPos, pos, compressed, compressedEnd);
+		//reserve space for the next-page ID and for the overhead of the final segment 
+		int newMaxPos = pos + pageSize - end - PageCodec.MAX_OVERHEAD - 4;
+		newMaxPos = Math.min(newMaxPos, buf.capacity() - 4);
+		if (pos + delta > newMaxPos) {
+			//The compressed data is discarded, it would only add overhead
+			return false;
 		}
+		compressedPos = pos;
+		compressedEnd = end;
+		maxPos = newMaxPos;
+		return true;
 	}
 
+	/**
+	 * Strings that contain only Latin-1 characters are written with one byte per character,
+	 * other Strings are written in UTF-8. The encodings start with a marker byte and the
+	 * number of characters as varint.
+	 * Strings are written directly into the page buffer, without allocating temporary arrays.
+	 */
 	@Override
 	public void writeString(String string) {
+		if (!root.isCompactStrings()) {
+			writeStringLegacy(string);
+			return;
+		}
+		final int len = string.length();
+		boolean isLatin1 = true;
+		for (int i = 0; i < len; i++) {
+			if (string.charAt(i) > 0xFF) {
+				isLatin1 = false;
+				break;
+			}
+		}
+		//Same check as for legacy Strings, the reader needs to peek at the marker byte
+		checkPosWrite(4);
+		buf.put(isLatin1 ? STRING_LATIN1 : STRING_UTF8);
+		writeVarInt(len);
+		reserveRun(len);
+		
+		int i = 0;
+		if (isLatin1) {
+			while (i < len) {
+				checkPosWrite(1);
+				int end = Math.min(len, i + maxPos - buf.position());
+				for (; i < end; i++) {
+					buf.put((byte) string.charAt(i));
+				}
+			}
+			return;
+		}
+		
+		//Every character is written as 1-3 bytes. Surrogates are written separately, as 
+		//in the 'modified UTF-8' of DataOutput.
+		while (i < len) {
+			//We move to the next page if less than 3 bytes remain, the reader does the same
+			checkPosWrite(3);
+			int end = Math.min(len, i + (maxPos - buf.position()) / 3);
+			for (; i < end; i++) {
+				char c = string.charAt(i);
+				if (c < 0x80) {
+					buf.put((byte) c);
+				} else if (c < 0x800) {
+					buf.put((byte) (0xC0 | (c >> 6)));
+					buf.put((byte) (0x80 | (c & 0x3F)));
+				} else {
+					buf.put((byte) (0xE0 | (c >> 12)));
+					buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+					buf.put((byte) (0x80 | (c & 0x3F)));
+				}
+			}
+		}
+	}
+	
+	private void writeVarInt(int v) {
+		while ((v & ~0x7F) != 0) {
+			checkPosWrite(1);
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		checkPosWrite(1);
+		buf.put((byte) v);
+	}
+	
+	/**
+	 * Write a String in the format of files before version 1.6. 
+	 * @param string The String
+	 */
+	private void writeStringLegacy(String string) {
 		checkPosWrite(4);
 		buf.putInt(string.length());
+		reserveRun(string.length() * 2);
 
 		//Align for 2-byte writing
 		int p = buf.position();
@@ -153,7 +314,7 @@ public class StorageWriter implements StorageChannelOutput {
 		int posA = 0; //position in array
 		while (l > 0) {
 		    checkPosWrite(2);
-		    int putLen = MAX_POS - buf.position();
+		    int putLen = maxPos - buf.position();
 		    putLen = putLen >> 1; //TODO loses odd values!
 		    if (putLen > l) {
 		        putLen = l;
@@ -172,9 +333,10 @@ public class StorageWriter implements StorageChannelOutput {
 	public void write(byte[] array) {
 		int l = array.length;
 		int posA = 0; //position in array
+		reserveRun(l);
 		while (l > 0) {
 		    checkPosWrite(1);
-		    int putLen = MAX_POS - buf.position();
+		    int putLen = maxPos - buf.position();
 		    if (putLen > l) {
 		        putLen = l;
 		    }
@@ -316,14 +478,14 @@ public class StorageWriter implements StorageChannelOutput {
 		//TODO remove autopaging, the indices use anyway the noCheckMethods!!
 		//TODO -> otherwise, make it final, as it should be known when a view is constructed.
 		if (isAutoPaging) {
-			return (buf.position() + delta - MAX_POS) <= 0;
+			return (buf.position() + delta - maxPos) <= 0;
 		}
 		return true;
 	}
 
 	private void checkPosWrite(int delta) {
-		if (isAutoPaging && buf.position() + delta > MAX_POS) {
-			int pageId = root.getNextPage(0);
+		if (isAutoPaging && buf.position() + delta > maxPos && !extendPage(delta)) {
+			int pageId = runNextPage < runEndPage ? runNextPage++ : root.getNextPage(0);
 			buf.putInt(pageId);
 
 			//write page
@@ -338,6 +500,24 @@ public class StorageWriter implements StorageChannelOutput {
 		}
 	}
 
+	/**
+	 * Allocate a run of contiguous pages if the following {@code nBytes} do not fit into the
+	 * current data page. The following page overflows use the pages of the run, so that
+	 * large objects can be read with few large reads.
+	 * @param nBytes The number of bytes that will be written
+	 */
+	private void reserveRun(int nBytes) {
+		if (!isAutoPaging || currentDataType != PAGE_TYPE.DATA || runNextPage < runEndPage) {
+			return;
+		}
+		int usable = pageSize - 4 - PAGE_HEADER_SIZE_DATA;
+		int nPages = (nBytes - (maxPos - buf.position()) + usable - 1) / usable;
+		if (nPages > 1) {
+			runNextPage = root.getNextPageRun(nPages);
+			runEndPage = runNextPage + nPages;
+		}
+	}
+
 	private void writeHeader() {
 		buf.put(currentDataType.getId());
 		buf.put((byte) 0); //dummy
@@ -364,7 +544,7 @@ public class StorageWriter implements StorageChannelOutput {
 	    while (l > 0) {
 	        checkPosWrite(1);
 	        int bPos = buf.position();
-	        int putLen = MAX_POS - bPos;
+	        int putLen = maxPos - bPos;
 	        if (putLen > l) {
 	            putLen = l;
 	        }
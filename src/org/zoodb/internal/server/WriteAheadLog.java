@@ -0,0 +1,410 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+import org.zoodb.internal.util.DBLogger;
+
+/**
+ * Write-ahead log for commits.
+ * <p>
+ * With a log, commits do not write to the database file at all. The pages written by a
+ * commit and the content of its new root page are appended to the log, which is forced with
+ * a single sequential write. Until the next checkpoint, the latest version of each logged
+ * page is read from the log, see {@link #readPage}.
+ * <p>
+ * During a checkpoint, the latest version of each logged page is copied to the database
+ * file, see {@link #copyPages}. Pages that were rewritten by several commits, such as the
+ * pages on the path to the index roots, are therefore written to the database file only
+ * once per checkpoint. Then the file is forced, the root page is written and the log is
+ * truncated.
+ * <p>
+ * When a database is opened, the {@link SessionManager} replays the pages of all complete
+ * commits in the log and writes the root page of the last one.
+ * <p>
+ * Uncompressed pages are logged with the used part only, see {@link #addPage}.
+ * <p>
+ * The log starts with a header that contains the commit ID of the root page that the log is
+ * based on. A log with a different base is outdated and is ignored. The header is followed
+ * by page records and commit records, each record ends with a checksum. The log ends with
+ * the first incomplete record. Page records that are not followed by a commit record, for
+ * example from failed commits, are ignored.
+ * <p>
+ * The log is written only by the session that holds the write lock, but logged pages may be
+ * read concurrently by all sessions.
+ *
+ * @author Tilmann Zaeschke
+ */
+final class WriteAheadLog {
+
+	static final String FILE_SUFFIX = ".wal";
+
+	private static final long MAGIC = 0x5A6F6F4442574C31L;
+	private static final int HEADER_SIZE = 8 + 4 + 8;
+	private static final byte RECORD_PAGE = 1;
+	private static final byte RECORD_COMMIT = 2;
+	private static final int PAGE_HEADER_SIZE = 1 + 4 + 4;
+	private static final int COMMIT_SIZE = 1 + 8 + 6*4 + 8;
+	private static final int CRC_SIZE = 4;
+
+	private final Path path;
+	private final FileChannel fc;
+	private final int pageSize;
+	private final ByteBuffer buf;
+	private final ByteBuffer readBuf;
+	private final byte[] zeros;
+	private final CRC32 crc = new CRC32();
+	//Position of the latest record of each logged page, sorted for sequential checkpoints
+	private final TreeMap<Long, Long> pageIndex = new TreeMap<>();
+	private long size;
+
+	private WriteAheadLog(Path path, FileChannel fc, int pageSize) {
+		this.path = path;
+		this.fc = fc;
+		this.pageSize = pageSize;
+		this.buf = ByteBuffer.allocate(PAGE_HEADER_SIZE + pageSize + CRC_SIZE);
+		this.readBuf = ByteBuffer.allocate(PAGE_HEADER_SIZE + pageSize);
+		this.zeros = new byte[pageSize];
+	}
+
+	static Path getPath(Path dbPath) {
+		return dbPath.resolveSibling(dbPath.getFileName() + FILE_SUFFIX);
+	}
+
+	/**
+	 * Create a new empty log. An existing log is overwritten.
+	 * @param dbPath Path of the database file
+	 * @param pageSize The page size of the database
+	 * @param baseCommitId The commit ID of the current root page
+	 * @return The log
+	 */
+	static WriteAheadLog create(Path dbPath, int pageSize, long baseCommitId) {
+		Path path = getPath(dbPath);
+		try {
+			FileChannel fc = FileChannel.open(path, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			WriteAheadLog wal = new WriteAheadLog(path, fc, pageSize);
+			wal.reset(baseCommitId);
+			return wal;
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Could not create log: " + path, e);
+		}
+	}
+
+	/**
+	 * Delete the log of a database, if it exists.
+	 * @param dbPath Path of the database file
+	 */
+	static void delete(Path dbPath) {
+		Path path = getPath(dbPath);
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Could not delete log: " + path, e);
+		}
+	}
+
+	/**
+	 * Append a page to the log. The page is written to the database file only during the
+	 * next checkpoint, until then it is read from the log.
+	 * Only the remaining bytes of the buffer are logged, this is usually the used part of
+	 * the page.
+	 * @param page The page, the position of the buffer is not modified
+	 * @param pageId The page ID
+	 */
+	synchronized void addPage(ByteBuffer page, long pageId) {
+		ByteBuffer src = page.duplicate();
+		buf.clear();
+		buf.put(RECORD_PAGE);
+		buf.putInt((int) pageId);
+		buf.putInt(src.remaining());
+		buf.put(src);
+		long pos = size;
+		append();
+		pageIndex.put(pageId, pos);
+	}
+
+	/**
+	 * @param pageId The page ID
+	 * @return Whether the log contains a version of the page that has not been copied to the
+	 * database file yet.
+	 */
+	synchronized boolean contains(long pageId) {
+		return pageIndex.containsKey(pageId);
+	}
+
+	/**
+	 * Read the latest version of a page from the log. Like a read from the database file,
+	 * this fills the remaining bytes of the buffer, up to the page size. The part of the page
+	 * that was not logged is filled with zeros.
+	 * @param page The buffer
+	 * @param pageId The page ID
+	 * @return {@code false} if the log does not contain the page.
+	 */
+	synchronized boolean readPage(ByteBuffer page, long pageId) {
+		Long pos = pageIndex.get(pageId);
+		if (pos == null) {
+			return false;
+		}
+		int len = readPageRecord(pos);
+		int n = Math.min(page.remaining(), pageSize);
+		if (n <= len) {
+			readBuf.limit(PAGE_HEADER_SIZE + n);
+			page.put(readBuf);
+		} else {
+			page.put(readBuf);
+			page.put(zeros, 0, n - len);
+		}
+		return true;
+	}
+
+	/**
+	 * Read a page record into the read buffer.
+	 * @return The length of the page data
+	 */
+	private int readPageRecord(long pos) {
+		try {
+			readBuf.clear();
+			readBuf.limit(PAGE_HEADER_SIZE);
+			if (readFully(fc, readBuf, pos)) {
+				int len = readBuf.getInt(5);
+				readBuf.limit(PAGE_HEADER_SIZE + len);
+				if (readFully(fc, readBuf, pos + PAGE_HEADER_SIZE)) {
+					readBuf.position(PAGE_HEADER_SIZE);
+					return len;
+				}
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error reading log: " + path, e);
+		}
+		throw DBLogger.newFatal("Error reading log: " + path + " at " + pos);
+	}
+
+	/**
+	 * Copy the latest version of all logged pages to the database file. This is the first
+	 * step of a checkpoint. The log remains valid until {@link #reset(long)} is called.
+	 * @param out Writes a page to the database file
+	 * @return The number of copied pages
+	 */
+	synchronized int copyPages(ObjLongConsumer<ByteBuffer> out) {
+		for (Map.Entry<Long, Long> e: pageIndex.entrySet()) {
+			readPageRecord(e.getValue());
+			out.accept(readBuf, e.getKey());
+		}
+		return pageIndex.size();
+	}
+
+	/**
+	 * Append a commit record to the log.
+	 * @param rootPage The new root page
+	 * @param txId The transaction ID of the commit
+	 * @param force Whether to force the log to disk
+	 */
+	synchronized void commit(RootPage rootPage, long txId, boolean force) {
+		buf.clear();
+		buf.put(RECORD_COMMIT);
+		rootPage.writeLogRecord(txId, buf);
+		append();
+		if (force) {
+			try {
+				fc.force(false);
+			} catch (IOException e) {
+				throw DBLogger.newFatal("Error writing log: " + path, e);
+			}
+		}
+	}
+
+	private void append() {
+		crc.reset();
+		crc.update(buf.array(), 0, buf.position());
+		buf.putInt((int) crc.getValue());
+		buf.flip();
+		try {
+			while (buf.hasRemaining()) {
+				size += fc.write(buf, size);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing log: " + path, e);
+		}
+	}
+
+	/**
+	 * @return The size of the log in bytes.
+	 */
+	synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Discard the log after a checkpoint.
+	 * @param baseCommitId The commit ID of the root page that has been written
+	 */
+	synchronized void reset(long baseCommitId) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putLong(MAGIC);
+		header.putInt(pageSize);
+		header.putLong(baseCommitId);
+		header.flip();
+		try {
+			fc.truncate(HEADER_SIZE);
+			fc.write(header, 0);
+			fc.force(false);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing log: " + path, e);
+		}
+		size = HEADER_SIZE;
+		pageIndex.clear();
+	}
+
+	/**
+	 * Close the log. The log file is deleted if it contains no commits.
+	 */
+	synchronized void close() {
+		try {
+			fc.close();
+			if (size == HEADER_SIZE) {
+				Files.deleteIfExists(path);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error closing log: " + path, e);
+		}
+	}
+
+	/**
+	 * Replay the log of a database, if it exists and is based on the given root page.
+	 * The pages of all complete commits are written to the database file, but the file
+	 * is not forced.
+	 * @param dbPath Path of the database file
+	 * @param file The database file
+	 * @param rootPage The current root page of the database
+	 * @return A new root page that contains the last commit in the log, or {@code null} if
+	 * there was nothing to replay. The transaction ID of the root page is set.
+	 */
+	static RootPage replay(Path dbPath, StorageRoot file, RootPage rootPage) {
+		Path path = getPath(dbPath);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			boolean isValid = readFully(fc, header, 0);
+			header.flip();
+			if (!isValid || header.getLong() != MAGIC) {
+				SessionManager.LOGGER.warn("Ignoring invalid log: {}", path);
+				return null;
+			}
+			int pageSize = header.getInt();
+			long baseCommitId = header.getLong();
+			if (pageSize != file.getPageSize() || baseCommitId != rootPage.getCommitId()) {
+				//The log has already been checkpointed
+				return null;
+			}
+
+			WriteAheadLog wal = new WriteAheadLog(path, fc, pageSize);
+			//find the last complete commit
+			long end = HEADER_SIZE;
+			long pos = HEADER_SIZE;
+			while ((pos = wal.readRecord(pos)) > 0) {
+				if (wal.buf.get(0) == RECORD_COMMIT) {
+					end = pos;
+				}
+			}
+			if (end == HEADER_SIZE) {
+				return null;
+			}
+
+			RootPage newRootPage = rootPage.copy();
+			int nPages = 0;
+			pos = HEADER_SIZE;
+			while (pos < end) {
+				pos = wal.readRecord(pos);
+				ByteBuffer b = wal.buf;
+				b.position(1);
+				if (b.get(0) == RECORD_PAGE) {
+					int pageId = b.getInt();
+					int len = b.getInt();
+					b.limit(b.position() + len);
+					file.write(b, pageId);
+					nPages++;
+				} else {
+					newRootPage.readLogRecord(b);
+				}
+			}
+			SessionManager.LOGGER.info("Replayed {} pages from log: {}", nPages, path);
+			return newRootPage;
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error reading log: " + path, e);
+		}
+	}
+
+	/**
+	 * Read a record into the buffer.
+	 * @return The position of the next record or {@code -1} if the record is incomplete.
+	 */
+	private long readRecord(long pos) throws IOException {
+		buf.clear();
+		buf.limit(PAGE_HEADER_SIZE);
+		if (!readFully(fc, buf, pos)) {
+			return -1;
+		}
+		int len;
+		byte type = buf.get(0);
+		if (type == RECORD_PAGE) {
+			int dataLen = buf.getInt(5);
+			if (dataLen < 0 || dataLen > pageSize) {
+				return -1;
+			}
+			len = PAGE_HEADER_SIZE + dataLen;
+		} else if (type == RECORD_COMMIT) {
+			len = COMMIT_SIZE;
+		} else {
+			return -1;
+		}
+		buf.limit(len + CRC_SIZE);
+		if (!readFully(fc, buf, pos + PAGE_HEADER_SIZE)) {
+			return -1;
+		}
+		crc.reset();
+		crc.update(buf.array(), 0, len);
+		if (buf.getInt(len) != (int) crc.getValue()) {
+			return -1;
+		}
+		buf.limit(len);
+		return pos + len + CRC_SIZE;
+	}
+
+	private static boolean readFully(FileChannel fc, ByteBuffer b, long pos)
+			throws IOException {
+		while (b.hasRemaining()) {
+			int n = fc.read(b, pos);
+			if (n < 0) {
+				return false;
+			}
+			pos += n;
+		}
+		return true;
+	}
+}
@@ -64,6 +64,7 @@ abstract class AbstractIndexPage {
 
 		//new pages are always dirty
 		setDirty( true );
+		ind.registerPage();
 	}
 
 	protected abstract AbstractIndexPage newInstance();
@@ -160,6 +161,24 @@ abstract class AbstractIndexPage {
 	
 	protected abstract void incrementNEntries();
 	
+	/**
+	 * Pages can only be evicted if they are clean and have no loaded sub-pages.
+	 * @return Whether the page can be removed from memory.
+	 */
+	final boolean isEvictable() {
+		if (isDirty()) {
+			return false;
+		}
+		if (!isLeaf) {
+			for (int i = 0; i <= getNKeys(); i++) {
+				if (subPages[i] != null) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
 	final AbstractIndexPage readCachedPage(short pos) {
 	    AbstractIndexPage page = subPages[pos];
 		if (page != null) {
@@ -205,7 +224,7 @@ abstract class AbstractIndexPage {
 		return pageId;
 	}
 
-	final int createWriteMap(Map<AbstractIndexPage, Integer> map, FreeSpaceManager fsm) {
+	final int createWriteMap(Map<AbstractIndexPage, Integer> map, PagedFreeSpaceManager fsm) {
 		if (!isDirty()) {
 			return pageId;
 		}
@@ -40,6 +40,8 @@ public abstract class AbstractPageIterator<E> implements LongLongIndex.LongLongI
 	}
 	
 	protected final AbstractIndexPage findPage(AbstractIndexPage currentPage, short pagePos) {
+		//Pages are not evicted here, this would detach pages that are referenced by the 
+		//iterator. Eviction happens at the start of the next top-level index operation.
 		return currentPage.readCachedPage(pagePos);
 	}
 
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,7 @@ import org.zoodb.internal.server.StorageChannelInput;
 import org.zoodb.internal.server.StorageChannelOutput;
 import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
 import org.zoodb.internal.util.DBLogger;
+import org.zoodb.tools.ZooConfig;
 
 /**
  * @author Tilmann Zaeschke
@@ -55,6 +57,12 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 	private int modCount = 0;
 	private final PAGE_TYPE dataType;
 	
+	//Maximum number of pages in memory, '0' means unlimited
+	private int maxLoadedPages = ZooConfig.getIndexPageBudget();
+	//Approximate number of pages in memory. This is only used to trigger eviction.
+	private final AtomicInteger nLoadedPages = new AtomicInteger();
+	private int evictAt = 0;
+	
 
 	/**
 	 * In case this is an existing index, read() should be called afterwards.
@@ -129,6 +137,10 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		
 		int ret = getRoot().write(out);
 		markClean();
+		if (maxLoadedPages > 0) {
+			//All pages are clean now
+			evictPagesNow();
+		}
 		return ret;
 	}
 
@@ -137,7 +149,7 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 	 * @param map map
 	 */
 	final void preallocatePagesForWriteMap(Map<AbstractIndexPage, Integer> map, 
-			FreeSpaceManager fsm) {
+			PagedFreeSpaceManager fsm) {
 		getRoot().createWriteMap(map, fsm);
 	}
 	
@@ -184,6 +196,122 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 
 	protected abstract void updateRoot(AbstractIndexPage newRoot);
 
+	/**
+	 * If the index is empty, build the index bottom-up. The pages are filled according to 
+	 * {@link ZooConfig#getIndexFillFactor()}.
+	 * @param keys The sorted keys
+	 * @param values The values
+	 * @param n The number of entries
+	 * @return {@code false} if the index is not empty, nothing is inserted in this case.
+	 */
+	protected final boolean bulkLoadIfEmpty(long[] keys, long[] values, int n) {
+		AbstractIndexPage oldRoot = getRoot();
+		if (oldRoot.getNKeys() >= 0) {
+			return false;
+		}
+		if (n == 0) {
+			return true;
+		}
+		AbstractIndexPage newRoot = LLIndexPage.build(this, keys, values, n, 
+				ZooConfig.getIndexFillFactor());
+		//IDs of unwritten pages are ignored
+		file.reportFreePage(oldRoot.pageId());
+		statNInner--;
+		updateRoot(newRoot);
+		notifyPageUpdate();
+		markDirty();
+		return true;
+	}
+
+	final void registerPage() {
+		nLoadedPages.incrementAndGet();
+	}
+
+	/**
+	 * Remove clean pages from memory if the number of loaded pages exceeds the page budget.
+	 * Evicted pages are reloaded from disk when they are accessed again.
+	 * <p>
+	 * This must only be called at the beginning of top-level operations, when no pages are
+	 * referenced by the caller, because evicted pages are detached from their parent. 
+	 */
+	protected final void evictPages() {
+		if (maxLoadedPages <= 0 || nLoadedPages.get() <= Math.max(maxLoadedPages, evictAt)) {
+			return;
+		}
+		evictPagesNow();
+	}
+
+	private void evictPagesNow() {
+		synchronized (nLoadedPages) {
+			//The counter also includes pages that were removed from the tree, so we recount.
+			int n = statsGetLoadedPagesN();
+			//Evict down to half the budget to amortize the cost of traversing the tree
+			int target = maxLoadedPages >> 1;
+			if (n > target) {
+				n = target + evictSubPages(getRoot(), n - target);
+			}
+			nLoadedPages.set(n);
+			//If dirty pages could not be evicted, wait until their number has doubled.
+			//Otherwise large transactions would traverse the tree for every new page.
+			evictAt = n > target ? 2 * n : 0;
+		}
+	}
+
+	/**
+	 * Evict sub-pages, leaves first.
+	 * @return The remaining number of pages to evict
+	 */
+	private static int evictSubPages(AbstractIndexPage page, int toEvict) {
+		if (page.isLeaf) {
+			return toEvict;
+		}
+		for (int i = 0; i <= page.getNKeys() && toEvict > 0; i++) {
+			AbstractIndexPage child = page.subPages[i];
+			if (child == null) {
+				continue;
+			}
+			toEvict = evictSubPages(child, toEvict);
+			if (toEvict > 0 && child.isEvictable()) {
+				page.subPages[i] = null;
+				toEvict--;
+			}
+		}
+		return toEvict;
+	}
+
+	/**
+	 * Set the maximum number of pages that are kept in memory. Only clean pages can be
+	 * evicted, so the actual number of pages may temporarily exceed this value. 
+	 * @param maxPages The maximum number of pages in memory, {@code 0} means unlimited.
+	 */
+	public void setPageBudget(int maxPages) {
+		maxLoadedPages = maxPages;
+	}
+
+	public int getPageBudget() {
+		return maxLoadedPages;
+	}
+
+	/**
+	 * @return The number of pages that are currently loaded (or have not been evicted yet). 
+	 */
+	public int statsGetLoadedPagesN() {
+		return countLoadedPages(getRoot());
+	}
+
+	private static int countLoadedPages(AbstractIndexPage page) {
+		int n = 1;
+		if (page.isLeaf) {
+			return n;
+		}
+		for (int i = 0; i <= page.getNKeys(); i++) {
+			if (page.subPages[i] != null) {
+				n += countLoadedPages(page.subPages[i]);
+			}
+		}
+		return n;
+	}
+
 	public int statsGetInnerN() {
 		return statNInner;
 	}
@@ -220,6 +348,34 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
         }
 	}
 
+	public final boolean relocatePages(int minPageId) {
+		return relocatePages(getRoot(), minPageId);
+	}
+
+	private static boolean relocatePages(AbstractIndexPage page, int minPageId) {
+		boolean isMarked = false;
+		if (!page.isLeaf) {
+			for (int i = 0; i <= page.getNKeys(); i++) {
+				//Leaves are only loaded if they need to be moved. The first sub-page is always
+				//loaded to find out whether the sub-pages are leaves.
+				if (i > 0 && page.subPages[i] == null && page.subPageIds[i] < minPageId 
+						&& page.subPages[0] != null && page.subPages[0].isLeaf) {
+					continue;
+				}
+				AbstractIndexPage child = page.readPage(i);
+				if (child != null) {
+					isMarked |= relocatePages(child, minPageId);
+				}
+			}
+		}
+		if (page.pageId() >= minPageId) {
+			//This also marks the parent pages
+			page.markPageDirtyAndClone();
+			isMarked = true;
+		}
+		return isMarked;
+	}
+
 	public void clear() {
 		getRoot().clear();
 		file.reportFreePage(getRoot().pageId());
@@ -16,60 +16,83 @@
 package org.zoodb.internal.server.index;
 
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.zoodb.internal.server.DiskIO;
 import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
 import org.zoodb.internal.server.IOResourceProvider;
+import org.zoodb.internal.server.StorageChannelInput;
 import org.zoodb.internal.server.StorageChannelOutput;
-import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
 import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongArrayList;
 
 /**
- * The free space manager.  
- * 
- * Uses separate index for free pages. Does not use a BitMap, that would only pay out if more 
- * than 1/32 of all pages would be free (based on 4KB page size?).
- * The manager should only return pages that were freed up during previous transactions, but not
- * in the current one. To do so, in the freespace manager, create a new iterator(MIN_INT/MAX_INT) 
- * for every new transaction. The iterator will return only free pages from previous transactions.
- * If (iter.hasNext() == false), use atomic page counter to allocate additional pages.
- * 
+ * The free space manager.
+ *
+ * Free pages are kept in memory. Pages that can be reused by the current transaction are kept
+ * in a bitmap, allocation simply takes the lowest free page. Pages that were freed by
+ * transactions that may still be visible to snapshots of other sessions are grouped by the ID
+ * of the freeing transaction. They are moved to the bitmap when a new transaction begins and
+ * no snapshot can see them anymore. Pages that are freed in the current transaction are
+ * only reused in following transactions.
+ * If there are no free pages, use atomic page counter to allocate additional pages.
+ * <p>
+ * At commit, the free pages are written as a list of page extents (start page, number of
+ * pages), grouped by transaction ID. The list is written to a chain of pages with the
+ * following layout:
+ * {@code int nextPage, {int nExtents, long txId, {int start, int length}*}*, int 0}.
+ * <p>
+ * Files with a version before {@link DiskIO#DB_FILE_VERSION_MIN_FREE_SPACE_LIST} use a free
+ * space index, see {@link PagedFreeSpaceManager}.
+ *
  * @author Tilmann Zaeschke
  *
  */
 public class FreeSpaceManager {
-	
-	private transient PagedUniqueLongLong idx;
+
+	private static final int EPOCH_HEADER_SIZE = 12;
+	private static final int EXTENT_SIZE = 8;
+	//Maximum number of extents (or pages in older files) that are checked by a search for a 
+	//page run. If no run is found, it is allocated at the end of the file.
+	static final int MAX_RUN_SEARCH = 1000;
+
+	//The free space manager of older files
+	private PagedFreeSpaceManager legacy;
+
+	private IOResourceProvider file;
 	private final AtomicInteger lastPage = new AtomicInteger(-1);
-	private LLEntryIterator iter;
-	
-	//Using toAdd/toDelete is purely an optimisation in order to avoid
-	//recreating iterators. 
-	//TODO A better solution would be to implement iter.remove() and
-	//iter.updateValue() and/or let iterators ignore what happens
-	//below the current key.
-	private final ArrayList<Integer> toAdd = new ArrayList<>();
-	private final ArrayList<Integer> toDelete = new ArrayList<>();
-	
-	//Maximum id transactions whose pages can be reused. This should be global
-	private volatile long maxFreeTxId = -1;
-	//TODO ThreadLocal???? --> What if commits with in one tx come from different threads?
+	//Pages that can be reused by the current transaction
+	private final BitSet free = new BitSet();
+	//All free pages, including pages that cannot be reused yet
+	private final BitSet released = new BitSet();
+	//All pages below this are not in 'free'
+	private int freePos = 0;
+	//The search for page runs continues here, see getNextPageRun()
+	private int runPos = 0;
+	//Highest ID of the transactions whose pages have been moved to 'free'
+	private long freeTxId = 0;
+	//Extents of pages that cannot be reused yet, by ID of the freeing transaction
+	private final TreeMap<Long, PrimLongArrayList> pending = new TreeMap<>();
+	//Pages that were freed since the last write()
+	private final PrimLongArrayList freedNow = new PrimLongArrayList();
+	//The pages of the list that was written last
+	private int[] listPages = new int[0];
+	//Previous pages of the list, they are only reused for the list, by ID of the transaction
+	private final TreeMap<Long, PrimLongArrayList> listPool = new TreeMap<>();
+	private boolean isDirty = false;
+	private boolean isActive = false;
+
+	//Maximum id transactions whose pages can be reused
+	private long maxFreeTxId = -1;
 	private long currentTxId = -1;  //This is local to a transaction
-	
-	//TODO invert the mapping:
-	//Map txId-->pageId!
-	//TODO adjust key/value-size in index!
-	
-	//Currently: Pages to be deleted have an inverted sign: (-txId) 
-	
-	//Used by the write() method. 
-	//Later, we need a map of those, one per session?
-	private boolean hasWritingSettled;
-
-	
+
+
 	/**
 	 * Constructor for free space manager.
 	 */
@@ -78,82 +101,257 @@ public class FreeSpaceManager {
 	}
 
 	/**
-	 * Constructor for creating new index. 
+	 * Constructor for creating new index.
 	 * @param file The file
 	 */
 	public void initBackingIndexNew(IOResourceProvider file) {
-		if (idx != null) {
+		if (this.file != null || legacy != null) {
 			throw new IllegalStateException();
 		}
-		//8 byte page, 1 byte flag 
-		idx = new PagedUniqueLongLong(PAGE_TYPE.FREE_INDEX, file, 4, 8);
+		this.file = file;
 	}
-	
+
 	/**
-	 * Constructor for creating new index. 
+	 * Constructor for loading an existing index.
 	 * @param file The file
 	 * @param pageId The page ID of the root page
 	 * @param pageCount Current number of pages
+	 * @param isFreeList Whether the file uses a free space list, otherwise it uses a free
+	 * space index
+	 * @see org.zoodb.internal.server.FileHeader#hasFreeSpaceList()
 	 */
-	public void initBackingIndexLoad(IOResourceProvider file, int pageId, int pageCount) {
-		if (idx != null) {
+	public void initBackingIndexLoad(IOResourceProvider file, int pageId, int pageCount,
+			boolean isFreeList) {
+		if (this.file != null || legacy != null) {
 			throw new IllegalStateException();
 		}
-		//8 byte page, 1 byte flag 
-		idx = new PagedUniqueLongLong(PAGE_TYPE.FREE_INDEX, file, pageId, 4, 8);
+		if (!isFreeList) {
+			legacy = new PagedFreeSpaceManager(file, pageId, pageCount);
+			return;
+		}
+		this.file = file;
 		lastPage.set(pageCount-1);
+		read(pageId);
+	}
+
+	private void read(int pageId) {
+		ArrayList<Integer> pages = new ArrayList<>();
+		StorageChannelInput in = file.createReader(false);
+		int nextPage = pageId;
+		while (nextPage != 0) {
+			pages.add(nextPage);
+			in.seekPageForRead(PAGE_TYPE.FREE_LIST, nextPage);
+			nextPage = in.readInt();
+			int nExtents;
+			while ((nExtents = in.readInt()) != 0) {
+				long txId = in.readLong();
+				PrimLongArrayList extents = pending.computeIfAbsent(txId,
+						k -> new PrimLongArrayList());
+				for (int i = 0; i < nExtents; i++) {
+					int start = in.readInt();
+					int len = in.readInt();
+					released.set(start, start + len);
+					extents.add(extent(start, len));
+				}
+			}
+		}
+		file.dropReader(in);
+		listPages = new int[pages.size()];
+		for (int i = 0; i < listPages.length; i++) {
+			listPages[i] = pages.get(i);
+		}
 	}
-	
-	
+
+	private static long extent(int start, int len) {
+		return ((long)start << 32) | len;
+	}
+
+	private static int extentStart(long extent) {
+		return (int) (extent >>> 32);
+	}
+
+	private static int extentLength(long extent) {
+		return (int) extent;
+	}
+
+	/**
+	 * Write the free space list. The previous list is freed and the new list is written
+	 * to pages that are allocated before the list is serialised. Allocating pages only
+	 * removes pages from the start of extents, so the list can only get shorter during the
+	 * allocation.
+	 * <p>
+	 * Pages of previous lists are kept separately and are reused for later lists. Otherwise
+	 * they would be reused for data, leaving holes between the data of consecutive
+	 * transactions.
+	 * @param out The output channel
+	 * @return The first page of the list
+	 */
 	public int write(StorageChannelOutput out) {
-		for (Integer l: toDelete) {
-			idx.removeLong(l);
-		}
-		toDelete.clear();
-
-		for (Integer l: toAdd) {
-			idx.insertLong(l, currentTxId);
-		}
-		toAdd.clear();
-
-		//just in case that traversing toAdd required new pages.
-		for (Integer l: toDelete) {
-			idx.removeLong(l);
-		}
-		toDelete.clear();
-
-		hasWritingSettled = false;
-		
-		//repeat until we don't need any more new pages
-		Map<AbstractIndexPage, Integer> map = new IdentityHashMap<AbstractIndexPage, Integer>();
-		while (!hasWritingSettled) {
-			//Reset iterator to avoid ConcurrentModificationException
-			//Starting again with '0' should not be a problem. Typically, FSM should
-			//anyway contain very few pages with PID_DO_NOT_USE.
-			iter.close();
-			iter = idx.iterator(0, Long.MAX_VALUE);
-
-			hasWritingSettled = true;
-			idx.preallocatePagesForWriteMap(map, this);
-			
-			for (Integer l: toAdd) {
-				idx.insertLong(l, currentTxId);
-				hasWritingSettled = false;
+		if (legacy != null) {
+			return legacy.write(out);
+		}
+		if (!isDirty && listPages.length > 0) {
+			return listPages[0];
+		}
+
+		for (int pageId: listPages) {
+			released.set(pageId);
+			listPool.computeIfAbsent(currentTxId, k -> new PrimLongArrayList())
+					.add(extent(pageId, 1));
+		}
+		if (!freedNow.isEmpty()) {
+			PrimLongArrayList extents = pending.computeIfAbsent(currentTxId,
+					k -> new PrimLongArrayList());
+			for (int i = 0; i < freedNow.size(); i++) {
+				extents.add(extent((int) freedNow.get(i), 1));
 			}
-			toAdd.clear();
+			freedNow.clear();
 		}
 
-		if (!toDelete.isEmpty()) {
-			throw new IllegalStateException();
+		for (PrimLongArrayList extents: pending.values()) {
+			compact(extents);
+		}
+
+		ArrayList<Long> txIds = new ArrayList<>();
+		ArrayList<PrimLongArrayList> epochs = new ArrayList<>();
+		collectEpochs(txIds, epochs);
+		int[] pages = new int[writeList(null, txIds, epochs, null)];
+		for (int i = 0; i < pages.length; i++) {
+			pages[i] = allocateListPage();
 		}
+		collectEpochs(txIds, epochs);
+		writeList(out, txIds, epochs, pages);
 
-		return idx.writeToPreallocated(out, map);
+		listPages = pages;
+		isDirty = false;
+		return pages[0];
+	}
+
+	private void collectEpochs(List<Long> txIds, List<PrimLongArrayList> epochs) {
+		txIds.clear();
+		epochs.clear();
+		txIds.add(freeTxId);
+		epochs.add(freeExtents());
+		for (Map.Entry<Long, PrimLongArrayList> e: pending.entrySet()) {
+			txIds.add(e.getKey());
+			epochs.add(e.getValue());
+		}
+		for (Map.Entry<Long, PrimLongArrayList> e: listPool.entrySet()) {
+			txIds.add(e.getKey());
+			epochs.add(e.getValue());
+		}
+	}
+
+	private int allocateListPage() {
+		Map.Entry<Long, PrimLongArrayList> e = listPool.firstEntry();
+		if (e == null || e.getKey() > maxFreeTxId) {
+			return allocate();
+		}
+		PrimLongArrayList pages = e.getValue();
+		int pageId = extentStart(pages.removeLast());
+		if (pages.isEmpty()) {
+			listPool.remove(e.getKey());
+		}
+		released.clear(pageId);
+		return pageId;
+	}
+
+	/**
+	 * Write the list or, if {@code out == null}, only calculate the number of required pages.
+	 * @return Number of pages
+	 */
+	private int writeList(StorageChannelOutput out, List<Long> txIds,
+			List<PrimLongArrayList> epochs, int[] pages) {
+		final int capacity = file.getPageSize() - DiskIO.PAGE_HEADER_SIZE - 8;
+		int nPages = 1;
+		int remaining = capacity;
+		startPage(out, pages, 0);
+		for (int e = 0; e < epochs.size(); e++) {
+			PrimLongArrayList extents = epochs.get(e);
+			int pos = 0;
+			while (pos < extents.size()) {
+				if (remaining < EPOCH_HEADER_SIZE + EXTENT_SIZE) {
+					endPage(out);
+					startPage(out, pages, nPages++);
+					remaining = capacity;
+				}
+				int nExtents = Math.min(extents.size() - pos,
+						(remaining - EPOCH_HEADER_SIZE) / EXTENT_SIZE);
+				if (out != null) {
+					out.writeInt(nExtents);
+					out.writeLong(txIds.get(e));
+					for (int i = pos; i < pos + nExtents; i++) {
+						out.writeInt(extentStart(extents.get(i)));
+						out.writeInt(extentLength(extents.get(i)));
+					}
+				}
+				pos += nExtents;
+				remaining -= EPOCH_HEADER_SIZE + nExtents * EXTENT_SIZE;
+			}
+		}
+		endPage(out);
+		if (out != null) {
+			//The list may have become shorter than the allocated pages
+			while (nPages < pages.length) {
+				startPage(out, pages, nPages++);
+				endPage(out);
+			}
+			out.flush();
+		}
+		return nPages;
+	}
+
+	private static void startPage(StorageChannelOutput out, int[] pages, int i) {
+		if (out != null) {
+			out.seekPageForWrite(PAGE_TYPE.FREE_LIST, pages[i]);
+			out.writeInt(i + 1 < pages.length ? pages[i + 1] : 0);
+		}
+	}
+
+	private static void endPage(StorageChannelOutput out) {
+		if (out != null) {
+			out.writeInt(0);
+		}
+	}
+
+	private PrimLongArrayList freeExtents() {
+		PrimLongArrayList extents = new PrimLongArrayList();
+		int start = free.nextSetBit(freePos);
+		while (start >= 0) {
+			int end = free.nextClearBit(start);
+			extents.add(extent(start, end - start));
+			start = free.nextSetBit(end);
+		}
+		return extents;
+	}
+
+	/**
+	 * Sort and merge the extents.
+	 */
+	private static void compact(PrimLongArrayList extents) {
+		long[] a = extents.toArray();
+		Arrays.sort(a);
+		extents.clear();
+		int i = 0;
+		while (i < a.length) {
+			int start = extentStart(a[i]);
+			int end = start + extentLength(a[i]);
+			i++;
+			while (i < a.length && extentStart(a[i]) <= end) {
+				end = Math.max(end, extentStart(a[i]) + extentLength(a[i]));
+				i++;
+			}
+			extents.add(extent(start, end - start));
+		}
 	}
 
 	/**
 	 * @return Number of allocated pages in database.
 	 */
 	public int getPageCount() {
+		if (legacy != null) {
+			return legacy.getPageCount();
+		}
 		return lastPage.get() + 1;
 	}
 
@@ -164,182 +362,253 @@ public class FreeSpaceManager {
 	 * @return New free page.
 	 */
 	public int getNextPage(int prevPage) {
+		if (legacy != null) {
+			return legacy.getNextPage(prevPage);
+		}
 		reportFreePage(prevPage);
-		
-		if (iter.hasNextULL()) {
-			//ArrayList<Long> toDelete = new ArrayList<>();
-			LongLongIndex.LLEntry e = iter.nextULL();
-			long pageId = e.getKey();
-			long value = e.getValue();
-			
-			// do not return pages that are PID_DO_NOT_USE.
-			while ((value > maxFreeTxId || value < 0) && iter.hasNextULL()) {
-				if (value < 0 && ((-value) <= maxFreeTxId)) {
-					//optimisation:, collect in list and remove later?
-					toDelete.add((int)pageId);
-//					idx.removeLong(pageId);
-//					//idx.insertLong(pageId, -currentTxId);
-//					iter.close();
-//					iter = (LLIterator) idx.iterator(pageId+1, Long.MAX_VALUE);
-					//idx.removeLong(pageId, value);
-					//TODO or implement iter.remove() ?!
-				}
-				e = iter.nextULL();
-				pageId = e.getKey();
-				value = e.getValue();
-			}
-//			if (!toDelete.isEmpty()) {
-//				for (Long l: toDelete) {
-//					idx.removeLong(l);
-//				}
-//			}
-			if (value >= 0 && value <= maxFreeTxId) {
-				//TODO or implement iter.updateValue() ?!
-				//idx.removeLong(pageId);
-				idx.insertLong(pageId, -currentTxId);
-				iter.close();
-				iter = idx.iterator(pageId+1, Long.MAX_VALUE);
-				return (int) pageId;
-			}
-//			if (!toDelete.isEmpty()) {
-//				iter.close();
-//				iter = (LLIterator) idx.iterator(pageId+1, Long.MAX_VALUE);
-//			}
-		}
-		
-		//If we didn't find any we allocate a new page.
-		return lastPage.addAndGet(1);
+		isDirty = true;
+		return allocate();
+	}
+
+	private int allocate() {
+		int pageId = free.nextSetBit(freePos);
+		if (pageId < 0) {
+			//If we didn't find any we allocate a new page.
+			return lastPage.addAndGet(1);
+		}
+		free.clear(pageId);
+		released.clear(pageId);
+		freePos = pageId + 1;
+		return pageId;
 	}
 
 	/**
-	 * This method returns a free page without removing it from the FSM. Instead it is labeled
-	 * as 'invalid' and will be removed when it is encountered through the normal getNextPage()
-	 * method.
-	 * Now we make sure that all element of the map are still in the FSM.
-	 * Why? Because writing the FSM is tricky because it modifies itself during the process
-	 * when it allocates new pages. In theory, it could end up as a infinite loop, when it
-	 * repeatedly does the following:
-	 * a) allocate page; b) allocating results in page delete and removes it from the FSM;
-	 * c) page is returned to the FSM; d) FSM requires a new page and therefore starts over
-	 * with a).
-	 * Solution: we do not remove pages, but only tag them. More precisely the alloc() in
-	 * the index gets them from the FSM, but we don't remove them here, but only later when
-	 * they are encountered in the normal getNextPage() method.
-	 * 
-	 * @param prevPage The page ID of the previous page
-	 * @return free page ID
+	 * Get a run of contiguous pages. If there is no run of free pages, the run is allocated
+	 * at the end of the file.
+	 * <p>
+	 * The search continues where the previous search stopped, and it looks at no more than
+	 * {@link #MAX_RUN_SEARCH} extents. It starts again at the beginning when the reusable
+	 * pages change, i.e. with the next transaction. 
+	 * @param nPages Number of pages
+	 * @return ID of the first page of the run.
 	 */
-	public int getNextPageWithoutDeletingIt(int prevPage) {
-		reportFreePage(prevPage);
-
-		if (iter.hasNextULL()) {
-			LongLongIndex.LLEntry e = iter.nextULL();
-			long pageId = e.getKey();
-			long value = e.getValue();
-			
-			// do not return pages that are PID_DO_NOT_USE (i.e. negative value).
-			while ((value > maxFreeTxId || value < 0) && iter.hasNextULL()) {
-				e = iter.nextULL();
-				pageId = e.getKey();
-				value = e.getValue();
+	public int getNextPageRun(int nPages) {
+		if (legacy != null) {
+			return legacy.getNextPageRun(nPages);
+		}
+		isDirty = true;
+		int start = free.nextSetBit(Math.max(freePos, runPos));
+		for (int i = 0; start >= 0 && i < MAX_RUN_SEARCH; i++) {
+			runPos = start;
+			int end = free.nextClearBit(start);
+			if (end - start >= nPages) {
+				//take the start of the extent, see write()
+				free.clear(start, start + nPages);
+				released.clear(start, start + nPages);
+				runPos = start + nPages;
+				return start;
 			}
-			if (value >= 0 && value <= maxFreeTxId) {
-				//label the page as invalid
-				//TODO or implement iter.updateValue() ?!
-				idx.insertLong(pageId, -currentTxId);
-				iter.close();
-				iter = idx.iterator(pageId+1, Long.MAX_VALUE);
-
-				//it should be sufficient to set this only when the new page is taken
-				//from the index i.o. the Atomic counter...
-				hasWritingSettled = false;
-				return (int) pageId;
+			start = free.nextSetBit(end);
+		}
+		return lastPage.addAndGet(nPages) - nPages + 1;
+	}
+
+	/**
+	 * Remove free pages from the end of the file. Only pages that can be reused by the current
+	 * transaction are removed. This must be called after all other pages of the transaction
+	 * have been allocated and before the list is written with
+	 * {@link #write(StorageChannelOutput)}.
+	 * <p>
+	 * Files with a free space index are never shrunk.
+	 * @return The new number of pages
+	 */
+	public int trim() {
+		if (legacy != null) {
+			return legacy.getPageCount();
+		}
+		//Pages of previous lists may be at the end of the file, return them to the bitmap
+		Iterator<Map.Entry<Long, PrimLongArrayList>> it =
+				listPool.headMap(maxFreeTxId, true).entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, PrimLongArrayList> e = it.next();
+			PrimLongArrayList pages = e.getValue();
+			for (int i = 0; i < pages.size(); i++) {
+				free.set(extentStart(pages.get(i)));
 			}
+			freeTxId = Math.max(freeTxId, e.getKey());
+			freePos = 0;
+			runPos = 0;
+			isDirty = true;
+			it.remove();
+		}
+		int last = lastPage.get();
+		int newLast = last;
+		while (newLast > 0 && free.get(newLast)) {
+			newLast--;
+		}
+		if (newLast < last) {
+			free.clear(newLast + 1, last + 1);
+			released.clear(newLast + 1, last + 1);
+			lastPage.set(newLast);
+			isDirty = true;
+		}
+		return newLast + 1;
+	}
+
+	/**
+	 * @return The number of free pages, including pages that cannot be reused yet.
+	 */
+	public int getFreePageCount() {
+		if (legacy != null) {
+			//Not supported, files with a free space index are never shrunk
+			return 0;
 		}
-		
-		//If we didn't find any we allocate a new page.
-		return lastPage.addAndGet(1);
+		return released.cardinality();
 	}
 
 	public void reportFreePage(int prevPage) {
-		if (prevPage > 0) {
-			toAdd.add(prevPage);
+		if (legacy != null) {
+			legacy.reportFreePage(prevPage);
+			return;
+		}
+		//pages may be reported multiple times
+		if (prevPage > 0 && !released.get(prevPage)) {
+			released.set(prevPage);
+			freedNow.add(prevPage);
+			isDirty = true;
 		}
-		//Comment: pages tend to be seemingly reported multiple times, but they are always 
-		//PID_DO_NOT_USE pages.
 	}
-	
+
 	public void notifyCommit() {
-		iter.close();
-		iter = null;
+		if (legacy != null) {
+			legacy.notifyCommit();
+			return;
+		}
+		isActive = false;
 	}
-	
+
 	public void notifyBegin(long newTxId) {
+		notifyBegin(newTxId, newTxId - 1);
+	}
+
+	/**
+	 * Prepare the FSM for a new commit.
+	 * @param newTxId ID of the committing transaction
+	 * @param maxFreeTxId Pages that were freed by transactions with a higher ID are not reused.
+	 * This allows protecting pages that are still used by snapshots of other sessions.
+	 */
+	public void notifyBegin(long newTxId, long maxFreeTxId) {
+		if (legacy != null) {
+			legacy.notifyBegin(newTxId, maxFreeTxId);
+			return;
+		}
 		currentTxId = newTxId;
-		
-		//TODO not good for multi-session
-		maxFreeTxId = currentTxId - 1;
-		
-		if (iter != null) {
-			throw DBLogger.newFatalInternal("Free space manager has unexpected open iterator.");
-		}
-		
-		//Create a new Iterator for the current transaction
-		
-		//TODO use pageCount i.o. MAX_VALUE???
-		//-> No cloning of pages that refer to new allocated disk space
-		//-> But checking for isInterestedInPage is also expensive...
-		iter = idx.iterator(1, Long.MAX_VALUE);
-		
-		//TODO optimization:
-		//do not create an iterator. Instead implement special method that deletes and returns the
-		//first element.
-		//This avoids the iterator and the toDelete list. Especially when many many pages are
-		//removed, the memory consumption shrinks instead of grows when using an iterator.
-		//BUT: The iterator may be faster to return following elements because it knows their 
-		//position
+		this.maxFreeTxId = Math.min(maxFreeTxId, newTxId - 1);
+
+		if (isActive) {
+			throw DBLogger.newFatalInternal("Free space manager has unexpected open transaction.");
+		}
+		isActive = true;
+
+		//Release pages that are not visible to any snapshot anymore
+		Iterator<Map.Entry<Long, PrimLongArrayList>> it =
+				pending.headMap(this.maxFreeTxId, true).entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, PrimLongArrayList> e = it.next();
+			PrimLongArrayList extents = e.getValue();
+			for (int i = 0; i < extents.size(); i++) {
+				int start = extentStart(extents.get(i));
+				free.set(start, start + extentLength(extents.get(i)));
+			}
+			freeTxId = Math.max(freeTxId, e.getKey());
+			it.remove();
+		}
+		freePos = 0;
+		runPos = 0;
+	}
+
+	/**
+	 * @return An iterator over all free pages, the values are the IDs of the transactions
+	 * that freed the pages.
+	 */
+	public Iterator<LongLongIndex.LLEntry> debugIterator() {
+		if (legacy != null) {
+			return legacy.debugIterator();
+		}
+		ArrayList<LongLongIndex.LLEntry> list = new ArrayList<>();
+		for (int i = free.nextSetBit(0); i >= 0; i = free.nextSetBit(i + 1)) {
+			list.add(new LongLongIndex.LLEntry(i, freeTxId));
+		}
+		ArrayList<Map.Entry<Long, PrimLongArrayList>> entries = new ArrayList<>();
+		entries.addAll(pending.entrySet());
+		entries.addAll(listPool.entrySet());
+		for (Map.Entry<Long, PrimLongArrayList> e: entries) {
+			PrimLongArrayList extents = e.getValue();
+			for (int i = 0; i < extents.size(); i++) {
+				int start = extentStart(extents.get(i));
+				for (int p = start; p < start + extentLength(extents.get(i)); p++) {
+					list.add(new LongLongIndex.LLEntry(p, e.getKey()));
+				}
+			}
+		}
+		for (int i = 0; i < freedNow.size(); i++) {
+			list.add(new LongLongIndex.LLEntry(freedNow.get(i), currentTxId));
+		}
+		return list.iterator();
 	}
 
-    public LLEntryIterator debugIterator() {
-        return idx.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
-    }
-
-    public List<Integer> debugPageIds() {
-        return idx.debugPageIds();
-    }
-
-    /**
-     * Simply speaking, this returns {@code true} if the given pageId is considered free.
-     * Returns {@code true} if the given pageId is in the known (currently free) or newly freed
-     * (will be free after next commit) and has not been re-occupied yet.  
-     * @param pageId The page ID to check
-     * @return Whether the given pageId refers to a free page
-     */
-    public boolean debugIsPageIdInFreeList(int pageId) {
-        return (toAdd.contains(pageId) || idx.findValue(pageId) != null) 
-        		&& !toDelete.contains(pageId);
-    }
-
-    /**
-     * 
-     * @return the maximum page id, the page may be free or not.
-     */
-    public int debugGetMaximumPageId() {
-        return lastPage.get();
-    }
+	public List<Integer> debugPageIds() {
+		if (legacy != null) {
+			return legacy.debugPageIds();
+		}
+		ArrayList<Integer> list = new ArrayList<>();
+		for (int pageId: listPages) {
+			list.add(pageId);
+		}
+		return list;
+	}
 
-	public void revert(int pageId, int pageCount) {
-		IOResourceProvider file = idx.file;
-		idx = null;
-		toAdd.clear();
-		toDelete.clear();
-		iter.close();
-		iter = null;
-		initBackingIndexLoad(file, pageId, pageCount);
+	/**
+	 * Simply speaking, this returns {@code true} if the given pageId is considered free.
+	 * Returns {@code true} if the given pageId is in the known (currently free) or newly freed
+	 * (will be free after next commit) and has not been re-occupied yet.
+	 * @param pageId The page ID to check
+	 * @return Whether the given pageId refers to a free page
+	 */
+	public boolean debugIsPageIdInFreeList(int pageId) {
+		if (legacy != null) {
+			return legacy.debugIsPageIdInFreeList(pageId);
+		}
+		return released.get(pageId);
 	}
-	
 
-	long getTxId() {
-		return currentTxId;
+	/**
+	 *
+	 * @return the maximum page id, the page may be free or not.
+	 */
+	public int debugGetMaximumPageId() {
+		if (legacy != null) {
+			return legacy.debugGetMaximumPageId();
+		}
+		return lastPage.get();
+	}
+
+	public void revert(int pageId, int pageCount) {
+		if (legacy != null) {
+			legacy.revert(pageId, pageCount);
+			return;
+		}
+		free.clear();
+		released.clear();
+		freePos = 0;
+		runPos = 0;
+		freeTxId = 0;
+		pending.clear();
+		freedNow.clear();
+		listPool.clear();
+		isDirty = false;
+		isActive = false;
+		lastPage.set(pageCount-1);
+		read(pageId);
 	}
 }
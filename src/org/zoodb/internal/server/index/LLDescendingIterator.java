@@ -21,7 +21,8 @@ import java.util.NoSuchElementException;
  * Descending iterator.
  * @author Tilmann Zaeschke
  */
-class LLDescendingIterator extends AbstractPageIterator<LongLongIndex.LLEntry> {
+class LLDescendingIterator extends AbstractPageIterator<LongLongIndex.LLEntry> 
+		implements LongLongIndex.LLEntryIterator {
 
     private LLIndexPage currentPage;
     private short currentPos = 0;
@@ -169,6 +170,21 @@ class LLDescendingIterator extends AbstractPageIterator<LongLongIndex.LLEntry> {
         return e;
     }
 
+    @Override
+    public boolean hasNextULL() {
+        return hasNext();
+    }
+
+    @Override
+    public LongLongIndex.LLEntry nextULL() {
+        return next();
+    }
+
+    @Override
+    public long nextKey() {
+        return next().getKey();
+    }
+
 	@Override
     public void remove() {
         //As defined in the JDO 2.2. spec:
@@ -949,4 +949,143 @@ class LLIndexPage extends AbstractIndexPage {
 	final void setNEntries(int n) {
 		nEntries = (short) n;
 	}
+
+	/**
+	 * Build a tree bottom-up from sorted entries. All pages are new and dirty.
+	 * @param ind The index
+	 * @param keys The sorted keys
+	 * @param values The values
+	 * @param n The number of entries, must be larger than 0
+	 * @param fillFactor Fill factor of the pages in percent
+	 * @return The root page, this is always an inner page
+	 */
+	static LLIndexPage build(AbstractPagedIndex ind, long[] keys, long[] values, int n,
+			int fillFactor) {
+		//leaves
+		int perLeaf = Math.max(1, ind.maxLeafN * fillFactor / 100);
+		int[] sizes = splitEvenly(n, perLeaf);
+		LLIndexPage[] level = new LLIndexPage[sizes.length];
+		int pos = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			LLIndexPage leaf = new LLIndexPage(ind, null, true);
+			System.arraycopy(keys, pos, leaf.keys, 0, sizes[i]);
+			System.arraycopy(values, pos, leaf.values, 0, sizes[i]);
+			leaf.nEntries = (short) sizes[i];
+			pos += sizes[i];
+			level[i] = leaf;
+		}
+
+		//inner pages, the root is always an inner page
+		int perInner = Math.max(2, (ind.maxInnerN + 1) * fillFactor / 100);
+		do {
+			sizes = splitEvenly(level.length, perInner);
+			LLIndexPage[] parents = new LLIndexPage[sizes.length];
+			pos = 0;
+			for (int i = 0; i < sizes.length; i++) {
+				LLIndexPage inner = new LLIndexPage(ind, null, false);
+				for (int j = 0; j < sizes[i]; j++) {
+					LLIndexPage child = level[pos++];
+					inner.subPages[j] = child;
+					child.parent = inner;
+					if (j > 0) {
+						inner.keys[j-1] = child.getMinKey();
+						if (!ind.isUnique()) {
+							inner.values[j-1] = child.getMinKeyValue();
+						}
+					}
+				}
+				inner.nEntries = (short) (sizes[i] - 1);
+				parents[i] = inner;
+			}
+			level = parents;
+		} while (level.length > 1);
+		return level[0];
+	}
+
+	/**
+	 * Split n entries into groups of the given size. If the last group would be less than
+	 * half full, it shares the entries of the previous group.
+	 */
+	private static int[] splitEvenly(int n, int perGroup) {
+		int nGroups = (n + perGroup - 1) / perGroup;
+		int[] sizes = new int[nGroups];
+		Arrays.fill(sizes, perGroup);
+		int last = n - (nGroups - 1) * perGroup;
+		sizes[nGroups - 1] = last;
+		if (nGroups > 1 && last < perGroup / 2) {
+			int total = perGroup + last;
+			sizes[nGroups - 2] = total - total / 2;
+			sizes[nGroups - 1] = total / 2;
+		}
+		return sizes;
+	}
+
+	/**
+	 * Sort entries by key and value.
+	 * @param keys The keys
+	 * @param values The values
+	 * @param n The number of entries
+	 */
+	static void sort(long[] keys, long[] values, int n) {
+		sort(keys, values, 0, n - 1);
+	}
+
+	private static void sort(long[] keys, long[] values, int lo, int hi) {
+		//Quick-sort, recursion only on the smaller partition
+		while (hi - lo > 16) {
+			int mid = (lo + hi) >>> 1;
+			//median of three
+			if (compare(keys, values, mid, lo) < 0) {
+				swap(keys, values, mid, lo);
+			}
+			if (compare(keys, values, hi, lo) < 0) {
+				swap(keys, values, hi, lo);
+			}
+			if (compare(keys, values, hi, mid) < 0) {
+				swap(keys, values, hi, mid);
+			}
+			long pK = keys[mid];
+			long pV = values[mid];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (keys[i] < pK || (keys[i] == pK && values[i] < pV)) {
+					i++;
+				}
+				while (keys[j] > pK || (keys[j] == pK && values[j] > pV)) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, values, i++, j--);
+				}
+			}
+			if (j - lo < hi - i) {
+				sort(keys, values, lo, j);
+				lo = i;
+			} else {
+				sort(keys, values, i, hi);
+				hi = j;
+			}
+		}
+		//insertion sort
+		for (int i = lo + 1; i <= hi; i++) {
+			for (int j = i; j > lo && compare(keys, values, j, j - 1) < 0; j--) {
+				swap(keys, values, j, j - 1);
+			}
+		}
+	}
+
+	private static int compare(long[] keys, long[] values, int i, int j) {
+		int c = Long.compare(keys[i], keys[j]);
+		return c != 0 ? c : Long.compare(values[i], values[j]);
+	}
+
+	private static void swap(long[] keys, long[] values, int i, int j) {
+		long k = keys[i];
+		keys[i] = keys[j];
+		keys[j] = k;
+		long v = values[i];
+		values[i] = values[j];
+		values[j] = v;
+	}
 }
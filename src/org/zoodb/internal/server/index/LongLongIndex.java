@@ -104,6 +104,29 @@ public interface LongLongIndex {
 
 	void insertLong(long key, long value);
 
+	/**
+	 * Insert many entries at once. Implementations may build empty indices bottom-up, which 
+	 * is much faster than individual inserts and results in denser pages.
+	 * @param keys The keys, sorted with {@link #sort(long[], long[], int)}
+	 * @param values The values
+	 * @param n The number of entries. For unique indices, all keys must be unique.
+	 */
+	default void bulkLoad(long[] keys, long[] values, int n) {
+		for (int i = 0; i < n; i++) {
+			insertLong(keys[i], values[i]);
+		}
+	}
+
+	/**
+	 * Sort entries by key and value.
+	 * @param keys The keys
+	 * @param values The values
+	 * @param n The number of entries
+	 */
+	static void sort(long[] keys, long[] values, int n) {
+		LLIndexPage.sort(keys, values, n);
+	}
+
 	/**
 	 * If the tree is unique, this simply removes the entry with the given key. If the tree
 	 * is not unique, it removes only entries where key AND value match.
@@ -136,9 +159,9 @@ public interface LongLongIndex {
 
 	LLEntryIterator iterator(long min, long max);
 
-	LongLongIterator<LLEntry> descendingIterator();
+	LLEntryIterator descendingIterator();
 
-	LongLongIterator<LLEntry> descendingIterator(long max, long min);
+	LLEntryIterator descendingIterator(long max, long min);
 
 	long getMinKey();
 
@@ -170,4 +193,12 @@ public interface LongLongIndex {
 	int statsGetWrittenPagesN();
 
 	boolean isDirty();
+
+	/**
+	 * Mark all pages at or beyond the given page ID as dirty, so that the next
+	 * {@link #write(StorageChannelOutput)} moves them to new pages.
+	 * @param minPageId The lowest page ID that should be moved
+	 * @return Whether any page was marked dirty
+	 */
+	boolean relocatePages(int minPageId);
 }
\ No newline at end of file
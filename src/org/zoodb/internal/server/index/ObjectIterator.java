@@ -15,20 +15,28 @@
  */
 package org.zoodb.internal.server.index;
 
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.client.AbstractCache;
-import org.zoodb.internal.server.DiskAccessOneFile;
 import org.zoodb.internal.server.ObjectReader;
 import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
 import org.zoodb.internal.util.CloseableIterator;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.Util;
 
 /**
+ * Iterator that loads the objects referenced by an index iterator.
+ * <p>
+ * Objects are loaded in batches. The objects of a batch are read in the order of their position
+ * in the file, so that every data page is read only once per batch. They are still returned 
+ * in the order of the index. The batch size grows with every batch, so that iterators of which 
+ * only the first few objects are used do not load many objects in advance.
+ * <p>
  * TODO
  * This class can be improved in various ways:
- * a) Implement batch loading
  * b) Start a second thread that loads the next object after the previous one has been 
  *    delivered. 
  * c) Implement this iterator also in other reader classes.
@@ -38,12 +46,20 @@ import org.zoodb.internal.util.CloseableIterator;
 public class ObjectIterator implements CloseableIterator<ZooPC> {
 
 	private final LLEntryIterator iter;  
-	private final DiskAccessOneFile file;
+	private final PagedOidIndex oidIndex;
 	private final DataDeSerializer deSer;
 	private final boolean loadFromCache;
 	private final AbstractCache cache;
 	private ZooPC pc = null;
 	
+	private static final int BATCH_SIZE_MIN = 16;
+	private static final int BATCH_SIZE_MAX = 1024;
+	private ZooPC[] batch = new ZooPC[BATCH_SIZE_MIN];
+	private long[] batchOids = new long[BATCH_SIZE_MIN];
+	private int[] batchSlots = new int[BATCH_SIZE_MIN];
+	private int batchPos = 0;
+	private int batchSize = 0;
+	
 	/**
 	 * Object iterator.
 	 * 
@@ -52,14 +68,14 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 	 * 
 	 * @param iter An entry iterator
 	 * @param cache The cache
-	 * @param file File handle
+	 * @param oidIndex The OID index that belongs to the same snapshot as the entry iterator
 	 * @param in Object input stream
 	 * @param loadFromCache Whether to load from cache, if possible
 	 */
 	public ObjectIterator(LLEntryIterator iter, AbstractCache cache, 
-			DiskAccessOneFile file, ObjectReader in, boolean loadFromCache) {
+			PagedOidIndex oidIndex, ObjectReader in, boolean loadFromCache) {
 		this.iter = iter;
-		this.file = file;
+		this.oidIndex = oidIndex;
 		this.deSer = new DataDeSerializer(in, cache);
 		this.loadFromCache = loadFromCache; 
 		this.cache = cache;
@@ -82,19 +98,37 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 	}
 	
 	private void findNext() {
-		while (iter.hasNextULL()) {
+		if (batchPos == batchSize && !loadBatch()) {
+			close();
+			return;
+		}
+		this.pc = batch[batchPos];
+		batch[batchPos++] = null;
+	}
+	
+	private boolean loadBatch() {
+		if (batchSize == batch.length && batch.length < BATCH_SIZE_MAX) {
+			int len = batch.length * 2;
+			batch = new ZooPC[len];
+			batchOids = new long[len];
+			batchSlots = new int[len];
+		}
+		batchPos = 0;
+		batchSize = 0;
+		int nToLoad = 0;
+		while (batchSize < batch.length && iter.hasNextULL()) {
 			LongLongIndex.LLEntry e = iter.nextULL();
+			long oid = e.getValue();
 			
 			//try loading from cache first
 			if (loadFromCache) {
-	            long oid = e.getValue();
 	            ZooPC co = cache.findCoByOID(oid);
 	            if (co != null && !co.jdoZooIsStateHollow()) {
 	                if (co.jdoZooIsDeleted()) {
 	                    continue;
 	                }
-	                this.pc = co;
-	                return;
+	                batch[batchSize++] = co;
+	                continue;
 	                //TODO we also need to add objects that meet a query only because of local 
 	                //updates to the object
 	            }
@@ -102,10 +136,47 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 	            //telling that cache-lok-up is pointless.
 			}
 			
-			this.pc = file.readObject(deSer, e.getValue());
-			return;
+			batchOids[nToLoad] = oid;
+			batchSlots[nToLoad++] = batchSize++;
+		}
+		if (nToLoad > 0) {
+			ZooPC[] loaded = readObjects(oidIndex, deSer, batchOids, nToLoad);
+			for (int i = 0; i < nToLoad; i++) {
+				batch[batchSlots[i]] = loaded[i];
+			}
 		}
-		close();
+		return batchSize > 0;
+	}
+
+	/**
+	 * Read objects in the order of their position in the file, so that every data page is 
+	 * read only once.
+	 * @param oidIndex The OID index
+	 * @param deSer The deserializer
+	 * @param oids The OIDs of the objects
+	 * @param n The number of OIDs
+	 * @return The objects, in the same order as the OIDs
+	 */
+	public static ZooPC[] readObjects(PagedOidIndex oidIndex, DataDeSerializer deSer, 
+			long[] oids, int n) {
+		long[] pos = new long[n];
+		long[] slots = new long[n];
+		for (int i = 0; i < n; i++) {
+			LongLongIndex.LLEntry e = oidIndex.findOidGetLong(oids[i]);
+			if (e == null) {
+				throw DBLogger.newObjectNotFoundException(
+						"OID not found: " + Util.oidToString(oids[i]));
+			}
+			pos[i] = e.getValue();
+			slots[i] = i;
+		}
+		LongLongIndex.sort(pos, slots, n);
+		ZooPC[] ret = new ZooPC[n];
+		for (int i = 0; i < n; i++) {
+			ret[(int) slots[i]] = deSer.readObject(
+					BitTools.getPage(pos[i]), BitTools.getOffs(pos[i]), false);
+		}
+		return ret;
 	}
 
 	@Override
@@ -118,6 +189,9 @@ public class ObjectIterator implements CloseableIterator<ZooPC> {
 	@Override
 	public void close() {
 		pc = null;
+		Arrays.fill(batch, null);
+		batchPos = 0;
+		batchSize = 0;
 		iter.close();
 	}
 }
@@ -18,16 +18,22 @@ package org.zoodb.internal.server.index;
 import org.zoodb.api.impl.ZooPC;
 import org.zoodb.internal.DataDeSerializer;
 import org.zoodb.internal.client.AbstractCache;
+import org.zoodb.internal.server.IOResourceProvider;
 import org.zoodb.internal.server.ObjectReader;
 import org.zoodb.internal.util.CloseableIterator;
+import org.zoodb.tools.ZooConfig;
 
 /**
+ * Iterator over all objects of a class, in the order of their position in the file.
+ * <p>
+ * The iterator looks ahead in the position index and requests the data pages of upcoming
+ * objects to be read in the background, see {@link ZooConfig#setReadAheadPages(int)}.
+ * This way, deserialization overlaps with reading from disk.
+ * <p>
  * TODO
  * This class can be improved in various ways:
  * a) Implement batch loading
- * b) Start a second thread that loads the next object after the previous one has been 
- *    delivered. 
- * c) Implement this iterator also in other reader classes.
+ * b) Implement this iterator also in other reader classes.
  * 
  * @author Tilmann Zaeschke
  */
@@ -38,11 +44,30 @@ public class ObjectPosIterator implements CloseableIterator<ZooPC> {
 	private final DataDeSerializer dds;
 	private ZooPC pc = null;
 	
+	//read-ahead
+	private final IOResourceProvider io;
+	private final int nReadAhead;
+	//buffer with positions of upcoming objects
+	private long[] ahead = new long[64];
+	private int aheadStart = 0;
+	private int aheadSize = 0;
+	//number of distinct pages in the buffer
+	private int aheadPages = 0;
+	
+	/**
+	 * @param iter The position iterator
+	 * @param cache The cache
+	 * @param raf The object reader
+	 * @param skipIfCached Whether to skip deserialization of cached objects
+	 * @param io The IO provider for read-ahead, may be {@code null}
+	 */
 	public ObjectPosIterator(PagedPosIndex.ObjectPosIteratorMerger iter, AbstractCache cache, 
-	        ObjectReader raf, boolean skipIfCached) {
+	        ObjectReader raf, boolean skipIfCached, IOResourceProvider io) {
 		this.iter = iter;
         this.dds = new DataDeSerializer(raf, cache);
         this.skipIfCached = skipIfCached;
+        this.io = io;
+        this.nReadAhead = io == null ? 0 : ZooConfig.getReadAheadPages();
         findNext();
 	}
 
@@ -59,8 +84,8 @@ public class ObjectPosIterator implements CloseableIterator<ZooPC> {
 	}
 	
 	private void findNext() {
-	    while (iter.hasNextOPI()) {
-	        long pos = iter.nextPos();
+	    while (hasNextPos()) {
+	        long pos = nextPos();
 	        pc = dds.readObject(BitTools.getPage(pos), BitTools.getOffs(pos), skipIfCached);
 	        if (skipIfCached) {
     		    if (!pc.jdoZooIsDeleted()) {
@@ -73,6 +98,52 @@ public class ObjectPosIterator implements CloseableIterator<ZooPC> {
 	    pc = null;
 	}
 
+	private boolean hasNextPos() {
+		return aheadSize > 0 || iter.hasNextOPI();
+	}
+	
+	private long nextPos() {
+		if (nReadAhead == 0) {
+			return iter.nextPos();
+		}
+		//fill buffer until it spans the current page plus the read-ahead pages
+		while (aheadPages <= nReadAhead && iter.hasNextOPI()) {
+			long pos = iter.nextPos();
+			if (aheadSize == 0 || BitTools.getPage(pos) != BitTools.getPage(aheadLast())) {
+				if (aheadSize > 0) {
+					//the first page is required immediately anyway
+					io.readAhead(BitTools.getPage(pos));
+				}
+				aheadPages++;
+			}
+			aheadAdd(pos);
+		}
+		long pos = ahead[aheadStart];
+		aheadStart = (aheadStart + 1) % ahead.length;
+		aheadSize--;
+		if (aheadSize == 0 || BitTools.getPage(pos) != BitTools.getPage(ahead[aheadStart])) {
+			aheadPages--;
+		}
+		return pos;
+	}
+	
+	private long aheadLast() {
+		return ahead[(aheadStart + aheadSize - 1) % ahead.length];
+	}
+	
+	private void aheadAdd(long pos) {
+		if (aheadSize == ahead.length) {
+			long[] a = new long[ahead.length * 2];
+			for (int i = 0; i < aheadSize; i++) {
+				a[i] = ahead[(aheadStart + i) % ahead.length];
+			}
+			ahead = a;
+			aheadStart = 0;
+		}
+		ahead[(aheadStart + aheadSize) % ahead.length] = pos;
+		aheadSize++;
+	}
+	
 	@Override
 	public void remove() {
 		// do we need this? Should we allow it? I guess it fails anyway in the LLE-iterator.
@@ -82,6 +153,8 @@ public class ObjectPosIterator implements CloseableIterator<ZooPC> {
 	@Override
 	public void close() {
 	    pc = null;
+	    aheadSize = 0;
+	    aheadPages = 0;
 		iter.close();
 	}
 }
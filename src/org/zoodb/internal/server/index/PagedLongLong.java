@@ -52,12 +52,22 @@ public class PagedLongLong extends AbstractPagedIndex implements LongLongIndex {
 
 	@Override
 	public void insertLong(long key, long value) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKey(key, value, true);
 		page.insert(key, value);
 	}
 
+	@Override
+	public void bulkLoad(long[] keys, long[] values, int n) {
+		evictPages();
+		if (!bulkLoadIfEmpty(keys, values, n)) {
+			LongLongIndex.super.bulkLoad(keys, values, n);
+		}
+	}
+
 	@Override
 	public boolean insertLongIfNotSet(long key, long value) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKey(key, value, true);
 		if (page.binarySearch(0, page.getNKeys(), key, value) >= 0) {
 			return false;
@@ -68,6 +78,7 @@ public class PagedLongLong extends AbstractPagedIndex implements LongLongIndex {
 
 	@Override
 	public long removeLong(long key, long value) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKey(key, value, false);
 		if (page == null) {
 			throw new NoSuchElementException("key not found: " + key + " / " + value);
@@ -87,11 +98,13 @@ public class PagedLongLong extends AbstractPagedIndex implements LongLongIndex {
 
 	@Override
 	public LLEntryIterator iterator(long min, long max) {
+		evictPages();
 		return new LLIterator(this, min, max);
 	}
 
 	@Override
 	public LLEntryIterator iterator() {
+		evictPages();
 		return new LLIterator(this, Long.MIN_VALUE, Long.MAX_VALUE);
 	}
 
@@ -116,12 +129,14 @@ public class PagedLongLong extends AbstractPagedIndex implements LongLongIndex {
 	}
 
 	@Override
-	public AbstractPageIterator<LongLongIndex.LLEntry> descendingIterator(long max, long min) {
+	public LLEntryIterator descendingIterator(long max, long min) {
+		evictPages();
 		return new LLDescendingIterator(this, max, min);
 	}
 
 	@Override
-	public AbstractPageIterator<LongLongIndex.LLEntry> descendingIterator() {
+	public LLEntryIterator descendingIterator() {
+		evictPages();
 		return new LLDescendingIterator(this,
 				Long.MAX_VALUE, Long.MIN_VALUE);
 	}
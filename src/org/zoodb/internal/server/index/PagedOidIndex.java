@@ -265,6 +265,14 @@ public class PagedOidIndex {
 	    return idx.debugPageIds();
 	}
 
+	/**
+	 * @param minPageId The lowest page ID that should be moved
+	 * @see LongLongIndex#relocatePages(int)
+	 */
+	public void relocatePages(int minPageId) {
+		idx.relocatePages(minPageId);
+	}
+
 	public void revert(int pageId) {
 		idx = IndexFactory.loadUniqueIndex(idx.getDataType(), idx.getIO(), pageId);
 	}
@@ -271,11 +271,28 @@ public class PagedPosIndex {
         return idx.debugPageIds();
     }
 
+	/**
+	 * @param minPageId The lowest page ID that should be moved
+	 * @see LongLongIndex#relocatePages(int)
+	 */
+	public void relocatePages(int minPageId) {
+		idx.relocatePages(minPageId);
+	}
+
 	public void clear() {
 		idx.clear();
 	}
 
+	/**
+	 * @return The number of objects in the index. Only index pages are read, not the objects.
+	 */
 	public long size() {
-		return idx.size();
+		long n = 0;
+		ObjectPosIterator iter = iteratorObjects();
+		while (iter.hasNextOPI()) {
+			iter.nextPos();
+			n++;
+		}
+		return n;
 	}
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server.index;
+
+import java.util.Arrays;
+
+import org.zoodb.internal.server.DiskIO;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.IOResourceProvider;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * A B+-tree for String keys. Unlike String keys in a {@link LongLongIndex}, which are
+ * reduced to a 64 bit value with {@link BitTools#toSortableLong(String)}, the keys are stored
+ * as they are. Queries can therefore be answered exactly and unique indexes can be enforced
+ * without loading objects.
+ * <p>
+ * The values are OIDs. Entries are sorted by key and then by OID, so the same key can occur
+ * with several OIDs. {@code null} is a valid key that is smaller than all other keys.
+ * The page layout is described in {@link StringIndexPage}.
+ * <p>
+ * Keys that are longer than {@link #getMaxKeyLength()} are truncated, this ensures that
+ * several entries fit on a page. Truncation preserves the ordering, but different keys may
+ * result in the same truncated key, see {@link #isTruncated(String)}.
+ *
+ * @author Tilmann Zaeschke
+ */
+public class PagedStringIndex extends AbstractPagedIndex {
+
+	//Used to calculate the maximum number of entries per page, see StringIndexPage.
+	//The smallest entries consist of prefixLen, suffixLen and the OID.
+	private static final int MIN_KEY_SIZE = 2 + 2;
+	private static final int VALUE_SIZE = 8;
+
+	/** Number of bytes available for the entries of a leaf page */
+	final int leafCapacity;
+	/** Number of bytes available for the entries of an inner page */
+	final int innerCapacity;
+	private final int maxKeyLength;
+	private transient StringIndexPage root;
+
+	/**
+	 * Constructor for creating new index.
+	 * @param file The file
+	 */
+	public PagedStringIndex(IOResourceProvider file) {
+		this(file, true);
+		//bootstrap index
+		root = createPage(null, false);
+	}
+
+	/**
+	 * Constructor for reading index from disk.
+	 * @param file The file
+	 * @param pageId The ID of the root page
+	 */
+	public PagedStringIndex(IOResourceProvider file, int pageId) {
+		this(file, false);
+		root = (StringIndexPage) readRoot(pageId);
+	}
+
+	private PagedStringIndex(IOResourceProvider file, boolean isNew) {
+		super(file, isNew, MIN_KEY_SIZE, VALUE_SIZE, false, PAGE_TYPE.STRING_INDEX);
+		//short for the number of sub-pages (0 for leaves) and short for the number of entries
+		leafCapacity = file.getPageSize() - DiskIO.PAGE_HEADER_SIZE - 2 - 2;
+		innerCapacity = leafCapacity - (maxInnerN + 1) * 4;
+		//Two pages can always be split or merged if an entry uses at most 1/4 of a page
+		maxKeyLength = (innerCapacity / 4 - StringIndexPage.ENTRY_HEADER) / 3;
+	}
+
+	/**
+	 * @return The maximum number of characters of a key, longer keys are truncated.
+	 */
+	public int getMaxKeyLength() {
+		return maxKeyLength;
+	}
+
+	/**
+	 * @param key A key
+	 * @return Whether the key is truncated when it is stored in the index. Keys that are
+	 * truncated may be indistinguishable from other keys.
+	 */
+	public boolean isTruncated(String key) {
+		return key != null && key.length() > maxKeyLength;
+	}
+
+	String truncate(String key) {
+		return isTruncated(key) ? key.substring(0, maxKeyLength) : key;
+	}
+
+	public void insert(String key, long oid) {
+		evictPages();
+		String k = truncate(key);
+		getRoot().locatePageForKey(k, oid, true).insert(k, oid);
+	}
+
+	/**
+	 * Insert an entry unless the key is already used by a different OID.
+	 * @param key The key
+	 * @param oid The OID
+	 * @return {@code false} if the key is already used by a different OID.
+	 */
+	public boolean insertIfNotSet(String key, long oid) {
+		LLEntryIterator it = iterator(StringKeyRange.equal(key));
+		while (it.hasNextULL()) {
+			if (it.nextULL().getValue() != oid) {
+				return false;
+			}
+		}
+		insert(key, oid);
+		return true;
+	}
+
+	/**
+	 * @param key The key
+	 * @param oid The OID
+	 * @return Whether the entry was found and removed.
+	 */
+	public boolean remove(String key, long oid) {
+		evictPages();
+		String k = truncate(key);
+		StringIndexPage page = getRoot().locatePageForKey(k, oid, false);
+		if (page == null || !page.remove(k, oid)) {
+			return false;
+		}
+		//Remove inner pages with a single sub-page from the top of the tree
+		while (root.getNKeys() == 0) {
+			AbstractIndexPage child = root.readPage(0);
+			if (child.isLeaf) {
+				break;
+			}
+			file.reportFreePage(root.pageId());
+			statNInner--;
+			child.setParent(null);
+			root = (StringIndexPage) child;
+			markDirty();
+		}
+		return true;
+	}
+
+	/**
+	 * Insert many entries at once. If the index is empty, it is built bottom-up, which is
+	 * faster and results in pages that are filled according to
+	 * {@link ZooConfig#getIndexFillFactor()}.
+	 * @param keys The keys, in any order
+	 * @param oids The OIDs
+	 * @param n The number of entries
+	 */
+	public void bulkLoad(String[] keys, long[] oids, int n) {
+		evictPages();
+		if (root.getNKeys() >= 0) {
+			for (int i = 0; i < n; i++) {
+				insert(keys[i], oids[i]);
+			}
+			return;
+		}
+		if (n == 0) {
+			return;
+		}
+		Integer[] order = new Integer[n];
+		String[] tKeys = new String[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			tKeys[i] = truncate(keys[i]);
+		}
+		Arrays.sort(order, (i1, i2) ->
+				StringIndexPage.compare(tKeys[i1], oids[i1], tKeys[i2], oids[i2]));
+		String[] sKeys = new String[n];
+		long[] sOids = new long[n];
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			int j = order[i];
+			if (m > 0 && sOids[m-1] == oids[j]
+					&& StringKeyRange.compare(sKeys[m-1], tKeys[j]) == 0) {
+				//duplicate
+				continue;
+			}
+			sKeys[m] = tKeys[j];
+			sOids[m] = oids[j];
+			m++;
+		}
+
+		StringIndexPage newRoot = StringIndexPage.build(this, sKeys, sOids, m,
+				ZooConfig.getIndexFillFactor());
+		//IDs of unwritten pages are ignored
+		file.reportFreePage(root.pageId());
+		statNInner--;
+		updateRoot(newRoot);
+		notifyPageUpdate();
+		markDirty();
+	}
+
+	/**
+	 * @param range The key range
+	 * @return An iterator over the entries in the range. The keys of the returned entries are
+	 * {@link BitTools#toSortableLong(String)} of the stored key, the values are the OIDs.
+	 */
+	public LLEntryIterator iterator(StringKeyRange range) {
+		evictPages();
+		return new StringIterator(this, range);
+	}
+
+	/**
+	 * Entries of a String index cannot be selected by {@code long} keys,
+	 * see {@link #iterator(StringKeyRange)}.
+	 */
+	@Override
+	LLEntryIterator iterator(long min, long max) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	StringIndexPage createPage(AbstractIndexPage parent, boolean isLeaf) {
+		return new StringIndexPage(this, (StringIndexPage) parent, isLeaf);
+	}
+
+	@Override
+	protected StringIndexPage getRoot() {
+		return root;
+	}
+
+	@Override
+	protected void updateRoot(AbstractIndexPage newRoot) {
+		root = (StringIndexPage) newRoot;
+	}
+
+	public String print() {
+		return root.print("");
+	}
+}
@@ -60,12 +60,22 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 
 	@Override
 	public final void insertLong(long key, long value) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKeyUnique(key, true);
 		page.put(key, value);
 	}
 
+	@Override
+	public void bulkLoad(long[] keys, long[] values, int n) {
+		evictPages();
+		if (!bulkLoadIfEmpty(keys, values, n)) {
+			LongLongIndex.LongLongUIndex.super.bulkLoad(keys, values, n);
+		}
+	}
+
 	@Override
 	public final boolean insertLongIfNotSet(long key, long value) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKeyUnique(key, true);
 		if (page.binarySearch(0, page.getNKeys(), key, value) >= 0) {
 			return false;
@@ -81,6 +91,7 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 	 */
 	@Override
 	public long removeLong(long key) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKeyUnique(key, false);
 		if (page == null) {
 			throw new NoSuchElementException("Key not found: " + key);
@@ -95,6 +106,7 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 	 */
 	@Override
 	public long removeLongNoFail(long key, long failValue) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKeyUnique(key, false);
 		if (page == null) {
 			return failValue;
@@ -109,6 +121,7 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 
 	@Override
 	public LongLongIndex.LLEntry findValue(long key) {
+		evictPages();
 		LLIndexPage page = getRoot().locatePageForKeyUnique(key, false);
 		if (page == null) {
 			return null;
@@ -128,6 +141,7 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 
 	@Override
 	public LLEntryIterator iterator(long min, long max) {
+		evictPages();
 		return new LLIterator(this, min, max);
 	}
 
@@ -152,7 +166,8 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 	}
 
 	@Override
-	public AbstractPageIterator<LongLongIndex.LLEntry> descendingIterator(long max, long min) {
+	public LLEntryIterator descendingIterator(long max, long min) {
+		evictPages();
 		return new LLDescendingIterator(this, max, min);
 	}
 
@@ -167,12 +182,13 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 	}
 
 	@Override
-	public AbstractPageIterator<LongLongIndex.LLEntry> descendingIterator() {
+	public LLEntryIterator descendingIterator() {
 		return descendingIterator(Long.MAX_VALUE, Long.MIN_VALUE);
 	}
 
 	@Override
 	public long deleteAndCheckRangeEmpty(long pos, long min, long max) {
+		evictPages();
 		return getRoot().deleteAndCheckRangeEmpty(pos, min, max);
 	}
 
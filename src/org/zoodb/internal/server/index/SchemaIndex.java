@@ -21,8 +21,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.zoodb.api.impl.ZooPC;
+import org.zoodb.internal.CompositeIndexDef;
 import org.zoodb.internal.Node;
 import org.zoodb.internal.PersistentSchemaOperation;
 import org.zoodb.internal.ZooClassDef;
@@ -31,6 +33,7 @@ import org.zoodb.internal.ZooFieldDef;
 import org.zoodb.internal.server.CallbackPageRead;
 import org.zoodb.internal.server.CallbackPageWrite;
 import org.zoodb.internal.server.DiskAccessOneFile;
+import org.zoodb.internal.server.DiskIO;
 import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
 import org.zoodb.internal.server.IOResourceProvider;
 import org.zoodb.internal.server.StorageChannelInput;
@@ -59,6 +62,13 @@ import org.zoodb.internal.util.Util;
  * This is only possible if we maintain list of objects separately for each applicable schema 
  * version.
  * 
+ * Composite indexes are stored in the list of field indices with a special type. They are 
+ * identified by the list of their field IDs, see {@link CompositeIndexDef}.
+ * 
+ * String fields are indexed with a {@link PagedStringIndex}, which stores the full keys. 
+ * Older file versions index them with a {@link LongLongIndex} of hashed keys instead, see
+ * {@link BitTools#toSortableLong(String)}.
+ * 
  * 
  * @author ztilmann
  *
@@ -76,11 +86,21 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 	
 	//updates that require re-opening the database connection
 	private boolean isResetRequired = false;
-	private long txIdOfLastWrite = -1;
+	private volatile long txIdOfLastWrite = -1;
 
 	//updates that can be solved with refresh
 	private boolean isRefreshRequired = false;
-	private long txIdOfLastWriteThatRequiresRefresh = -1;
+	private volatile long txIdOfLastWriteThatRequiresRefresh = -1;
+	
+	//Older file versions cannot store composite indexes
+	private boolean isCompositeIndexSupported = true;
+	//Older file versions cannot store String indexes with full keys
+	private boolean isStringKeyIndexSupported = true;
+	
+	//Type ID of composite indexes in the list of field indices
+	private static final byte FTYPE_COMPOSITE = -1;
+	//Type ID of String indexes with full keys in the list of field indices
+	private static final byte FTYPE_STRING_KEY = -2;
 	
 	private static class FieldIndex {
 	    //This is the unique fieldId which is maintained throughout different versions of the field
@@ -89,6 +109,16 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		private FTYPE fType;
 		private int page;
 		private LongLongIndex index;
+		//String index with full keys, 'index' is not used in this case
+		private boolean isStringKey;
+		private PagedStringIndex strIndex;
+	}
+
+	private static class CompositeIndex {
+		//The unique fieldIds of the indexed fields
+		private long[] fieldIds;
+		private int page;
+		private LongLongIndex index;
 	}
 
 	public enum FTYPE {
@@ -139,6 +169,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		private int[] objIndexPages;
 		private transient PagedPosIndex[] objIndex;
 		private final ArrayList<FieldIndex> fieldIndices = new ArrayList<>();
+		private final ArrayList<CompositeIndex> compositeIndices = new ArrayList<>();
 		
 		/**
 		 * Constructor for reading index.
@@ -157,10 +188,28 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			objIndex = new PagedPosIndex[nVersion];
 		    int nF = in.readShort();
 		    for (int i = 0; i < nF; i++) {
+		    	long fieldId = in.readLong();
+		    	byte fType = in.readByte();
+		    	if (fType == FTYPE_COMPOSITE) {
+		    		CompositeIndex ci = new CompositeIndex();
+		    		compositeIndices.add(ci);
+		    		in.readBoolean(); //never unique
+		    		ci.page = in.readInt();
+		    		ci.fieldIds = new long[in.readShort()];
+		    		for (int j = 0; j < ci.fieldIds.length; j++) {
+		    			ci.fieldIds[j] = in.readLong();
+		    		}
+		    		continue;
+		    	}
 		    	FieldIndex fi = new FieldIndex();
 		    	fieldIndices.add(fi);
-		    	fi.fieldId = in.readLong();
-		    	fi.fType = FTYPE.values()[in.readByte()];
+		    	fi.fieldId = fieldId;
+		    	if (fType == FTYPE_STRING_KEY) {
+		    		fi.fType = FTYPE.STRING;
+		    		fi.isStringKey = true;
+		    	} else {
+		    		fi.fType = FTYPE.values()[fType];
+		    	}
 		    	fi.isUnique = in.readBoolean();
 		    	fi.page = in.readInt();
 		    }
@@ -189,13 +238,23 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		    for (int page: objIndexPages) {
 		        out.writeInt(page);  //no data page yet
 		    }
-		    out.writeShort((short) fieldIndices.size());
+		    out.writeShort((short) (fieldIndices.size() + compositeIndices.size()));
 		    for (FieldIndex fi: fieldIndices) {
 		    	out.writeLong(fi.fieldId);
-		    	out.writeByte((byte) fi.fType.ordinal());
+		    	out.writeByte(fi.isStringKey ? FTYPE_STRING_KEY : (byte) fi.fType.ordinal());
 		    	out.writeBoolean(fi.isUnique);
 		    	out.writeInt(fi.page);
 		    }
+		    for (CompositeIndex ci: compositeIndices) {
+		    	out.writeLong(ci.fieldIds[0]);
+		    	out.writeByte(FTYPE_COMPOSITE);
+		    	out.writeBoolean(false);
+		    	out.writeInt(ci.page);
+		    	out.writeShort((short) ci.fieldIds.length);
+		    	for (long fieldId: ci.fieldIds) {
+		    		out.writeLong(fieldId);
+		    	}
+		    }
 		}
 
 		/**
@@ -226,6 +285,22 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
             return ret;
         }
 
+        /**
+         * 
+         * @return Pos-index iterator for the latest schema version
+         */
+        public ObjectPosIteratorMerger getObjectIndexIteratorLatestSchemaVersion() {
+            ObjectPosIteratorMerger ret = new ObjectPosIteratorMerger(); 
+            ret.add(getObjectIndexLatestSchemaVersion().iteratorObjects());
+            return ret;
+        }
+
+		/**
+		 * @param field The field
+		 * @param isUnique Whether the index is unique
+		 * @return The new index or {@code null} if the field is indexed with a 
+		 * {@link PagedStringIndex}, see {@link #getStringIndex(ZooFieldDef)}.
+		 */
 		public LongLongIndex defineIndex(ZooFieldDef field, boolean isUnique) {
 			//double check
 			if (!field.isPrimitiveType() && !field.isString() && !field.isPersistentType()) {
@@ -243,12 +318,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			fi.isUnique = isUnique;
 			field.setIndexed(true);
 			field.setUnique(isUnique);
-			//unique String indexes use a non-unique index!
-			if (isUnique && !field.isString()) {
-				fi.index = IndexFactory.createUniqueIndex(PAGE_TYPE.FIELD_INDEX, file);
-			} else {
-				fi.index = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
-			}
+			createIndex(fi);
 			fieldIndices.add(fi);
 			markRefreshRequired();
 			return fi.index;
@@ -260,7 +330,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 				FieldIndex fi = iter.next(); 
 				if (fi.fieldId == field.getFieldSchemaId()) {
 					iter.remove();
-					fi.index.clear();
+					clearIndex(fi);
 					field.setIndexed(false);
 					markRefreshRequired();
 					markDirty();
@@ -270,34 +340,167 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			return false;
 		}
 
+		/**
+		 * @param field The field
+		 * @return The index of the field or {@code null} if the field is not indexed or if it is
+		 * indexed with a {@link PagedStringIndex}.
+		 */
 		public LongLongIndex getIndex(ZooFieldDef field) {
+			FieldIndex fi = findIndex(field);
+			return fi == null || fi.isStringKey ? null : loadIndex(fi);
+		}
+
+		/**
+		 * @param field The field
+		 * @return The String index with full keys of the field or {@code null} if the field
+		 * is not indexed or if it is indexed with a {@link LongLongIndex}.
+		 */
+		public PagedStringIndex getStringIndex(ZooFieldDef field) {
+			FieldIndex fi = findIndex(field);
+			return fi == null || !fi.isStringKey ? null : loadStringIndex(fi);
+		}
+
+		public boolean hasIndex(ZooFieldDef field) {
+			return findIndex(field) != null;
+		}
+
+		private FieldIndex findIndex(ZooFieldDef field) {
 			for (FieldIndex fi: fieldIndices) {
 				if (fi.fieldId == field.getFieldSchemaId()) {
-					if (fi.index == null) {
-						if (fi.isUnique && !field.isString()) {
-							fi.index = IndexFactory.loadUniqueIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
-						} else {
-							fi.index = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
-						}
-					}
-					return fi.index;
+					return fi;
 				}
 			}
 			return null;
 		}
 
+		private void createIndex(FieldIndex fi) {
+			if (fi.fType == FTYPE.STRING && isStringKeyIndexSupported) {
+				fi.isStringKey = true;
+				fi.strIndex = new PagedStringIndex(file);
+			} else if (fi.isUnique && fi.fType != FTYPE.STRING) {
+				fi.index = IndexFactory.createUniqueIndex(PAGE_TYPE.FIELD_INDEX, file);
+			} else {
+				//unique String indexes use a non-unique index!
+				fi.index = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
+			}
+		}
+
+		private LongLongIndex loadIndex(FieldIndex fi) {
+			if (fi.index == null) {
+				if (fi.isUnique && fi.fType != FTYPE.STRING) {
+					fi.index = IndexFactory.loadUniqueIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
+				} else {
+					fi.index = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, fi.page);
+				}
+			}
+			return fi.index;
+		}
+
+		private PagedStringIndex loadStringIndex(FieldIndex fi) {
+			if (fi.strIndex == null) {
+				fi.strIndex = new PagedStringIndex(file, fi.page);
+			}
+			return fi.strIndex;
+		}
+
+		private void clearIndex(FieldIndex fi) {
+			if (fi.isStringKey) {
+				loadStringIndex(fi).clear();
+			} else {
+				loadIndex(fi).clear();
+			}
+		}
+
+		private List<Integer> debugPageIds(FieldIndex fi) {
+			if (fi.isStringKey) {
+				return loadStringIndex(fi).debugPageIds();
+			}
+			return loadIndex(fi).debugPageIds();
+		}
+
+		public LongLongIndex defineCompositeIndex(CompositeIndexDef def) {
+			if (!isCompositeIndexSupported) {
+				throw DBLogger.newUser("Composite indexes require a database file version 1." + 
+						DiskIO.DB_FILE_VERSION_MIN_COMPOSITE_INDEX + " or later: " + def);
+			}
+			long[] fieldIds = def.getFieldIds();
+			if (findCompositeIndex(fieldIds) != null) {
+				throw new IllegalArgumentException("Index is already defined: " + def);
+			}
+			CompositeIndex ci = new CompositeIndex();
+			ci.fieldIds = fieldIds;
+			ci.index = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
+			compositeIndices.add(ci);
+			markRefreshRequired();
+			return ci.index;
+		}
+
+		public boolean removeCompositeIndex(CompositeIndexDef def) {
+			CompositeIndex ci = findCompositeIndex(def.getFieldIds());
+			if (ci == null) {
+				return false;
+			}
+			compositeIndices.remove(ci);
+			loadCompositeIndex(ci).clear();
+			markRefreshRequired();
+			markDirty();
+			return true;
+		}
+
+		public LongLongIndex getCompositeIndex(CompositeIndexDef def) {
+			CompositeIndex ci = findCompositeIndex(def.getFieldIds());
+			return ci == null ? null : loadCompositeIndex(ci);
+		}
+
+		private CompositeIndex findCompositeIndex(long[] fieldIds) {
+			for (CompositeIndex ci: compositeIndices) {
+				if (Arrays.equals(ci.fieldIds, fieldIds)) {
+					return ci;
+				}
+			}
+			return null;
+		}
+
+		private LongLongIndex loadCompositeIndex(CompositeIndex ci) {
+			if (ci.index == null) {
+				ci.index = IndexFactory.loadIndex(PAGE_TYPE.FIELD_INDEX, file, ci.page);
+			}
+			return ci.index;
+		}
+
+		/**
+		 * Attach the composite indexes to the class.
+		 * @param def A version of the class of this entry
+		 */
+		private void associateCompositeIndexes(ZooClassDef def) {
+			def.removeCompositeIndexes();
+			for (CompositeIndex ci: compositeIndices) {
+				ZooFieldDef[] fields = new ZooFieldDef[ci.fieldIds.length];
+				for (int i = 0; i < fields.length; i++) {
+					fields[i] = CompositeIndexDef.findField(def, ci.fieldIds[i]);
+				}
+				if (!Arrays.asList(fields).contains(null)) {
+					def.addCompositeIndex(new CompositeIndexDef(def, fields));
+				}
+			}
+		}
+
 		public ArrayList<LongLongIndex> getIndices() {
 			ArrayList<LongLongIndex> indices = new ArrayList<>();
 			for (FieldIndex fi: fieldIndices) {
-				indices.add(fi.index);
+				if (!fi.isStringKey) {
+					indices.add(loadIndex(fi));
+				}
 			}
 			return indices;
 		}
 
 		public void clearIndices() {
-			ArrayList<AbstractPagedIndex> indices = new ArrayList<>();
 			for (FieldIndex fi: fieldIndices) {
-				fi.index.clear();
+				clearIndex(fi);
+			}
+			for (CompositeIndex ci: compositeIndices) {
+				loadCompositeIndex(ci).clear();
 			}
 		}
 
@@ -321,6 +524,15 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 				if (fi.index != null && fi.index.isDirty()) {
 					fi.page = file.writeIndex(fi.index::write);
 					dirty = true;
+				} else if (fi.strIndex != null && fi.strIndex.isDirty()) {
+					fi.page = file.writeIndex(fi.strIndex::write);
+					dirty = true;
+				}
+			}
+			for (CompositeIndex ci: compositeIndices) {
+				if (ci.index != null && ci.index.isDirty()) {
+					ci.page = file.writeIndex(ci.index::write);
+					dirty = true;
 				}
 			}
 			return dirty;
@@ -341,17 +553,24 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
                     fi.fieldId = op.getFieldId();
                     fi.fType = FTYPE.fromType(field);
                     fi.isUnique = field.isIndexUnique();
-                    if (fi.isUnique && !field.isString()) {
-                        fi.index = IndexFactory.createUniqueIndex(PAGE_TYPE.FIELD_INDEX, file);
-                    } else {
-                        fi.index = IndexFactory.createIndex(PAGE_TYPE.FIELD_INDEX, file);
-                    }
+                    createIndex(fi);
                     fieldIndices.add(fi);
                 } else {
                     for (int i = 0; i < fieldIndices.size(); i++) {
                         if (fieldIndices.get(i).fieldId == op.getFieldId()) {
                             FieldIndex fi = fieldIndices.remove(i);
-                            fi.index.clear();
+                            clearIndex(fi);
+                        }
+                    }
+                    Iterator<CompositeIndex> it = compositeIndices.iterator();
+                    while (it.hasNext()) {
+                        CompositeIndex ci = it.next();
+                        for (long fieldId: ci.fieldIds) {
+                            if (fieldId == op.getFieldId()) {
+                                it.remove();
+                                loadCompositeIndex(ci).clear();
+                                break;
+                            }
                         }
                     }
                 }
@@ -369,6 +588,22 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
         public int getObjectIndexVersionCount() {
             return objIndex.length;
         }
+
+		private void relocatePages(int minPageId) {
+			for (int i = 0; i < objIndex.length; i++) {
+				getObjectIndexVersion(i).relocatePages(minPageId);
+			}
+			for (FieldIndex fi: fieldIndices) {
+				if (fi.isStringKey) {
+					loadStringIndex(fi).relocatePages(minPageId);
+				} else {
+					loadIndex(fi).relocatePages(minPageId);
+				}
+			}
+			for (CompositeIndex ci: compositeIndices) {
+				loadCompositeIndex(ci).relocatePages(minPageId);
+			}
+		}
 	}
 
 	public SchemaIndex(IOResourceProvider file, int indexPage1, boolean isNew) {
@@ -386,6 +621,46 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		out.setOverflowCallbackWrite(this);
 	}
 	
+	/**
+	 * Constructor for read-only indexes. 
+	 */
+	private SchemaIndex(IOResourceProvider file, int indexPage1) {
+		this.file = file;
+		this.in = file.createReader(true);
+		this.out = null;
+		this.pageId = indexPage1;
+		readIndex();
+		//The reader is not required anymore, all other pages are read by the sub-indexes.
+		file.dropReader(in);
+	}
+	
+	/**
+	 * @param isSupported Whether the database file can store composite indexes
+	 */
+	public void setCompositeIndexSupported(boolean isSupported) {
+		this.isCompositeIndexSupported = isSupported;
+	}
+	
+	/**
+	 * @param isSupported Whether the database file can store String indexes with full keys.
+	 * If not, new String indexes use hashed keys.
+	 */
+	public void setStringKeyIndexSupported(boolean isSupported) {
+		this.isStringKeyIndexSupported = isSupported;
+	}
+	
+	/**
+	 * Load a read-only instance of the schema index. This can be used to read a snapshot
+	 * of the database while other sessions are committing. The returned index must not be 
+	 * modified.
+	 * @param file The IO resource
+	 * @param indexPage1 The page of the schema index
+	 * @return A new read-only schema index
+	 */
+	public static SchemaIndex loadReadOnly(IOResourceProvider file, int indexPage1) {
+		return new SchemaIndex(file, indexPage1);
+	}
+	
 	private void readIndex() {
 		in.seekPageForRead(PAGE_TYPE.SCHEMA_INDEX, pageId);
 		int nIndex = in.readInt();
@@ -459,6 +734,25 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		return pageId;
 	}
 
+	/**
+	 * Mark all index pages at or beyond the given page ID as dirty, so that the next
+	 * {@link #write(IOResourceProvider, long)} moves them to new pages.
+	 * @param minPageId The lowest page ID that should be moved
+	 */
+	public void relocatePages(int minPageId) {
+		for (SchemaIndexEntry e: schemaIndex.values()) {
+			e.relocatePages(minPageId);
+		}
+		if (pageId >= minPageId) {
+			markDirty();
+		}
+		for (int pID: pageIDs) {
+			if (pID >= minPageId) {
+				markDirty();
+			}
+		}
+	}
+
     public SchemaIndexEntry getSchema(ZooClassDef def) {
         return schemaIndex.get(def.getSchemaId());
     }
@@ -500,11 +794,15 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		//and check for indices
 		//TODO maybe we do not need this for a refresh...
 		for (ZooFieldDef f: def.getAllFields()) {
-			if (e.getIndex(f) != null) {
+			if (e.hasIndex(f)) {
 				f.setIndexed(true);
 				f.setUnique(e.isUnique(f));
 			}
 		}
+		e.associateCompositeIndexes(def);
+		if (def.getProvidedContext() != null) {
+			def.getProvidedContext().getIndexer().refreshWithSchema(def);
+		}
 	}
 
 	
@@ -539,7 +837,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 			//and check for indices
 			SchemaIndexEntry se = getSchema(def);
 			for (ZooFieldDef f: def.getAllFields()) {
-				if (se.getIndex(f) != null) {
+				if (se.hasIndex(f)) {
 					f.setIndexed(true);
 					f.setUnique(se.isUnique(f));
 				}
@@ -547,6 +845,7 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 					f.setType(ret.get(f.getTypeOID()));
 				}
 			}
+			se.associateCompositeIndexes(def);
 		}
 
 		//build proxy structure
@@ -588,7 +887,10 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 		
 		//field indices
 		for (FieldIndex fi: entry.fieldIndices) {
-			fi.index.clear();
+			entry.clearIndex(fi);
+		}
+		for (CompositeIndex ci: entry.compositeIndices) {
+			entry.loadCompositeIndex(ci).clear();
 		}
 		
 		//pos index
@@ -612,7 +914,10 @@ public class SchemaIndex implements CallbackPageRead, CallbackPageWrite {
 	    ArrayList<Integer> ret = new ArrayList<Integer>();
         for (SchemaIndexEntry e: schemaIndex.values()) {
             for (FieldIndex fi: e.fieldIndices) {
-                ret.addAll(fi.index.debugPageIds());
+                ret.addAll(e.debugPageIds(fi));
+            }
+            for (CompositeIndex ci: e.compositeIndices) {
+                ret.addAll(e.loadCompositeIndex(ci).debugPageIds());
             }
         }
         return ret;
@@ -0,0 +1,672 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.zoodb.internal.server.StorageChannelInput;
+import org.zoodb.internal.server.StorageChannelOutput;
+import org.zoodb.internal.util.FormattedStringBuilder;
+
+/**
+ * Page of a {@link PagedStringIndex}. The entries are variable-length String keys with an OID
+ * as value. They are sorted by key and then by OID.
+ * <p>
+ * Entries are written as {@code short prefixLen, short suffixLen, char[suffixLen], long oid}.
+ * The key consists of the first {@code prefixLen} characters of the previous key on the page
+ * followed by the suffix. The characters are encoded with 1-3 bytes as in modified UTF-8.
+ * {@code prefixLen=-1} denotes a {@code null} key, it is not followed by a suffix.
+ * <p>
+ * Pages are full if they reach the maximum number of entries or if the entries would not fit
+ * into the page anymore. Full pages are split in half (by size).
+ * In the inner pages, the keys are lower bounds of the following sub-page. They are exact after
+ * splitting, but they are not updated when the smallest entry of a sub-page is removed.
+ *
+ * @author Tilmann Zaeschke
+ */
+class StringIndexPage extends AbstractIndexPage {
+
+	//prefixLen + suffixLen + oid
+	static final int ENTRY_HEADER = 2 + 2 + 8;
+	//prefixLen + oid
+	private static final int NULL_ENTRY = 2 + 8;
+
+	private StringIndexPage parent;
+	private final String[] keys;
+	private final long[] values;
+	/** number of keys. There are nEntries+1 subPages in any leaf page. */
+	private short nEntries;
+	/** number of bytes required for writing the entries */
+	private int size;
+
+
+	StringIndexPage(PagedStringIndex ind, StringIndexPage parent, boolean isLeaf) {
+		super(ind, isLeaf);
+		this.parent = parent;
+		if (isLeaf) {
+			nEntries = 0;
+			keys = new String[ind.maxLeafN];
+			values = new long[ind.maxLeafN];
+		} else {
+			nEntries = -1;
+			keys = new String[ind.maxInnerN];
+			values = new long[ind.maxInnerN];
+		}
+	}
+
+	StringIndexPage(StringIndexPage p) {
+		super(p);
+		keys = p.keys.clone();
+		values = p.values.clone();
+		nEntries = p.nEntries;
+		size = p.size;
+		parent = p.parent;
+	}
+
+	private PagedStringIndex sInd() {
+		return (PagedStringIndex) ind;
+	}
+
+	private int capacity() {
+		return isLeaf ? sInd().leafCapacity : sInd().innerCapacity;
+	}
+
+	private int maxEntries() {
+		return isLeaf ? ind.maxLeafN : ind.maxInnerN;
+	}
+
+	@Override
+	void readData(StorageChannelInput in) {
+		readEntries(in);
+	}
+
+	@Override
+	void writeData(StorageChannelOutput out) {
+		writeEntries(out);
+	}
+
+	@Override
+	void readKeys(StorageChannelInput in) {
+		readEntries(in);
+	}
+
+	@Override
+	void writeKeys(StorageChannelOutput out) {
+		writeEntries(out);
+	}
+
+	private void readEntries(StorageChannelInput in) {
+		nEntries = in.readShort();
+		char[] buf = new char[sInd().getMaxKeyLength()];
+		String prev = null;
+		for (int i = 0; i < nEntries; i++) {
+			int prefixLen = in.readShort();
+			String key = null;
+			if (prefixLen >= 0) {
+				int suffixLen = in.readShort();
+				if (prefixLen > 0) {
+					prev.getChars(0, prefixLen, buf, 0);
+				}
+				for (int c = prefixLen; c < prefixLen + suffixLen; c++) {
+					buf[c] = readChar(in);
+				}
+				key = new String(buf, 0, prefixLen + suffixLen);
+			}
+			keys[i] = key;
+			values[i] = in.readLong();
+			prev = key;
+		}
+		size = computeSize();
+	}
+
+	private void writeEntries(StorageChannelOutput out) {
+		out.writeShort(nEntries);
+		String prev = null;
+		for (int i = 0; i < nEntries; i++) {
+			String key = keys[i];
+			if (key == null) {
+				out.writeShort((short) -1);
+			} else {
+				int prefixLen = commonPrefix(prev, key);
+				out.writeShort((short) prefixLen);
+				out.writeShort((short) (key.length() - prefixLen));
+				for (int c = prefixLen; c < key.length(); c++) {
+					writeChar(out, key.charAt(c));
+				}
+			}
+			out.writeLong(values[i]);
+			prev = key;
+		}
+	}
+
+	private static char readChar(StorageChannelInput in) {
+		int b = in.readByte() & 0xFF;
+		if (b < 0x80) {
+			return (char) b;
+		}
+		if (b < 0xE0) {
+			return (char) (((b & 0x1F) << 6) | (in.readByte() & 0x3F));
+		}
+		int b2 = in.readByte() & 0x3F;
+		return (char) (((b & 0x0F) << 12) | (b2 << 6) | (in.readByte() & 0x3F));
+	}
+
+	private static void writeChar(StorageChannelOutput out, char c) {
+		if (c < 0x80) {
+			out.writeByte((byte) c);
+		} else if (c < 0x800) {
+			out.writeByte((byte) (0xC0 | (c >> 6)));
+			out.writeByte((byte) (0x80 | (c & 0x3F)));
+		} else {
+			out.writeByte((byte) (0xE0 | (c >> 12)));
+			out.writeByte((byte) (0x80 | ((c >> 6) & 0x3F)));
+			out.writeByte((byte) (0x80 | (c & 0x3F)));
+		}
+	}
+
+	static int compare(String k1, long v1, String k2, long v2) {
+		int c = StringKeyRange.compare(k1, k2);
+		return c != 0 ? c : Long.compare(v1, v2);
+	}
+
+	private static int commonPrefix(String prev, String key) {
+		if (prev == null || key == null) {
+			return 0;
+		}
+		int len = Math.min(prev.length(), key.length());
+		int i = 0;
+		while (i < len && prev.charAt(i) == key.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @param prev The previous key on the page or {@code null}
+	 * @param key The key
+	 * @return The number of bytes required to write the entry.
+	 */
+	static int entrySize(String prev, String key) {
+		if (key == null) {
+			return NULL_ENTRY;
+		}
+		int s = ENTRY_HEADER;
+		for (int i = commonPrefix(prev, key); i < key.length(); i++) {
+			char c = key.charAt(i);
+			s += c < 0x80 ? 1 : (c < 0x800 ? 2 : 3);
+		}
+		return s;
+	}
+
+	private int sizeAt(int pos) {
+		return entrySize(pos > 0 ? keys[pos - 1] : null, keys[pos]);
+	}
+
+	private int computeSize() {
+		int s = 0;
+		for (int i = 0; i < nEntries; i++) {
+			s += sizeAt(i);
+		}
+		return s;
+	}
+
+	/**
+	 * @return The number of additional bytes if the key is inserted at 'pos'.
+	 */
+	private int sizeDelta(int pos, String key) {
+		String prev = pos > 0 ? keys[pos - 1] : null;
+		int delta = entrySize(prev, key);
+		if (pos < nEntries) {
+			delta += entrySize(key, keys[pos]) - sizeAt(pos);
+		}
+		return delta;
+	}
+
+	private boolean hasSpace(int pos, String key) {
+		return nEntries < maxEntries() && size + sizeDelta(pos, key) <= capacity();
+	}
+
+	/**
+	 * Insert a key. In inner pages, the sub-pages have to be updated separately.
+	 */
+	private void insertEntry(int pos, String key, long value) {
+		if (pos < nEntries) {
+			size -= sizeAt(pos);
+			System.arraycopy(keys, pos, keys, pos+1, nEntries-pos);
+			System.arraycopy(values, pos, values, pos+1, nEntries-pos);
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		nEntries++;
+		size += sizeAt(pos);
+		if (pos+1 < nEntries) {
+			size += sizeAt(pos+1);
+		}
+	}
+
+	/**
+	 * Remove a key. In inner pages, the sub-pages have to be updated separately.
+	 */
+	private void removeEntry(int pos) {
+		size -= sizeAt(pos);
+		if (pos+1 < nEntries) {
+			size -= sizeAt(pos+1);
+		}
+		System.arraycopy(keys, pos+1, keys, pos, nEntries-pos-1);
+		System.arraycopy(values, pos+1, values, pos, nEntries-pos-1);
+		nEntries--;
+		keys[nEntries] = null;
+		if (pos < nEntries) {
+			size += sizeAt(pos);
+		}
+	}
+
+	/**
+	 * Binary search.
+	 *
+	 * @param toIndex Exclusive, search stops at (toIndex-1).
+	 * @return The position of the entry or {@code -(insertion point) - 1}
+	 */
+	int binarySearch(int fromIndex, int toIndex, String key, long value) {
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = compare(keys[mid], values[mid], key, value);
+			if (c < 0) {
+				low = mid + 1;
+			} else if (c > 0) {
+				high = mid - 1;
+			} else {
+				return mid; // key found
+			}
+		}
+		return -(low + 1);  // key not found.
+	}
+
+	/**
+	 * @return The position of the sub-page that may contain the key.
+	 */
+	short subPagePos(String key, long value) {
+		//The stored key[i] is the min-key of the according page[i+1}
+		int pos = binarySearch(0, nEntries, key, value);
+		return (short) (pos >= 0 ? pos + 1 : -(pos + 1));
+	}
+
+	/**
+	 * Locate the page that could contain the given key.
+	 * @param key key
+	 * @param value value
+	 * @param allowCreate allow creation flag
+	 * @return Page for that key
+	 */
+	StringIndexPage locatePageForKey(String key, long value, boolean allowCreate) {
+		if (isLeaf) {
+			return this;
+		}
+		if (nEntries == -1 && !allowCreate) {
+			return null;
+		}
+		StringIndexPage page = (StringIndexPage) readOrCreatePage(
+				subPagePos(key, value), allowCreate);
+		return page.locatePageForKey(key, value, allowCreate);
+	}
+
+	/**
+	 * Add an entry to this leaf page. If the PAIR already exists, nothing happens.
+	 * @param key the key
+	 * @param value the value
+	 */
+	void insert(String key, long value) {
+		int pos = binarySearch(0, nEntries, key, value);
+		if (pos >= 0) {
+			return;
+		}
+		pos = -(pos+1);
+		if (hasSpace(pos, key)) {
+			markPageDirtyAndClone();
+			insertEntry(pos, key, value);
+			return;
+		}
+		StringIndexPage right = split();
+		if (compare(key, value, right.keys[0], right.values[0]) < 0) {
+			insert(key, value);
+		} else {
+			right.insert(key, value);
+		}
+	}
+
+	/**
+	 * Move the upper half (by size) of the entries to a new page. Leaves pass their first key
+	 * up to the parent, inner pages pass up their middle key.
+	 * @return The new page
+	 */
+	private StringIndexPage split() {
+		markPageDirtyAndClone();
+		//Both pages keep at least one key
+		int max = isLeaf ? nEntries - 1 : nEntries - 2;
+		int m = 0;
+		int s = 0;
+		while (m < max && (m == 0 || s < size / 2)) {
+			s += sizeAt(m++);
+		}
+
+		StringIndexPage right = (StringIndexPage) ind.createPage(parent, isLeaf);
+		String splitKey = keys[m];
+		long splitValue = values[m];
+		//Inner pages: the middle key moves up
+		int first = isLeaf ? m : m + 1;
+		int nMove = nEntries - first;
+		System.arraycopy(keys, first, right.keys, 0, nMove);
+		System.arraycopy(values, first, right.values, 0, nMove);
+		if (!isLeaf) {
+			System.arraycopy(subPages, m+1, right.subPages, 0, nMove+1);
+			System.arraycopy(subPageIds, m+1, right.subPageIds, 0, nMove+1);
+			Arrays.fill(subPages, m+1, nEntries+1, null);
+			Arrays.fill(subPageIds, m+1, nEntries+1, 0);
+		}
+		right.nEntries = (short) nMove;
+		right.size = right.computeSize();
+		if (!isLeaf) {
+			right.assignThisAsRootToLeaves();
+		}
+		Arrays.fill(keys, m, nEntries, null);
+		nEntries = (short) m;
+		size = computeSize();
+
+		if (parent == null) {
+			//create a parent
+			StringIndexPage newRoot = (StringIndexPage) ind.createPage(null, false);
+			newRoot.subPages[0] = this;
+			newRoot.nEntries = 0;  // 0: indicates one leaf / zero keys
+			setParent(newRoot);
+			ind.updateRoot(newRoot);
+		}
+		parent.addSubPage(this, right, splitKey, splitValue);
+		return right;
+	}
+
+	/**
+	 * Add a new sub-page after an existing sub-page.
+	 * @param prevPage The existing sub-page
+	 * @param newP The new sub-page
+	 * @param minKey The minimum key of the new page
+	 * @param minValue The minimum value of the new page
+	 */
+	private void addSubPage(StringIndexPage prevPage, StringIndexPage newP, String minKey,
+			long minValue) {
+		int i = getPagePosition(prevPage);
+		if (!hasSpace(i, minKey)) {
+			//treat page overflow, this also updates the parent of 'prevPage'
+			split();
+			prevPage.parent.addSubPage(prevPage, newP, minKey, minValue);
+			return;
+		}
+		markPageDirtyAndClone();
+		System.arraycopy(subPages, i+1, subPages, i+2, nEntries-i);
+		System.arraycopy(subPageIds, i+1, subPageIds, i+2, nEntries-i);
+		insertEntry(i, minKey, minValue);
+		subPages[i+1] = newP;
+		subPageIds[i+1] = newP.pageId();
+		newP.setParent(this);
+	}
+
+	/**
+	 * Remove an entry from this leaf page.
+	 * @return Whether the entry was found.
+	 */
+	boolean remove(String key, long value) {
+		int i = binarySearch(0, nEntries, key, value);
+		if (i < 0) {
+			return false;
+		}
+		markPageDirtyAndClone();
+		removeEntry(i);
+		if (nEntries == 0) {
+			parent.removeSubPage(this);
+		} else if (size < capacity() / 4) {
+			parent.mergeSubPage(this);
+		}
+		return true;
+	}
+
+	private void removeSubPage(StringIndexPage subPage) {
+		int i = getPagePosition(subPage);
+		markPageDirtyAndClone();
+		//remove sub page page from FSM.
+		ind.file.reportFreePage(subPageIds[i]);
+		if (subPage.isLeaf) {
+			ind.statNLeaves--;
+		} else {
+			ind.statNInner--;
+		}
+		if (nEntries == 0) {
+			subPageIds[0] = 0;
+			subPages[0] = null;
+			nEntries--;  //down to -1 which indicates an empty page
+			if (parent != null) {
+				parent.removeSubPage(this);
+			}
+			return;
+		}
+		//The first sub-page has no key, in this case the key of the following page is removed
+		removeEntry(i > 0 ? i-1 : 0);
+		System.arraycopy(subPages, i+1, subPages, i, nEntries-i+1);
+		System.arraycopy(subPageIds, i+1, subPageIds, i, nEntries-i+1);
+		subPages[nEntries+1] = null;
+		subPageIds[nEntries+1] = 0;
+		if (parent != null && size < capacity() / 4) {
+			parent.mergeSubPage(this);
+		}
+	}
+
+	/**
+	 * Try to merge a sparse sub-page with one of its neighbours. This only merges pages with
+	 * the same parent.
+	 */
+	private void mergeSubPage(StringIndexPage subPage) {
+		if (nEntries < 1) {
+			return;
+		}
+		int i = getPagePosition(subPage);
+		int iLeft = i < nEntries ? i : i-1;
+		StringIndexPage left = (StringIndexPage) readPage(iLeft);
+		StringIndexPage right = (StringIndexPage) readPage(iLeft+1);
+		//Merge only if the merged page is not almost full, this avoids repeated split/merge
+		int nMerged = left.nEntries + right.nEntries + (left.isLeaf ? 0 : 1);
+		int sizeMerged = left.size + right.size + (left.isLeaf ? 0 : entrySize(null, keys[iLeft]));
+		if (nMerged > left.maxEntries() || sizeMerged > left.capacity() * 3 / 4) {
+			return;
+		}
+		left.markPageDirtyAndClone();
+		if (!left.isLeaf) {
+			//The key of the right page moves down
+			left.insertEntry(left.nEntries, keys[iLeft], values[iLeft]);
+			System.arraycopy(right.subPages, 0, left.subPages, left.nEntries, right.nEntries+1);
+			System.arraycopy(right.subPageIds, 0, left.subPageIds, left.nEntries,
+					right.nEntries+1);
+		}
+		for (int j = 0; j < right.nEntries; j++) {
+			left.insertEntry(left.nEntries, right.keys[j], right.values[j]);
+		}
+		if (!left.isLeaf) {
+			left.assignThisAsRootToLeaves();
+		}
+		removeSubPage(right);
+	}
+
+	/**
+	 * Build a tree bottom-up from sorted entries. All pages are new and dirty.
+	 * @param ind The index
+	 * @param keys The sorted keys
+	 * @param values The values
+	 * @param n The number of entries, must be larger than 0
+	 * @param fillFactor Fill factor of the pages in percent
+	 * @return The root page, this is always an inner page
+	 */
+	static StringIndexPage build(PagedStringIndex ind, String[] keys, long[] values, int n,
+			int fillFactor) {
+		//leaves
+		int maxN = Math.max(1, ind.maxLeafN * fillFactor / 100);
+		int maxSize = ind.leafCapacity * fillFactor / 100;
+		ArrayList<StringIndexPage> level = new ArrayList<>();
+		StringIndexPage leaf = new StringIndexPage(ind, null, true);
+		for (int i = 0; i < n; i++) {
+			if (leaf.nEntries >= maxN || (leaf.nEntries > 0
+					&& leaf.size + leaf.sizeDelta(leaf.nEntries, keys[i]) > maxSize)) {
+				level.add(leaf);
+				leaf = new StringIndexPage(ind, null, true);
+			}
+			leaf.insertEntry(leaf.nEntries, keys[i], values[i]);
+		}
+		level.add(leaf);
+
+		//inner pages, the root is always an inner page
+		maxN = Math.max(1, ind.maxInnerN * fillFactor / 100);
+		maxSize = ind.innerCapacity * fillFactor / 100;
+		do {
+			ArrayList<StringIndexPage> parents = new ArrayList<>();
+			StringIndexPage inner = null;
+			for (StringIndexPage child: level) {
+				String key = child.getMinString();
+				long value = child.getMinKeyValue();
+				if (inner == null || inner.nEntries >= maxN || (inner.nEntries > 0
+						&& inner.size + inner.sizeDelta(inner.nEntries, key) > maxSize)) {
+					inner = new StringIndexPage(ind, null, false);
+					inner.nEntries = 0;
+					parents.add(inner);
+				} else {
+					inner.insertEntry(inner.nEntries, key, value);
+				}
+				inner.subPages[inner.nEntries] = child;
+				child.parent = inner;
+			}
+			level = parents;
+		} while (level.size() > 1);
+		return level.get(0);
+	}
+
+	/**
+	 * @return Minimal key on this branch.
+	 */
+	String getMinString() {
+		if (isLeaf) {
+			return keys[0];
+		}
+		return ((StringIndexPage) readPage(0)).getMinString();
+	}
+
+	@Override
+	long getMinKey() {
+		return BitTools.toSortableLong(getMinString());
+	}
+
+	@Override
+	long getMinKeyValue() {
+		if (isLeaf) {
+			return values[0];
+		}
+		return readPage(0).getMinKeyValue();
+	}
+
+	@Override
+	public String print(String indent) {
+		FormattedStringBuilder sb = new FormattedStringBuilder();
+		if (isLeaf) {
+			sb.appendln(indent + "Leaf page(id=" + pageId() + "): nK=" + nEntries + " keys=" +
+					Arrays.toString(keys));
+			sb.appendln(indent + "                         " + Arrays.toString(values));
+		} else {
+			sb.appendln(indent + "Inner page(id=" + pageId() + "): nK=" + nEntries + " keys=" +
+					Arrays.toString(keys));
+			sb.appendln(indent + "                " + nEntries + " page=" +
+					Arrays.toString(subPageIds));
+			sb.appendln(indent + "              " + nEntries + " values=" +
+					Arrays.toString(values));
+			sb.append(indent + "[");
+			for (int i = 0; i <= nEntries; i++) {
+				if (subPages[i] != null) {
+					sb.append(indent + "i=" + i + ": ");
+					sb.append(subPages[i].print(indent + "  "));
+				}
+				else sb.appendln("Page not loaded: " + subPageIds[i]);
+			}
+			sb.appendln("]");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String printLocal() {
+		FormattedStringBuilder sb = new FormattedStringBuilder();
+		sb.appendln("PrintLocal() for " + this);
+		if (isLeaf) {
+			sb.appendln("Leaf page(id=" + pageId() + "): nK=" + nEntries + " keys=" +
+					Arrays.toString(keys));
+			sb.appendln("                         " + Arrays.toString(values));
+		} else {
+			sb.appendln("Inner page(id=" + pageId() + "): nK=" + nEntries + " keys=" +
+					Arrays.toString(keys));
+			sb.appendln("                      " + Arrays.toString(subPageIds));
+			sb.appendln("                      " + Arrays.toString(values));
+			sb.appendln("                      " + Arrays.toString(subPages));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	protected short getNKeys() {
+		return nEntries;
+	}
+
+	@Override
+	StringIndexPage getParent() {
+		return parent;
+	}
+
+	@Override
+	void setParent(AbstractIndexPage parent) {
+		this.parent = (StringIndexPage) parent;
+	}
+
+	@Override
+	protected AbstractIndexPage newInstance() {
+		return new StringIndexPage(this);
+	}
+
+	@Override
+	protected void incrementNEntries() {
+		nEntries++;
+	}
+
+	@Override
+	final void setNEntries(int n) {
+		nEntries = (short) n;
+		if (n <= 0) {
+			Arrays.fill(keys, null);
+			size = 0;
+		}
+	}
+
+	final String[] getKeys() {
+		return keys;
+	}
+
+	final long[] getValues() {
+		return values;
+	}
+}
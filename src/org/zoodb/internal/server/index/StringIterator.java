@@ -0,0 +1,179 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server.index;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntryIterator;
+
+/**
+ * Iterator over a {@link StringKeyRange} of a {@link PagedStringIndex}. The keys of the
+ * returned entries are {@link BitTools#toSortableLong(String)} of the stored key, the values
+ * are the OIDs.
+ * <p>
+ * Like {@link LLIterator}, the iterator keeps a stack with the path from the root to the
+ * current leaf.
+ *
+ * @author Tilmann Zaeschke
+ */
+class StringIterator extends AbstractPageIterator<LLEntry> implements LLEntryIterator {
+
+	private StringIndexPage currentPage;
+	private short currentPos = 0;
+	private final boolean hasMax;
+	private final String maxKey;
+	private final String prefix;
+	private StringIndexPage[] stackPages = new StringIndexPage[20];
+	private short[] stackPos = new short[20];
+	private int stackSize = 0;
+	private boolean hasValue = false;
+
+	StringIterator(PagedStringIndex ind, StringKeyRange range) {
+		super(ind);
+		boolean hasMin = range.hasMin();
+		String minKey = hasMin ? ind.truncate(range.getMin()) : null;
+		prefix = ind.truncate(range.getPrefix());
+		if (prefix != null && (!hasMin || StringKeyRange.compare(prefix, minKey) > 0)) {
+			minKey = prefix;
+			hasMin = true;
+		}
+		hasMax = range.hasMax();
+		maxKey = ind.truncate(range.getMax());
+		currentPage = ind.getRoot();
+		if (currentPage.getNKeys() < 0) {
+			close();
+			return;
+		}
+
+		//find the first entry >= min
+		while (!currentPage.isLeaf) {
+			short pos = hasMin ? currentPage.subPagePos(minKey, Long.MIN_VALUE) : 0;
+			push(currentPage, pos);
+			currentPage = (StringIndexPage) findPage(currentPage, pos);
+		}
+		if (hasMin) {
+			currentPos = (short) -(currentPage.binarySearch(
+					0, currentPage.getNKeys(), minKey, Long.MIN_VALUE) + 1);
+		}
+		findNext();
+	}
+
+	private void push(StringIndexPage page, short pos) {
+		if (stackSize >= stackPages.length) {
+			stackPages = Arrays.copyOf(stackPages, stackPages.length * 2);
+			stackPos = Arrays.copyOf(stackPos, stackPos.length * 2);
+		}
+		stackPages[stackSize] = page;
+		stackPos[stackSize] = pos;
+		stackSize++;
+	}
+
+	private void findNext() {
+		while (currentPos >= currentPage.getNKeys()) {
+			if (!goToNextPage()) {
+				close();
+				return;
+			}
+		}
+		String key = currentPage.getKeys()[currentPos];
+		if ((hasMax && StringKeyRange.compare(key, maxKey) > 0)
+				|| (prefix != null && (key == null || !key.startsWith(prefix)))) {
+			close();
+			return;
+		}
+		hasValue = true;
+	}
+
+	private boolean goToNextPage() {
+		//go up until there is a following page
+		while (stackSize > 0 && stackPos[stackSize-1] >= stackPages[stackSize-1].getNKeys()) {
+			stackSize--;
+		}
+		if (stackSize == 0) {
+			return false;
+		}
+		stackPos[stackSize-1]++;
+		currentPage = stackPages[stackSize-1];
+		currentPos = stackPos[stackSize-1];
+		//go down to the first leaf
+		while (true) {
+			currentPage = (StringIndexPage) findPage(currentPage, currentPos);
+			currentPos = 0;
+			if (currentPage.isLeaf) {
+				return true;
+			}
+			push(currentPage, currentPos);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return hasNextULL();
+	}
+
+	/**
+	 * Dirty trick to avoid delays from finding the correct method.
+	 */
+	@Override
+	public boolean hasNextULL() {
+		checkValidity();
+		return hasValue;
+	}
+
+	@Override
+	public LLEntry next() {
+		return nextULL();
+	}
+
+	/**
+	 * Dirty trick to avoid delays from finding the correct method.
+	 */
+	@Override
+	public LLEntry nextULL() {
+		if (!hasNextULL()) {
+			throw new NoSuchElementException();
+		}
+		LLEntry e = new LLEntry(BitTools.toSortableLong(currentPage.getKeys()[currentPos]),
+				currentPage.getValues()[currentPos]);
+		hasValue = false;
+		currentPos++;
+		findNext();
+		return e;
+	}
+
+	@Override
+	public long nextKey() {
+		return nextULL().getKey();
+	}
+
+	@Override
+	public void remove() {
+		// As defined in the JDO 2.2. spec:
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * This method is possibly not be called if the iterator is used in 'for ( : ext) {}'
+	 * constructs!
+	 */
+	@Override
+	public void close() {
+		hasValue = false;
+		stackSize = 0;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.internal.server.index;
+
+/**
+ * A range of keys in a {@link PagedStringIndex}. The bounds are inclusive, {@code null} is a
+ * valid key that is smaller than all other keys. An optional prefix restricts the range to
+ * keys that start with the prefix.
+ * <p>
+ * The range can only be narrowed. Narrowing may result in an empty range.
+ *
+ * @author Tilmann Zaeschke
+ */
+public final class StringKeyRange {
+
+	private boolean hasMin = false;
+	private String min;
+	private boolean hasMax = false;
+	private String max;
+	private String prefix;
+
+	/**
+	 * @param key A key
+	 * @return A range that contains only the given key
+	 */
+	public static StringKeyRange equal(String key) {
+		StringKeyRange r = new StringKeyRange();
+		r.adjustMin(key);
+		r.adjustMax(key);
+		return r;
+	}
+
+	/**
+	 * @param min The new lower bound, the bound is only changed if it is narrowed.
+	 */
+	public void adjustMin(String min) {
+		if (!hasMin || compare(min, this.min) > 0) {
+			this.min = min;
+			hasMin = true;
+		}
+	}
+
+	/**
+	 * @param max The new upper bound, the bound is only changed if it is narrowed.
+	 */
+	public void adjustMax(String max) {
+		if (!hasMax || compare(max, this.max) < 0) {
+			this.max = max;
+			hasMax = true;
+		}
+	}
+
+	/**
+	 * @param prefix The new prefix. If there is already a prefix, the longer one is used.
+	 */
+	public void adjustPrefix(String prefix) {
+		if (prefix == null) {
+			return;
+		}
+		if (this.prefix == null || prefix.length() > this.prefix.length()) {
+			//If the prefixes do not match, the query result is empty, any prefix will do.
+			this.prefix = prefix;
+		}
+	}
+
+	/**
+	 * @param other Another range
+	 * @return A range that contains both ranges. It may contain additional keys.
+	 */
+	public StringKeyRange union(StringKeyRange other) {
+		StringKeyRange r = new StringKeyRange();
+		if (hasMin && other.hasMin) {
+			r.adjustMin(compare(min, other.min) <= 0 ? min : other.min);
+		}
+		if (hasMax && other.hasMax) {
+			r.adjustMax(compare(max, other.max) >= 0 ? max : other.max);
+		}
+		if (prefix != null && other.prefix != null) {
+			int n = 0;
+			int len = Math.min(prefix.length(), other.prefix.length());
+			while (n < len && prefix.charAt(n) == other.prefix.charAt(n)) {
+				n++;
+			}
+			r.adjustPrefix(prefix.substring(0, n));
+		}
+		return r;
+	}
+
+	public boolean hasMin() {
+		return hasMin;
+	}
+
+	public String getMin() {
+		return min;
+	}
+
+	public boolean hasMax() {
+		return hasMax;
+	}
+
+	public String getMax() {
+		return max;
+	}
+
+	/**
+	 * @return The prefix or {@code null} if there is none
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Compare keys, {@code null} is smaller than any other key.
+	 * @param s1 key 1
+	 * @param s2 key 2
+	 * @return see {@link Comparable#compareTo(Object)}
+	 */
+	public static int compare(String s1, String s2) {
+		if (s1 == null) {
+			return s2 == null ? 0 : -1;
+		}
+		return s2 == null ? 1 : s1.compareTo(s2);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + (hasMin ? "'" + min + "'" : "") + ".." + (hasMax ? "'" + max + "'" : "")
+				+ (prefix != null ? ", prefix='" + prefix + "'" : "") + "]";
+	}
+}
@@ -15,81 +15,114 @@
  */
 package org.zoodb.internal.util;
 
-import java.util.concurrent.Semaphore;
+import java.util.IdentityHashMap;
 
+/**
+ * A keyed read-write lock that allows one writer or an unlimited number of readers.
+ * <p>
+ * Locks are owned by keys rather than threads, i.e. they can be released by a different thread
+ * than the one that acquired them. Readers only synchronize briefly with each other for
+ * counting, they do not queue behind each other. Waiting writers have precedence over new
+ * readers to avoid writer starvation. Keys that already hold a read lock can always acquire
+ * it again, otherwise a reentrant read would wait for a writer that waits for the same key.
+ *
+ * @author Tilmann Zaeschke
+ *
+ * @param <T> The key type
+ */
 public class RWSemaphore<T> {
 
-	public static final int MAX_READERS = 16;
 	private final T NO_KEY = null;
-	
-	private final Semaphore rSemaphore;
-	private final Semaphore wSemaphore;
+
+	private final IdentityHashMap<T, Integer> readers = new IdentityHashMap<>();
+	private int nReaders = 0;
+	private int nWaitingWriters = 0;
 	private T currentWriterKey = NO_KEY;
-	
-	public RWSemaphore() {
-		rSemaphore = new Semaphore(MAX_READERS, false);
-		wSemaphore = new Semaphore(1, false);
-	}
-	
-	public void readLock(T key) {
+
+	public synchronized void readLock(T key) {
 		try {
-			wSemaphore.acquire();
-			rSemaphore.acquire();
+			while (currentWriterKey != NO_KEY 
+					|| (nWaitingWriters > 0 && !readers.containsKey(key))) {
+				wait();
+			}
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
-		} finally {
-			wSemaphore.release();
 		}
+		Integer n = readers.get(key);
+		readers.put(key, n == null ? 1 : n + 1);
+		nReaders++;
 	}
-	
-	public void writeLock(T key) {
-		//ensure that there is no writer yet
+
+	public synchronized void writeLock(T key) {
+		nWaitingWriters++;
 		try {
-			wSemaphore.acquire();
-			if (currentWriterKey != NO_KEY) {
-				throw new IllegalStateException();
+			//wait for other writers and readers to finish
+			while (currentWriterKey != NO_KEY || nReaders > 0) {
+				wait();
 			}
-			//wait for other readers to finish
-			rSemaphore.acquire(MAX_READERS);
-			rSemaphore.release(MAX_READERS);
-			currentWriterKey = key;
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
+		} finally {
+			nWaitingWriters--;
 		}
+		currentWriterKey = key;
 	}
-	
+
 	private void releaseRead(T key) {
-		if (rSemaphore.availablePermits() == MAX_READERS) {
+		Integer n = readers.get(key);
+		if (n == null) {
 			// i.e. there are no locks left to be released.
-			throw new IllegalStateException(); 
-//			new IllegalStateException().printStackTrace();
-//			return;
+			throw new IllegalStateException();
 		}
-		rSemaphore.release();
-	}
-	
-	private void releaseWrite(T key) {
-		if (currentWriterKey != key) {
-			//throw 
-			new IllegalStateException().printStackTrace();
-			return;
+		if (n == 1) {
+			readers.remove(key);
+		} else {
+			readers.put(key, n - 1);
+		}
+		nReaders--;
+		if (nReaders == 0) {
+			notifyAll();
 		}
+	}
+
+	private void releaseWrite() {
 		currentWriterKey = NO_KEY;
-		wSemaphore.release();
+		notifyAll();
 	}
-	
-	public void release(T key) {
-		if (currentWriterKey == key) {
-			releaseWrite(key);
+
+	public synchronized void release(T key) {
+		if (currentWriterKey != NO_KEY && currentWriterKey == key) {
+			releaseWrite();
 		} else {
 			releaseRead(key);
 		}
 	}
 
-	public boolean isLocked() {
-		return rSemaphore.availablePermits() < MAX_READERS || wSemaphore.availablePermits() < 1 ;
+	public synchronized boolean isLocked() {
+		return nReaders > 0 || currentWriterKey != NO_KEY;
+	}
+
+	/**
+	 * @param key The key
+	 * @return Whether the write lock is held by the given key.
+	 */
+	public synchronized boolean isWriter(T key) {
+		return currentWriterKey != NO_KEY && currentWriterKey == key;
+	}
+
+	/**
+	 * @return Whether any keys are waiting for the write lock.
+	 */
+	public synchronized boolean hasWaitingWriters() {
+		return nWaitingWriters > 0;
+	}
+
+	/**
+	 * @return The number of currently held read locks.
+	 */
+	public synchronized int getReaderCount() {
+		return nReaders;
 	}
-	
 }
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.function.Supplier;
 
 import org.zoodb.internal.Session;
 
@@ -48,6 +49,13 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 	private List<E> fixSizeList;
 	//THis indicates whether we can still attempt to create a fixed size list...
 	private boolean isCreationOfFixSizeListAllowed = true;
+	//Streamed results: The results are evaluated while iterating. The first iterator is
+	//provided by the query. Any further use evaluates the query once more and keeps the 
+	//results in memory.
+	private Iterator<E> cursor;
+	private Supplier<Iterator<E>> cursorSupplier;
+	//Iterators over streamed results that may not have finished yet
+	private final ArrayList<CursorIterator<E>> openCursors = new ArrayList<>();
 	
 	//TODO this is really bad and should happen on the server...
 	private int minIncl;
@@ -63,8 +71,73 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 		session.registerResource(this);
 	}
 	
+	/**
+	 * Create a collection with streamed results. Results are only evaluated while iterating,
+	 * and are not kept in memory unless the collection is used for more than a single 
+	 * iteration, for example by {@code size()}, {@code get()} or a second iteration. Then
+	 * the query is evaluated once more and the results are kept in memory.
+	 * {@code isEmpty()} only probes the first result if the collection has not been used.
+	 * <p>
+	 * The session calls {@link #loadStreamedResults()} before any persistent object is 
+	 * modified, this ensures that the results reflect the state at query execution.
+	 * <p>
+	 * Commits of other sessions are not isolated. A query is evaluated on the snapshot
+	 * that is current when it is evaluated, the same as if it was executed once more. 
+	 * If other sessions commit between the first iteration and a later call of 
+	 * {@code size()}, {@code get()} or a second iteration, the later calls may return 
+	 * different results than the first iteration. Once the results are kept in memory, 
+	 * they do not change anymore.
+	 * @param cursor Iterator over the results, used by the first iteration
+	 * @param cursorSupplier Creates new iterators over the results for further iterations
+	 * @param session The session
+	 * @param minIncl Number of results to skip
+	 * @param maxExcl Index of the first result that is not returned
+	 */
+	public SynchronizedROCollection(Iterator<E> cursor, Supplier<Iterator<E>> cursorSupplier, 
+			Session session, long minIncl, long maxExcl) {
+		this(Collections.emptyList(), session, minIncl, maxExcl);
+		this.cursor = cursor;
+		this.cursorSupplier = cursorSupplier;
+		session.registerStreamedResult(this);
+	}
+	
+	/**
+	 * Load all streamed results into memory, including the remaining results of open 
+	 * iterators. This is a no-op for collections that are not streamed.
+	 */
+	public void loadStreamedResults() {
+		try {
+			lock.lock();
+			for (CursorIterator<E> ci: openCursors) {
+				ci.load(maxExcl);
+			}
+			openCursors.clear();
+			if (isCursored()) {
+				checkCursoredResult();
+			}
+			cursor = null;
+			cursorSupplier = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private boolean isCursored() {
+		return cursorSupplier != null && fixSizeList == null;
+	}
+	
+	private Iterator<E> nextCursor() {
+		if (cursor != null) {
+			Iterator<E> it = cursor;
+			cursor = null;
+			return it;
+		}
+		return cursorSupplier.get();
+	}
+	
 	@Override
 	public int size() {
+		checkClosed();
 		checkCursoredResult();
 		try {
 			lock.lock();
@@ -79,6 +152,17 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 	public boolean isEmpty() {
 		try {
 			lock.lock();
+			if (isCursored()) {
+				checkClosed();
+				if (minIncl >= maxExcl) {
+					return true;
+				}
+				if (minIncl == 0 && cursor != null) {
+					//hasNext() does not consume any result, we can keep the cursor
+					return !cursor.hasNext();
+				}
+				checkCursoredResult();
+			}
 			adjustSize();
 			return c.isEmpty();
 		} finally {
@@ -108,8 +192,21 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 	    			return new ClosableIteratorWrapper<>(failOnClosedQuery);
 	    		}
 	    	}
+			Iterator<E> it;
+			if (isCursored() && cursor != null) {
+				openCursors.removeIf(CursorIterator::isFinished);
+				CursorIterator<E> ci = new CursorIterator<>(nextCursor());
+				openCursors.add(ci);
+				it = ci;
+			} else {
+				if (isCursored()) {
+					//The results have been streamed before, we evaluate them only once more
+					checkCursoredResult();
+				}
+				it = c.iterator();
+			}
 			ClosableIteratorWrapper<E> iter = 
-					new ClosableIteratorWrapper<>(c.iterator(), this, failOnClosedQuery);
+					new ClosableIteratorWrapper<>(it, this, failOnClosedQuery);
 			return new SynchronizedROIterator<>(iter, lock, minIncl, maxExcl);
 		} finally {
 			lock.unlock();
@@ -128,13 +225,17 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 		return fixSizeList.toArray(a);
 	}
 
-	@SuppressWarnings("unchecked")
-	private void adjustSize() {
+	private void checkClosed() {
 		if (isClosed && session.getConfig().getFailOnClosedQueries()) {
 			//One of those will fail...
 			session.checkOpen();
 			session.checkActiveRead();
 		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void adjustSize() {
+		checkClosed();
 		if (minIncl == 0 && maxExcl == Integer.MAX_VALUE) {
 			//we can ignore this
 			return;
@@ -193,7 +294,11 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 	@Override
 	public void close() {
 		c = Collections.emptyList();
+		cursor = null;
+		cursorSupplier = null;
+		openCursors.clear();
 		session.deregisterResource(this);
+		session.deregisterStreamedResult(this);
 		isClosed = true;
 	}
 
@@ -259,10 +364,30 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 
 	private void checkCursoredResult() {
 		if (fixSizeList == null) {
-			if (isCreationOfFixSizeListAllowed) {
+			if (isCreationOfFixSizeListAllowed || cursorSupplier != null) {
 				isCreationOfFixSizeListAllowed = false;
-				fixSizeList = new ArrayList<>(c);
-				if (fixSizeList.size() > WARNING_THRESHOLD) {
+				if (cursorSupplier != null) {
+					//streamed results can always be re-evaluated
+					try {
+						lock.lock();
+						fixSizeList = new ArrayList<>();
+						Iterator<E> it = nextCursor();
+						while (fixSizeList.size() < maxExcl && it.hasNext()) {
+							fixSizeList.add(it.next());
+						}
+						c = fixSizeList;
+						cursor = null;
+					} finally {
+						lock.unlock();
+					}
+				} else {
+					fixSizeList = new ArrayList<>(c);
+				}
+				if (cursorSupplier != null) {
+					//Expected for streamed results, the query has been evaluated once more
+					Session.LOGGER.debug("Loaded {} streamed query results into memory.", 
+							fixSizeList.size());
+				} else if (fixSizeList.size() > WARNING_THRESHOLD) {
 					Session.LOGGER.warn("This operation on a query result loaded {} object into memory. "
 							+ "Avoid using function like size() if this is not desired", fixSizeList.size());
 				}
@@ -292,4 +417,48 @@ public class SynchronizedROCollection<E> implements List<E>, CloseableResource {
 		return isClosed;
 	}
 
+	/**
+	 * Iterator over streamed results. The remaining results can be loaded into memory.
+	 */
+	private static class CursorIterator<E> implements Iterator<E> {
+		
+		private Iterator<E> it;
+		private int pos = 0;
+		private boolean isFinished = false;
+		
+		CursorIterator(Iterator<E> it) {
+			this.it = it;
+		}
+		
+		/**
+		 * @param maxExcl Results beyond this position are never returned and need not be loaded
+		 */
+		void load(int maxExcl) {
+			ArrayList<E> list = new ArrayList<>();
+			for (int i = pos; i < maxExcl && it.hasNext(); i++) {
+				list.add(it.next());
+			}
+			it = list.iterator();
+		}
+		
+		boolean isFinished() {
+			return isFinished;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (!it.hasNext()) {
+				isFinished = true;
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public E next() {
+			pos++;
+			return it.next();
+		}
+	}
+
 }
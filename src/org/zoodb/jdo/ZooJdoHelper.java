@@ -19,6 +19,7 @@ import javax.jdo.JDOHelper;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 
+import org.zoodb.api.ZooClusteringPolicy;
 import org.zoodb.internal.Session;
 import org.zoodb.internal.util.DBTracer;
 import org.zoodb.jdo.impl.PersistenceManagerImpl;
@@ -106,6 +107,20 @@ public class ZooJdoHelper extends ZooHelper {
     	c.createIndex(fieldName, isUnique);
     }
 
+    /**
+     * Set the clustering policy of a PersistenceManager. The policy defines the order in 
+     * which new and modified objects are written during commit.
+     * @param pm The PersistenceManager
+     * @param policy The policy, or {@code null} to write objects in the order in which they
+     * became dirty
+     * @see org.zoodb.api.ZooConstants#PROPERTY_CLUSTERING
+     */
+	public static void setClusteringPolicy(PersistenceManager pm, ZooClusteringPolicy policy) {
+    	DBTracer.logCall(ZooJdoHelper.class, pm, policy); 
+		Session s = (Session) pm.getDataStoreConnection().getNativeConnection();
+		s.getConfig().setClusteringPolicy(policy);
+	}
+
     /**
      * Get access to the statistics API of ZooDB.
      * @param pm The PersistenceManager
@@ -224,6 +224,38 @@ public class ZooJdoProperties extends Properties implements Constants {
 	}
 
 
+	/**
+	 * Property that defines whether commits have to wait until their data has been written to 
+	 * disk. With relaxed durability, commits return once the data has been handed to the file. 
+	 * The data is forced to disk later by a background thread. A crash may lose the most 
+	 * recent commits, but the database always reopens at a consistent commit.
+	 * Default is {@code false}.
+	 * @param flag The flag
+	 * @return this
+	 * @see ZooConstants#PROPERTY_RELAXED_DURABILITY
+	 */
+	public ZooJdoProperties setZooRelaxedDurability(boolean flag) {
+    	DBTracer.logCall(this, flag); 
+		put(ZooConstants.PROPERTY_RELAXED_DURABILITY, Boolean.toString(flag));
+		return this;
+	}
+
+
+	/**
+	 * Property that defines the order in which new and modified objects are written during
+	 * commit. Supported values are {@code none} (default), {@code oid}, {@code reachability}
+	 * and {@code field:<name>}.
+	 * @param policy The clustering policy
+	 * @return this
+	 * @see ZooConstants#PROPERTY_CLUSTERING
+	 */
+	public ZooJdoProperties setZooClustering(String policy) {
+    	DBTracer.logCall(this, policy); 
+		put(ZooConstants.PROPERTY_CLUSTERING, policy);
+		return this;
+	}
+
+
 	/**
 	 * Property that defines whether PersistenceManagers should expect multi-threaded access. 
 	 * Default is {@code true}.
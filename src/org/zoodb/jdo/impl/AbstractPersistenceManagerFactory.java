@@ -22,6 +22,7 @@ import javax.jdo.JDOUserException;
 import javax.jdo.PersistenceManagerFactory;
 
 import org.zoodb.api.ZooConstants;
+import org.zoodb.internal.client.session.ClusteringPolicies;
 import org.zoodb.tools.ZooHelper;
 
 
@@ -67,6 +68,8 @@ public abstract class AbstractPersistenceManagerFactory
     private boolean autoCreateSchema = true;
 	private boolean evictPrimitives = false;
 	private boolean failOnClosedQueries = false;
+	private boolean relaxedDurability = false;
+	private String clustering = null;
 //	private boolean allowNonStandardSCOs = false;
     
     //Non-standard properties.
@@ -179,6 +182,12 @@ public abstract class AbstractPersistenceManagerFactory
     			evictPrimitives = Boolean.parseBoolean(props.getProperty(key));
     		} else if (ZooConstants.PROPERTY_FAIL_ON_CLOSED_QUERIES.equals(key)) {
     			failOnClosedQueries = Boolean.parseBoolean(props.getProperty(key));
+    		} else if (ZooConstants.PROPERTY_RELAXED_DURABILITY.equals(key)) {
+    			relaxedDurability = Boolean.parseBoolean(props.getProperty(key));
+    		} else if (ZooConstants.PROPERTY_CLUSTERING.equals(key)) {
+    			clustering = props.getProperty(key);
+    			//fail early
+    			ClusteringPolicies.parse(clustering);
     		} else {
     			//throw new IllegalArgumentException("Unknown key: " + key);
     			System.err.println("Property not recognised: " + key + "=" + props.getProperty(key));
@@ -394,4 +403,22 @@ public abstract class AbstractPersistenceManagerFactory
 	public boolean getFailOnClosedQueries() {
 		return failOnClosedQueries;
 	}
+    
+
+	/**
+	 * @return Whether commits use relaxed durability.
+	 * @see  ZooConstants#PROPERTY_RELAXED_DURABILITY
+	 */
+	public boolean getRelaxedDurability() {
+		return relaxedDurability;
+	}
+    
+
+	/**
+	 * @return The clustering policy or {@code null} for the default.
+	 * @see  ZooConstants#PROPERTY_CLUSTERING
+	 */
+	public String getClustering() {
+		return clustering;
+	}
 }
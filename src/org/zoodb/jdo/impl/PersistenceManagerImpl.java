@@ -49,6 +49,7 @@ import org.zoodb.internal.Session;
 import org.zoodb.internal.SessionConfig;
 import org.zoodb.internal.SessionParentCallback;
 import org.zoodb.internal.ZooHandleImpl;
+import org.zoodb.internal.client.session.ClusteringPolicies;
 import org.zoodb.internal.util.DBTracer;
 import org.zoodb.internal.util.ObjectIdentitySet;
 import org.zoodb.internal.util.TransientField;
@@ -92,6 +93,8 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
         cfg.setAutoCreateSchema(factory.getAutoCreateSchema());
         cfg.setEvictPrimitives(factory.getEvictPrimitives());
         cfg.setFailOnCloseQueries(factory.getFailOnClosedQueries());
+        cfg.setRelaxedDurability(factory.getRelaxedDurability());
+        cfg.setClusteringPolicy(ClusteringPolicies.parse(factory.getClustering()));
         cfg.setDetachAllOnCommit(factory.getDetachAllOnCommit());
         cfg.setNonTransactionalRead(factory.getNontransactionalRead());
     	nativeConnection = new Session(this, factory.getConnectionURL(), cfg);
@@ -393,7 +396,7 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
     public Collection getObjectsById(Collection oids) {
     	DBTracer.logCall(this, oids);
         checkOpen();
-        throw new UnsupportedOperationException();
+        return Arrays.asList(nativeConnection.getObjectsById(oids));
     }
 
     /**
@@ -630,16 +633,16 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
 	public Object[] getObjectsById(Object[] arg0, boolean arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		//see getObjectById(Object, boolean)
+		return getObjectsById(arg0);
 	}
 
 	@Override
 	public Object[] getObjectsById(boolean arg0, Object... arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		//see getObjectById(Object, boolean)
+		return getObjectsById(arg1);
 	}
 
 	@Override
@@ -1052,8 +1055,8 @@ public class PersistenceManagerImpl implements PersistenceManager, SessionParent
 	public Collection getObjectsById(Collection arg0, boolean arg1) {
     	DBTracer.logCall(this, arg0, arg1);
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		//see getObjectById(Object, boolean)
+		return getObjectsById(arg0);
 	}
 	
 	/**
@@ -530,6 +530,14 @@ public class QueryImpl implements Query {
 					ClientSessionCache cache = pm.getSession().internalGetCache();
 					cache.persistReachableObjects();
 				}
+				if (ext == null && resultSettings != null) {
+					//Aggregates and projections may be computed from indexes
+					Object result = getOrCreateExecutor().runOnIndexes(rangeMin, rangeMax, 
+							resultSettings, resultClass, ignoreCache);
+					if (result != null) {
+						return result;
+					}
+				}
 				//We use a separate extent here. 'ext' is only for explicitly provided extents.
 				//Otherwise, use of extents depends on whether we define a filter (maybe in a
 				//second execution).
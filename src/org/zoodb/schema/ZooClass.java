@@ -62,6 +62,26 @@ public interface ZooClass {
 	 */
 	boolean isIndexUnique(String fieldName);
 
+	/**
+	 * Creates a non-unique index over several fields for the current class and all sub-classes.
+	 * Queries can use the index if they constrain the first fields with '==', optionally 
+	 * followed by a range constraint on the next field.
+	 * @param fieldNames The names of the fields to be indexed, at least two
+	 */
+	void createCompositeIndex(String... fieldNames);
+
+	/**
+	 * @param fieldNames The names of the fields of the index
+	 * @return {@code true} if the index could be removed
+	 */
+	boolean removeCompositeIndex(String... fieldNames);
+
+	/**
+	 * @param fieldNames The names of the fields of the index
+	 * @return {@code true} if the class has a composite index on exactly these fields
+	 */
+	boolean hasCompositeIndex(String... fieldNames);
+
 	/**
 	 * Drops all instances of the class. This does not affect cached instances
 	 */
@@ -36,6 +36,10 @@ public class DBStatistics {
 		/** Data page (only stored objects) read access counter. 
 		 * Counts only unique access (each page counted only once). */
 		IO_DATA_PAGE_READ_CNT_UNQ(true), 
+		/** Number of page reads that were served from the shared page cache. */
+		IO_PAGE_CACHE_HIT_CNT(true),
+		/** Number of page reads that missed the shared page cache. */
+		IO_PAGE_CACHE_MISS_CNT(true),
 		
 		/** Number of pages used by free space manager. */
 		DB_PAGE_CNT_IDX_FSM(true), 
@@ -54,6 +58,10 @@ public class DBStatistics {
 		TX_MGR_BUFFERED_OID_CNT(true), 
 		/** Number of buffered past transactions. */
 		TX_MGR_BUFFERED_TX_CNT(true),
+		/** Number of commits that modified the database. */
+		TX_COMMIT_CNT(true),
+		/** Number of commit groups. Each group requires one root page write and disk sync. */
+		TX_COMMIT_GROUP_CNT(true),
 		
 		/** Number of queries compiled. */
 		QU_COMPILED(false),
@@ -122,6 +130,14 @@ public class DBStatistics {
 		return s.getPrimaryNode().getStats(STATS.IO_DATA_PAGE_READ_CNT_UNQ);
 	}
 
+	public long getStoragePageCacheHitCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_CACHE_HIT_CNT);
+	}
+
+	public long getStoragePageCacheMissCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_CACHE_MISS_CNT);
+	}
+
 	public long getQueryCompileCount() {
 		return s.getStats(STATS.QU_COMPILED);
 	}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.tools;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Transaction;
+
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.schema.ZooField;
+
+/**
+ * Import large numbers of new objects into a database.
+ * <p>
+ * Objects are committed in batches. The field indexes of the imported classes are removed
+ * when the first object of a class is added, and they are recreated by {@link #close()}.
+ * Recreating an index sorts all keys and builds the index bottom-up, which is much faster than
+ * updating the index for every object and results in denser indexes,
+ * see {@link ZooConfig#setIndexFillFactor(int)}.
+ * <p>
+ * The indexes are not available to queries during the import. {@link #close()} recreates
+ * them also if the import fails, for example if a batch cannot be committed. Only if the
+ * application terminates during the import do the indexes have to be recreated manually.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * try (ZooBulkImport imp = new ZooBulkImport(pm)) {
+ *     for (MyClass o: objects) {
+ *         imp.add(o);
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author Tilmann Zaeschke
+ */
+public class ZooBulkImport implements AutoCloseable {
+
+	public static final int BATCH_SIZE_DEFAULT = 100000;
+
+	private final PersistenceManager pm;
+	private int batchSize = BATCH_SIZE_DEFAULT;
+	private int nPending = 0;
+	private final HashSet<Class<?>> classes = new HashSet<>();
+	private final ArrayList<SuspendedIndex> indexes = new ArrayList<>();
+
+	private static class SuspendedIndex {
+		private final String className;
+		private final String fieldName;
+		private final boolean isUnique;
+		SuspendedIndex(String className, String fieldName, boolean isUnique) {
+			this.className = className;
+			this.fieldName = fieldName;
+			this.isUnique = isUnique;
+		}
+	}
+
+	/**
+	 * @param pm The PersistenceManager, it must not have an active transaction.
+	 */
+	public ZooBulkImport(PersistenceManager pm) {
+		if (pm.currentTransaction().isActive()) {
+			throw DBLogger.newUser("Bulk import requires an inactive transaction.");
+		}
+		this.pm = pm;
+	}
+
+	/**
+	 * @param batchSize The number of objects that are committed together.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Add a new object. Objects that are referenced by the object are also made persistent,
+	 * but they are not counted for the batch size and their indexes are not suspended.
+	 * @param pc The object
+	 */
+	public void add(Object pc) {
+		Transaction tx = pm.currentTransaction();
+		if (!tx.isActive()) {
+			tx.begin();
+		}
+		if (classes.add(pc.getClass())) {
+			suspendIndexes(pc.getClass());
+		}
+		pm.makePersistent(pc);
+		if (++nPending >= batchSize) {
+			//This also evicts the committed objects, unless retainValues is set 
+			tx.commit();
+			nPending = 0;
+		}
+	}
+
+	private void suspendIndexes(Class<?> cls) {
+		ZooClass zc = ZooJdoHelper.schema(pm).getClass(cls);
+		if (zc == null) {
+			//the schema is created with the first object, it has no indexes yet
+			return;
+		}
+		for (ZooField f: zc.getAllFields()) {
+			if (f.hasIndex()) {
+				indexes.add(new SuspendedIndex(zc.getName(), f.getName(), f.isIndexUnique()));
+				f.removeIndex();
+			}
+		}
+	}
+
+	/**
+	 * Commit the remaining objects and recreate all suspended indexes.
+	 * <p>
+	 * If the remaining objects cannot be committed, they are rolled back. The indexes are
+	 * recreated in any case, each in its own transaction, such that a failure, for example a
+	 * unique index that cannot be created because of duplicate keys, does not prevent the 
+	 * other indexes from being recreated. The first failure is rethrown afterwards.
+	 */
+	@Override
+	public void close() {
+		Transaction tx = pm.currentTransaction();
+		RuntimeException failure = null;
+		try {
+			if (tx.isActive()) {
+				tx.commit();
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+		nPending = 0;
+		for (SuspendedIndex si: indexes) {
+			try {
+				restoreIndex(si);
+			} catch (RuntimeException e) {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		indexes.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void restoreIndex(SuspendedIndex si) {
+		Transaction tx = pm.currentTransaction();
+		tx.begin();
+		ZooClass zc = ZooJdoHelper.schema(pm).getClass(si.className);
+		//The removal of the index is rolled back if the first batch fails
+		if (!zc.hasIndex(si.fieldName)) {
+			zc.createIndex(si.fieldName, si.isUnique);
+		}
+		tx.commit();
+	}
+}
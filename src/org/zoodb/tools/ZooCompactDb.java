@@ -0,0 +1,234 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOOptimisticVerificationException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.zoodb.internal.Session;
+import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.internal.ZooHandleImpl;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.internal.util.PrimLongArrayList;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.schema.ZooHandle;
+import org.zoodb.tools.DBStatistics.STATS;
+import org.zoodb.tools.internal.ZooCommandLineTool;
+
+/**
+ * Compact a database file.
+ * <p>
+ * The objects are rewritten class by class. New pages are always allocated at the lowest free
+ * position in the file, so the objects move towards the front of the file and the objects of
+ * each class end up on contiguous pages. Then the index pages are moved out of the area
+ * at the end of the file, and the free pages at the end of the file are removed.
+ * <p>
+ * Objects are moved by marking them dirty and committing them, not by copying their pages
+ * and updating the entries of the OID index and the position indexes in place. Every moved
+ * object is therefore serialized again and its field index entries are updated as in any
+ * other commit. This is slower than moving pages, but the compaction relies only on the 
+ * normal commit path, which keeps the copy-on-write guarantees, and supports concurrent 
+ * sessions and the write-ahead log without further code.
+ * <p>
+ * The compaction is performed in many small transactions, other sessions of the same process
+ * can continue to use the database. Objects that are modified concurrently are skipped, they are anyway
+ * rewritten by the other session.
+ * Pages that are still in use by other sessions cannot be reused, so the file may shrink less
+ * than if it is compacted without concurrent sessions.
+ * <p>
+ * Files with a format version before 1.8 are not shrunk.
+ *
+ * @author Tilmann Zaeschke
+ *
+ */
+public class ZooCompactDb extends ZooCommandLineTool {
+
+	//Number of objects that are moved per transaction
+	private static final int BATCH_SIZE = 1000;
+	//Maximum number of rounds for moving the remaining objects and index pages
+	private static final int MAX_ROUNDS = 10;
+
+	public static void main(String... args) {
+		if (args.length == 0 || Arrays.asList(args).contains("--help")
+				|| Arrays.asList(args).contains("-help")) {
+			out.println("Usage: ZooCompactDb databaseFileName");
+			out.println("    This tool moves all objects and index pages towards the front of ");
+			out.println("    the database file and removes free pages from the end of the file.");
+			out.println("Options:");
+			out.println("    --help:           Print help");
+			return;
+		}
+		String dbName = args[args.length - 1];
+
+		if (!ZooHelper.getDataStoreManager().dbExists(dbName)) {
+			err.println("ERROR Database not found: " + dbName);
+			return;
+		}
+
+		out.println("Compacting database: " + dbName);
+		long[] pages = compact(dbName);
+		out.println("Pages before compaction: " + pages[0]);
+		out.println("Pages after compaction:  " + pages[1]);
+		out.println("Compacting database done.");
+	}
+
+	/**
+	 * Compact a database file.
+	 * @param dbName The database name or path
+	 * @return The number of pages before and after the compaction
+	 */
+	public static long[] compact(String dbName) {
+		ZooJdoProperties props = new ZooJdoProperties(dbName);
+		PersistenceManagerFactory pmf = JDOHelper.getPersistenceManagerFactory(props);
+		try {
+			long nPages0 = getPageCount(pmf);
+			ArrayList<String> classNames = getClassNames(pmf);
+			for (String className: classNames) {
+				moveObjects(pmf, className, false);
+			}
+			long nPages = moveTailAndTruncate(pmf, classNames);
+			return new long[] {nPages0, nPages};
+		} finally {
+			pmf.close();
+		}
+	}
+
+	private static long getPageCount(PersistenceManagerFactory pmf) {
+		PersistenceManager pm = pmf.getPersistenceManager();
+		try {
+			return ZooJdoHelper.getStatistics(pm).getStat(STATS.DB_PAGE_CNT);
+		} finally {
+			pm.close();
+		}
+	}
+
+	private static ArrayList<String> getClassNames(PersistenceManagerFactory pmf) {
+		ArrayList<String> names = new ArrayList<>();
+		PersistenceManager pm = pmf.getPersistenceManager();
+		try {
+			pm.currentTransaction().begin();
+			for (ZooClass cls: ZooJdoHelper.schema(pm).getAllClasses()) {
+				names.add(cls.getName());
+			}
+			pm.currentTransaction().rollback();
+		} finally {
+			pm.close();
+		}
+		return names;
+	}
+
+	/**
+	 * Rewrite objects of a class.
+	 * @param tailOnly Whether to rewrite only objects that prevent the file from being shrunk 
+	 * @return The number of objects 
+	 */
+	private static int moveObjects(PersistenceManagerFactory pmf, String className, 
+			boolean tailOnly) {
+		//Commits invalidate the iterator, so we collect the OIDs first
+		PrimLongArrayList oids = new PrimLongArrayList();
+		PersistenceManager pm = pmf.getPersistenceManager();
+		try {
+			pm.currentTransaction().begin();
+			ZooClass cls = ZooJdoHelper.schema(pm).getClass(className);
+			if (cls != null && tailOnly) {
+				Session s = (Session) pm.getDataStoreConnection().getNativeConnection();
+				for (long oid: s.getPrimaryNode().getOidsForCompaction((ZooClassProxy) cls)) {
+					oids.add(oid);
+				}
+			} else if (cls != null) {
+				Iterator<ZooHandle> it = cls.getHandleIterator(false);
+				while (it.hasNext()) {
+					oids.add(it.next().getOid());
+				}
+			}
+			pm.currentTransaction().rollback();
+		} finally {
+			pm.close();
+		}
+
+		//Use a new PM for each batch, this avoids filling up the cache.
+		//Pages that are freed by a batch can be reused by the next batch.
+		for (int start = 0; start < oids.size(); start += BATCH_SIZE) {
+			pm = pmf.getPersistenceManager();
+			try {
+				pm.currentTransaction().begin();
+				Session s = (Session) pm.getDataStoreConnection().getNativeConnection();
+				int end = Math.min(start + BATCH_SIZE, oids.size());
+				for (int i = start; i < end; i++) {
+					ZooHandleImpl h = s.getHandle(oids.get(i));
+					//The object may have been deleted by another session
+					if (h != null) {
+						h.getGenericObject().jdoZooMarkDirty();
+					}
+				}
+				pm.currentTransaction().commit();
+			} catch (JDOOptimisticVerificationException e) {
+				//Objects have been modified concurrently, the transaction was rolled back
+				DBLogger.LOGGER.info("Compaction skipped objects: {}", e.getMessage());
+			} finally {
+				pm.close();
+			}
+		}
+		return oids.size();
+	}
+
+	/**
+	 * Objects that could not be moved to free pages at the front of the file are moved again,
+	 * then the index pages are moved and the free pages at the end of the file are removed.
+	 * This requires several rounds, because freed pages can only be reused or removed in 
+	 * subsequent transactions.
+	 * @return The new number of pages
+	 */
+	private static long moveTailAndTruncate(PersistenceManagerFactory pmf, 
+			ArrayList<String> classNames) {
+		long nPages = Long.MAX_VALUE;
+		for (int i = 0; i < MAX_ROUNDS; i++) {
+			int nMoved = 0;
+			for (String className: classNames) {
+				nMoved += moveObjects(pmf, className, true);
+			}
+			long n = moveIndexesAndTruncate(pmf);
+			//At least two rounds, pages that are freed by the first round can only be
+			//removed by the second round
+			if (i > 0 && nMoved == 0 && n >= nPages) {
+				return n;
+			}
+			nPages = n;
+		}
+		return nPages;
+	}
+
+	private static long moveIndexesAndTruncate(PersistenceManagerFactory pmf) {
+		PersistenceManager pm = pmf.getPersistenceManager();
+		try {
+			pm.currentTransaction().begin();
+			Session s = (Session) pm.getDataStoreConnection().getNativeConnection();
+			s.getPrimaryNode().requestCompaction();
+			pm.currentTransaction().commit();
+			return ZooJdoHelper.getStatistics(pm).getStat(STATS.DB_PAGE_CNT);
+		} finally {
+			pm.close();
+		}
+	}
+}
@@ -15,22 +15,52 @@ public class ZooConfig {
 	public static final String FILE_PAF_BB = preServer + "StorageRootFile";
 	//public static final String FILE_PAF_BB = preServer + "StorageInMemory";
 	public static final String FILE_PAF_IN_MEMORY = preServer + "StorageRootInMemory";
+	/** File processor that uses memory mapped files instead of positional reads and writes. */
+	public static final String FILE_PAF_BB_MAPPED_PAGE = preServer + "StorageRootFileMapped";
 
 	public static final String FILE_MGR_IN_MEMORY = preZoo + "tools.impl.DataStoreManagerInMemory";
 	public static final String FILE_MGR_ONE_FILE = preZoo + "tools.impl.DataStoreManagerOneFile";
 	//public static final String FILE_MGR_ONE_FILE = FILE_MGR_IN_MEMORY; 
 
 	public static final int FILE_PAGE_SIZE_DEFAULT = 1024*4;  //bytes
+	public static final int FILE_PAGE_CACHE_SIZE_DEFAULT = 0;  //pages, 0 = disabled
+	public static final int INDEX_PAGE_BUDGET_DEFAULT = 0;  //pages, 0 = unlimited
+	public static final int GROUP_COMMIT_SIZE_DEFAULT = 1;  //commits, 1 = no grouping
+	public static final int COMMIT_FLUSH_DELAY_DEFAULT = 200;  //milliseconds
+	public static final int COMMIT_FLUSH_SIZE_DEFAULT = 1024*1024*4;  //bytes
+	public static final int WAL_CHECKPOINT_SIZE_DEFAULT = 1024*1024*16;  //bytes
+	public static final int INDEX_FILL_FACTOR_DEFAULT = 90;  //percent
+	public static final int READ_AHEAD_PAGES_DEFAULT = 0;  //pages, 0 = disabled
 
 	
 	private static String fileDefault = FILE_PAF_BB;
 	private static String fileManagerDefault = FILE_MGR_ONE_FILE;
 	private static int defaultPageSize = FILE_PAGE_SIZE_DEFAULT;
+	private static int pageCacheSize = FILE_PAGE_CACHE_SIZE_DEFAULT;
+	private static int indexPageBudget = INDEX_PAGE_BUDGET_DEFAULT;
+	private static int groupCommitSize = GROUP_COMMIT_SIZE_DEFAULT;
+	private static int commitFlushDelay = COMMIT_FLUSH_DELAY_DEFAULT;
+	private static int commitFlushSize = COMMIT_FLUSH_SIZE_DEFAULT;
+	private static boolean writeAheadLog = false;
+	private static int walCheckpointSize = WAL_CHECKPOINT_SIZE_DEFAULT;
+	private static int indexFillFactor = INDEX_FILL_FACTOR_DEFAULT;
+	private static int readAheadPages = READ_AHEAD_PAGES_DEFAULT;
+	private static boolean pageCompression = false;
 
 	public static void setDefaults() {
 		fileDefault = FILE_PAF_BB;
 		fileManagerDefault = FILE_MGR_ONE_FILE;
 		defaultPageSize = FILE_PAGE_SIZE_DEFAULT;
+		pageCacheSize = FILE_PAGE_CACHE_SIZE_DEFAULT;
+		indexPageBudget = INDEX_PAGE_BUDGET_DEFAULT;
+		groupCommitSize = GROUP_COMMIT_SIZE_DEFAULT;
+		commitFlushDelay = COMMIT_FLUSH_DELAY_DEFAULT;
+		commitFlushSize = COMMIT_FLUSH_SIZE_DEFAULT;
+		writeAheadLog = false;
+		walCheckpointSize = WAL_CHECKPOINT_SIZE_DEFAULT;
+		indexFillFactor = INDEX_FILL_FACTOR_DEFAULT;
+		readAheadPages = READ_AHEAD_PAGES_DEFAULT;
+		pageCompression = false;
 	}
 	
 	public static void setFileManager(String className) {
@@ -42,6 +72,17 @@ public class ZooConfig {
 		}
 	}
 
+	/**
+	 * Set the storage implementation that is used to access database files, for example
+	 * {@link #FILE_PAF_BB} or {@link #FILE_PAF_BB_MAPPED_PAGE}.
+	 * This affects only databases that are opened after this call.
+	 * 
+	 * @param className The class name of the {@code StorageRoot} implementation.
+	 */
+	public static void setFileProcessor(String className) {
+		fileDefault = className;
+	}
+
 	public static String getFileProcessor() {
 		return fileDefault;
 	}
@@ -61,4 +102,178 @@ public class ZooConfig {
 	public static void setFilePageSize(int pageSize) {
 		defaultPageSize = pageSize;
 	}
+
+	public static int getPageCacheSize() {
+		return pageCacheSize;
+	}
+
+	/**
+	 * Set the size of the page cache that is shared by all sessions of a database file.
+	 * This affects only databases that are opened after this call.
+	 * The cache is disabled by default. It helps if several sessions read the same pages
+	 * and the operating system does not cache the file.
+	 * 
+	 * @param pages Maximum number of cached pages, {@code 0} disables the cache.
+	 */
+	public static void setPageCacheSize(int pages) {
+		pageCacheSize = pages;
+	}
+
+	public static int getIndexPageBudget() {
+		return indexPageBudget;
+	}
+
+	/**
+	 * Set the maximum number of pages that each index keeps in memory. Clean pages beyond
+	 * this number are evicted and reloaded from disk on demand.
+	 * This affects only indexes that are loaded or created after this call.
+	 * 
+	 * @param pages Maximum number of pages per index, {@code 0} means unlimited.
+	 */
+	public static void setIndexPageBudget(int pages) {
+		indexPageBudget = pages;
+	}
+
+	public static int getGroupCommitSize() {
+		return groupCommitSize;
+	}
+
+	/**
+	 * Set the maximum number of commits that share one root page write and one disk sync.
+	 * Commits are only grouped if other sessions are already waiting to commit, a single
+	 * committing session is never delayed. Commits that join a group wait until the last
+	 * commit of the group has been written.
+	 * Group commit is disabled by default.
+	 * This affects only databases that are opened after this call.
+	 * 
+	 * @param commits Maximum number of commits per group, {@code 1} disables group commit.
+	 * A value of 16 works well for many concurrently committing sessions.
+	 */
+	public static void setGroupCommitSize(int commits) {
+		groupCommitSize = commits;
+	}
+
+	public static int getCommitFlushDelay() {
+		return commitFlushDelay;
+	}
+
+	/**
+	 * Set the maximum time that commits with relaxed durability may remain unwritten. 
+	 * After this time, a background thread forces the database file to disk and writes the 
+	 * root page.
+	 * This affects only databases that are opened after this call.
+	 * 
+	 * @param millis Delay in milliseconds.
+	 * @see org.zoodb.api.ZooConstants#PROPERTY_RELAXED_DURABILITY
+	 */
+	public static void setCommitFlushDelay(int millis) {
+		commitFlushDelay = millis;
+	}
+
+	public static int getCommitFlushSize() {
+		return commitFlushSize;
+	}
+
+	/**
+	 * Set the amount of data that commits with relaxed durability may write before they are
+	 * forced to disk, regardless of the flush delay.
+	 * This affects only databases that are opened after this call.
+	 * 
+	 * @param bytes Size in bytes.
+	 * @see #setCommitFlushDelay(int)
+	 */
+	public static void setCommitFlushSize(int bytes) {
+		commitFlushSize = bytes;
+	}
+
+	public static boolean getWriteAheadLog() {
+		return writeAheadLog;
+	}
+
+	/**
+	 * Enable the write-ahead log. Commits then append their pages to a log file instead of 
+	 * writing the root page and forcing the database file. The log is folded into the 
+	 * database during checkpoints and replayed when a database is opened after a crash.
+	 * The log is not supported for in-memory databases.
+	 * This affects only databases that are opened after this call.
+	 * 
+	 * @param flag Whether to use a write-ahead log.
+	 * @see #setWalCheckpointSize(int)
+	 */
+	public static void setWriteAheadLog(boolean flag) {
+		writeAheadLog = flag;
+	}
+
+	public static int getWalCheckpointSize() {
+		return walCheckpointSize;
+	}
+
+	/**
+	 * Set the size of the write-ahead log that triggers a checkpoint. Checkpoints also occur
+	 * when a session is closed.
+	 * This affects only databases that are opened after this call.
+	 * 
+	 * @param bytes Size in bytes.
+	 * @see #setWriteAheadLog(boolean)
+	 */
+	public static void setWalCheckpointSize(int bytes) {
+		walCheckpointSize = bytes;
+	}
+
+	public static int getIndexFillFactor() {
+		return indexFillFactor;
+	}
+
+	/**
+	 * Set how full index pages are when an index is built in bulk, for example when an index 
+	 * is created on existing objects. Lower values leave space for subsequent inserts.
+	 * 
+	 * @param percent Fill factor in percent, between 1 and 100.
+	 * @see ZooBulkImport
+	 */
+	public static void setIndexFillFactor(int percent) {
+		if (percent < 1 || percent > 100) {
+			throw new IllegalArgumentException("Fill factor must be between 1 and 100: " + percent);
+		}
+		indexFillFactor = percent;
+	}
+
+	public static int getReadAheadPages() {
+		return readAheadPages;
+	}
+
+	/**
+	 * Set the number of data pages that are read in the background ahead of extent 
+	 * iterators, for example during non-indexed queries. The pages are read into the
+	 * page cache by a background thread, so read-ahead requires the page cache to be enabled.
+	 * Read-ahead is disabled by default. The thread is only created for databases that are
+	 * opened while read-ahead is enabled, and it is stopped when the database is closed.
+	 * Read-ahead helps if deserialization and disk reads can overlap, for example with 
+	 * large extents that are not in the operating system's file cache. 
+	 * 
+	 * @param pages Number of pages, for example 8. {@code 0} disables read-ahead.
+	 * @see #setPageCacheSize(int)
+	 */
+	public static void setReadAheadPages(int pages) {
+		readAheadPages = pages;
+	}
+
+	public static boolean getPageCompression() {
+		return pageCompression;
+	}
+
+	/**
+	 * Enable compression of data pages. A compressed page holds the object data of up to 
+	 * four uncompressed pages, which reduces the size of the database file and the number
+	 * of pages that have to be read. Compressed pages can always be read, regardless of this
+	 * setting, but they cannot be read by versions of ZooDB that do not support compression.
+	 * Files with an older format version are never compressed, they remain readable by the
+	 * versions of ZooDB that created them.
+	 * This affects only sessions that are opened after this call.
+	 * 
+	 * @param flag Whether to compress data pages.
+	 */
+	public static void setPageCompression(boolean flag) {
+		pageCompression = flag;
+	}
 }
@@ -84,4 +84,15 @@ public class ZooHelper {
     public static boolean removeDb(String dbName) {
     	return getDataStoreManager().removeDb(dbName);
     }
+
+    /**
+     * Compact a database(-file). Objects and index pages are moved towards the front of the
+     * file and free pages are removed from the end of the file.
+     * @param dbName The database name or path
+     * @return The number of pages before and after the compaction
+     * @see ZooCompactDb
+     */
+    public static long[] compactDb(String dbName) {
+    	return ZooCompactDb.compact(dbName);
+    }
 }
@@ -77,6 +77,7 @@ public class TestExamples {
     public void smokeTestPerfQuery() {
         ExamplePerfQueryMain.N_QUERY_AGE = 1000;
         ExamplePerfQueryMain.N_QUERY_AGE_RANGE = 1000;
+        ExamplePerfQueryMain.N_QUERY_ORDERED = 20;
         ExamplePerfQueryMain.main();
     }
 }
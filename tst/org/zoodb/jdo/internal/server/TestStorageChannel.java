@@ -48,4 +48,40 @@ public class TestStorageChannel {
 		assertTrue(fsm.debugIsPageIdInFreeList(pageId));
 	}
 
+	@Test
+	public void testPageRunSearchIsBounded() {
+		FreeSpaceManager fsm = new FreeSpaceManager();
+		StorageRootInMemory storage = new StorageRootInMemory(ZooConfig.getFilePageSize(), fsm);
+		StorageChannelOutput out = storage.createChannel().createWriter(false);
+		int n = 5000;
+		int first = fsm.getNextPage(0);
+		for (int i = 1; i < n; i++) {
+			fsm.getNextPage(0);
+		}
+		//many single free pages, followed by a run of three free pages
+		for (int i = 0; i < n - 10; i += 2) {
+			fsm.reportFreePage(first + i);
+		}
+		for (int i = n - 5; i < n - 2; i++) {
+			fsm.reportFreePage(first + i);
+		}
+		fsm.write(out);
+		fsm.notifyCommit();
+		fsm.notifyBegin(1);
+
+		//the run is too far away, it is allocated at the end of the file
+		int last = fsm.debugGetMaximumPageId();
+		assertTrue(fsm.getNextPageRun(3) > last);
+		//single pages are found where the previous search stopped
+		int p = fsm.getNextPageRun(1);
+		assertTrue(p > first + 1000 && p < first + n);
+		//the search continues and finds the run
+		for (int i = 0; i < 5; i++) {
+			if (fsm.getNextPageRun(3) == first + n - 5) {
+				return;
+			}
+		}
+		fail();
+	}
+
 }
@@ -852,6 +852,63 @@ public class TestLongLongNonUniqueIndex {
     }
 
     
+    @Test
+    public void testBulkLoad() {
+        final int MAX = 100000;
+        final int N_KEYS = 1000;
+        long[] keys = new long[MAX];
+        long[] values = new long[MAX];
+        Random rnd = new Random(0);
+        TreeMap<Long, Long> map = new TreeMap<>();
+        for (int i = 0; i < MAX; i++) {
+        	keys[i] = rnd.nextInt(N_KEYS);
+        	values[i] = i;
+        	map.put(keys[i] * MAX + i, keys[i]);
+        }
+        IOResourceProvider paf = createPageAccessFile();
+        LongLongIndex ind = createIndex(paf);
+        LongLongIndex.sort(keys, values, MAX);
+        ind.bulkLoad(keys, values, MAX);
+
+        int root = paf.writeIndex(ind::write);
+        LongLongIndex ind2 = IndexFactory.loadIndex(PAGE_TYPE.GENERIC_INDEX, paf, root);
+        Iterator<LLEntry> it = ind2.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        for (Map.Entry<Long, Long> me: map.entrySet()) {
+        	LLEntry e = it.next();
+        	assertEquals((long) me.getValue(), e.getKey());
+        	assertEquals(me.getKey() % MAX, e.getValue());
+        }
+        assertFalse(it.hasNext());
+        
+        //look up single keys
+        for (int k = 0; k < N_KEYS; k += 7) {
+        	it = ind2.iterator(k, k);
+        	for (long v: map.subMap((long) k * MAX, (long) (k + 1) * MAX).keySet()) {
+        		assertEquals(v % MAX, it.next().getValue());
+        	}
+        	assertFalse(it.hasNext());
+        }
+
+        //modify bulk loaded index
+        for (Map.Entry<Long, Long> me: map.entrySet()) {
+        	long v = me.getKey() % MAX;
+        	if (v % 2 == 0) {
+        		assertEquals(v, ind2.removeLong(me.getValue(), v));
+        		ind2.insertLong(me.getValue(), v + MAX);
+        	}
+        }
+        it = ind2.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        int n = 0;
+        long prev = Long.MIN_VALUE;
+        while (it.hasNext()) {
+        	LLEntry e = it.next();
+        	assertTrue(e.getKey() >= prev);
+        	prev = e.getKey();
+        	n++;
+        }
+        assertEquals(MAX, n);
+    }
+
     @Test
     public void testAddOverwrite() {
         final int MAX = 1000000;
@@ -41,6 +41,7 @@ import org.zoodb.internal.server.index.IndexFactory;
 import org.zoodb.internal.server.index.LongLongIndex;
 import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
 import org.zoodb.internal.server.index.LongLongIndex.LongLongUIndex;
+import org.zoodb.internal.server.index.PagedUniqueLongLong;
 import org.zoodb.internal.util.CloseableIterator;
 import org.zoodb.tools.ZooConfig;
 
@@ -715,6 +716,67 @@ public class TestLongLongUniqueIndex {
     }
 
     
+    @Test
+    public void testBulkLoad() {
+        final int MAX = 100000;
+        long[] keys = new long[MAX];
+        long[] values = new long[MAX];
+        Random rnd = new Random(0);
+        for (int i = 0; i < MAX; i++) {
+        	keys[i] = 3 * i;
+        }
+        for (int i = MAX - 1; i > 0; i--) {
+        	int j = rnd.nextInt(i + 1);
+        	long k = keys[i];
+        	keys[i] = keys[j];
+        	keys[j] = k;
+        }
+        for (int i = 0; i < MAX; i++) {
+        	values[i] = keys[i] + 32;
+        }
+        IOResourceProvider paf = createPageAccessFile();
+        LongLongUIndex ind = createIndex(paf);
+        LongLongIndex.sort(keys, values, MAX);
+        ind.bulkLoad(keys, values, MAX);
+
+        //pages are filled according to the fill factor
+        int maxLeafN = ((PagedUniqueLongLong) ind).getMaxLeafN();
+        int perLeaf = maxLeafN * ZooConfig.getIndexFillFactor() / 100;
+        assertEquals((MAX + perLeaf - 1) / perLeaf, ind.statsGetLeavesN());
+
+        int root = paf.writeIndex(ind::write);
+        LongLongUIndex ind2 = IndexFactory.loadUniqueIndex(PAGE_TYPE.GENERIC_INDEX, paf, root);
+        Iterator<LLEntry> it = ind2.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < MAX; i++) {
+        	LLEntry e = it.next();
+        	assertEquals(3 * i, e.getKey());
+        	assertEquals(3 * i + 32, e.getValue());
+        }
+        assertFalse(it.hasNext());
+
+        //modify bulk loaded index
+        for (int i = 0; i < MAX; i++) {
+        	ind2.insertLong(3 * i + 1, i);
+        	assertEquals(3 * i + 32, ind2.removeLong(3 * i));
+        }
+        for (int i = 0; i < MAX; i++) {
+        	assertNull(ind2.findValue(3 * i));
+        	assertEquals(i, ind2.findValue(3 * i + 1).getValue());
+        }
+    }
+
+    @Test
+    public void testBulkLoadNotEmpty() {
+        LongLongUIndex ind = createIndex();
+        ind.insertLong(5, 5);
+        ind.bulkLoad(new long[] {1, 3, 7}, new long[] {1, 3, 7}, 3);
+        Iterator<LLEntry> it = ind.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        for (long k: new long[] {1, 3, 5, 7}) {
+        	assertEquals(k, it.next().getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
     @Test
     public void testAddOverwrite() {
         final int MAX = 1000000;
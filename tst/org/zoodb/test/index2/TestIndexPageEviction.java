@@ -0,0 +1,248 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.index2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.DiskIO.PAGE_TYPE;
+import org.zoodb.internal.server.IOResourceProvider;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.LongLongIndex.LLEntry;
+import org.zoodb.internal.server.index.BitTools;
+import org.zoodb.internal.server.index.PagedLongLong;
+import org.zoodb.internal.server.index.PagedStringIndex;
+import org.zoodb.internal.server.index.StringKeyRange;
+import org.zoodb.internal.server.index.PagedUniqueLongLong;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Test that indexes work correctly if pages are evicted from memory.
+ */
+public class TestIndexPageEviction {
+
+	private static final int PAGE_SIZE = 128;
+	private static final int BUDGET = 20;
+	//Each operation may load a few pages before they are evicted again
+	private static final int SLACK = 30;
+
+	@Before
+	public void before() {
+		ZooConfig.setFilePageSize(PAGE_SIZE);
+	}
+
+	@After
+	public void after() {
+		ZooConfig.setDefaults();
+	}
+
+	private IOResourceProvider createPageAccessFile() {
+		return new StorageRootInMemory(ZooConfig.getFilePageSize()).createChannel();
+	}
+
+	@Test
+	public void testUniqueIndex() {
+		IOResourceProvider paf = createPageAccessFile();
+		PagedUniqueLongLong ind = new PagedUniqueLongLong(PAGE_TYPE.GENERIC_INDEX, paf);
+		ind.setPageBudget(BUDGET);
+		TreeMap<Long, Long> map = new TreeMap<>();
+		Random r = new Random(0);
+		for (int i = 0; i < 20000; i++) {
+			long k = r.nextInt(100000);
+			ind.insertLong(k, k + 7);
+			map.put(k, k + 7);
+		}
+		//pages can only be evicted once they are written
+		paf.writeIndex(ind::write);
+
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 5000; i++) {
+				long k = r.nextInt(100000);
+				LLEntry e = ind.findValue(k);
+				if (map.containsKey(k)) {
+					assertNotNull(e);
+					assertEquals((long) map.get(k), e.getValue());
+				} else {
+					assertNull(e);
+				}
+			}
+			assertTrue(ind.statsGetLoadedPagesN() <= BUDGET + SLACK);
+
+			//modify
+			for (int i = 0; i < 2000; i++) {
+				long k = r.nextInt(100000);
+				if (r.nextBoolean()) {
+					ind.insertLong(k, k + round);
+					map.put(k, k + round);
+				} else if (map.containsKey(k)) {
+					assertEquals((long) map.remove(k), ind.removeLong(k));
+				}
+			}
+			paf.writeIndex(ind::write);
+			checkAll(ind.iterator(), map);
+			//pages loaded by the iterator are evicted by the next operation
+			ind.findValue(0);
+			assertTrue(ind.statsGetLoadedPagesN() <= BUDGET + SLACK);
+		}
+	}
+
+	/**
+	 * Iterators load pages beyond the budget. The pages are only evicted by the next
+	 * top-level operation, which may happen while the iterator is still in use.
+	 */
+	@Test
+	public void testIterateOverBudget() {
+		IOResourceProvider paf = createPageAccessFile();
+		PagedUniqueLongLong ind = new PagedUniqueLongLong(PAGE_TYPE.GENERIC_INDEX, paf);
+		ind.setPageBudget(BUDGET);
+		TreeMap<Long, Long> map = new TreeMap<>();
+		for (int i = 0; i < 10000; i++) {
+			ind.insertLong(i, i + 7);
+			map.put((long) i, i + 7L);
+		}
+		paf.writeIndex(ind::write);
+		assertTrue(ind.statsGetLoadedPagesN() <= BUDGET + SLACK);
+
+		//the iterator does not evict pages
+		checkAll(ind.iterator(), map);
+		assertTrue(ind.statsGetLoadedPagesN() > BUDGET + SLACK);
+
+		//lookups evict pages while the iterator is in use
+		Iterator<LLEntry> it = ind.iterator();
+		Random r = new Random(0);
+		for (Map.Entry<Long, Long> e: map.entrySet()) {
+			assertTrue(it.hasNext());
+			LLEntry e2 = it.next();
+			assertEquals((long) e.getKey(), e2.getKey());
+			assertEquals((long) e.getValue(), e2.getValue());
+			long k = r.nextInt(20000);
+			LLEntry e3 = ind.findValue(k);
+			assertEquals(map.containsKey(k), e3 != null);
+		}
+		assertFalse(it.hasNext());
+		ind.findValue(0);
+		assertTrue(ind.statsGetLoadedPagesN() <= BUDGET + SLACK);
+	}
+
+	@Test
+	public void testNonUniqueIndex() {
+		IOResourceProvider paf = createPageAccessFile();
+		PagedLongLong ind = new PagedLongLong(PAGE_TYPE.GENERIC_INDEX, paf);
+		ind.setPageBudget(BUDGET);
+		TreeMap<Long, Long> map = new TreeMap<>();
+		for (int i = 0; i < 10000; i++) {
+			ind.insertLong(i, i * 2);
+			map.put((long) i, i * 2L);
+		}
+		paf.writeIndex(ind::write);
+
+		for (int i = 0; i < 10000; i += 3) {
+			ind.removeLong(i, i * 2);
+			map.remove((long) i);
+			if (i % 300 == 0) {
+				paf.writeIndex(ind::write);
+			}
+		}
+		paf.writeIndex(ind::write);
+		checkAll(ind.iterator(), map);
+
+		for (int i = 0; i < 10000; i++) {
+			Iterator<LLEntry> it = ind.iterator(i, i);
+			assertEquals(map.containsKey((long) i), it.hasNext());
+		}
+		assertTrue(ind.statsGetLoadedPagesN() <= BUDGET + SLACK);
+	}
+
+	@Test
+	public void testStringIndex() {
+		//String keys need larger pages
+		ZooConfig.setFilePageSize(512);
+		IOResourceProvider paf = createPageAccessFile();
+		PagedStringIndex ind = new PagedStringIndex(paf);
+		ind.setPageBudget(BUDGET);
+		TreeSet<String> set = new TreeSet<>();
+		Random r = new Random(0);
+		for (int i = 0; i < 5000; i++) {
+			String k = "k" + r.nextInt(20000);
+			ind.insert(k, k.hashCode());
+			set.add(k);
+		}
+		paf.writeIndex(ind::write);
+
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 2000; i++) {
+				String k = "k" + r.nextInt(20000);
+				if (r.nextBoolean()) {
+					ind.insert(k, k.hashCode());
+					set.add(k);
+				} else {
+					assertEquals(set.remove(k), ind.remove(k, k.hashCode()));
+				}
+			}
+			paf.writeIndex(ind::write);
+			checkAll(ind, set, new StringKeyRange());
+			StringKeyRange range = new StringKeyRange();
+			range.adjustPrefix("k12");
+			checkAll(ind, set.subSet("k12", "k13"), range);
+			assertTrue(ind.statsGetLoadedPagesN() <= BUDGET + SLACK);
+		}
+
+		//reload
+		int root = paf.writeIndex(ind::write);
+		ind = new PagedStringIndex(paf, root);
+		ind.setPageBudget(BUDGET);
+		checkAll(ind, set, new StringKeyRange());
+		for (String k: set) {
+			assertTrue(ind.remove(k, k.hashCode()));
+		}
+		paf.writeIndex(ind::write);
+		assertFalse(ind.iterator(new StringKeyRange()).hasNext());
+	}
+
+	private static void checkAll(PagedStringIndex ind, Iterable<String> keys,
+			StringKeyRange range) {
+		Iterator<LLEntry> it = ind.iterator(range);
+		for (String k: keys) {
+			assertTrue(it.hasNext());
+			LLEntry e = it.next();
+			assertEquals(BitTools.toSortableLong(k), e.getKey());
+			assertEquals(k.hashCode(), e.getValue());
+		}
+		assertFalse(it.hasNext());
+	}
+
+	private static void checkAll(Iterator<LLEntry> it, TreeMap<Long, Long> map) {
+		for (Map.Entry<Long, Long> e: map.entrySet()) {
+			assertTrue(it.hasNext());
+			LLEntry e2 = it.next();
+			assertEquals((long) e.getKey(), e2.getKey());
+			assertEquals((long) e.getValue(), e2.getValue());
+		}
+		assertFalse(it.hasNext());
+	}
+}
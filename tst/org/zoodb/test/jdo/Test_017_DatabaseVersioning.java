@@ -21,9 +21,12 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -32,10 +35,12 @@ import javax.jdo.Query;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.zoodb.internal.server.DiskIO;
 import org.zoodb.internal.util.DBLogger;
 import org.zoodb.test.testutil.TestTools;
 import org.zoodb.tools.ZooCheckDb;
 import org.zoodb.tools.ZooCompareDb;
+import org.zoodb.tools.ZooConfig;
 
 public class Test_017_DatabaseVersioning {
 
@@ -58,6 +63,7 @@ public class Test_017_DatabaseVersioning {
         TestTools.closePM();
         TestTools.removeDb();
         TestTools.removeDb(DB2);
+        ZooConfig.setPageCompression(false);
         removeFile( FileSystems.getDefault().getPath(TestTools.getDbFileName() + "2") );
         removeFile( FileSystems.getDefault().getPath(TestTools.getDbFileName()) );
     }
@@ -156,6 +162,107 @@ public class Test_017_DatabaseVersioning {
     }
     
     
+    @Test
+    public void testWriteStrings_0_5_2() {
+    	String db2Path = copyDB(DB_0_5_2);
+    	
+    	//Files with the old format remain readable and writable
+    	ArrayList<String> strings = Test_085_StringEncoding.strings();
+        PersistenceManager pm = TestTools.openPM(DB2);
+        pm.currentTransaction().begin();
+        for (int i = 0; i < strings.size(); i++) {
+        	TestClass tc = new TestClass();
+        	tc.setInt(100000 + i);
+        	tc.setString(strings.get(i));
+        	pm.makePersistent(tc);
+        }
+        pm.currentTransaction().commit();
+        pm.close();
+        
+        pm = TestTools.openPM(DB2);
+        pm.currentTransaction().begin();
+        Query q = pm.newQuery(TestClass.class, "_int >= 100000");
+        Collection<?> c = (Collection<?>) q.execute();
+        assertEquals(strings.size(), c.size());
+        for (Object o: c) {
+        	TestClass tc = (TestClass) o;
+        	assertEquals(strings.get(tc.getInt() - 100000), tc.getString());
+        }
+        pm.currentTransaction().commit();
+        pm.close();
+
+        //The file still uses the old format
+        ZooCheckDb.enableStringOutput();
+        ZooCheckDb.main(db2Path);
+        String output = ZooCheckDb.getStringOutput();
+        assertTrue(output.contains("format version: 1.5"));        
+    }
+    
+    private static int countCompressedPages(String path) {
+    	try {
+    		byte[] file = Files.readAllBytes(new File(path).toPath());
+    		ByteBuffer b = ByteBuffer.wrap(file);
+    		int pageSize = ZooConfig.getFilePageSize();
+    		int n = 0;
+    		for (int pos = 0; pos + pageSize <= file.length; pos += pageSize) {
+    			if (b.get(pos) == DiskIO.PAGE_TYPE.DATA.getId() 
+    					&& b.getShort(pos + 2) == DiskIO.PAGE_FORMAT_VERSION_COMPRESSED) {
+    				n++;
+    			}
+    		}
+    		return n;
+    	} catch (IOException e) {
+    		throw new RuntimeException(e);
+    	}
+    }
+    
+    private static void writeCompressible(String dbName, int n) {
+        PersistenceManager pm = TestTools.openPM(dbName);
+        pm.currentTransaction().begin();
+        for (int i = 0; i < n; i++) {
+        	TestClass tc = new TestClass();
+        	tc.setInt(100000 + i);
+        	tc.setString("compressible-compressible-compressible-" + (i % 10));
+        	pm.makePersistent(tc);
+        }
+        pm.currentTransaction().commit();
+        pm.close();
+    }
+    
+    @Test
+    public void testPageCompression_0_5_2() {
+    	String db2Path = copyDB(DB_0_5_2);
+    	ZooConfig.setPageCompression(true);
+    	
+    	//Files with the old format are not compressed
+    	writeCompressible(DB2, 2000);
+    	assertEquals(0, countCompressedPages(db2Path));
+        PersistenceManager pm = TestTools.openPM(DB2);
+        pm.currentTransaction().begin();
+        Query q = pm.newQuery(TestClass.class, "_int >= 100000");
+        assertEquals(2000, ((Collection<?>) q.execute()).size());
+        pm.currentTransaction().commit();
+        pm.close();
+
+        ZooCheckDb.enableStringOutput();
+        ZooCheckDb.main(db2Path);
+        assertTrue(ZooCheckDb.getStringOutput().contains("format version: 1.5"));        
+
+        //Files with the current format are compressed
+        TestTools.defineSchema(TestClass.class);
+    	writeCompressible(TestTools.getDbName(), 2000);
+    	assertTrue(countCompressedPages(TestTools.getDbFileName()) > 0);
+    }
+    
+    @Test
+    public void testCurrentVersion() {
+        ZooCheckDb.enableStringOutput();
+        ZooCheckDb.main(TestTools.getDbFileName());
+        String output = ZooCheckDb.getStringOutput();
+        assertTrue(output.contains("format version: " + DiskIO.DB_FILE_VERSION_MAJ + "." 
+        		+ DiskIO.DB_FILE_VERSION_MIN));        
+    }
+    
     @Test
     public void testFailure_0_0_0() {
         // Copy DB_0_5_2 to DB2
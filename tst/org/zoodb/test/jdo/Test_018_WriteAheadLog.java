@@ -0,0 +1,236 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.api.TestSuper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.DBStatistics.STATS;
+import org.zoodb.tools.ZooConfig;
+import org.zoodb.tools.ZooHelper;
+
+/**
+ * Test commits with a write-ahead log.
+ */
+public class Test_018_WriteAheadLog {
+
+	private static final String DB2 = TestTools.getDbName() + "2";
+	private static final String WAL = ".wal";
+	private static final int N_COMMITS = 10;
+
+	@Before
+	public void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestSuper.class);
+		ZooConfig.setWriteAheadLog(true);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.closePM();
+		ZooConfig.setDefaults();
+		TestTools.removeDb();
+		TestTools.removeDb(DB2);
+	}
+
+	private static void commit(PersistenceManager pm, int id, int n) {
+		for (int i = 0; i < n; i++) {
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestSuper(i, id, null));
+			pm.currentTransaction().commit();
+		}
+	}
+
+	private static int count(PersistenceManager pm, int id) {
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestSuper.class, "_id == " + id).execute();
+		int n = c.size();
+		pm.currentTransaction().rollback();
+		return n;
+	}
+
+	private static Path getPath(String dbName) {
+		return Paths.get(ZooHelper.getDataStoreManager().getDbPath(dbName));
+	}
+
+	private static Path getLogPath(String dbName) {
+		return Paths.get(ZooHelper.getDataStoreManager().getDbPath(dbName) + WAL);
+	}
+
+	/**
+	 * Copy the database file and the log while a session is open. This is what remains
+	 * after a crash.
+	 */
+	private static void copyDb() throws IOException {
+		Files.copy(getPath(TestTools.getDbName()), getPath(DB2));
+		Files.copy(getLogPath(TestTools.getDbName()), getLogPath(DB2));
+	}
+
+	@Test
+	public void testCommitsAreLogged() {
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long c0 = stats.getStat(STATS.TX_COMMIT_CNT);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+		commit(pm, 1, N_COMMITS);
+		assertEquals(N_COMMITS, stats.getStat(STATS.TX_COMMIT_CNT) - c0);
+		//no root page has been written
+		assertEquals(0, stats.getStat(STATS.TX_COMMIT_GROUP_CNT) - g0);
+		assertTrue(Files.exists(getLogPath(TestTools.getDbName())));
+
+		//the commits are visible to other sessions
+		PersistenceManager pm2 = ZooJdoHelper.openDB(TestTools.getDbName());
+		assertEquals(N_COMMITS, count(pm2, 1));
+		pm2.close();
+		TestTools.closePM();
+
+		//closing the database writes a checkpoint and removes the log
+		assertFalse(Files.exists(getLogPath(TestTools.getDbName())));
+		ZooConfig.setWriteAheadLog(false);
+		pm = TestTools.openPM();
+		assertEquals(N_COMMITS, count(pm, 1));
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCommitsDoNotWriteDatabaseFile() throws IOException {
+		checkCommitsDoNotWriteDatabaseFile();
+	}
+
+	@Test
+	public void testCommitsDoNotWriteDatabaseFileWithCache() throws IOException {
+		ZooConfig.setPageCacheSize(100);
+		checkCommitsDoNotWriteDatabaseFile();
+	}
+
+	@Test
+	public void testCommitsDoNotWriteMappedFile() throws IOException {
+		ZooConfig.setFileProcessor(ZooConfig.FILE_PAF_BB_MAPPED_PAGE);
+		checkCommitsDoNotWriteDatabaseFile();
+	}
+
+	/**
+	 * Pages are written only to the log, they are copied to the database file during the
+	 * checkpoint.
+	 */
+	private static void checkCommitsDoNotWriteDatabaseFile() throws IOException {
+		Path dbPath = getPath(TestTools.getDbName());
+		PersistenceManager pm = TestTools.openPM();
+		byte[] file0 = Files.readAllBytes(dbPath);
+		commit(pm, 1, N_COMMITS);
+		pm.currentTransaction().begin();
+		pm.newQuery(TestSuper.class, "_id == 1 && _time < 5").deletePersistentAll();
+		pm.currentTransaction().commit();
+		assertArrayEquals(file0, Files.readAllBytes(dbPath));
+
+		//the logged pages are read from the log
+		assertEquals(N_COMMITS - 5, count(pm, 1));
+		PersistenceManager pm2 = ZooJdoHelper.openDB(TestTools.getDbName());
+		assertEquals(N_COMMITS - 5, count(pm2, 1));
+		pm2.currentTransaction().begin();
+		pm2.makePersistent(new TestSuper(1, 2, null));
+		pm2.currentTransaction().commit();
+		assertEquals(1, count(pm, 2));
+		assertArrayEquals(file0, Files.readAllBytes(dbPath));
+		//closing a session writes a checkpoint
+		pm2.close();
+		assertEquals(1, count(pm, 2));
+		TestTools.closePM();
+
+		ZooConfig.setWriteAheadLog(false);
+		pm = TestTools.openPM();
+		assertEquals(N_COMMITS - 5, count(pm, 1));
+		assertEquals(1, count(pm, 2));
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCheckpointSize() {
+		ZooConfig.setWalCheckpointSize(1);
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+		commit(pm, 1, N_COMMITS);
+		assertEquals(N_COMMITS, stats.getStat(STATS.TX_COMMIT_GROUP_CNT) - g0);
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testReplayAfterCrash() throws IOException {
+		PersistenceManager pm = TestTools.openPM();
+		commit(pm, 1, N_COMMITS);
+		pm.currentTransaction().begin();
+		pm.newQuery(TestSuper.class, "_id == 1 && _time < 5").deletePersistentAll();
+		pm.currentTransaction().commit();
+		commit(pm, 2, N_COMMITS);
+		copyDb();
+		TestTools.closePM();
+
+		ZooConfig.setWriteAheadLog(false);
+		PersistenceManager pm2 = ZooJdoHelper.openDB(DB2);
+		assertEquals(N_COMMITS - 5, count(pm2, 1));
+		assertEquals(N_COMMITS, count(pm2, 2));
+		//the log has been folded into the database
+		assertFalse(Files.exists(getLogPath(DB2)));
+		pm2.currentTransaction().begin();
+		pm2.makePersistent(new TestSuper(1, 3, null));
+		pm2.currentTransaction().commit();
+		pm2.close();
+
+		pm2 = ZooJdoHelper.openDB(DB2);
+		assertEquals(N_COMMITS, count(pm2, 2));
+		assertEquals(1, count(pm2, 3));
+		pm2.close();
+	}
+
+	@Test
+	public void testIncompleteLogRecord() throws IOException {
+		PersistenceManager pm = TestTools.openPM();
+		commit(pm, 1, N_COMMITS);
+		copyDb();
+		TestTools.closePM();
+
+		//cut the last commit record
+		try (FileChannel fc = FileChannel.open(getLogPath(DB2), StandardOpenOption.WRITE)) {
+			fc.truncate(fc.size() - 10);
+		}
+
+		ZooConfig.setWriteAheadLog(false);
+		PersistenceManager pm2 = ZooJdoHelper.openDB(DB2);
+		assertEquals(N_COMMITS - 1, count(pm2, 1));
+		pm2.close();
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.jdo.TestClass.ENUM;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Test commits that are large enough to be serialized in parallel.
+ */
+public class Test_019_ParallelCommit {
+
+	private static final int N = 2500;
+
+	@Before
+	public void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_int", true);
+		TestTools.defineIndex(TestClass.class, "_string", false);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	private static String str(int i) {
+		//vary the length to vary the alignment of subsequent fields
+		return "str-" + i + "xxxxxxx".substring(i % 7);
+	}
+
+	private static byte[] bytes(int i) {
+		return new byte[] {(byte) i, (byte) (i >> 8), 3};
+	}
+
+	private static void check(TestClass tc) {
+		int i = tc.getInt();
+		assertEquals(str(i), tc.getString());
+		assertArrayEquals(bytes(i), tc.getBytaArray());
+		assertEquals(i * 1000L, tc.getLong());
+		assertEquals(i / 3f, tc.getFloat(), 0);
+		assertEquals(i / 7., tc.getDouble(), 0);
+		assertEquals(i % 2 == 0, tc.getBool());
+		assertEquals((char) ('a' + i % 26), tc.getChar());
+		if (i > 0) {
+			assertEquals(i - 1, tc.getRef2().getInt());
+		} else {
+			assertNull(tc.getRef2());
+		}
+	}
+
+	private static void makePersistent(PersistenceManager pm, ArrayList<TestClass> list) {
+		for (TestClass tc: list) {
+			pm.makePersistent(tc);
+		}
+	}
+
+	private static ArrayList<TestClass> create(int n) {
+		ArrayList<TestClass> list = new ArrayList<>();
+		TestClass prev = null;
+		for (int i = 0; i < n; i++) {
+			TestClass tc = new TestClass();
+			tc.setData(i, i % 2 == 0, (char) ('a' + i % 26), (byte) i, (short) i, i * 1000L,
+					str(i), bytes(i), i / 3f, i / 7., ENUM.values()[i % 6]);
+			tc.setRef2(prev);
+			list.add(tc);
+			prev = tc;
+		}
+		return list;
+	}
+
+	@Test
+	public void testLargeCommit() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		makePersistent(pm, create(N));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(N, c.size());
+		for (Object o: c) {
+			check((TestClass) o);
+		}
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 1234").execute();
+		assertEquals(N - 1234, c.size());
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_string == '" + str(567) + "'").execute();
+		assertEquals(1, c.size());
+		check((TestClass) c.iterator().next());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Commits must not depend on the common ForkJoinPool, which may be busy with tasks
+	 * of the application.
+	 */
+	@Test
+	public void testLargeCommitWithBusyCommonPool() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		int nThreads = ForkJoinPool.getCommonPoolParallelism();
+		for (int i = 0; i < nThreads; i++) {
+			ForkJoinPool.commonPool().execute(() -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		try {
+			PersistenceManager pm = TestTools.openPM();
+			Thread t = new Thread(() -> {
+				pm.currentTransaction().begin();
+				makePersistent(pm, create(N));
+				pm.currentTransaction().commit();
+			});
+			t.start();
+			t.join(60000);
+			assertFalse("Commit is blocked", t.isAlive());
+		} finally {
+			release.countDown();
+		}
+		TestTools.closePM();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(N, c.size());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testLargeUpdate() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		makePersistent(pm, create(N));
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			tc.setString(str(tc.getInt() + 1));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(N, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			assertEquals(str(tc.getInt() + 1), tc.getString());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Each parallel serializer has its own table of SCO classes. The tables are built per 
+	 * object, so the class IDs of different objects must not interfere.
+	 */
+	@Test
+	public void testLargeCommitWithSCOs() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ArrayList<TestClass> list = create(N);
+		for (int i = 0; i < N; i++) {
+			ArrayList<Object> sco = new ArrayList<>();
+			//the enum is not a predefined class, it gets an ID in the class table
+			if (i % 2 == 0) {
+				sco.add(ENUM.values()[i % 6]);
+			}
+			sco.add(i);
+			sco.add(list.get(N - 1 - i));
+			sco.add(ENUM.values()[(i + 1) % 6]);
+			list.get(i).setRef1(sco);
+		}
+		makePersistent(pm, list);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(N, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			int i = tc.getInt();
+			List<?> sco = (List<?>) tc.getRef1();
+			int pos = 0;
+			if (i % 2 == 0) {
+				assertEquals(ENUM.values()[i % 6], sco.get(pos++));
+			}
+			assertEquals(i, sco.get(pos++));
+			assertEquals(N - 1 - i, ((TestClass) sco.get(pos++)).getInt());
+			assertEquals(ENUM.values()[(i + 1) % 6], sco.get(pos++));
+			assertEquals(pos, sco.size());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testLargeCommitFailsWithUniqueIndexClash() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ArrayList<TestClass> list = create(N);
+		list.get(N - 1).setInt(5);
+		makePersistent(pm, list);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Unique index clash"));
+		}
+		//the failed commit has been rolled back
+		assertFalse(pm.currentTransaction().isActive());
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(0, c.size());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+}
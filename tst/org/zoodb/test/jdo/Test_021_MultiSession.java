@@ -28,7 +28,6 @@ import javax.jdo.PersistenceManagerFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.zoodb.internal.server.DiskAccessOneFile;
 import org.zoodb.jdo.ZooJdoHelper;
 import org.zoodb.jdo.ZooJdoProperties;
 import org.zoodb.test.api.TestSuper;
@@ -42,14 +41,12 @@ public class Test_021_MultiSession {
 	
 	@Before
 	public void setUp() {
-		DiskAccessOneFile.allowReadConcurrency(true);
 		TestTools.removeDb();
 		TestTools.createDb();
 	}
 	
 	@After
 	public void tearDown() {
-		DiskAccessOneFile.allowReadConcurrency(false);
 		TestTools.removeDb();
 	}
 	
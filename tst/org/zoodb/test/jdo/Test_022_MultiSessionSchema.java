@@ -28,7 +28,6 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
-import org.zoodb.internal.server.DiskAccessOneFile;
 import org.zoodb.jdo.ZooJdoHelper;
 import org.zoodb.jdo.ZooJdoProperties;
 import org.zoodb.schema.ZooClass;
@@ -40,14 +39,12 @@ public class Test_022_MultiSessionSchema {
 	
 	@Before
 	public void setUp() {
-		DiskAccessOneFile.allowReadConcurrency(true);
 		TestTools.removeDb();
 		TestTools.createDb();
 	}
 	
 	@After
 	public void tearDown() {
-		DiskAccessOneFile.allowReadConcurrency(false);
 		TestTools.removeDb();
 	}
 	
@@ -32,7 +32,6 @@ import javax.jdo.PersistenceManagerFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.zoodb.internal.server.DiskAccessOneFile;
 import org.zoodb.jdo.ZooJdoHelper;
 import org.zoodb.jdo.ZooJdoProperties;
 import org.zoodb.schema.ZooClass;
@@ -47,14 +46,12 @@ public class Test_023_GenericObjects {
 	
 	@Before
 	public void setUp() {
-		DiskAccessOneFile.allowReadConcurrency(true);
 		TestTools.removeDb();
 		TestTools.createDb();
 	}
 	
 	@After
 	public void tearDown() {
-		DiskAccessOneFile.allowReadConcurrency(false);
 		TestTools.removeDb();
 	}
 	
@@ -21,6 +21,8 @@ import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import javax.jdo.Extent;
 import javax.jdo.JDOHelper;
@@ -165,6 +167,30 @@ public class Test_024_MultiSessionConcurrency {
 	}
 
 
+	/**
+	 * Reader that waits until all other readers have started their transactions.
+	 */
+	private static class BarrierReader extends Reader {
+
+		private final CyclicBarrier barrier;
+
+		private BarrierReader(int id, int n, CyclicBarrier barrier) {
+			super(id, n);
+			this.barrier = barrier;
+		}
+
+		@Override
+		public void runWorker() {
+			try {
+				barrier.await(60, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			super.runWorker();
+		}
+	}
+
+
 	private static class Writer extends Worker {
 
 		private final ArrayList<Object> oids = new ArrayList<>();
@@ -310,6 +336,36 @@ public class Test_024_MultiSessionConcurrency {
 		}
 	}
 
+	/**
+	 * Test that there is no upper limit for the number of concurrent read transactions. 
+	 * @throws InterruptedException when interrupted.
+	 */
+	@Test
+	public void testManyParallelReaders() throws InterruptedException {
+		final int nReaders = 64;
+		final int nObj = 1000;
+		//write
+		Writer w = new Writer(0, nObj, COMMIT_INTERVAL);
+		w.start();
+		w.join();
+		
+		//read, all readers have an open transaction at the same time
+		CyclicBarrier barrier = new CyclicBarrier(nReaders);
+		ArrayList<Reader> readers = new ArrayList<>();
+		for (int i = 0; i < nReaders; i++) {
+			readers.add(new BarrierReader(0, nObj, barrier));
+		}
+
+		for (Reader reader: readers) {
+			reader.start();
+		}
+
+		for (Reader reader: readers) {
+			reader.join();
+			assertEquals("id=" + reader.ID, nObj, reader.n);
+		}
+	}
+
 	/**
 	 * Test concurrent write. 
      * @throws InterruptedException when interrupted.
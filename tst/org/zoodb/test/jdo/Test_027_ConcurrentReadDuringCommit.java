@@ -0,0 +1,250 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+import javax.jdo.listener.InstanceLifecycleEvent;
+import javax.jdo.listener.StoreLifecycleListener;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.api.TestSuper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Test that read transactions in other sessions continue while a session commits.
+ */
+public class Test_027_ConcurrentReadDuringCommit {
+
+	private static final int BATCH = 20000;
+	private static final int N_COMMITS = 5;
+	private static final int N_READERS = 4;
+	private static final long TIMEOUT_MS = 10000;
+
+	private final ArrayList<Throwable> errors = new ArrayList<>();
+
+	//Number of read transactions completed by all readers
+	private final AtomicInteger readsCompleted = new AtomicInteger();
+	//Number of commits during which other sessions completed read transactions
+	private final AtomicInteger commitsWithReads = new AtomicInteger();
+	private volatile boolean isWriterDone = false;
+
+	@BeforeClass
+	public static void beforeClass() {
+		ZooConfig.setFileManager(ZooConfig.FILE_MGR_IN_MEMORY);
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		ZooConfig.setDefaults();
+	}
+
+	@Before
+	public void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestSuper.class);
+		TestTools.defineIndex(TestSuper.class, "_id", false);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.removeDb();
+	}
+
+	/**
+	 * This is called while objects are written, i.e. while the committing session holds
+	 * the write lock. For the first object of each commit it waits until the readers
+	 * complete some read transactions.
+	 */
+	private class WaitForReaders implements StoreLifecycleListener {
+		private boolean isFirst;
+
+		void reset() {
+			isFirst = true;
+		}
+
+		@Override
+		public void preStore(InstanceLifecycleEvent event) {
+			if (!isFirst) {
+				return;
+			}
+			isFirst = false;
+			int r0 = readsCompleted.get();
+			long t0 = System.currentTimeMillis();
+			while (readsCompleted.get() < r0 + N_READERS
+					&& System.currentTimeMillis() - t0 < TIMEOUT_MS) {
+				Thread.yield();
+			}
+			if (readsCompleted.get() >= r0 + N_READERS) {
+				commitsWithReads.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void postStore(InstanceLifecycleEvent event) {
+			//nothing
+		}
+	}
+
+	private class Writer extends Thread {
+		@Override
+		public void run() {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				WaitForReaders listener = new WaitForReaders();
+				for (int c = 0; c < N_COMMITS; c++) {
+					pm.currentTransaction().begin();
+					if (c == 0) {
+						pm.addInstanceLifecycleListener(listener, TestSuper.class);
+					}
+					listener.reset();
+					for (int i = 0; i < BATCH; i++) {
+						pm.makePersistent(new TestSuper(i, c, new long[]{i}));
+					}
+					pm.currentTransaction().commit();
+				}
+			} catch (Throwable t) {
+				addError(t);
+			} finally {
+				isWriterDone = true;
+				pm.close();
+			}
+		}
+	}
+
+	private class Reader extends Thread {
+		@Override
+		public void run() {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				for (int i = 0; !isWriterDone; i++) {
+					pm.currentTransaction().begin();
+					//Readers should only see complete commits
+					Query q = pm.newQuery(TestSuper.class, "_id == " + (i % N_COMMITS));
+					Collection<?> c = (Collection<?>) q.execute();
+					int n = c.size();
+					q.closeAll();
+					pm.currentTransaction().commit();
+					assertTrue("n=" + n, n == 0 || n == BATCH);
+					readsCompleted.incrementAndGet();
+				}
+			} catch (Throwable t) {
+				addError(t);
+			} finally {
+				pm.close();
+			}
+		}
+	}
+
+	private synchronized void addError(Throwable t) {
+		t.printStackTrace();
+		errors.add(t);
+	}
+
+	@Test
+	public void testReadDuringLargeCommits() throws InterruptedException {
+		ArrayList<Thread> workers = new ArrayList<>();
+		workers.add(new Writer());
+		for (int i = 0; i < N_READERS; i++) {
+			workers.add(new Reader());
+		}
+		for (Thread t: workers) {
+			t.start();
+		}
+		for (Thread t: workers) {
+			t.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		//Readers must not be blocked by commits
+		assertEquals(N_COMMITS, commitsWithReads.get());
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N_COMMITS; i++) {
+			Collection<?> c = (Collection<?>) pm.newQuery(TestSuper.class, "_id == " + i).execute();
+			assertEquals(BATCH, c.size());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * An iterator that was opened in a transaction can continue after other sessions have
+	 * deleted the objects and reused the space, because the transaction pins its snapshot.
+	 */
+	@Test
+	public void testIteratorSurvivesConcurrentCommits() {
+		final int n = 2000;
+		PersistenceManager pm1 = ZooJdoHelper.openDB(TestTools.getDbName());
+		PersistenceManager pm2 = ZooJdoHelper.openDB(TestTools.getDbName());
+		try {
+			pm2.currentTransaction().begin();
+			for (int i = 0; i < n; i++) {
+				pm2.makePersistent(new TestSuper(i, 7, new long[]{i}));
+			}
+			pm2.currentTransaction().commit();
+
+			pm1.currentTransaction().begin();
+			Iterator<TestSuper> it = pm1.getExtent(TestSuper.class).iterator();
+			int count = 0;
+			for (; count < n / 2; count++) {
+				assertEquals(7, it.next().getId());
+			}
+
+			//delete everything and write new objects into the freed space 
+			pm2.currentTransaction().begin();
+			pm2.deletePersistentAll((Collection<?>) pm2.newQuery(TestSuper.class).execute());
+			pm2.currentTransaction().commit();
+			pm2.currentTransaction().begin();
+			for (int i = 0; i < n; i++) {
+				pm2.makePersistent(new TestSuper(i, 8, new long[]{i}));
+			}
+			pm2.currentTransaction().commit();
+
+			while (it.hasNext()) {
+				assertEquals(7, it.next().getId());
+				count++;
+			}
+			assertEquals(n, count);
+			pm1.currentTransaction().rollback();
+
+			//The new transaction sees the new objects
+			pm1.currentTransaction().begin();
+			Collection<?> c = (Collection<?>) pm1.newQuery(TestSuper.class, "_id == 8").execute();
+			assertEquals(n, c.size());
+			pm1.currentTransaction().rollback();
+		} finally {
+			pm1.close();
+			pm2.close();
+		}
+	}
+}
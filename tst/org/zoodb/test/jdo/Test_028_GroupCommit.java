@@ -0,0 +1,312 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jdo.JDOFatalException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.listener.InstanceLifecycleEvent;
+import javax.jdo.listener.StoreLifecycleListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.server.StorageRootInMemory;
+import org.zoodb.internal.server.index.FreeSpaceManager;
+import org.zoodb.internal.util.DBLogger;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.api.TestSuper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.DBStatistics.STATS;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Test that concurrent commits share root page writes.
+ */
+public class Test_028_GroupCommit {
+
+	private static final int N_THREADS = 8;
+	private static final int N_COMMITS = 20;
+	private static final int GROUP_SIZE = 16;
+
+	private final ArrayList<Throwable> errors = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		ZooConfig.setGroupCommitSize(GROUP_SIZE);
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestSuper.class);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.removeDb();
+		ZooConfig.setDefaults();
+	}
+
+	private synchronized void addError(Throwable t) {
+		t.printStackTrace();
+		errors.add(t);
+	}
+
+	/**
+	 * Session 1 commits while session 2 waits for the write lock.
+	 * @return The number of commit groups.
+	 */
+	private long commitTwoSessions() throws InterruptedException {
+		PersistenceManager pmStats = TestTools.openPM();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pmStats);
+		long c0 = stats.getStat(STATS.TX_COMMIT_CNT);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+
+		//Opening a session requires a read lock, so session 2 must be open before session 1 commits
+		CountDownLatch isOpen = new CountDownLatch(1);
+		CountDownLatch isCommitting = new CountDownLatch(1);
+		Thread t1 = new Thread(() -> {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				pm.currentTransaction().begin();
+				//This is called during commit, while we hold the write lock
+				pm.addInstanceLifecycleListener(new StoreLifecycleListener() {
+					@Override
+					public void preStore(InstanceLifecycleEvent event) {
+						isCommitting.countDown();
+						try {
+							Thread.sleep(500);
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+					}
+					@Override
+					public void postStore(InstanceLifecycleEvent event) {
+						//nothing
+					}
+				}, TestSuper.class);
+				pm.makePersistent(new TestSuper(1, 1, null));
+				isOpen.await();
+				pm.currentTransaction().commit();
+			} catch (Throwable t) {
+				addError(t);
+			} finally {
+				pm.close();
+			}
+		});
+		Thread t2 = new Thread(() -> {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				pm.currentTransaction().begin();
+				pm.makePersistent(new TestSuper(2, 2, null));
+				isOpen.countDown();
+				isCommitting.await();
+				pm.currentTransaction().commit();
+			} catch (Throwable t) {
+				addError(t);
+			} finally {
+				pm.close();
+			}
+		});
+		t1.start();
+		t2.start();
+		t1.join();
+		t2.join();
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		assertEquals(2, stats.getStat(STATS.TX_COMMIT_CNT) - c0);
+		long groups = stats.getStat(STATS.TX_COMMIT_GROUP_CNT) - g0;
+		pmStats.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pmStats.newQuery(TestSuper.class).execute();
+		assertEquals(2, c.size());
+		pmStats.currentTransaction().rollback();
+		TestTools.closePM();
+		return groups;
+	}
+
+	@Test
+	public void testWaitingCommitJoinsGroup() throws InterruptedException {
+		assertEquals(1, commitTwoSessions());
+	}
+
+	@Test
+	public void testGroupCommitDisabled() throws InterruptedException {
+		ZooConfig.setGroupCommitSize(1);
+		assertEquals(2, commitTwoSessions());
+	}
+
+	@Test
+	public void testGroupCommitDisabledByDefault() throws InterruptedException {
+		ZooConfig.setDefaults();
+		assertEquals(2, commitTwoSessions());
+	}
+
+	@Test
+	public void testManyConcurrentCommits() throws InterruptedException {
+		ArrayList<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < N_THREADS; i++) {
+			final int id = i;
+			workers.add(new Thread(() -> {
+				PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+				try {
+					for (int j = 0; j < N_COMMITS; j++) {
+						pm.currentTransaction().begin();
+						pm.makePersistent(new TestSuper(j, id, null));
+						pm.currentTransaction().commit();
+					}
+				} catch (Throwable t) {
+					addError(t);
+				} finally {
+					pm.close();
+				}
+			}));
+		}
+		for (Thread t: workers) {
+			t.start();
+		}
+		for (Thread t: workers) {
+			t.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		//reopen database, all commits must be durable
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N_THREADS; i++) {
+			Collection<?> c = (Collection<?>) pm.newQuery(TestSuper.class, "_id == " + i).execute();
+			assertEquals(N_COMMITS, c.size());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * In-memory storage that fails once when the root page of a group is forced to disk.
+	 */
+	public static class FailingStorage extends StorageRootInMemory {
+		static final AtomicBoolean FAIL_FORCE = new AtomicBoolean();
+
+		public FailingStorage(String dbPath, String options, int pageSize, 
+				FreeSpaceManager fsm) {
+			super(dbPath, options, pageSize, fsm);
+		}
+
+		@Override
+		public void force() {
+			if (FAIL_FORCE.getAndSet(false)) {
+				throw DBLogger.newFatal("Simulated write failure");
+			}
+			super.force();
+		}
+	}
+
+	/**
+	 * Session 2 writes the group that contains the commit of session 1. If writing fails,
+	 * both commits must fail.
+	 */
+	@Test
+	public void testFailedGroupFailsAllMembers() throws InterruptedException {
+		TestTools.removeDb();
+		ZooConfig.setFileManager(ZooConfig.FILE_MGR_IN_MEMORY);
+		ZooConfig.setFileProcessor(FailingStorage.class.getName());
+		TestTools.createDb();
+		TestTools.defineSchema(TestSuper.class);
+
+		CountDownLatch isOpen = new CountDownLatch(1);
+		CountDownLatch isCommitting = new CountDownLatch(1);
+		AtomicInteger nFailed = new AtomicInteger();
+		Thread t1 = new Thread(() -> {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				pm.currentTransaction().begin();
+				//This is called during commit, while we hold the write lock
+				pm.addInstanceLifecycleListener(new StoreLifecycleListener() {
+					@Override
+					public void preStore(InstanceLifecycleEvent event) {
+						isCommitting.countDown();
+						try {
+							Thread.sleep(500);
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+						FailingStorage.FAIL_FORCE.set(true);
+					}
+					@Override
+					public void postStore(InstanceLifecycleEvent event) {
+						//nothing
+					}
+				}, TestSuper.class);
+				pm.makePersistent(new TestSuper(1, 1, null));
+				isOpen.await();
+				pm.currentTransaction().commit();
+			} catch (JDOFatalException e) {
+				nFailed.incrementAndGet();
+			} catch (Throwable t) {
+				addError(t);
+			} finally {
+				closeAfterFailure(pm);
+			}
+		});
+		Thread t2 = new Thread(() -> {
+			PersistenceManager pm = ZooJdoHelper.openDB(TestTools.getDbName());
+			try {
+				pm.currentTransaction().begin();
+				pm.makePersistent(new TestSuper(2, 2, null));
+				isOpen.countDown();
+				isCommitting.await();
+				pm.currentTransaction().commit();
+			} catch (JDOFatalException e) {
+				nFailed.incrementAndGet();
+			} catch (Throwable t) {
+				addError(t);
+			} finally {
+				closeAfterFailure(pm);
+			}
+		});
+		t1.start();
+		t2.start();
+		t1.join(10000);
+		t2.join(10000);
+		assertFalse("Commit is blocked", t1.isAlive() || t2.isAlive());
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(2, nFailed.get());
+
+		//The database is not blocked by the failed group
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestSuper(3, 3, null));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static void closeAfterFailure(PersistenceManager pm) {
+		if (pm.isClosed()) {
+			return;
+		}
+		if (pm.currentTransaction().isActive()) {
+			pm.currentTransaction().rollback();
+		}
+		pm.close();
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+import javax.jdo.JDOFatalDataStoreException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.api.TestSuper;
+import org.zoodb.test.jdo.Test_028_GroupCommit.FailingStorage;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.DBStatistics.STATS;
+import org.zoodb.tools.ZooConfig;
+import org.zoodb.tools.ZooHelper;
+
+/**
+ * Test commits that return before they are written to disk.
+ */
+public class Test_029_RelaxedDurability {
+
+	private static final String DB2 = TestTools.getDbName() + "2";
+	private static final int N_COMMITS = 10;
+	private static final long TIMEOUT_MS = 10000;
+
+	@Before
+	public void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestSuper.class);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.closePM();
+		TestTools.removeDb();
+		TestTools.removeDb(DB2);
+		ZooConfig.setDefaults();
+	}
+
+	private static PersistenceManager openRelaxed() {
+		ZooJdoProperties props = TestTools.getProps();
+		props.setZooRelaxedDurability(true);
+		return TestTools.openPM(props);
+	}
+
+	private static void commit(PersistenceManager pm, int id, int n) {
+		for (int i = 0; i < n; i++) {
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestSuper(i, id, null));
+			pm.currentTransaction().commit();
+		}
+	}
+
+	private static int count(PersistenceManager pm, int id) {
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestSuper.class, "_id == " + id).execute();
+		int n = c.size();
+		pm.currentTransaction().rollback();
+		return n;
+	}
+
+	@Test
+	public void testCommitsAreWrittenOnClose() {
+		ZooConfig.setCommitFlushDelay(60000);
+		PersistenceManager pm = openRelaxed();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long c0 = stats.getStat(STATS.TX_COMMIT_CNT);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+		commit(pm, 1, N_COMMITS);
+		assertEquals(N_COMMITS, stats.getStat(STATS.TX_COMMIT_CNT) - c0);
+		//nothing has been written yet
+		assertEquals(0, stats.getStat(STATS.TX_COMMIT_GROUP_CNT) - g0);
+
+		//the commits are visible to other sessions
+		PersistenceManager pm2 = ZooJdoHelper.openDB(TestTools.getDbName());
+		assertEquals(N_COMMITS, count(pm2, 1));
+		pm2.close();
+		assertEquals(N_COMMITS, count(pm, 1));
+		TestTools.closePM();
+
+		//closing the last session writes all commits
+		pm = TestTools.openPM();
+		assertEquals(N_COMMITS, count(pm, 1));
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCommitsAreWrittenAfterDelay() throws InterruptedException {
+		ZooConfig.setCommitFlushDelay(50);
+		PersistenceManager pm = openRelaxed();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+		commit(pm, 1, N_COMMITS);
+		long t0 = System.currentTimeMillis();
+		while (stats.getStat(STATS.TX_COMMIT_GROUP_CNT) == g0
+				&& System.currentTimeMillis() - t0 < TIMEOUT_MS) {
+			Thread.sleep(10);
+		}
+		assertTrue(stats.getStat(STATS.TX_COMMIT_GROUP_CNT) > g0);
+		assertEquals(N_COMMITS, count(pm, 1));
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCommitsAreWrittenAfterSize() {
+		ZooConfig.setCommitFlushDelay(60000);
+		ZooConfig.setCommitFlushSize(1);
+		PersistenceManager pm = openRelaxed();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+		commit(pm, 1, N_COMMITS);
+		assertEquals(N_COMMITS, stats.getStat(STATS.TX_COMMIT_GROUP_CNT) - g0);
+		TestTools.closePM();
+	}
+
+	private static int countFlusherThreads() {
+		int n = 0;
+		for (Thread t: Thread.getAllStackTraces().keySet()) {
+			if (t.isAlive() && "ZooDB commit flusher".equals(t.getName())) {
+				assertTrue(t.isDaemon());
+				n++;
+			}
+		}
+		return n;
+	}
+
+	@Test
+	public void testFlusherThreadIsReusedAndStopped() throws InterruptedException {
+		ZooConfig.setCommitFlushDelay(60000);
+		ZooConfig.setCommitFlushSize(1);
+		PersistenceManager pm = openRelaxed();
+		//every commit is a group that schedules a flush
+		commit(pm, 1, N_COMMITS);
+		assertEquals(1, countFlusherThreads());
+		TestTools.closePM();
+
+		long t0 = System.currentTimeMillis();
+		while (countFlusherThreads() > 0 && System.currentTimeMillis() - t0 < TIMEOUT_MS) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, countFlusherThreads());
+	}
+
+	/**
+	 * The flusher fails to write a commit. The session that made the commit must see the
+	 * failure with its next commit.
+	 */
+	@Test
+	public void testFailedFlushIsReported() throws InterruptedException {
+		TestTools.removeDb();
+		ZooConfig.setFileManager(ZooConfig.FILE_MGR_IN_MEMORY);
+		ZooConfig.setFileProcessor(FailingStorage.class.getName());
+		TestTools.createDb();
+		TestTools.defineSchema(TestSuper.class);
+
+		ZooConfig.setCommitFlushDelay(50);
+		PersistenceManager pm = openRelaxed();
+		FailingStorage.FAIL_FORCE.set(true);
+		commit(pm, 1, 1);
+		long t0 = System.currentTimeMillis();
+		while (FailingStorage.FAIL_FORCE.get() && System.currentTimeMillis() - t0 < TIMEOUT_MS) {
+			Thread.sleep(10);
+		}
+		assertFalse(FailingStorage.FAIL_FORCE.get());
+
+		try {
+			commit(pm, 1, 1);
+			fail();
+		} catch (JDOFatalDataStoreException e) {
+			//good
+		}
+		if (!pm.isClosed()) {
+			if (pm.currentTransaction().isActive()) {
+				pm.currentTransaction().rollback();
+			}
+			pm.close();
+		}
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testDurableCommitWritesRelaxedCommits() {
+		ZooConfig.setCommitFlushDelay(60000);
+		PersistenceManager pm = openRelaxed();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long g0 = stats.getStat(STATS.TX_COMMIT_GROUP_CNT);
+		commit(pm, 1, N_COMMITS);
+
+		PersistenceManager pm2 = ZooJdoHelper.openDB(TestTools.getDbName());
+		commit(pm2, 2, 1);
+		assertEquals(1, stats.getStat(STATS.TX_COMMIT_GROUP_CNT) - g0);
+		pm2.close();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Copy the database file while relaxed commits are not written yet. This is what
+	 * remains after a crash. The copy must open at the last written commit.
+	 */
+	@Test
+	public void testCrashRecoversLastWrittenCommit() throws IOException {
+		ZooConfig.setCommitFlushDelay(60000);
+		PersistenceManager pm = TestTools.openPM();
+		commit(pm, 1, N_COMMITS);
+		TestTools.closePM();
+
+		pm = openRelaxed();
+		//also delete objects, their pages must not be reused before the commits are written
+		pm.currentTransaction().begin();
+		pm.newQuery(TestSuper.class, "_id == 1 && _time < 5").deletePersistentAll();
+		pm.currentTransaction().commit();
+		commit(pm, 2, N_COMMITS);
+		assertEquals(N_COMMITS - 5, count(pm, 1));
+
+		Path src = Paths.get(TestTools.getDbFileName());
+		Path dst = Paths.get(ZooHelper.getDataStoreManager().getDbPath(DB2));
+		Files.copy(src, dst);
+		TestTools.closePM();
+
+		PersistenceManager pm2 = ZooJdoHelper.openDB(DB2);
+		assertEquals(N_COMMITS, count(pm2, 1));
+		assertEquals(0, count(pm2, 2));
+		pm2.close();
+
+		pm = TestTools.openPM();
+		assertEquals(N_COMMITS - 5, count(pm, 1));
+		assertEquals(N_COMMITS, count(pm, 2));
+		TestTools.closePM();
+	}
+}
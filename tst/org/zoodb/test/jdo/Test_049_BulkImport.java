@@ -0,0 +1,187 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooBulkImport;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Test the bulk import tool and bulk loading of indexes.
+ */
+public class Test_049_BulkImport {
+
+	private static final int N = 5000;
+
+	@Before
+	public void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_int", true);
+		TestTools.defineIndex(TestClass.class, "_long", false);
+		TestTools.defineIndex(TestClass.class, "_string", false);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.closePM();
+		TestTools.removeDb();
+		ZooConfig.setDefaults();
+	}
+
+	private static TestClass create(int i) {
+		TestClass tc = new TestClass();
+		tc.setInt(i);
+		tc.setLong(i % 10);
+		tc.setString("str" + i);
+		return tc;
+	}
+
+	private static int count(PersistenceManager pm, String filter) {
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, filter).execute();
+		return c.size();
+	}
+
+	private static void checkIndexes(PersistenceManager pm) {
+		pm.currentTransaction().begin();
+		ZooClass zc = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertTrue(zc.hasIndex("_int"));
+		assertTrue(zc.isIndexUnique("_int"));
+		assertTrue(zc.hasIndex("_long"));
+		assertFalse(zc.isIndexUnique("_long"));
+		assertTrue(zc.hasIndex("_string"));
+		assertEquals(N, count(pm, "_int >= 0"));
+		assertEquals(100, count(pm, "_int >= 1000 && _int < 1100"));
+		assertEquals(N / 10, count(pm, "_long == 3"));
+		assertEquals(1, count(pm, "_string == 'str1234'"));
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testImport() {
+		PersistenceManager pm = TestTools.openPM();
+		try (ZooBulkImport imp = new ZooBulkImport(pm)) {
+			imp.setBatchSize(1000);
+			for (int i = 0; i < N; i++) {
+				imp.add(create(i));
+				if (i == 1500) {
+					//indexes are suspended during import
+					assertFalse(ZooJdoHelper.schema(pm).getClass(TestClass.class).hasIndex("_int"));
+				}
+			}
+		}
+		assertFalse(pm.currentTransaction().isActive());
+		checkIndexes(pm);
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		checkIndexes(pm);
+
+		//indexes are updated after the import
+		pm.currentTransaction().begin();
+		pm.makePersistent(create(N));
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		assertEquals(N + 1, count(pm, "_int >= 0"));
+		assertEquals(1, count(pm, "_string == 'str" + N + "'"));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testImportFillFactor() {
+		ZooConfig.setIndexFillFactor(50);
+		PersistenceManager pm = TestTools.openPM();
+		try (ZooBulkImport imp = new ZooBulkImport(pm)) {
+			for (int i = 0; i < N; i++) {
+				imp.add(create(i));
+			}
+		}
+		checkIndexes(pm);
+		TestTools.closePM();
+	}
+
+	/**
+	 * Referenced objects keep their indexes. A duplicate key in such an index lets the import
+	 * fail halfway, the suspended indexes have to be recreated anyway.
+	 */
+	@Test
+	public void testImportFailsHalfway() {
+		TestTools.defineSchema(TestClassTiny.class);
+		TestTools.defineIndex(TestClassTiny.class, "_int", true);
+		PersistenceManager pm = TestTools.openPM();
+		try (ZooBulkImport imp = new ZooBulkImport(pm)) {
+			imp.setBatchSize(1000);
+			for (int i = 0; i < N; i++) {
+				TestClass tc = create(i);
+				TestClassTiny t = new TestClassTiny();
+				//duplicate key in the third batch
+				t.setInt(i == 2500 ? 1 : i);
+				tc.setRef1(t);
+				imp.add(tc);
+			}
+			fail();
+		} catch (JDOUserException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Unique index clash"));
+		}
+		assertFalse(pm.currentTransaction().isActive());
+
+		pm.currentTransaction().begin();
+		ZooClass zc = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertTrue(zc.hasIndex("_int"));
+		assertTrue(zc.isIndexUnique("_int"));
+		assertTrue(zc.hasIndex("_long"));
+		assertTrue(zc.hasIndex("_string"));
+		//the first two batches were committed
+		assertEquals(2000, count(pm, "_int >= 0"));
+		assertEquals(1, count(pm, "_string == 'str1234'"));
+		assertEquals(0, count(pm, "_string == 'str2345'"));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testImportFailsWithDuplicates() {
+		PersistenceManager pm = TestTools.openPM();
+		ZooBulkImport imp = new ZooBulkImport(pm);
+		imp.add(create(1));
+		imp.add(create(2));
+		imp.add(create(1));
+		try {
+			imp.close();
+			fail();
+		} catch (JDOUserException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Duplicate entry"));
+		}
+		TestTools.closePM();
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Test loading of objects in batches.
+ */
+public class Test_051_BatchFetch {
+
+	private static final int N = 3000;
+
+	@Before
+	public void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_int", true);
+	}
+
+	@After
+	public void tearDown() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	/**
+	 * The order of the _int values differs from the order in the file.
+	 */
+	private static List<Object> create() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ArrayList<TestClass> list = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt((i * 7919) % N);
+			pm.makePersistent(tc);
+			list.add(tc);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		ArrayList<Object> oids = new ArrayList<>();
+		for (TestClass tc: list) {
+			oids.add(pm.getObjectId(tc));
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		return oids;
+	}
+
+	@Test
+	public void testGetObjectsById() {
+		List<Object> oids = create();
+		Collections.shuffle(oids, new Random(0));
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		//some objects are already cached
+		Object cached = pm.getObjectById(oids.get(10));
+
+		Collection<?> c = pm.getObjectsById(oids);
+		assertEquals(N, c.size());
+		Iterator<?> it = c.iterator();
+		for (Object oid: oids) {
+			Object o = it.next();
+			assertEquals(oid, pm.getObjectId(o));
+			assertSame(pm.getObjectById(oid), o);
+		}
+		assertSame(cached, pm.getObjectById(oids.get(10)));
+
+		Object[] a = pm.getObjectsById(oids.get(5), oids.get(3), oids.get(5));
+		assertEquals(3, a.length);
+		assertEquals(oids.get(3), pm.getObjectId(a[1]));
+		assertSame(a[0], a[2]);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testGetObjectsByIdNotFound() {
+		List<Object> oids = create();
+		oids.add(12345678L);
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		try {
+			pm.getObjectsById(oids);
+			fail();
+		} catch (JDOObjectNotFoundException e) {
+			//good
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexScan() {
+		create();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 100").execute();
+		assertEquals(N - 100, c.size());
+		boolean[] found = new boolean[N];
+		for (Object o: c) {
+			int i = ((TestClass) o).getInt();
+			assertTrue(i >= 100);
+			assertFalse(found[i]);
+			found[i] = true;
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexScanSkipsDeletedObjects() {
+		List<Object> oids = create();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i += 3) {
+			pm.deletePersistent(pm.getObjectById(oids.get(i)));
+		}
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 0").execute();
+		int n = 0;
+		for (Object o: c) {
+			assertFalse(JDOHelper.isDeleted(o));
+			n++;
+		}
+		assertEquals(N - (N + 2) / 3, n);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Test the compact encoding of Strings.
+ */
+public class Test_085_StringEncoding {
+
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_string", false);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	private static String repeat(String s, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	static ArrayList<String> strings() {
+		ArrayList<String> list = new ArrayList<>();
+		list.add("");
+		list.add("a");
+		list.add("Hello World");
+		list.add("äöüÿ latin-1");
+		list.add("日本語");
+		list.add("mixed ä ā ࠀ ￿");
+		//surrogate pair and unpaired surrogates
+		list.add("😀");
+		list.add("x\ud800y\udc00z");
+		list.add("\u0000\u007f\u0080߿");
+		//lengths that require multi-byte varints
+		list.add(repeat("b", 127));
+		list.add(repeat("c", 128));
+		list.add(repeat("d", 20000));
+		//Strings that span several pages, with characters of different sizes
+		list.add(repeat("é", 10000));
+		list.add(repeat("eĀ一", 5000));
+		return list;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		ArrayList<String> strings = strings();
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < strings.size(); i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString(strings.get(i));
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(strings.size(), c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			assertEquals(strings.get(tc.getInt()), tc.getString());
+		}
+		for (int i = 0; i < strings.size(); i++) {
+			Query q = pm.newQuery(TestClass.class, "_string == :s");
+			Collection<?> r = (Collection<?>) q.execute(strings.get(i));
+			assertEquals(1, r.size());
+			assertEquals(i, ((TestClass) r.iterator().next()).getInt());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Strings in different positions relative to the end of a page.
+	 */
+	@Test
+	public void testPageBoundaries() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 3000; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString(repeat(i % 2 == 0 ? "s" : "ß世", i % 37));
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(3000, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			int i = tc.getInt();
+			assertEquals(repeat(i % 2 == 0 ? "s" : "ß世", i % 37), tc.getString());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+}
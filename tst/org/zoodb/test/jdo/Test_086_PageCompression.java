@@ -0,0 +1,232 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Random;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Test compression of data pages.
+ */
+public class Test_086_PageCompression {
+
+	private static final int N = 5000;
+
+	@Before
+	public void before() {
+		ZooConfig.setPageCompression(true);
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_int", true);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+		ZooConfig.setDefaults();
+	}
+
+	private static TestClass create(int i, Random r) {
+		TestClass tc = new TestClass();
+		tc.setInt(i);
+		tc.setLong(i % 7);
+		if (r == null) {
+			tc.setString("String number " + (i % 100));
+			tc.setByteArray(new byte[i % 50]);
+		} else {
+			byte[] ba = new byte[i % 50];
+			r.nextBytes(ba);
+			tc.setByteArray(ba);
+			tc.setString(Long.toHexString(r.nextLong()));
+		}
+		return tc;
+	}
+
+	private static void write(int start, int n, Random r) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = start; i < start + n; i++) {
+			pm.makePersistent(create(i, r));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static void check(int n, long seed, boolean isRandom) {
+		Random r = new Random(seed);
+		TestClass[] expected = new TestClass[n];
+		for (int i = 0; i < n; i++) {
+			expected[i] = create(i, isRandom ? r : null);
+		}
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		//extent
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(n, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			TestClass e = expected[tc.getInt()];
+			assertEquals(e.getLong(), tc.getLong());
+			assertEquals(e.getString(), tc.getString());
+			assertArrayEquals(e.getBytaArray(), tc.getBytaArray());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		//index, objects are loaded individually
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < n; i += 97) {
+			Query q = pm.newQuery(TestClass.class, "_int == " + i);
+			Collection<?> r2 = (Collection<?>) q.execute();
+			assertEquals(1, r2.size());
+			assertEquals(expected[i].getString(), ((TestClass) r2.iterator().next()).getString());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	private static long writeAndMeasure(boolean compression) {
+		TestTools.removeDb();
+		ZooConfig.setPageCompression(compression);
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		write(0, N, null);
+		return new File(TestTools.getDbFileName()).length();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		write(0, N, null);
+		check(N, 0, false);
+	}
+
+	@Test
+	public void testFileSize() {
+		long lenRaw = writeAndMeasure(false);
+		long lenCompressed = writeAndMeasure(true);
+		//index pages are not compressed
+		assertTrue(lenCompressed + " vs " + lenRaw, lenCompressed < lenRaw * 0.7);
+		check(N, 0, false);
+	}
+
+	@Test
+	public void testIncompressibleData() {
+		Random r = new Random(42);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(create(i, r));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		check(N, 42, true);
+	}
+
+	/**
+	 * Objects that span several pages.
+	 */
+	@Test
+	public void testLargeObjects() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Random r = new Random(0);
+		for (int i = 0; i < 20; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			byte[] ba = new byte[50000];
+			//compressible in the first half, random in the second half
+			for (int j = 0; j < ba.length / 2; j++) {
+				ba[j] = (byte) (j % 10);
+			}
+			for (int j = ba.length / 2; j < ba.length; j++) {
+				ba[j] = (byte) r.nextInt();
+			}
+			tc.setByteArray(ba);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		r = new Random(0);
+		for (int i = 0; i < 20; i++) {
+			Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int == " + i).execute();
+			byte[] ba = ((TestClass) c.iterator().next()).getBytaArray();
+			assertEquals(50000, ba.length);
+			for (int j = 0; j < ba.length / 2; j++) {
+				assertEquals((byte) (j % 10), ba[j]);
+			}
+			for (int j = ba.length / 2; j < ba.length; j++) {
+				assertEquals((byte) r.nextInt(), ba[j]);
+			}
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Compressed pages can be read and updated when compression is disabled.
+	 */
+	@Test
+	public void testMixedPages() {
+		write(0, N, null);
+		ZooConfig.setPageCompression(false);
+		write(N, N, null);
+		ZooConfig.setPageCompression(true);
+		write(2 * N, N, null);
+		check(3 * N, 0, false);
+
+		ZooConfig.setPageCompression(false);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int < 1000").execute();
+		for (Object o: c) {
+			((TestClass) o).setLong(-1);
+		}
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 2500 && _int < 3000").execute();
+		for (Object o: c) {
+			pm.deletePersistent(o);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_long == -1").execute();
+		assertEquals(1000, c.size());
+		c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(3 * N - 500, c.size());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+}
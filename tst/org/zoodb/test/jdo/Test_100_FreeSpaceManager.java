@@ -32,6 +32,7 @@ import org.zoodb.api.DBArrayList;
 import org.zoodb.jdo.ZooJdoHelper;
 import org.zoodb.test.api.PersistentDummyImpl;
 import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics.STATS;
 import org.zoodb.tools.ZooCheckDb;
 import org.zoodb.tools.ZooConfig;
 
@@ -439,6 +440,63 @@ public class Test_100_FreeSpaceManager {
 		assertTrue("l1=" + len1/ps + " l2=" + f.length()/ps, len1*1.1 > f.length());
 	}
 
+	/**
+	 * Test with many fragmented free pages, the free space list requires several pages.
+	 */
+	@Test
+	public void testObjectsReusePagesFragmented() {
+		final int MAX = 2000;
+		byte[] ba = new byte[ZooConfig.getFilePageSize() * 2];
+
+		File f = new File(TestTools.getDbFileName());
+		//First, create objects, each object has at least one page of its own
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < MAX; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setByteArray(ba);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+
+		//now delete every second object
+		pm.currentTransaction().begin();
+		Collection<?> col = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		for (Object o: col) {
+			if (((TestClass) o).getInt() % 2 == 0) {
+				pm.deletePersistent(o);
+			}
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		long nFsmPages = ZooJdoHelper.getStatistics(pm).getStat(STATS.DB_PAGE_CNT_IDX_FSM);
+		assertTrue("" + nFsmPages, nFsmPages > 1);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		//check length
+		long len1 = f.length();
+
+		//create smaller objects, the free pages are read from the file
+		byte[] ba2 = new byte[ZooConfig.getFilePageSize() / 2];
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < MAX; i++) {
+			TestClass tc = new TestClass();
+			tc.setByteArray(ba2);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		assertEquals(MAX / 2 * 3, ((Collection<?>) pm.newQuery(TestClass.class).execute()).size());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		int ps = ZooConfig.getFilePageSize();
+		assertTrue("l1=" + len1/ps + " l2=" + f.length()/ps, len1*1.1 > f.length());
+	}
+
 
 	/**
 	 * Test with multi-page objects
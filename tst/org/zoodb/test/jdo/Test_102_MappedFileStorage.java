@@ -0,0 +1,110 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Tests for the memory mapped storage (StorageRootFileMapped).
+ */
+public class Test_102_MappedFileStorage {
+
+	@BeforeClass
+	public static void setUp() {
+		ZooConfig.setFileProcessor(ZooConfig.FILE_PAF_BB_MAPPED_PAGE);
+	}
+
+	@Before
+	public void before() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+		ZooConfig.setDefaults();
+	}
+
+	@Test
+	public void testCommitOverhead() {
+		File f = new File(TestTools.getDbFileName());
+		long len1 = f.length();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//the mapped file must be truncated to the used size
+		assertEquals(len1, f.length());
+	}
+
+	/**
+	 * Write enough data to require remapping of the file.
+	 */
+	@Test
+	public void testGrowAndReopen() {
+		final int N = 20000;
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setData(i, true, 'x', (byte) 1, (short) 2, i, "str" + i, new byte[100], 3.3f, 4.4);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		File f = new File(TestTools.getDbFileName());
+		long len = f.length();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClass.class, "_int >= 10000");
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(N - 10000, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			assertEquals("str" + tc.getInt(), tc.getString());
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		assertEquals(len, f.length());
+	}
+
+}
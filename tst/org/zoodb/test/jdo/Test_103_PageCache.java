@@ -0,0 +1,352 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import javax.jdo.Extent;
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.DBStatistics.STATS;
+import org.zoodb.tools.ZooConfig;
+
+/**
+ * Tests for the page cache that is shared between sessions.
+ */
+public class Test_103_PageCache {
+
+	@Before
+	public void before() {
+		ZooConfig.setPageCacheSize(100);
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+		ZooConfig.setDefaults();
+	}
+
+	@Test
+	public void testSharedBetweenSessions() {
+		PersistenceManager pm0 = TestTools.openPM();
+		pm0.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		tc.setInt(5);
+		pm0.makePersistent(tc);
+		Object oid = pm0.getObjectId(tc);
+		pm0.currentTransaction().commit();
+		TestTools.closePM();
+
+		ZooJdoProperties props = new ZooJdoProperties(TestTools.getDbName());
+		PersistenceManagerFactory pmf = JDOHelper.getPersistenceManagerFactory(props);
+		PersistenceManager pm1 = pmf.getPersistenceManager();
+		PersistenceManager pm2 = pmf.getPersistenceManager();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm2);
+
+		pm1.currentTransaction().begin();
+		assertEquals(5, ((TestClass) pm1.getObjectById(oid)).getInt());
+		pm1.currentTransaction().commit();
+
+		long hit0 = stats.getStat(STATS.IO_PAGE_CACHE_HIT_CNT);
+		pm2.currentTransaction().begin();
+		assertEquals(5, ((TestClass) pm2.getObjectById(oid)).getInt());
+		pm2.currentTransaction().commit();
+		//pages loaded by pm1 should be served from the cache
+		assertTrue(stats.getStat(STATS.IO_PAGE_CACHE_HIT_CNT) > hit0);
+
+		pm1.close();
+		pm2.close();
+		pmf.close();
+	}
+
+	@Test
+	public void testReadCountExcludesCacheHits() {
+		PersistenceManager pm0 = TestTools.openPM();
+		pm0.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		tc.setInt(5);
+		pm0.makePersistent(tc);
+		Object oid = pm0.getObjectId(tc);
+		pm0.currentTransaction().commit();
+		TestTools.closePM();
+
+		DBStatistics.enable(true);
+		try {
+			ZooJdoProperties props = new ZooJdoProperties(TestTools.getDbName());
+			PersistenceManagerFactory pmf = JDOHelper.getPersistenceManagerFactory(props);
+			PersistenceManager pm1 = pmf.getPersistenceManager();
+			PersistenceManager pm2 = pmf.getPersistenceManager();
+			DBStatistics stats = ZooJdoHelper.getStatistics(pm2);
+
+			long read0 = stats.getStat(STATS.IO_PAGE_READ_CNT);
+			long miss0 = stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT);
+			pm1.currentTransaction().begin();
+			assertEquals(5, ((TestClass) pm1.getObjectById(oid)).getInt());
+			pm1.currentTransaction().commit();
+			long read1 = stats.getStat(STATS.IO_PAGE_READ_CNT);
+			long miss1 = stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT);
+			assertTrue(read1 > read0);
+			assertEquals(miss1 - miss0, read1 - read0);
+
+			long hit1 = stats.getStat(STATS.IO_PAGE_CACHE_HIT_CNT);
+			pm2.currentTransaction().begin();
+			assertEquals(5, ((TestClass) pm2.getObjectById(oid)).getInt());
+			pm2.currentTransaction().commit();
+			//only cache misses are read from disk
+			assertTrue(stats.getStat(STATS.IO_PAGE_CACHE_HIT_CNT) > hit1);
+			assertEquals(stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT) - miss1, 
+					stats.getStat(STATS.IO_PAGE_READ_CNT) - read1);
+
+			pm1.close();
+			pm2.close();
+			pmf.close();
+		} finally {
+			DBStatistics.enable(false);
+		}
+	}
+
+	@Test
+	public void testInvalidationOnWrite() {
+		//small cache to enforce eviction
+		ZooConfig.setPageCacheSize(3);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		pm.makePersistent(tc);
+		Object oid = pm.getObjectId(tc);
+		pm.currentTransaction().commit();
+
+		for (int i = 0; i < 10; i++) {
+			pm.currentTransaction().begin();
+			tc.setInt(i);
+			for (int j = 0; j < 100; j++) {
+				pm.makePersistent(new TestClass());
+			}
+			pm.currentTransaction().commit();
+			pm.currentTransaction().begin();
+			pm.evictAll();
+			assertEquals(i, ((TestClass) pm.getObjectById(oid)).getInt());
+			pm.currentTransaction().commit();
+		}
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(9, ((TestClass) pm.getObjectById(oid)).getInt());
+		pm.currentTransaction().commit();
+	}
+
+	@Test
+	public void testDisabled() {
+		ZooConfig.setPageCacheSize(0);
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		assertEquals(0, stats.getStat(STATS.IO_PAGE_CACHE_HIT_CNT));
+		assertEquals(0, stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT));
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		ZooConfig.setDefaults();
+		PersistenceManager pm = TestTools.openPM();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		pm.evictAll();
+		tc.getInt();
+		pm.currentTransaction().commit();
+		assertEquals(0, stats.getStat(STATS.IO_PAGE_CACHE_HIT_CNT));
+		assertEquals(0, stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT));
+	}
+
+	private static void checkScan(PersistenceManager pm, int n, String prefix) {
+		pm.currentTransaction().begin();
+		Extent<TestClass> ext = pm.getExtent(TestClass.class);
+		int cnt = 0;
+		for (TestClass tc: ext) {
+			assertEquals(prefix + tc.getInt(), tc.getString());
+			cnt++;
+		}
+		ext.closeAll();
+		assertEquals(n, cnt);
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, 
+				"_string.startsWith('" + prefix + "1')").execute();
+		for (Object o: c) {
+			assertTrue(((TestClass) o).getString().startsWith(prefix + "1"));
+		}
+		pm.currentTransaction().commit();
+	}
+
+	@Test
+	public void testReadAhead() {
+		//more read-ahead than cached pages
+		ZooConfig.setPageCacheSize(10);
+		ZooConfig.setReadAheadPages(16);
+		final int N = 5000;
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("a" + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		checkScan(pm, N, "a");
+
+		//pages that are rewritten must not be served from read-ahead
+		pm.currentTransaction().begin();
+		for (TestClass tc: pm.getExtent(TestClass.class)) {
+			tc.setString("b" + tc.getInt());
+		}
+		pm.currentTransaction().commit();
+		checkScan(pm, N, "b");
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		checkScan(pm, N, "b");
+		TestTools.closePM();
+	}
+
+	private static boolean isReadAheadRunning() {
+		for (Thread t: Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("ZooDB read-ahead") && t.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testReadAheadThreadLifecycle() {
+		final int N = 2000;
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("a" + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//disabled by default
+		pm = TestTools.openPM();
+		checkScan(pm, N, "a");
+		assertFalse(isReadAheadRunning());
+		TestTools.closePM();
+
+		ZooConfig.setPageCacheSize(100);
+		ZooConfig.setReadAheadPages(8);
+		pm = TestTools.openPM();
+		checkScan(pm, N, "a");
+		assertTrue(isReadAheadRunning());
+		TestTools.closePM();
+		assertFalse(isReadAheadRunning());
+	}
+
+	@Test
+	public void testReadAheadDisabled() {
+		ZooConfig.setReadAheadPages(0);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 1000; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("a" + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		checkScan(pm, 1000, "a");
+		TestTools.closePM();
+	}
+
+	/**
+	 * Large objects are written to contiguous pages, which are read with few large reads.
+	 */
+	@Test
+	public void testLargeObjectRun() {
+		final int SIZE = 1000000;
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		byte[] ba = new byte[SIZE];
+		for (int i = 0; i < ba.length; i++) {
+			ba[i] = (byte) (i % 101);
+		}
+		tc.setByteArray(ba);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < SIZE / 10; i++) {
+			sb.append("string").append(i % 1000);
+		}
+		tc.setString(sb.toString());
+		pm.makePersistent(tc);
+		Object oid = pm.getObjectId(tc);
+		for (int i = 0; i < 100; i++) {
+			pm.makePersistent(new TestClass());
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		pm.currentTransaction().begin();
+		long miss0 = stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT);
+		tc = (TestClass) pm.getObjectById(oid);
+		ba = tc.getBytaArray();
+		assertEquals(SIZE, ba.length);
+		for (int i = 0; i < ba.length; i++) {
+			assertEquals((byte) (i % 101), ba[i]);
+		}
+		assertEquals(sb.toString(), tc.getString());
+		//without runs, every of the ~500 pages would be a cache miss
+		long misses = stats.getStat(STATS.IO_PAGE_CACHE_MISS_CNT) - miss0;
+		assertTrue("misses=" + misses, misses < 50);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+}
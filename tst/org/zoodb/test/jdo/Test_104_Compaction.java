@@ -0,0 +1,186 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooCompactDb;
+import org.zoodb.tools.ZooHelper;
+
+/**
+ * Test compaction of database files.
+ */
+public class Test_104_Compaction {
+
+	private static final int N = 10000;
+
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class, TestClassTiny.class);
+		TestTools.defineIndex(TestClass.class, "_int", true);
+		TestTools.defineIndex(TestClassTiny.class, "_int", false);
+	}
+
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	/**
+	 * Write interleaved objects of both classes, then delete most of the large objects.
+	 */
+	private static void populate() {
+		PersistenceManager pm = TestTools.openPM();
+		for (int j = 0; j < 10; j++) {
+			pm.currentTransaction().begin();
+			for (int i = j * N / 10; i < (j + 1) * N / 10; i++) {
+				TestClass tc = new TestClass();
+				tc.setInt(i);
+				tc.setLong(i % 5);
+				tc.setString("String " + i);
+				tc.setByteArray(new byte[200]);
+				pm.makePersistent(tc);
+				pm.makePersistent(new TestClassTiny(i, i * 2L));
+			}
+			pm.currentTransaction().commit();
+		}
+
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_long != 0").execute();
+		pm.deletePersistentAll(c);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static void check() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(N / 5, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			assertEquals(0, tc.getInt() % 5);
+			assertEquals("String " + tc.getInt(), tc.getString());
+			assertEquals(200, tc.getBytaArray().length);
+		}
+		c = (Collection<?>) pm.newQuery(TestClassTiny.class).execute();
+		assertEquals(N, c.size());
+		for (Object o: c) {
+			TestClassTiny t = (TestClassTiny) o;
+			assertEquals(t.getInt() * 2L, t.getLong());
+		}
+
+		//indexes
+		for (int i = 0; i < N; i += 97) {
+			c = (Collection<?>) pm.newQuery(TestClass.class, "_int == " + i).execute();
+			assertEquals(i % 5 == 0 ? 1 : 0, c.size());
+			c = (Collection<?>) pm.newQuery(TestClassTiny.class, "_int == " + i).execute();
+			assertEquals(1, c.size());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCompaction() {
+		populate();
+		File f = new File(TestTools.getDbFileName());
+		long len1 = f.length();
+
+		long[] pages = ZooHelper.compactDb(TestTools.getDbName());
+		long len2 = f.length();
+		assertTrue(len2 + " vs " + len1, len2 < len1 * 0.7);
+		assertEquals(len2 / pages[1], len1 / pages[0]);
+		check();
+
+		//The database can be used and compacted again
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = N; i < N + 100; i++) {
+			pm.makePersistent(new TestClassTiny(i, i * 2L));
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClassTiny.class, "_int >= " + N).execute();
+		pm.deletePersistentAll(c);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//The objects are rewritten, so the layout is not exactly the same as before
+		ZooHelper.compactDb(TestTools.getDbName());
+		assertTrue(f.length() + " vs " + len2, f.length() < len2 * 1.1);
+		check();
+	}
+
+	@Test
+	public void testCompactionWithOpenSession() {
+		populate();
+		File f = new File(TestTools.getDbFileName());
+		long len1 = f.length();
+
+		//a session with an open transaction, it keeps reading its snapshot
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClassTiny.class, "_int < 10").execute();
+		assertEquals(10, c.size());
+
+		ZooHelper.compactDb(TestTools.getDbName());
+
+		c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(N / 5, c.size());
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			assertEquals("String " + tc.getInt(), tc.getString());
+		}
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		//the file may not have shrunk much, because the session pinned its snapshot
+		ZooHelper.compactDb(TestTools.getDbName());
+		assertTrue(f.length() + " vs " + len1, f.length() < len1 * 0.7);
+		check();
+	}
+
+	@Test
+	public void testEmptyDb() {
+		long[] pages = ZooHelper.compactDb(TestTools.getDbName());
+		assertTrue(pages[1] <= pages[0]);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClassTiny(1, 2));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCommandLine() {
+		populate();
+		ZooCompactDb.main(TestTools.getDbName());
+		check();
+	}
+}
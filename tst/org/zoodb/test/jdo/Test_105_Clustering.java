@@ -0,0 +1,278 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.api.impl.ZooPC;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.jdo.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+import org.zoodb.tools.DBStatistics.STATS;
+
+/**
+ * Test clustering of objects at commit time.
+ */
+public class Test_105_Clustering {
+
+	private static final int N_CHAINS = 20;
+	private static final int CHAIN_LEN = 100;
+
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_int", true);
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	private static PersistenceManager openPM(String clustering) {
+		ZooJdoProperties props = TestTools.getProps();
+		if (clustering != null) {
+			props.setZooClustering(clustering);
+		}
+		return TestTools.openPM(props);
+	}
+
+	private static int id(int chain, int pos) {
+		return chain * 1000 + pos;
+	}
+
+	/**
+	 * Create chains of objects, the objects of the chains are created round robin.
+	 */
+	private static void createChains(PersistenceManager pm) {
+		pm.currentTransaction().begin();
+		TestClass[] prev = new TestClass[N_CHAINS];
+		for (int i = 0; i < CHAIN_LEN; i++) {
+			for (int c = 0; c < N_CHAINS; c++) {
+				TestClass tc = new TestClass();
+				tc.setInt(id(c, i));
+				tc.setByteArray(new byte[200]);
+				pm.makePersistent(tc);
+				if (prev[c] != null) {
+					prev[c].setRef2(tc);
+				}
+				prev[c] = tc;
+			}
+		}
+		pm.currentTransaction().commit();
+	}
+
+	/**
+	 * @return The number of data pages that are read when navigating a chain.
+	 */
+	private static int countPagesOfChain(int chain) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		//reset counter
+		stats.getStat(STATS.IO_DATA_PAGE_READ_CNT_UNQ);
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class,
+				"_int == " + id(chain, 0)).execute();
+		TestClass tc = (TestClass) c.iterator().next();
+		int n = 0;
+		while (tc != null) {
+			assertEquals(id(chain, n), tc.getInt());
+			tc = tc.getRef2();
+			n++;
+		}
+		assertEquals(CHAIN_LEN, n);
+		int nPages = (int) stats.getStat(STATS.IO_DATA_PAGE_READ_CNT_UNQ);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		return nPages;
+	}
+
+	@Test
+	public void testNoClustering() {
+		createChains(openPM(null));
+		TestTools.closePM();
+		int nPages = countPagesOfChain(3);
+		assertTrue("pages=" + nPages, nPages > CHAIN_LEN / 2);
+	}
+
+	@Test
+	public void testReachability() {
+		createChains(openPM("reachability"));
+		TestTools.closePM();
+		for (int c = 0; c < N_CHAINS; c += 7) {
+			int nPages = countPagesOfChain(c);
+			assertTrue("pages=" + nPages, nPages < CHAIN_LEN / 5);
+		}
+	}
+
+	@Test
+	public void testReachabilityWithCycle() {
+		PersistenceManager pm = openPM("reachability");
+		pm.currentTransaction().begin();
+		TestClass a = new TestClass();
+		TestClass b = new TestClass();
+		a.setInt(1);
+		b.setInt(2);
+		a.setRef2(b);
+		b.setRef2(a);
+		pm.makePersistent(a);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int == 1").execute();
+		TestClass a2 = (TestClass) c.iterator().next();
+		assertEquals(2, a2.getRef2().getInt());
+		assertEquals(a2, a2.getRef2().getRef2());
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testField() {
+		createChains(openPM("field:_int"));
+		TestTools.closePM();
+		for (int c = 0; c < N_CHAINS; c += 7) {
+			int nPages = countPagesOfChain(c);
+			assertTrue("pages=" + nPages, nPages < CHAIN_LEN / 5);
+		}
+	}
+
+	/**
+	 * Objects are updated in a different order than they have been created.
+	 */
+	@Test
+	public void testOid() {
+		//create chains one after the other
+		PersistenceManager pm = openPM(null);
+		pm.currentTransaction().begin();
+		for (int c = 0; c < N_CHAINS; c++) {
+			TestClass prev = null;
+			for (int i = 0; i < CHAIN_LEN; i++) {
+				TestClass tc = new TestClass();
+				tc.setInt(id(c, i));
+				pm.makePersistent(tc);
+				if (prev != null) {
+					prev.setRef2(tc);
+				}
+				prev = tc;
+			}
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//update round robin, this makes the objects larger
+		pm = openPM("oid");
+		pm.currentTransaction().begin();
+		for (int i = 0; i < CHAIN_LEN; i++) {
+			for (int c = 0; c < N_CHAINS; c++) {
+				Collection<?> col = (Collection<?>) pm.newQuery(TestClass.class,
+						"_int == " + id(c, i)).execute();
+				((TestClass) col.iterator().next()).setByteArray(new byte[200]);
+			}
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		for (int c = 0; c < N_CHAINS; c += 7) {
+			int nPages = countPagesOfChain(c);
+			assertTrue("pages=" + nPages, nPages < CHAIN_LEN / 5);
+		}
+	}
+
+	@Test
+	public void testCustomPolicy() {
+		PersistenceManager pm = TestTools.openPM();
+		//reverse order
+		ArrayList<Integer> written = new ArrayList<>();
+		ZooJdoHelper.setClusteringPolicy(pm, (List<ZooPC> objects) -> {
+			Collections.reverse(objects);
+			for (ZooPC pc: objects) {
+				written.add(((TestClass) pc).getInt());
+			}
+		});
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 10; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		assertEquals(10, written.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(9 - i, (int) written.get(i));
+		}
+	}
+
+	@Test
+	public void testDeletedObjects() {
+		PersistenceManager pm = openPM("reachability");
+		pm.currentTransaction().begin();
+		TestClass a = new TestClass();
+		TestClass b = new TestClass();
+		a.setInt(1);
+		b.setInt(2);
+		a.setRef2(b);
+		pm.makePersistent(a);
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		pm.deletePersistent(b);
+		a.setRef2(null);
+		TestClass d = new TestClass();
+		d.setInt(3);
+		pm.makePersistent(d);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+		assertEquals(2, c.size());
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_int == 1").execute();
+		assertNull(((TestClass) c.iterator().next()).getRef2());
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testInvalidPolicy() {
+		try {
+			openPM("by_color");
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.internal.ZooClassProxy;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.schema.ZooClass;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * Test indexes over multiple fields.
+ */
+public class Test_106_CompositeIndex {
+
+	private static final int N = 1000;
+
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	private static void createIndex(String... fieldNames) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooJdoHelper.schema(pm).getClass(TestClass.class).createCompositeIndex(fieldNames);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	private static void populate() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i % 10);
+			tc.setLong(i);
+			tc.setShort((short) (i % 7 - 3));
+			tc.setString("s" + (i % 5));
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Check the result size and that the query used an index.
+	 */
+	private static void checkQuery(PersistenceManager pm, String filter, int expected) {
+		long n0 = ZooJdoHelper.getStatistics(pm).getQueryExecutionWithoutIndexCount();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, filter).execute();
+		assertEquals(filter, expected, c.size());
+		long n1 = ZooJdoHelper.getStatistics(pm).getQueryExecutionWithoutIndexCount();
+		assertEquals(filter, n0, n1);
+	}
+
+	private static void checkIntLong(int nDeleted) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_int == 3 && _long == 13", 1);
+		checkQuery(pm, "_long == 13 && _int == 3", 1);
+		checkQuery(pm, "_int == 3 && _long == 14", 0);
+		checkQuery(pm, "_int == 3", N / 10 - nDeleted);
+		checkQuery(pm, "_int == 3 && _long >= 500", N / 20);
+		checkQuery(pm, "_int == 3 && _long > 500 && _long < 600", 10);
+		checkQuery(pm, "_int == 3 && _long < 0", 0);
+		checkQuery(pm, "_int > 7", N / 5);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexBeforeData() {
+		createIndex("_int", "_long");
+		populate();
+		checkIntLong(0);
+	}
+
+	@Test
+	public void testIndexAfterData() {
+		populate();
+		createIndex("_int", "_long");
+		checkIntLong(0);
+	}
+
+	@Test
+	public void testUpdateAndDelete() {
+		createIndex("_int", "_long");
+		populate();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int == 3").execute();
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			if (tc.getLong() < 300) {
+				//move to negative values
+				tc.setLong(-tc.getLong());
+			} else if (tc.getLong() < 400) {
+				pm.deletePersistent(tc);
+			}
+		}
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_int == 3 && _long == 13", 0);
+		checkQuery(pm, "_int == 3 && _long == -13", 1);
+		checkQuery(pm, "_int == 3 && _long < 0", 30);
+		checkQuery(pm, "_int == 3 && _long >= 300 && _long < 400", 0);
+		checkQuery(pm, "_int == 3", N / 10 - 10);
+		checkQuery(pm, "_int == 4 && _long == 14", 1);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testTypes() {
+		createIndex("_string", "_short", "_int");
+		populate();
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == 's2' && _short == -1 && _int == 2", N / 70 + 1);
+		checkQuery(pm, "_string == 's2' && _short == -1", N / 35 + 1);
+		checkQuery(pm, "_string == 's2' && _short < 0", 3 * N / 35 + 1);
+		checkQuery(pm, "_string == 's2' && _short >= -3 && _short <= 3", N / 5);
+		checkQuery(pm, "_string == 's2'", N / 5);
+		checkQuery(pm, "_string == 's7'", 0);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testCombinedWithFieldIndex() {
+		TestTools.defineIndex(TestClass.class, "_long", true);
+		createIndex("_int", "_short");
+		populate();
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_int == 5 && _short == 2 && _long > 100", 13);
+		checkQuery(pm, "_int == 5 && _long == 15", 1);
+		//OR is not supported by composite indexes
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, 
+				"_int == 5 || _long == 16").execute();
+		assertEquals(N / 10 + 1, c.size());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testSchemaApi() {
+		createIndex("_int", "_long");
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClass cls = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertTrue(cls.hasCompositeIndex("_int", "_long"));
+		assertFalse(cls.hasCompositeIndex("_long", "_int"));
+		try {
+			cls.createCompositeIndex("_int", "_long");
+			fail();
+		} catch (JDOUserException e) {
+			//good, already defined
+		}
+		try {
+			cls.createCompositeIndex("_int");
+			fail();
+		} catch (JDOUserException e) {
+			//good, too few fields
+		}
+		try {
+			cls.createCompositeIndex("_int", "_int");
+			fail();
+		} catch (JDOUserException e) {
+			//good, duplicate field
+		}
+		try {
+			cls.createCompositeIndex("_int", "_xyz");
+			fail();
+		} catch (JDOUserException e) {
+			//good, unknown field
+		}
+		assertFalse(cls.removeCompositeIndex("_long", "_int"));
+		assertTrue(cls.removeCompositeIndex("_int", "_long"));
+		assertFalse(cls.hasCompositeIndex("_int", "_long"));
+		pm.currentTransaction().rollback();
+
+		//rollback
+		pm.currentTransaction().begin();
+		cls = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertTrue(cls.hasCompositeIndex("_int", "_long"));
+		assertTrue(cls.removeCompositeIndex("_int", "_long"));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		populate();
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		cls = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertFalse(cls.hasCompositeIndex("_int", "_long"));
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class,
+				"_int == 3 && _long == 13").execute();
+		assertEquals(1, c.size());
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testSchemaEvolution() {
+		createIndex("_int", "_long");
+		createIndex("_int", "_short");
+		populate();
+
+		//new versions of the class keep the index
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		ZooClass cls = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		cls.addField("_newField", Integer.TYPE);
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		cls = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		assertTrue(cls.hasCompositeIndex("_int", "_long"));
+		cls.removeField("_newField");
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		checkIntLong(0);
+
+		//removing a field removes the index
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		cls = ZooJdoHelper.schema(pm).getClass(TestClass.class);
+		cls.removeField("_long");
+		assertEquals(1, getCompositeIndexCount(cls));
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		//The Java class does not match the schema anymore
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		cls = ZooJdoHelper.schema(pm).getClass(TestClass.class.getName());
+		assertEquals(1, getCompositeIndexCount(cls));
+		assertTrue(cls.hasCompositeIndex("_int", "_short"));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	private static int getCompositeIndexCount(ZooClass cls) {
+		return ((ZooClassProxy) cls).getSchemaDef().getCompositeIndexes().size();
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * Test String indexes with full keys.
+ */
+public class Test_107_StringIndex {
+
+	private static final int N = 1000;
+	//longer than the maximum key length of the index
+	private static final String LONG;
+	static {
+		char[] ca = new char[1000];
+		Arrays.fill(ca, 'x');
+		LONG = new String(ca);
+	}
+
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		DBStatistics.enable(true);
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+
+	private static String key(int i) {
+		return String.format("k%04d", i);
+	}
+
+	private static void populate(String... extra) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setString(key(i));
+			tc.setInt(i);
+			pm.makePersistent(tc);
+		}
+		for (String s: extra) {
+			TestClass tc = new TestClass();
+			tc.setString(s);
+			tc.setInt(-1);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Check the result size and that the query used an index.
+	 */
+	private static void checkQuery(PersistenceManager pm, String filter, int expected) {
+		long n0 = ZooJdoHelper.getStatistics(pm).getQueryExecutionWithoutIndexCount();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, filter).execute();
+		assertEquals(filter, expected, c.size());
+		long n1 = ZooJdoHelper.getStatistics(pm).getQueryExecutionWithoutIndexCount();
+		assertEquals(filter, n0, n1);
+	}
+
+	/**
+	 * @param nDeleted Number of deleted keys with prefix 'k05'
+	 * @param nNull Number of objects with {@code null} value, these are smaller than any String
+	 */
+	private static void checkKeys(int nDeleted, int nNull) {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == 'k0013'", 1);
+		checkQuery(pm, "_string == 'k13'", 0);
+		checkQuery(pm, "_string.startsWith('k001')", 10);
+		checkQuery(pm, "_string.startsWith('k05')", 100 - nDeleted);
+		checkQuery(pm, "_string.startsWith('z')", 0);
+		checkQuery(pm, "_string.matches('k00.*')", 100);
+		checkQuery(pm, "_string >= 'k0100' && _string < 'k0200'", 100);
+		checkQuery(pm, "_string > 'k0990' && _string < 'l'", 9);
+		checkQuery(pm, "_string <= 'k0009'", 10 + nNull);
+		checkQuery(pm, "_string == 'k0013' || _string == 'k0014'", 2);
+		checkQuery(pm, "_string.startsWith('k0') && _int < 10", 10);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testIndexBeforeData() {
+		TestTools.defineIndex(TestClass.class, "_string", false);
+		populate();
+		checkKeys(0, 0);
+	}
+
+	@Test
+	public void testIndexAfterData() {
+		populate();
+		TestTools.defineIndex(TestClass.class, "_string", false);
+		checkKeys(0, 0);
+	}
+
+	@Test
+	public void testUniqueIndex() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		populate(null, null);
+		checkKeys(0, 2);
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == null", 2);
+		TestClass tc = new TestClass();
+		tc.setString(key(5));
+		pm.makePersistent(tc);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		pm.currentTransaction().begin();
+		assertFalse(JDOHelper.isPersistent(tc));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		checkKeys(0, 2);
+	}
+
+	@Test
+	public void testUniqueIndexAfterData() {
+		populate(key(5));
+		try {
+			TestTools.defineIndex(TestClass.class, "_string", true);
+			fail();
+		} catch (JDOUserException e) {
+			//good, duplicate entry
+		}
+		TestTools.defineIndex(TestClass.class, "_string", false);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == 'k0005'", 2);
+		checkQuery(pm, "_string.startsWith('k000')", 11);
+		checkQuery(pm, "_string >= 'k0100' && _string < 'k0200'", 100);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testUniqueIndexAfterDataWithNulls() {
+		//'null' is not checked for uniqueness
+		populate(null, null);
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		checkKeys(0, 2);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == null", 2);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testUpdateAndDelete() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		populate();
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class,
+				"_string.startsWith('k05')").execute();
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			if (tc.getInt() < 530) {
+				tc.setString("moved" + tc.getString());
+			} else if (tc.getInt() < 550) {
+				pm.deletePersistent(tc);
+			}
+		}
+		pm.currentTransaction().commit();
+
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == 'k0513'", 0);
+		checkQuery(pm, "_string == 'movedk0513'", 1);
+		checkQuery(pm, "_string.startsWith('moved')", 30);
+		checkQuery(pm, "_string >= 'k0530' && _string < 'k0550'", 0);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		checkKeys(50, 0);
+
+		//swap values in a unique index
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass tc1 = (TestClass) ((Collection<?>) pm.newQuery(TestClass.class,
+				"_string == 'k0001'").execute()).iterator().next();
+		TestClass tc2 = (TestClass) ((Collection<?>) pm.newQuery(TestClass.class,
+				"_string == 'k0002'").execute()).iterator().next();
+		tc1.setString("k0002");
+		tc2.setString("k0001");
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == 'k0001' && _int == 2", 1);
+		checkQuery(pm, "_string == 'k0002' && _int == 1", 1);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@Test
+	public void testLongAndUnicodeKeys() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		populate(LONG + "a", LONG + "b", LONG, "\u00e4\u00f6\u00fc", "\u4e2d\u6587",
+				"\uD83D\uDE00", "");
+
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string == '" + LONG + "a'", 1);
+		checkQuery(pm, "_string == '" + LONG + "'", 1);
+		checkQuery(pm, "_string.startsWith('" + LONG + "')", 3);
+		checkQuery(pm, "_string.startsWith('xx')", 3);
+		checkQuery(pm, "_string == '\u00e4\u00f6\u00fc'", 1);
+		checkQuery(pm, "_string == '\u4e2d\u6587'", 1);
+		checkQuery(pm, "_string.startsWith('\u4e2d')", 1);
+		checkQuery(pm, "_string == '\uD83D\uDE00'", 1);
+		checkQuery(pm, "_string > 'k0999'", 6);
+		checkQuery(pm, "_string == ''", 1);
+
+		//long keys that differ only beyond the maximum key length
+		TestClass tc = new TestClass();
+		tc.setString(LONG + "c");
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		tc = new TestClass();
+		tc.setString(LONG + "b");
+		pm.makePersistent(tc);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string.startsWith('" + LONG + "')", 4);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	/**
+	 * Insert and remove enough keys to split and merge pages.
+	 */
+	@Test
+	public void testManyKeys() {
+		TestTools.defineIndex(TestClass.class, "_string", false);
+		int n = 20000;
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < n; i++) {
+			TestClass tc = new TestClass();
+			//many keys share long prefixes
+			tc.setString("prefix/" + (i % 100) + "/" + LONG.substring(0, i % 50) + "/" + i);
+			tc.setInt(i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string.startsWith('prefix/7/')", n / 100);
+		checkQuery(pm, "_string.startsWith('prefix/')", n);
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 0").execute();
+		for (Object o: c) {
+			if (((TestClass) o).getInt() % 3 != 0) {
+				pm.deletePersistent(o);
+			}
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string.startsWith('prefix/')", (n + 2) / 3);
+		checkQuery(pm, "_string == 'prefix/3/" + LONG.substring(0, 3) + "/3'", 1);
+		checkQuery(pm, "_string == 'prefix/4/" + LONG.substring(0, 4) + "/4'", 0);
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 0").execute();
+		for (Object o: c) {
+			pm.deletePersistent(o);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		checkQuery(pm, "_string.startsWith('prefix/')", 0);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+}
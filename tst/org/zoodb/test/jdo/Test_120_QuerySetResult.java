@@ -17,7 +17,9 @@ package org.zoodb.test.jdo;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.Collection;
 
@@ -358,6 +360,15 @@ public class Test_120_QuerySetResult {
 		assertEquals((long)5, sums[5]);
 		assertEquals((long)5, sums[6]);
 		
+		q = pm.newQuery(TestClass.class);
+		q.setResult("count(this)");
+		assertEquals(5L, q.execute());
+		q = pm.newQuery(TestClass.class, "_int > 100");
+		q.setResult("count(this), max(_int)");
+		Object[] r = (Object[])q.execute();
+		assertEquals(3L, r[0]);
+		assertEquals(12345, r[1]);
+		
 		TestTools.closePM();
     }
 	
@@ -406,5 +417,50 @@ public class Test_120_QuerySetResult {
 		
 		TestTools.closePM();
     }
+
+	@Test
+	public void testUniqueProjection() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		Query q = pm.newQuery(TestClass.class);
+		q.setResult("_int");
+		q.setUnique(true);
+		try {
+			q.execute();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+
+		q = pm.newQuery(TestClass.class, "_int > 100");
+		q.setResult("_int");
+		q.setUnique(true);
+		try {
+			q.execute();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+
+		q.setFilter("_int == 123");
+		assertEquals(123, q.execute());
+		q.setFilter("_int == 5");
+		assertNull(q.execute());
+
+		//unfiltered query with a single candidate
+		pm.newQuery(TestClass.class, "_int != 123").deletePersistentAll();
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		q = pm.newQuery(TestClass.class);
+		q.setResult("_int");
+		q.setUnique(true);
+		assertEquals(123, q.execute());
+		q.setResult("_int, _short");
+		assertArrayEquals(new Object[]{123, (short) 32003}, (Object[]) q.execute());
+
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
 	
 }
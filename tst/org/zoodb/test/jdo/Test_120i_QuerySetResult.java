@@ -0,0 +1,188 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * Tests for query setResult() with aggregates and projections that are computed from indexes.
+ */
+public class Test_120i_QuerySetResult extends Test_120_QuerySetResult {
+
+	@BeforeClass
+	public static void setUp() {
+		Test_120_QuerySetResult.setUp();
+		for (String f: new String[]{"_byte", "_int", "_short", "_long", "_char", "_float", 
+				"_double"}) {
+			TestTools.defineIndex(TestClass.class, f, false);
+		}
+	}
+
+	@After
+	public void after() {
+		DBStatistics.enable(false);
+	}
+
+	@Test
+	public void testAggregatesWithoutReadingObjects() {
+		DBStatistics.enable(true);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long nPages = stats.getStorageDataPageReadCount();
+		long nNoIndex = stats.getQueryExecutionWithoutIndexCount();
+
+		Query q = pm.newQuery(TestClass.class);
+		q.setResult("min(_int), max(_int), min(_double), max(_float), count(this)");
+		Object[] r = (Object[]) q.execute();
+		assertEquals(1, r[0]);
+		assertEquals(12345, r[1]);
+		assertEquals(-35., r[2]);
+		assertEquals(11.1f, r[3]);
+		assertEquals(5L, r[4]);
+		assertEquals(nPages, stats.getStorageDataPageReadCount());
+		assertEquals(nNoIndex, stats.getQueryExecutionWithoutIndexCount());
+
+		//new and deleted objects are not yet in the indexes
+		TestClass tc = new TestClass();
+		tc.setInt(-5);
+		pm.makePersistent(tc);
+		q.setResult("min(_int), count(this)");
+		r = (Object[]) q.execute();
+		assertEquals(-5, r[0]);
+		assertEquals(6L, r[1]);
+		pm.deletePersistent(tc);
+		r = (Object[]) q.execute();
+		assertEquals(1, r[0]);
+		assertEquals(5L, r[1]);
+		pm.currentTransaction().commit();
+
+		//aggregates that require reading objects
+		pm.currentTransaction().begin();
+		nNoIndex = stats.getQueryExecutionWithoutIndexCount();
+		q.setResult("min(_int), sum(_int)");
+		r = (Object[]) q.execute();
+		assertEquals(1, r[0]);
+		assertEquals(1L + 12 + 123 + 1234 + 12345, r[1]);
+		assertEquals(nNoIndex + 1, stats.getQueryExecutionWithoutIndexCount());
+
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	private static void checkProjection(Query q, Object ... expected) {
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(Arrays.asList(expected), new ArrayList<>(c));
+	}
+
+	@Test
+	public void testProjectionsWithoutReadingObjects() {
+		DBStatistics.enable(true);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long nPages = stats.getStorageDataPageReadCount();
+
+		Query q = pm.newQuery(TestClass.class);
+		q.setResult("_int");
+		checkProjection(q, 1, 12, 123, 1234, 12345);
+
+		q = pm.newQuery(TestClass.class, "_int > 100 && _int < 2000");
+		q.setResult("_int");
+		checkProjection(q, 123, 1234);
+
+		q = pm.newQuery(TestClass.class, "_int > 10 && _int + 100 < 300");
+		q.setResult("_int");
+		checkProjection(q, 12, 123);
+
+		q = pm.newQuery(TestClass.class, "_int > 0");
+		q.setResult("_int");
+		q.setOrdering("_int descending");
+		q.setRange(1, 3);
+		checkProjection(q, 1234, 123);
+
+		q = pm.newQuery(TestClass.class, "_double < :d");
+		q.setResult("_double");
+		q.setOrdering("_double descending");
+		assertEquals(Arrays.asList(3.0, -0.01, -35.0), 
+				new ArrayList<>((Collection<?>) q.execute(10.)));
+
+		q = pm.newQuery(TestClass.class, "_float >= 0");
+		q.setResult("_float");
+		checkProjection(q, 0.1f, 1.1f, 11.1f);
+
+		q = pm.newQuery(TestClass.class, "_char > 'e'");
+		q.setResult("_char");
+		checkProjection(q, 'f', 'g');
+
+		q = pm.newQuery(TestClass.class, "_short == 32003");
+		q.setResult("_short");
+		q.setUnique(true);
+		assertEquals((short) 32003, q.execute());
+		q.setFilter("_short == 1");
+		assertEquals(null, q.execute());
+
+		//unfiltered unique projections also use the index
+		q = pm.newQuery(TestClass.class);
+		q.setResult("_short");
+		q.setUnique(true);
+		try {
+			q.execute();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		
+		assertEquals(nPages, stats.getStorageDataPageReadCount());
+
+		//filters on other fields require reading objects
+		q = pm.newQuery(TestClass.class, "_int > 100 && _short < 32005");
+		q.setResult("_int");
+		checkProjection(q, 123, 1234);
+		assertTrue(nPages < stats.getStorageDataPageReadCount());
+
+		//new objects are not yet in the indexes
+		TestClass tc = new TestClass();
+		tc.setInt(-5);
+		pm.makePersistent(tc);
+		q = pm.newQuery(TestClass.class, "_int < 100");
+		q.setResult("_int");
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(3, c.size());
+		assertTrue(c.contains(-5));
+
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+}
@@ -311,5 +311,47 @@ public class Test_126_QueryOrderBy {
 		
 		TestTools.closePM();
     }
+
+    /**
+     * Ordered queries with range keep only the first results, the result must be the same
+     * as for a (stable) sort of all results.
+     */
+	@Test
+    public void testOrderingWithRange() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		for (int i = 0; i < 200; i++) {
+			TestClass t = new TestClass();
+	        t.setData(i % 7, false, 'x', (byte) (i % 3), (short)32003, i, "t" + (i % 11), null,
+	        		0.1f, 3.0);
+	        pm.makePersistent(t);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+
+		//V3 and V4 query execution
+		checkRanges(pm, "_int < 100000", "_int desc", 205);
+		checkRanges(pm, "_int < 100000", "_string asc, _byte desc", 205);
+		checkRanges(pm, "_int < 1000 && _string.startsWith('t')", "_int asc", 200);
+		checkRanges(pm, "_int < 1000 && _string.startsWith('t')", "_byte asc, _string desc", 200);
+		
+		TestTools.closePM();
+    }
+	
+	private void checkRanges(PersistenceManager pm, String filter, String ordering, int n) {
+		Query q = pm.newQuery(TestClass.class, filter);
+		q.setOrdering(ordering);
+		List<?> all = new ArrayList<>((Collection<?>) q.execute());
+		assertEquals(n, all.size());
+		int[][] ranges = {{0, 1}, {0, 10}, {3, 50}, {190, 205}, {200, 300}, {300, 400}, {5, 5}};
+		for (int[] r: ranges) {
+			q.setRange(r[0], r[1]);
+			List<?> sub = new ArrayList<>((Collection<?>) q.execute());
+			int max = Math.min(r[1], all.size());
+			int min = Math.min(r[0], max);
+			assertEquals(ordering + " " + r[0], all.subList(min, max), sub);
+		}
+	}
 	
 }
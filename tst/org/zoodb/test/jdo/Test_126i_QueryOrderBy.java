@@ -103,6 +103,75 @@ public class Test_126i_QueryOrderBy extends Test_126_QueryOrderBy {
 		
 		TestTools.closePM();
     }
-	
+
+	/**
+	 * Results that are ordered by an indexed field are read in index order. With a range,
+	 * the index scan stops after the last result.
+	 */
+	@Test
+	public void testOrderingWithIndexAndRange() {
+		int n = 2000;
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < n; i++) {
+			TestClass t = new TestClass();
+			t.setData((i * 7) % n, false, 'x', (byte) 0, (short) 0, i, "t" + i, null, 0.1f, 3.0);
+			pm.makePersistent(t);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		DBStatistics.enable(true);
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+		long nQEWOWI = stats.getQueryExecutionWithOrderingWithoutIndexCount();
+
+		long nPages0 = stats.getStorageDataPageReadCount();
+		checkInts(pm, "_long < 100000", "_int descending", 0, 3, 1999, 1998, 1997);
+		long nPagesRange = stats.getStorageDataPageReadCount() - nPages0;
+		nPages0 = stats.getStorageDataPageReadCount();
+		Query q = pm.newQuery(TestClass.class, "_long < 100000");
+		q.setOrdering("_int descending");
+		int prev = n;
+		for (Object o: (List<?>) q.execute()) {
+			assertEquals(prev - 1, ((TestClass) o).getInt());
+			prev--;
+		}
+		assertEquals(0, prev);
+		long nPagesAll = stats.getStorageDataPageReadCount() - nPages0;
+		assertTrue(nPagesRange + " / " + nPagesAll, nPagesRange * 10 < nPagesAll);
+
+		//V4 
+		checkInts(pm, "_long + 1 < 100000", "_int ascending", 5, 8, 5, 6, 7);
+		//same index for filter and ordering
+		checkInts(pm, "_int < 1000", "_int descending", 0, 3, 999, 998, 997);
+		checkInts(pm, "_int >= 1000", "_int ascending", 0, 2, 1000, 1001);
+		assertEquals(nQEWOWI, stats.getQueryExecutionWithOrderingWithoutIndexCount());
+		
+		//modified objects are not yet in the index
+		q = pm.newQuery(TestClass.class, "_int == 1999");
+		q.setUnique(true);
+		((TestClass) q.execute()).setInt(-1);
+		checkInts(pm, "_long < 100000", "_int descending", 0, 2, 1998, 1997);
+		checkInts(pm, "_long < 100000", "_int ascending", 0, 2, -1, 0);
+
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void checkInts(PersistenceManager pm, String filter, String ordering, 
+			int rangeMin, int rangeMax, int... expected) {
+		Query q = pm.newQuery(TestClass.class, filter);
+		q.setOrdering(ordering);
+		q.setRange(rangeMin, rangeMax);
+		List<TestClass> c = (List<TestClass>) q.execute();
+		int i = 0;
+		for (TestClass tc: c) {
+			assertEquals(filter + " " + ordering, expected[i++], tc.getInt());
+		}
+		assertEquals(expected.length, i);
+	}
 
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2009-2020 Tilmann Zaeschke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zoodb.test.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.ZooJdoHelper;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.DBStatistics;
+
+/**
+ * Tests for streamed (unordered) query results.
+ */
+public class Test_176_QueryStreaming {
+
+	private static final int N = 10000;
+
+	@BeforeClass
+	public static void setUp() {
+		TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("str" + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+
+	@After
+	public void afterTest() {
+		DBStatistics.enable(false);
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+	@Test
+	public void testFirstRowIsStreamed() {
+		DBStatistics.enable(true);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		DBStatistics stats = ZooJdoHelper.getStatistics(pm);
+
+		long n0 = stats.getStorageDataPageReadCount();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int >= 0").execute();
+		Iterator<?> it = c.iterator();
+		assertTrue(it.hasNext());
+		it.next();
+		long nFirst = stats.getStorageDataPageReadCount() - n0;
+
+		int n = 1;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		long nAll = stats.getStorageDataPageReadCount() - n0;
+		assertEquals(N, n);
+		assertTrue(nFirst + " / " + nAll, nFirst * 10 < nAll);
+
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testRange() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		Query q = pm.newQuery(TestClass.class, "_int >= 100");
+		q.setRange(10, 30);
+		Collection<?> c = (Collection<?>) q.execute();
+		assertFalse(c.isEmpty());
+		int n = 0;
+		for (Object o: c) {
+			assertTrue(((TestClass) o).getInt() >= 100);
+			n++;
+		}
+		assertEquals(20, n);
+		assertEquals(20, c.size());
+
+		q.setRange(N, N + 10);
+		c = (Collection<?>) q.execute();
+		assertTrue(c.isEmpty());
+		assertEquals(0, c.size());
+		assertFalse(c.iterator().hasNext());
+
+		q.setRange(N - 105, N);
+		c = (Collection<?>) q.execute();
+		assertEquals(5, c.size());
+
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testRepeatedIteration() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		List<?> c = (List<?>) pm.newQuery(TestClass.class, "_int < 50").execute();
+		for (int i = 0; i < 3; i++) {
+			int n = 0;
+			for (Object o: c) {
+				assertTrue(((TestClass) o).getInt() < 50);
+				n++;
+			}
+			assertEquals(50, n);
+		}
+		assertEquals(50, c.size());
+		assertFalse(c.isEmpty());
+		//List operations load the results into memory
+		assertTrue(((TestClass) c.get(7)).getInt() < 50);
+		assertEquals(50, c.toArray().length);
+		assertEquals(50, c.size());
+
+		pm.currentTransaction().rollback();
+	}
+
+	@Test
+	public void testModifyWhileIterating() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int < 50").execute();
+		Collection<?> c2 = (Collection<?>) pm.newQuery(TestClass.class, "_int < 50").execute();
+		Iterator<?> it2 = c2.iterator();
+		it2.next();
+		//Results reflect the state at query execution
+		int n = 0;
+		for (Object o: c) {
+			TestClass tc = (TestClass) o;
+			tc.setInt(tc.getInt() + N);
+			n++;
+		}
+		assertEquals(50, n);
+		assertEquals(50, c.size());
+		n = 1;
+		while (it2.hasNext()) {
+			it2.next();
+			n++;
+		}
+		assertEquals(50, n);
+		assertEquals(50, c2.size());
+		
+		//new query
+		c = (Collection<?>) pm.newQuery(TestClass.class, "_int < 50").execute();
+		assertTrue(c.isEmpty());
+
+		pm.currentTransaction().rollback();
+	}
+
+	/**
+	 * After the first iteration, the results are evaluated once more and kept in memory.
+	 * We observe this with commits of another session.
+	 */
+	@Test
+	public void testResultsAreEvaluatedOnlyTwice() {
+		PersistenceManager pm = TestTools.openPM();
+		PersistenceManager pm2 = ZooJdoHelper.openDB(TestTools.getDbName());
+		pm.currentTransaction().begin();
+		Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class, "_int < 0").execute();
+		assertFalse(c.iterator().hasNext());
+
+		addNegative(pm2, -1);
+		//evaluated again and kept
+		assertEquals(1, c.size());
+
+		addNegative(pm2, -2);
+		assertEquals(1, c.size());
+		assertFalse(c.isEmpty());
+		for (int i = 0; i < 2; i++) {
+			int n = 0;
+			for (Object o: c) {
+				assertEquals(-1, ((TestClass) o).getInt());
+				n++;
+			}
+			assertEquals(1, n);
+		}
+		pm.currentTransaction().rollback();
+
+		//clean up for other tests
+		pm2.currentTransaction().begin();
+		pm2.deletePersistentAll(
+				(Collection<?>) pm2.newQuery(TestClass.class, "_int < 0").execute());
+		pm2.currentTransaction().commit();
+		pm2.close();
+	}
+
+	private static void addNegative(PersistenceManager pm, int i) {
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		tc.setInt(i);
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+	}
+
+}
@@ -15,6 +15,8 @@
  */
 package org.zoodb.test.util;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -75,13 +77,12 @@ public class RWSemaphoreTest {
 		assertTrue(w2.isAlive());
 		
 		//attempt wrong unlock
-		//TODO lock release is currently not key-sensitive if rlocks are present
-//		try {
-//			s.release(w2);
-//			fail();
-//		} catch (IllegalStateException e) {
-//			//can't unlock with wrong key
-//		}
+		try {
+			s.release(w2);
+			fail();
+		} catch (IllegalStateException e) {
+			//can't unlock with wrong key
+		}
 		
 		//now unlock 1 and wait for 2
 		s.release(r1);
@@ -130,43 +131,89 @@ public class RWSemaphoreTest {
 	public void testRafterR() throws InterruptedException {
 		RWSemaphore<Object> s = new RWSemaphore<>();
 		
-		GetRLOCK[] r = new GetRLOCK[RWSemaphore.MAX_READERS];
+		//There is no upper limit for the number of readers
+		GetRLOCK[] r = new GetRLOCK[100];
 		for (int i = 0; i < r.length; i++) {
 			r[i] = new GetRLOCK(s);
 			r[i].start();
 			//get RLOCK should be fine
-			r[i].join();
+			r[i].join(10000);
+			assertFalse(r[i].isAlive());
 		}
+		assertEquals(r.length, s.getReaderCount());
 		
-		//try 2nd R-lock
+		//attempt wrong unlock
 		GetRLOCK r2 = new GetRLOCK(s);
-		r2.start();
+		try {
+			s.release(r2);
+			fail();
+		} catch (IllegalStateException e) {
+			//can't unlock with wrong key
+		}
+		
+		for (int i = 0; i < r.length; i++) {
+			s.release(r[i]);
+		}
+		assertFalse(s.isLocked());
+	}
+	
+	@Test
+	public void testRafterWaitingW() throws InterruptedException {
+		RWSemaphore<Object> s = new RWSemaphore<>();
+		
+		GetRLOCK r1 = new GetRLOCK(s);
+		r1.start();
+		r1.join();
+		
+		//W-lock has to wait for r1
+		GetWLOCK w2 = new GetWLOCK(s);
+		w2.start();
 		Thread.sleep(100);
-		//get WLOCK should be waiting
+		assertTrue(w2.isAlive());
 		
-		assertTrue(r2.isAlive());
+		//new readers have to wait for the waiting writer
+		GetRLOCK r3 = new GetRLOCK(s);
+		r3.start();
+		Thread.sleep(100);
+		assertTrue(r3.isAlive());
 		
-		//attempt wrong unlock
-		//TODO R-lock release is currently not key-sensitive
-//		try {
-//			s.release(r2);
-//			fail();
-//		} catch (IllegalStateException e) {
-//			//can't unlock with wrong key
-//		}
+		s.release(r1);
+		w2.join();
+		assertTrue(r3.isAlive());
 		
-		//now unlock 1 and wait for 2
-		s.release(r[3]);
+		s.release(w2);
+		r3.join();
+		s.release(r3);
+		assertFalse(s.isLocked());
+	}
+	
+	@Test
+	public void testReentrantRafterWaitingW() throws InterruptedException {
+		RWSemaphore<Object> s = new RWSemaphore<>();
+		Object key = new Object();
+		s.readLock(key);
 		
-		//now wait for w2
-		r2.join();
+		//W-lock has to wait for the reader
+		GetWLOCK w2 = new GetWLOCK(s);
+		w2.start();
+		Thread.sleep(100);
+		assertTrue(w2.isAlive());
 		
-		s.release(r2);
-		for (int i = 0; i < r.length; i++) {
-			if (i != 3) {
-				s.release(r[i]);
-			}
-		}
+		//the reader can re-enter, otherwise it would wait for w2, which waits for the reader
+		Thread r = new Thread(() -> s.readLock(key));
+		r.start();
+		r.join(10000);
+		assertFalse(r.isAlive());
+		assertEquals(2, s.getReaderCount());
+		assertTrue(w2.isAlive());
+		
+		s.release(key);
+		Thread.sleep(100);
+		assertTrue(w2.isAlive());
+		s.release(key);
+		w2.join();
+		s.release(w2);
+		assertFalse(s.isLocked());
 	}
 	
 	private static class GetRLOCK extends Thread {